@@ -0,0 +1,119 @@
+package org.mitre.synthea;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.mitre.synthea.engine.Generator;
+import org.mitre.synthea.export.Exporter;
+import org.mitre.synthea.helpers.Config;
+import org.mitre.synthea.helpers.DefaultRandomNumberGenerator;
+import org.mitre.synthea.helpers.RandomNumberGenerator;
+import org.mitre.synthea.world.agents.Person;
+
+/**
+ * Deterministic people for the benchmarks. People of a given age are generated once per JVM
+ * from fixed seeds, with the simulation ending at a fixed time, so every run of a benchmark sees
+ * the same people. Records are kept in full (exporter.years_of_history = 0), so older people
+ * have larger records. Each call returns fresh copies, so benchmarks that modify people do not
+ * affect each other.
+ */
+public final class BenchmarkPeople {
+  /** The time the simulation ends, 2024-01-01T00:00:00Z. */
+  public static final long END_TIME = 1704067200000L;
+  /** The seed of the population. */
+  public static final long SEED = 12345L;
+
+  private static final Map<String, byte[]> PEOPLE = new HashMap<String, byte[]>();
+
+  private BenchmarkPeople() {
+  }
+
+  /**
+   * Switch off every exporter and the console output of the generator.
+   */
+  public static void exportOff() {
+    for (String format : new String[] {"ccda", "fhir", "fhir_stu3", "fhir_dstu2", "json", "csv",
+        "cpcds", "bfd", "cdw", "text", "clinical_note", "symptoms.csv", "symptoms.text",
+        "metadata", "groups.fhir", "hospital.fhir", "hospital.fhir_stu3", "hospital.fhir_dstu2",
+        "practitioner.fhir", "practitioner.fhir_stu3", "practitioner.fhir_dstu2", "custom"}) {
+      Config.set("exporter." + format + ".export", "false");
+    }
+    Config.set("exporter.text.per_encounter_export", "false");
+    Config.set("exporter.cost_access_outcomes_report", "false");
+    Config.set("generate.terminology_service_url", "");
+    Config.set("generate.log_patients.detail", "none");
+  }
+
+  /**
+   * Options for a generator that produces the same people on every run.
+   *
+   * @param population the number of people
+   * @return the options
+   */
+  public static Generator.GeneratorOptions options(int population) {
+    Generator.GeneratorOptions options = new Generator.GeneratorOptions();
+    options.population = population;
+    options.seed = SEED;
+    options.clinicianSeed = SEED;
+    options.referenceTime = END_TIME;
+    options.endTime = END_TIME;
+    options.overflow = false;
+    return options;
+  }
+
+  /**
+   * Get copies of people of the given age.
+   *
+   * @param age the age of the people at the end of the simulation
+   * @param count the number of people
+   * @return the people
+   * @throws IOException if the people cannot be copied
+   * @throws ClassNotFoundException if the people cannot be copied
+   */
+  public static synchronized Person[] get(int age, int count)
+      throws IOException, ClassNotFoundException {
+    String key = age + "|" + count;
+    byte[] serialized = PEOPLE.get(key);
+    if (serialized == null) {
+      exportOff();
+      Generator.GeneratorOptions options = options(count);
+      options.ageSpecified = true;
+      options.minAge = age;
+      options.maxAge = age;
+      Exporter.ExporterRuntimeOptions exportOptions = new Exporter.ExporterRuntimeOptions();
+      exportOptions.yearsOfHistory = 0;
+      Generator generator = new Generator(options, exportOptions);
+      RandomNumberGenerator seeds = new DefaultRandomNumberGenerator(SEED + age);
+      Person[] people = new Person[count];
+      for (int i = 0; i < count; i++) {
+        people[i] = generator.generatePerson(i, seeds.randLong());
+      }
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+        out.writeObject(people);
+      }
+      serialized = bytes.toByteArray();
+      PEOPLE.put(key, serialized);
+    }
+    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized))) {
+      return (Person[]) in.readObject();
+    }
+  }
+
+  /**
+   * Get a copy of a person of the given age.
+   *
+   * @param age the age of the person at the end of the simulation
+   * @return the person
+   * @throws IOException if the person cannot be copied
+   * @throws ClassNotFoundException if the person cannot be copied
+   */
+  public static Person get(int age) throws IOException, ClassNotFoundException {
+    return get(age, 1)[0];
+  }
+}
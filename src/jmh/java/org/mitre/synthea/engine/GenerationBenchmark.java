@@ -0,0 +1,130 @@
+package org.mitre.synthea.engine;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.mitre.synthea.BenchmarkPeople;
+import org.mitre.synthea.helpers.DefaultRandomNumberGenerator;
+import org.mitre.synthea.helpers.RandomNumberGenerator;
+import org.mitre.synthea.world.agents.Person;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Macro benchmark of generating people with a given set of modules, with every exporter
+ * switched off. The core Java modules are always included.
+ *
+ * <p>generatePerson simulates people one after another on a single thread, and reports people
+ * per second. generatePopulation runs the whole Generator on every processor and reports the
+ * time to generate the population, so people per second is the population divided by the
+ * score. Both report the allocation rate through the gc profiler, which the jmh task enables by
+ * default. For a large run, build the benchmark jar with ./gradlew jmhJar and run e.g.
+ * java -jar build/libs/synthea-*-jmh.jar GenerationBenchmark.generatePopulation -p people=100000
+ * </p>
+ * Run with: ./gradlew jmh -PjmhIncludes=GenerationBenchmark
+ */
+@State(Scope.Thread)
+public class GenerationBenchmark {
+  /** The set of modules: all, core (only the Java modules) or cardiometabolic. */
+  @Param({"all", "core", "cardiometabolic"})
+  public String modules;
+
+  /** The number of people generated by generatePopulation. */
+  @Param({"100"})
+  public int people;
+
+  private Generator generator;
+  private RandomNumberGenerator seeds;
+  private int index;
+
+  /**
+   * The modules of a set.
+   * @param set the name of the set
+   * @return the module paths, which may contain wildcards, or null for all modules
+   */
+  static List<String> moduleSet(String set) {
+    switch (set) {
+      case "all":
+        return null;
+      case "core":
+        return Collections.emptyList();
+      case "cardiometabolic":
+        return Arrays.asList("metabolic_syndrome*", "hypertension*",
+            "stable_ischemic_heart_disease*", "congestive_heart_failure*",
+            "chronic_kidney_disease*");
+      default:
+        throw new IllegalArgumentException("Unknown module set " + set);
+    }
+  }
+
+  private Generator newGenerator(int population) {
+    BenchmarkPeople.exportOff();
+    Generator.GeneratorOptions options = BenchmarkPeople.options(population);
+    options.enabledModules = moduleSet(modules);
+    return new Generator(options);
+  }
+
+  /**
+   * Create the generator for generatePerson. The same people are generated in every trial.
+   */
+  @Setup(Level.Trial)
+  public void setupTrial() {
+    generator = newGenerator(1);
+    seeds = new DefaultRandomNumberGenerator(BenchmarkPeople.SEED);
+    index = 0;
+  }
+
+  /**
+   * Generate the next person.
+   * @return the person
+   */
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OutputTimeUnit(TimeUnit.SECONDS)
+  public Person generatePerson() {
+    return generator.generatePerson(index++, seeds.randLong());
+  }
+
+  /**
+   * A new generator for each population.
+   */
+  @State(Scope.Thread)
+  public static class Population {
+    private Generator generator;
+
+    /**
+     * Create the generator.
+     * @param benchmark the benchmark, for its parameters
+     */
+    @Setup(Level.Invocation)
+    public void setup(GenerationBenchmark benchmark) {
+      generator = benchmark.newGenerator(benchmark.people);
+    }
+  }
+
+  /**
+   * Generate the whole population.
+   * @param population the generator
+   * @return the number of people generated
+   */
+  @Benchmark
+  @BenchmarkMode(Mode.SingleShotTime)
+  @OutputTimeUnit(TimeUnit.SECONDS)
+  @Warmup(iterations = 1)
+  @Measurement(iterations = 3)
+  public int generatePopulation(Population population) {
+    population.generator.run();
+    return population.generator.totalGeneratedPopulation.get();
+  }
+}
@@ -0,0 +1,74 @@
+package org.mitre.synthea.engine;
+
+import com.google.gson.JsonParser;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.mitre.synthea.BenchmarkPeople;
+import org.mitre.synthea.helpers.Utilities;
+import org.mitre.synthea.world.agents.Person;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures Logic.test for common kinds of conditions against people of different ages, whose
+ * records have different sizes.
+ * Run with: ./gradlew jmh -PjmhIncludes=LogicBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class LogicBenchmark {
+  private static final Map<String, String> CONDITIONS = new HashMap<String, String>();
+
+  static {
+    CONDITIONS.put("age", "{\"condition_type\": \"Age\", \"operator\": \">=\","
+        + " \"quantity\": 18, \"unit\": \"years\"}");
+    CONDITIONS.put("and", "{\"condition_type\": \"And\", \"conditions\": ["
+        + "{\"condition_type\": \"Gender\", \"gender\": \"F\"},"
+        + "{\"condition_type\": \"Attribute\", \"attribute\": \"income\", \"operator\": \">\","
+        + " \"value\": 20000}]}");
+    CONDITIONS.put("active_condition", "{\"condition_type\": \"Active Condition\", \"codes\": ["
+        + "{\"system\": \"SNOMED-CT\", \"code\": \"15777000\", \"display\": \"Prediabetes\"}]}");
+    CONDITIONS.put("observation", "{\"condition_type\": \"Observation\", \"codes\": ["
+        + "{\"system\": \"LOINC\", \"code\": \"29463-7\", \"display\": \"Body Weight\"}],"
+        + " \"operator\": \">\", \"value\": 50}");
+    CONDITIONS.put("vital_sign", "{\"condition_type\": \"Vital Sign\","
+        + " \"vital_sign\": \"Systolic Blood Pressure\", \"operator\": \">\", \"value\": 120}");
+  }
+
+  /** The kind of condition. */
+  @Param({"age", "and", "active_condition", "observation", "vital_sign"})
+  public String condition;
+
+  /** The age of the person. */
+  @Param({"40", "80"})
+  public int age;
+
+  private Logic logic;
+  private Person person;
+
+  /**
+   * Parse the condition and generate the person.
+   * @throws Exception if the person cannot be generated
+   */
+  @Setup
+  public void setup() throws Exception {
+    logic = Utilities.getGson().fromJson(JsonParser.parseString(CONDITIONS.get(condition)),
+        Logic.class);
+    person = BenchmarkPeople.get(age);
+  }
+
+  @Benchmark
+  public boolean test() {
+    return logic.test(person, BenchmarkPeople.END_TIME);
+  }
+}
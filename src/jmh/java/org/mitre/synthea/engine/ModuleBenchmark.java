@@ -0,0 +1,78 @@
+package org.mitre.synthea.engine;
+
+import java.util.concurrent.TimeUnit;
+
+import org.mitre.synthea.BenchmarkPeople;
+import org.mitre.synthea.helpers.Config;
+import org.mitre.synthea.world.agents.Person;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures Module.process by running a single module through a whole life, one timestep at a
+ * time, for a person that has already been simulated with every module.
+ * Run with: ./gradlew jmh -PjmhIncludes=ModuleBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class ModuleBenchmark {
+  /** The module to run. */
+  @Param({"allergies", "asthma", "hypertension", "metabolic_syndrome_disease"})
+  public String module;
+
+  /** The age of the person. */
+  @Param({"40"})
+  public int age;
+
+  private Module target;
+  private long timestep;
+  private Person person;
+
+  /**
+   * Load the module and generate the person.
+   * @throws Exception if the person cannot be generated
+   */
+  @Setup(Level.Trial)
+  public void setupTrial() throws Exception {
+    BenchmarkPeople.get(age);
+    target = Module.getModuleByPath(module);
+    if (target == null) {
+      throw new IllegalArgumentException("Unknown module " + module);
+    }
+    timestep = Long.parseLong(Config.get("generate.timestep"));
+  }
+
+  /**
+   * Start from a fresh copy of the person, who has not been through the module yet.
+   * @throws Exception if the person cannot be copied
+   */
+  @Setup(Level.Invocation)
+  public void setupInvocation() throws Exception {
+    person = BenchmarkPeople.get(age);
+    person.attributes.remove(target.name);
+  }
+
+  /**
+   * Process the module from birth to the end of the simulation.
+   * @return the person's history in the module
+   */
+  @Benchmark
+  public Object process() {
+    long time = (long) person.attributes.get(Person.BIRTHDATE);
+    while (time < BenchmarkPeople.END_TIME) {
+      if (target.process(person, time)) {
+        break;
+      }
+      time += timestep;
+    }
+    return person.attributes.get(target.name);
+  }
+}
@@ -0,0 +1,83 @@
+package org.mitre.synthea.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.math.ode.DerivativeException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.simulator.math.odes.MultiTable;
+
+/**
+ * Compares solving a batch of physiology simulations one person at a time with SBSCL (as
+ * PhysiologySimulator does without physiology.batch.enabled) and in lock step, using the
+ * circulation model of PhysiologySimulatorTest.
+ * Run with: ./gradlew jmh -PjmhIncludes=PhysiologyBatchBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+public class PhysiologyBatchBenchmark {
+  private static final String MODEL = "circulation/Smith2004_CVS_human.xml";
+
+  /** Number of simulations in the batch. */
+  @Param({"1", "16"})
+  public int batch;
+
+  /** The fixed step solver. */
+  @Param({"euler", "runge_kutta"})
+  public String solver;
+
+  private PhysiologyBatchSolver.Integrator integrator;
+  private List<double[]> params;
+
+  /**
+   * Build a batch of simulations, each with a different systemic resistance.
+   */
+  @Setup
+  public void setup() {
+    PhysiologySimulator simulator = new PhysiologySimulator(MODEL, solver, 0.01, 4);
+    integrator = new PhysiologyBatchSolver.Integrator(MODEL, solver, 0.01, 4);
+    List<String> names = simulator.getParameters();
+    params = new ArrayList<double[]>(batch);
+    for (int b = 0; b < batch; b++) {
+      double[] values = new double[names.size()];
+      for (int i = 0; i < values.length; i++) {
+        values[i] = simulator.getParamDefault(names.get(i));
+      }
+      values[names.indexOf("R_sys")] = 1.0 + b * 0.05;
+      params.add(values);
+    }
+  }
+
+  /**
+   * Solve each simulation separately.
+   * @return the results
+   * @throws DerivativeException if the solver fails
+   */
+  @Benchmark
+  public List<MultiTable> sequential() throws DerivativeException {
+    List<MultiTable> results = new ArrayList<MultiTable>(batch);
+    for (double[] p : params) {
+      results.add(integrator.solveOne(p));
+    }
+    return results;
+  }
+
+  /**
+   * Solve every simulation together.
+   * @return the results
+   * @throws DerivativeException if the solver fails
+   */
+  @Benchmark
+  public List<MultiTable> lockStep() throws DerivativeException {
+    return integrator.solveAll(params);
+  }
+}
@@ -0,0 +1,132 @@
+package org.mitre.synthea.export;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.mitre.synthea.BenchmarkPeople;
+import org.mitre.synthea.helpers.Config;
+import org.mitre.synthea.world.agents.Person;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the CPCDS export of people, as the generator threads run it, once the exporter has
+ * already written many practitioners and organizations. Before measuring, the exporter
+ * registers as many practitioner and organization pairs as are seen when exporting roughly
+ * 1,000 or 100,000 patients, so the cost of checking whether each practitioner and
+ * organization is new is part of the score. Each thread
+ * exports its own copies of the people. The files are written to a temporary folder that is
+ * deleted at the end of the run, and iterations are kept short because the files keep growing.
+ * Run with: ./gradlew jmh -PjmhIncludes=CPCDSExporterBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class CPCDSExporterBenchmark {
+  private static final int YEARS_OF_HISTORY = 10;
+  private static final int PEOPLE = 20;
+
+  /**
+   * The exporter shared by every thread.
+   */
+  @State(Scope.Benchmark)
+  public static class Exported {
+    /** The number of practitioner and organization pairs already written. */
+    @Param({"1000", "100000"})
+    public int practitioners;
+
+    private File outputFolder;
+
+    /**
+     * Prepare the exporter and register the practitioners already written.
+     * @throws Exception if the output cannot be created
+     */
+    @Setup
+    public void setup() throws Exception {
+      outputFolder = Files.createTempDirectory("synthea-cpcds-benchmark").toFile();
+      Config.set("exporter.baseDirectory", outputFolder.toString());
+      Config.set("exporter.cpcds.folder_per_run", "false");
+      // the exporter is created the first time it is used, after the folder is set
+      CPCDSExporter exporter = CPCDSExporter.getInstance();
+      for (int i = 0; i < practitioners; i++) {
+        exporter.exportedPractitioners.register("9999" + i + "8888" + i);
+        exporter.exportedHospitals.register("8888" + i);
+      }
+    }
+
+    /**
+     * Delete the exported files.
+     */
+    @TearDown
+    public void tearDown() {
+      FileUtils.deleteQuietly(outputFolder);
+    }
+  }
+
+  /**
+   * The people each thread exports.
+   */
+  @State(Scope.Thread)
+  public static class People {
+    /** The age of the people. */
+    @Param({"40", "80"})
+    public int age;
+
+    private Person[] people;
+    private int next;
+
+    /**
+     * Get this thread's copies of the people.
+     * @throws Exception if the people cannot be generated
+     */
+    @Setup
+    public void setup() throws Exception {
+      people = BenchmarkPeople.get(age, PEOPLE);
+      for (Person person : people) {
+        Exporter.filterForExport(person, YEARS_OF_HISTORY, BenchmarkPeople.END_TIME);
+      }
+    }
+
+    Person next() {
+      Person person = people[next];
+      next = (next + 1) % people.length;
+      return person;
+    }
+  }
+
+  /**
+   * Export one person on one thread.
+   * @param exported the exporter
+   * @param people the people to export
+   * @throws Exception if the export fails
+   */
+  @Benchmark
+  public void export(Exported exported, People people) throws Exception {
+    CPCDSExporter.getInstance().export(people.next(), BenchmarkPeople.END_TIME);
+  }
+
+  /**
+   * Export one person on each of four threads at once.
+   * @param exported the exporter
+   * @param people the people to export
+   * @throws Exception if the export fails
+   */
+  @Benchmark
+  @Threads(4)
+  public void exportConcurrently(Exported exported, People people) throws Exception {
+    CPCDSExporter.getInstance().export(people.next(), BenchmarkPeople.END_TIME);
+  }
+}
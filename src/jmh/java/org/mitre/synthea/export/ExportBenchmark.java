@@ -0,0 +1,102 @@
+package org.mitre.synthea.export;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.mitre.synthea.BenchmarkPeople;
+import org.mitre.synthea.export.rif.BB2RIFExporter;
+import org.mitre.synthea.helpers.Config;
+import org.mitre.synthea.world.agents.Person;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures exporting one person's record, filtered to the default 10 years of history, in each
+ * of the main formats. The formats that write files write them to a temporary folder that is
+ * deleted at the end of the run. Iterations are kept short because those files keep growing.
+ * BB2RIF only exports Medicare beneficiaries, so it should be measured with the older people.
+ * Run with: ./gradlew jmh -PjmhIncludes=ExportBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Thread)
+public class ExportBenchmark {
+  private static final int YEARS_OF_HISTORY = 10;
+
+  /** The format to export. */
+  @Param({"fhir", "fhir_json", "json", "csv", "cpcds", "bb2rif"})
+  public String format;
+
+  /** The age of the person. */
+  @Param({"40", "80"})
+  public int age;
+
+  private File outputFolder;
+  private Person person;
+
+  /**
+   * Generate the person and prepare the exporter.
+   * @throws Exception if the person cannot be generated or the output cannot be created
+   */
+  @Setup
+  public void setup() throws Exception {
+    person = BenchmarkPeople.get(age);
+    Exporter.filterForExport(person, YEARS_OF_HISTORY, BenchmarkPeople.END_TIME);
+
+    outputFolder = Files.createTempDirectory("synthea-export-benchmark").toFile();
+    Config.set("exporter.baseDirectory", outputFolder.toString());
+    Config.set("exporter.csv.folder_per_run", "false");
+    Config.set("exporter.cpcds.folder_per_run", "false");
+    Config.set("exporter.bfd.require_code_maps", "false");
+    // the exporters are created the first time they are used, after the folder is set
+  }
+
+  /**
+   * Delete the exported files.
+   */
+  @TearDown
+  public void tearDown() {
+    FileUtils.deleteQuietly(outputFolder);
+  }
+
+  /**
+   * Export the person.
+   * @return the exported record, or whether it was exported for the formats that write files
+   * @throws Exception if the export fails
+   */
+  @Benchmark
+  public Object export() throws Exception {
+    switch (format) {
+      case "fhir":
+        return FhirR4.convertToFHIR(person, BenchmarkPeople.END_TIME);
+      case "fhir_json":
+        return FhirR4.convertToFHIRJson(person, BenchmarkPeople.END_TIME);
+      case "json":
+        return JSONExporter.export(person);
+      case "csv":
+        CSVExporter.getInstance().export(person, BenchmarkPeople.END_TIME);
+        return true;
+      case "cpcds":
+        CPCDSExporter.getInstance().export(person, BenchmarkPeople.END_TIME);
+        return true;
+      case "bb2rif":
+        return BB2RIFExporter.getInstance().export(person, BenchmarkPeople.END_TIME,
+            YEARS_OF_HISTORY);
+      default:
+        throw new IllegalArgumentException("Unknown format " + format);
+    }
+  }
+}
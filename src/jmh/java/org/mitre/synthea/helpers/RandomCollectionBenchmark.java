@@ -0,0 +1,52 @@
+package org.mitre.synthea.helpers;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares picking from a RandomCollection by a search of the cumulative weights (the default)
+ * and with an alias table (generate.alias_sampling).
+ * Run with: ./gradlew jmh -PjmhIncludes=RandomCollectionBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class RandomCollectionBenchmark {
+  /** Number of items in the collection. */
+  @Param({"5", "20", "100", "1000"})
+  public int size;
+
+  /** Whether to use alias sampling. */
+  @Param({"false", "true"})
+  public boolean alias;
+
+  private RandomCollection<Integer> collection;
+  private RandomNumberGenerator random;
+
+  /**
+   * Build the collection with the sampling method being measured.
+   */
+  @Setup
+  public void setup() {
+    RandomCollection.aliasSampling = alias;
+    random = new DefaultRandomNumberGenerator(12345L);
+    collection = new RandomCollection<Integer>();
+    for (int i = 0; i < size; i++) {
+      // skewed weights, like the age and income distributions
+      collection.add(1.0 + random.rand() * i, i);
+    }
+  }
+
+  @Benchmark
+  public Integer next() {
+    return collection.next(random);
+  }
+}
@@ -0,0 +1,70 @@
+package org.mitre.synthea.world.concepts;
+
+import java.util.concurrent.TimeUnit;
+
+import org.mitre.synthea.BenchmarkPeople;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the HealthRecord lookups that modules make on every timestep, against the whole
+ * records of people of different ages.
+ * Run with: ./gradlew jmh -PjmhIncludes=HealthRecordBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class HealthRecordBenchmark {
+  /** LOINC code of body height, recorded at most wellness encounters. */
+  private static final String BODY_HEIGHT = "8302-2";
+  /** LOINC code of an observation no one has. */
+  private static final String MISSING = "00000-0";
+  /** SNOMED-CT code of prediabetes. */
+  private static final String PREDIABETES = "15777000";
+
+  /** The age of the person, which determines the size of the record. */
+  @Param({"10", "40", "80"})
+  public int age;
+
+  private HealthRecord record;
+
+  /**
+   * Generate the person.
+   * @throws Exception if the person cannot be generated
+   */
+  @Setup
+  public void setup() throws Exception {
+    record = BenchmarkPeople.get(age).record;
+  }
+
+  @Benchmark
+  public Object latestObservation() {
+    return record.getLatestObservation(BODY_HEIGHT);
+  }
+
+  @Benchmark
+  public Object missingObservation() {
+    return record.getLatestObservation(MISSING);
+  }
+
+  @Benchmark
+  public boolean conditionActive() {
+    return record.conditionActive(PREDIABETES);
+  }
+
+  @Benchmark
+  public Object currentEncounter() {
+    return record.currentEncounter(BenchmarkPeople.END_TIME);
+  }
+
+  @Benchmark
+  public long timeSinceLastWellnessEncounter() {
+    return record.timeSinceLastWellnessEncounter(BenchmarkPeople.END_TIME);
+  }
+}
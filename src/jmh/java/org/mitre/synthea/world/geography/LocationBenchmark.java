@@ -0,0 +1,51 @@
+package org.mitre.synthea.world.geography;
+
+import java.util.concurrent.TimeUnit;
+
+import org.mitre.synthea.helpers.DefaultRandomNumberGenerator;
+import org.mitre.synthea.helpers.RandomCollection;
+import org.mitre.synthea.helpers.RandomNumberGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares picking a random city weighted by population by a search of the cumulative
+ * populations (the default) and with an alias table (generate.alias_sampling).
+ * Run with: ./gradlew jmh -PjmhIncludes=LocationBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class LocationBenchmark {
+  /** The state to pick cities from. */
+  @Param({"Massachusetts", "California"})
+  public String state;
+
+  /** Whether to use alias sampling. */
+  @Param({"false", "true"})
+  public boolean alias;
+
+  private Location location;
+  private RandomNumberGenerator random;
+
+  /**
+   * Load the location with the sampling method being measured.
+   */
+  @Setup
+  public void setup() {
+    RandomCollection.aliasSampling = alias;
+    location = new Location(state, null);
+    random = new DefaultRandomNumberGenerator(12345L);
+  }
+
+  @Benchmark
+  public String randomCityName() {
+    return location.randomCityName(random);
+  }
+}
@@ -61,6 +61,7 @@ public class App {
     System.out.println("run_synthea -g M -a 60-65");
     System.out.println("run_synthea -p 10 --exporter.fhir.export=true");
     System.out.println("run_synthea --exporter.baseDirectory=\"./output_tx/\" Texas");
+    System.out.println("run_synthea -p 10000 --generate.nationwide=true");
   }
 
   /**
@@ -295,6 +296,7 @@ public class App {
     // file during options initialization need to be reset here.
     options.population = Config.getAsInteger("generate.default_population", 1);
     options.threadPoolSize = Config.getAsInteger("generate.thread_pool_size", -1);
+    options.nationwide = Config.getAsBoolean("generate.nationwide", false);
 
     exportOptions.yearsOfHistory = Config.getAsInteger("exporter.years_of_history", 10);
     exportOptions.terminologyService = !Config.get("generate.terminology_service_url", "")
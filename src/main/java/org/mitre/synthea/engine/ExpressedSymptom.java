@@ -1,10 +1,13 @@
 package org.mitre.synthea.engine;
 
 import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 import org.mitre.synthea.export.JSONSkip;
+import org.mitre.synthea.helpers.Config;
 
 /**
  * Represents an expressed symptom with associated sources and their details.
@@ -92,6 +95,8 @@ public class ExpressedSymptom implements Cloneable, Serializable {
     private Long lastUpdateTime;
     /** the time on which the expressed symptom was updated and the associated info. */
     private Map<Long, SymptomInfo> timeInfos;
+    /** the maximum number of entries kept in timeInfos, or 0 to keep them all. */
+    private int historyLimit;
 
     /**
      * Create a new instance for the supplied module source.
@@ -100,7 +105,8 @@ public class ExpressedSymptom implements Cloneable, Serializable {
      */
     public SymptomSource(String source) {
       this.source = source;
-      timeInfos = new ConcurrentHashMap<Long, ExpressedSymptom.SymptomInfo>();
+      timeInfos = new LinkedHashMap<Long, ExpressedSymptom.SymptomInfo>();
+      historyLimit = getHistoryLimit();
       resolved = false;
       lastUpdateTime = null;
     }
@@ -132,6 +138,7 @@ public class ExpressedSymptom implements Cloneable, Serializable {
      */
     public void resolve() {
       this.resolved = true;
+      symptom.sourceChanged();
     }
 
     /**
@@ -139,6 +146,7 @@ public class ExpressedSymptom implements Cloneable, Serializable {
      */
     public void activate() {
       this.resolved = false;
+      symptom.sourceChanged();
     }
 
     /**
@@ -172,6 +180,16 @@ public class ExpressedSymptom implements Cloneable, Serializable {
       timeInfos.put(Long.valueOf(time), info);
       lastUpdateTime = time;
       resolved = addressed;
+      if (historyLimit > 0 && timeInfos.size() > historyLimit) {
+        // drop the oldest entries, but never the current one
+        Iterator<Long> times = timeInfos.keySet().iterator();
+        while (timeInfos.size() > historyLimit && times.hasNext()) {
+          if (times.next() != time) {
+            times.remove();
+          }
+        }
+      }
+      symptom.sourceChanged();
     }
 
     /**
@@ -180,8 +198,11 @@ public class ExpressedSymptom implements Cloneable, Serializable {
      * @return the current value of the symptom
      */
     public Integer getCurrentValue() {
-      if (lastUpdateTime != null && timeInfos.containsKey(lastUpdateTime)) {
-        return timeInfos.get(lastUpdateTime).getValue();
+      if (lastUpdateTime != null) {
+        SymptomInfo info = timeInfos.get(lastUpdateTime);
+        if (info != null) {
+          return info.getValue();
+        }
       }
       return null;
     }
@@ -194,12 +215,25 @@ public class ExpressedSymptom implements Cloneable, Serializable {
     public Map<Long, SymptomInfo> getTimeInfos() {
       return timeInfos;
     }
+
+    /**
+     * Forget the values recorded before the given time, except for the current value.
+     *
+     * @param before the time of the oldest value to keep
+     */
+    void pruneHistory(long before) {
+      timeInfos.keySet().removeIf(t -> t < before && !t.equals(lastUpdateTime));
+    }
   }
 
   /** The sources of the expressed conditions. */
   private Map<String, SymptomSource> sources;
   /** The name of the symptom */
   private String name;
+  /** The value of the symptom, see {@link #getSymptom()}. Only valid if valueIsCurrent. */
+  private transient int value;
+  /** Whether value reflects the current state of the sources. */
+  private transient boolean valueIsCurrent;
 
   /**
    * Create a new ExpressedSymptom instance with the given name.
@@ -208,7 +242,34 @@ public class ExpressedSymptom implements Cloneable, Serializable {
    */
   public ExpressedSymptom(String name) {
     this.name = name;
-    sources = new ConcurrentHashMap<String, SymptomSource>();
+    sources = new HashMap<String, SymptomSource>();
+  }
+
+  /**
+   * The number of entries each source keeps in its history of symptom values. The history is
+   * only used by the symptom exporters, so when they are disabled it can optionally be capped
+   * with generate.symptoms.history_limit to save memory over long lives.
+   *
+   * @return the maximum number of entries to keep, or 0 to keep them all
+   */
+  static int getHistoryLimit() {
+    if (Config.getAsBoolean("exporter.symptoms.csv.export", false)
+        || Config.getAsBoolean("exporter.symptoms.text.export", false)) {
+      return 0;
+    }
+    return Math.max(0, Config.getAsInteger("generate.symptoms.history_limit", 0));
+  }
+
+  /**
+   * Forget the values every source recorded before the given time. The current values, and so
+   * the value of the symptom, are kept.
+   *
+   * @param before the time of the oldest value to keep
+   */
+  void pruneHistory(long before) {
+    for (SymptomSource source : sources.values()) {
+      source.pruneHistory(before);
+    }
   }
 
   /**
@@ -241,10 +302,13 @@ public class ExpressedSymptom implements Cloneable, Serializable {
    * @param addressed whether the symptom is addressed
    */
   public void onSet(String module, String cause, long time, int value, Boolean addressed) {
-    if (!sources.containsKey(module)) {
-      sources.put(module, new SymptomSource(module));
+    SymptomSource symptomSource = sources.get(module);
+    if (symptomSource == null) {
+      symptomSource = new SymptomSource(module);
+      sources.put(module, symptomSource);
     }
-    sources.get(module).addInfo(cause, time, value, addressed);
+    symptomSource.addInfo(cause, time, value, addressed);
+    updateValue();
   }
 
   /**
@@ -254,15 +318,32 @@ public class ExpressedSymptom implements Cloneable, Serializable {
    * @return the maximum value of the symptom
    */
   public int getSymptom() {
+    if (!valueIsCurrent) {
+      updateValue();
+    }
+    return value;
+  }
+
+  /**
+   * Mark the value of this symptom as out of date after one of its sources changed.
+   */
+  void sourceChanged() {
+    valueIsCurrent = false;
+  }
+
+  /**
+   * Recompute the value of this symptom from its sources.
+   */
+  private void updateValue() {
     int max = 0;
-    for (String module : sources.keySet()) {
-      Integer value = sources.get(module).getCurrentValue();
-      Boolean isResolved = sources.get(module).isResolved();
-      if (value != null && value.intValue() > max && !isResolved) {
-        max = value.intValue();
+    for (SymptomSource symptomSource : sources.values()) {
+      Integer current = symptomSource.getCurrentValue();
+      if (current != null && current.intValue() > max && !symptomSource.isResolved()) {
+        max = current.intValue();
       }
     }
-    return max;
+    value = max;
+    valueIsCurrent = true;
   }
 
   /**
@@ -309,6 +390,7 @@ public class ExpressedSymptom implements Cloneable, Serializable {
   public void addressSource(String source) {
     if (source != null && sources.containsKey(source)) {
       sources.get(source).resolve();
+      updateValue();
     }
   }
 
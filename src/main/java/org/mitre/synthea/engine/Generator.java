@@ -1,24 +1,21 @@
 package org.mitre.synthea.engine;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Collections;
+import java.util.Formatter;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Predicate;
@@ -30,8 +27,11 @@ import org.mitre.synthea.editors.GrowthDataErrorsEditor;
 import org.mitre.synthea.export.CDWExporter;
 import org.mitre.synthea.export.Exporter;
 import org.mitre.synthea.helpers.Config;
+import org.mitre.synthea.helpers.ConsoleWriter;
 import org.mitre.synthea.helpers.DefaultRandomNumberGenerator;
+import org.mitre.synthea.helpers.ModuleProfiler;
 import org.mitre.synthea.helpers.RandomNumberGenerator;
+import org.mitre.synthea.helpers.RunMetrics;
 import org.mitre.synthea.helpers.Utilities;
 import org.mitre.synthea.identity.Entity;
 import org.mitre.synthea.identity.EntityManager;
@@ -90,14 +90,25 @@ public class Generator {
 
   /**
    * The location where the population is generated.
+   * Null when generating a nationwide population.
    */
   public Location location;
 
+  /**
+   * The locations of every state, when generating a nationwide population.
+   */
+  private NationwideLocations nationwide;
+
   /**
    * The total number of individuals generated in the population.
    */
   public AtomicInteger totalGeneratedPopulation;
   private String logLevel;
+  private ConsoleWriter console;
+  /** Whether to process modules only when they are due, see ModuleScheduler. */
+  private boolean eventDrivenModules;
+  /** Prunes people's history as they are simulated in low memory mode, otherwise null. */
+  private HistoryPruner historyPruner;
   private boolean onlyAlivePatients;
   private boolean onlyDeadPatients;
   private boolean onlyVeterans;
@@ -122,6 +133,12 @@ public class Generator {
    */
   List<Person> internalStore;
 
+  /**
+   * Writes each person to the updated population snapshot as they are recorded.
+   * Only set while running with an updatedPopulationSnapshotPath.
+   */
+  private PopulationSnapshot.Writer snapshotWriter;
+
   /**
    * A filename predicate used to filter a subset of modules. Helpful when testing a particular
    * module. Use "-m filename" on the command line to filter which modules get loaded.
@@ -179,6 +196,9 @@ public class Generator {
     public String city;
     /** State name */
     public String state;
+    /** Whether to generate people across all states, in proportion to their population,
+     * instead of in a single state or city. */
+    public boolean nationwide = Config.getAsBoolean("generate.nationwide", false);
     /** When Synthea is used as a standalone library, this directory holds
      * any locally created modules. */
     public File localModuleDir;
@@ -252,7 +272,6 @@ public class Generator {
     exporterRuntimeOptions = ero;
     if (options.updatedPopulationSnapshotPath != null) {
       exporterRuntimeOptions.deferExports = true;
-      internalStore = Collections.synchronizedList(new LinkedList<>());
     }
     if (options.threadPoolSize == -1) {
       threadPoolSize = Runtime.getRuntime().availableProcessors();
@@ -269,7 +288,8 @@ public class Generator {
     if (options.state == null) {
       options.state = DEFAULT_STATE;
     }
-    int stateIndex = Location.getIndex(options.state);
+    // in a nationwide population, people from every state share one range of keys
+    int stateIndex = options.nationwide ? 0 : Location.getIndex(options.state);
     if (Config.getAsBoolean("exporter.cdw.export")) {
       CDWExporter.getInstance().setKeyStart((stateIndex * 1_000_000) + 1);
     }
@@ -282,9 +302,22 @@ public class Generator {
     this.stop = options.endTime;
     this.referenceTime = options.referenceTime;
 
-    this.location = new Location(options.state, options.city);
+    if (options.nationwide) {
+      this.nationwide = new NationwideLocations(options.clinicianSeed);
+    } else {
+      this.location = new Location(options.state, options.city);
+    }
 
     this.logLevel = Config.get("generate.log_patients.detail", "simple");
+    if (!this.logLevel.equals("none")) {
+      this.console = new ConsoleWriter(
+          Config.getAsInteger("generate.log_patients.max_per_second", 0));
+    }
+    this.eventDrivenModules = "event".equalsIgnoreCase(
+        Config.get("generate.module_scheduler", "timestep"));
+    if (Config.getAsBoolean("generate.low_memory", false)) {
+      this.historyPruner = new HistoryPruner(exporterRuntimeOptions.yearsOfHistory);
+    }
 
     this.onlyDeadPatients = Config.getAsBoolean("generate.only_dead_patients");
     this.onlyAlivePatients = Config.getAsBoolean("generate.only_alive_patients");
@@ -316,14 +349,20 @@ public class Generator {
     stats.put("alive", new AtomicInteger(0));
     stats.put("dead", new AtomicInteger(0));
 
-    // initialize hospitals
-    Provider.loadProviders(location, this.clinicianRandom);
-    // Initialize Payers
-    PayerManager.loadPayers(location);
+    // a nationwide population loads the hospitals and payers of each state on first use
+    if (nationwide == null) {
+      // initialize hospitals
+      Provider.loadProviders(location, this.clinicianRandom);
+      // Initialize Payers
+      PayerManager.loadPayers(location);
+    }
     // ensure modules load early
     if (options.localModuleDir != null) {
       Module.addModules(options.localModuleDir);
     }
+    if (Config.getAsBoolean("generate.parallel_module_loading", true)) {
+      preloadModules();
+    }
     List<String> coreModuleNames = getModuleNames(Module.getModules(path -> false));
     List<String> moduleNames = getModuleNames(Module.getModules(modulePredicate));
 
@@ -339,7 +378,9 @@ public class Generator {
     Costs.loadCostData(); // ensure cost data loads early
 
     String locationName;
-    if (options.city == null) {
+    if (options.nationwide) {
+      locationName = "United States (all states)";
+    } else if (options.city == null) {
       locationName = options.state;
     } else {
       locationName = options.city + ", " + options.state;
@@ -366,6 +407,27 @@ public class Generator {
     }
   }
 
+  /**
+   * Load all of the enabled modules in parallel. When modules are being profiled, report how
+   * long that took along with the modules that took the longest to load.
+   */
+  private void preloadModules() {
+    long start = System.currentTimeMillis();
+    Map<String, Long> loadTimes = Module.preloadModules(modulePredicate, threadPoolSize);
+    if (!ModuleProfiler.enabled) {
+      return;
+    }
+    System.out.format("Loaded %d modules in %d ms using %d threads.\n", loadTimes.size(),
+        System.currentTimeMillis() - start, threadPoolSize);
+    int reported = 0;
+    for (Map.Entry<String, Long> loadTime : loadTimes.entrySet()) {
+      if (reported++ == 10) {
+        break;
+      }
+      System.out.format("  %6d ms  %s\n", loadTime.getValue(), loadTime.getKey());
+    }
+  }
+
   /**
    * Extracts a list of names from the supplied list of modules.
    *
@@ -403,35 +465,46 @@ public class Generator {
     }
 
     ExecutorService threadPool = Executors.newFixedThreadPool(threadPoolSize);
+    RunMetrics.start(this, threadPool, console);
+    ModuleProfiler.reset();
+    PhysiologyBatchSolver.setGeneratorThreads(threadPoolSize);
+    if (historyPruner != null) {
+      HistoryPruner.resetPeakHeapUsed();
+    }
 
-    if (options.initialPopulationSnapshotPath != null) {
-      FileInputStream fis = null;
-      List<Person> initialPopulation = null;
+    if (options.updatedPopulationSnapshotPath != null) {
       try {
-        fis = new FileInputStream(options.initialPopulationSnapshotPath);
-        ObjectInputStream ois = new ObjectInputStream(fis);
-        Object snapshotObject = ois.readObject();
-        if (snapshotObject instanceof List<?>) {
-          initialPopulation = ((List<?>) snapshotObject).stream()
-              .filter(item -> item instanceof Person)
-              .map(item -> (Person) item)
-              .collect(Collectors.toList());
-        }
-        ois.close();
-      } catch (Exception ex) {
-        System.out.printf("Unable to load population snapshot, error: %s", ex.getMessage());
+        snapshotWriter = new PopulationSnapshot.Writer(options.updatedPopulationSnapshotPath,
+            Config.getAsBoolean("generate.snapshot.compress", true));
+      } catch (IOException ex) {
+        System.out.printf("Unable to save population snapshot, error: %s\n", ex.getMessage());
       }
-      if (initialPopulation != null && initialPopulation.size() > 0) {
-        // default is to run until current system time.
-        if (options.daysToTravelForward > 0) {
-          stop = initialPopulation.get(0).lastUpdated
-              + Utilities.convertTime("days", options.daysToTravelForward);
-        }
-        for (int i = 0; i < initialPopulation.size(); i++) {
-          final int index = i;
-          final Person p = initialPopulation.get(i);
-          threadPool.submit(() -> updateRecordExportPerson(p, index));
+    }
+
+    if (options.initialPopulationSnapshotPath != null) {
+      try (PopulationSnapshot.Reader snapshot =
+          new PopulationSnapshot.Reader(options.initialPopulationSnapshotPath)) {
+        // read people lazily, only keeping a few per thread in memory at a time
+        Semaphore inFlight = new Semaphore(threadPoolSize * 2);
+        int index = 0;
+        while (snapshot.hasNext()) {
+          final Person p = snapshot.next();
+          if (index == 0 && options.daysToTravelForward > 0) {
+            // default is to run until current system time.
+            stop = p.lastUpdated + Utilities.convertTime("days", options.daysToTravelForward);
+          }
+          final int personIndex = index++;
+          inFlight.acquire();
+          threadPool.submit(() -> {
+            try {
+              updateRecordExportPerson(p, personIndex);
+            } finally {
+              inFlight.release();
+            }
+          });
         }
+      } catch (Exception ex) {
+        System.out.printf("Unable to load population snapshot, error: %s\n", ex.getMessage());
       }
     } else if (this.options.singlePersonSeed == null) {
       // Generate patients up to the specified population size.
@@ -448,32 +521,40 @@ public class Generator {
     try {
       threadPool.shutdown();
       while (!threadPool.awaitTermination(30, TimeUnit.SECONDS)) {
-        System.out.println("Waiting for threads to finish... " + threadPool);
+        System.out.println(RunMetrics.progress());
       }
     } catch (InterruptedException e) {
       System.out.println("Generator interrupted. Attempting to shut down associated thread pool.");
       threadPool.shutdownNow();
     }
+    PhysiologyBatchSolver.shutdown();
 
-    // Save a snapshot of the generated population using Java Serialization
-    if (options.updatedPopulationSnapshotPath != null) {
-      FileOutputStream fos = null;
+    // Complete the snapshot of the generated population
+    if (snapshotWriter != null) {
       try {
-        fos = new FileOutputStream(options.updatedPopulationSnapshotPath);
-        ObjectOutputStream oos = new ObjectOutputStream(fos);
-        oos.writeObject(internalStore);
-        oos.close();
-        fos.close();
-      } catch (Exception ex) {
-        System.out.printf("Unable to save population snapshot, error: %s", ex.getMessage());
+        snapshotWriter.close();
+      } catch (IOException ex) {
+        System.out.printf("Unable to save population snapshot, error: %s\n", ex.getMessage());
       }
     }
+    if (console != null) {
+      console.flush();
+    }
     Exporter.runPostCompletionExports(this, exporterRuntimeOptions);
+    RunMetrics.stop();
 
     System.out.printf("Records: total=%d, alive=%d, dead=%d\n", totalGeneratedPopulation.get(),
             stats.get("alive").get(), stats.get("dead").get());
     System.out.printf("RNG=%d\n", this.populationRandom.getCount());
     System.out.printf("Clinician RNG=%d\n", this.clinicianRandom.getCount());
+    if (PhysiologyResultCache.getHits() + PhysiologyResultCache.getMisses() > 0) {
+      System.out.println(PhysiologyResultCache.summary());
+    }
+    if (historyPruner != null) {
+      long peak = HistoryPruner.getPeakHeapUsed();
+      System.out.printf("Peak heap=%d MB, %d KB per person simulated at once (%d threads)\n",
+          peak >> 20, (peak / threadPoolSize) >> 10, threadPoolSize);
+    }
 
     System.out.printf(
             "\n%sYou've just generated %d patients!%s We're happy to know Synthea is helping you with your project.\n",
@@ -727,7 +808,11 @@ public class Generator {
     Person person = new Person(personSeed);
     person.populationSeed = this.options.seed;
     person.attributes.putAll(demoAttributes);
-    person.attributes.put(Person.LOCATION, this.location);
+    Location location = this.location;
+    if (nationwide != null) {
+      location = nationwide.getLocation((String) demoAttributes.get(Person.STATE));
+    }
+    person.attributes.put(Person.LOCATION, location);
     person.lastUpdated = (long) demoAttributes.get(Person.BIRTHDATE);
     location.setSocialDeterminants(person);
 
@@ -752,7 +837,10 @@ public class Generator {
     HealthInsuranceModule healthInsuranceModule = new HealthInsuranceModule();
     EncounterModule encounterModule = new EncounterModule();
 
+    ModuleScheduler scheduler = eventDrivenModules ? new ModuleScheduler(person) : null;
+
     long time = person.lastUpdated;
+    long nextPrune = historyPruner != null ? time + historyPruner.interval : Long.MAX_VALUE;
     while (person.alive(time) && time < stop) {
 
       // If fixed demographics are in use then check to update the person's current fixed record.
@@ -773,21 +861,29 @@ public class Generator {
       }
 
       // Process Health Insurance.
-      healthInsuranceModule.process(person, time);
+      ModuleProfiler.process(healthInsuranceModule, person, time);
       // Process encounters.
-      encounterModule.process(person, time);
+      ModuleProfiler.process(encounterModule, person, time);
 
-      Iterator<Module> iter = person.currentModules.iterator();
-      while (iter.hasNext()) {
-        Module module = iter.next();
+      if (scheduler != null) {
+        scheduler.process(time);
+      } else {
+        Iterator<Module> iter = person.currentModules.iterator();
+        while (iter.hasNext()) {
+          Module module = iter.next();
 
-        if (module.process(person, time)) {
-          iter.remove(); // this module has completed/terminated.
+          if (ModuleProfiler.process(module, person, time)) {
+            iter.remove(); // this module has completed/terminated.
+          }
         }
       }
       encounterModule.endEncounterModuleEncounters(person, time);
       person.lastUpdated = time;
       HealthRecordEditors.getInstance().executeAll(person, person.record, time, timestep);
+      if (time >= nextPrune) {
+        historyPruner.prune(person, time);
+        nextPrune = time + historyPruner.interval;
+      }
       time += timestep;
     }
 
@@ -835,6 +931,10 @@ public class Generator {
    * @return a map of random demographics
    */
   public Map<String, Object> randomDemographics(RandomNumberGenerator random) {
+    Location location = this.location;
+    if (nationwide != null) {
+      location = nationwide.getLocation(nationwide.randomState(random));
+    }
     Demographics city = location.randomCity(random);
     Map<String, Object> demoAttributes = this.pickDemographics(random, city);
     return demoAttributes;
@@ -848,11 +948,12 @@ public class Generator {
    * @param time The time at which they died/the simulation ended.
    * @param isAlive Whether the person to print is alive.
    */
-  private synchronized void writeToConsole(Person person, int index, long time, boolean isAlive) {
-    // this is synchronized to ensure all lines for a single person are always printed
-    // consecutively
+  private void writeToConsole(Person person, int index, long time, boolean isAlive) {
+    // the lines for a person are printed together, on the console thread
+    StringBuilder text = new StringBuilder();
+    Formatter out = new Formatter(text);
     String deceased = isAlive ? "" : "DECEASED";
-    System.out.format("%d -- %s (%d y/o %s) %s, %s %s (%d)\n", index + 1,
+    out.format("%d -- %s (%d y/o %s) %s, %s %s (%d)\n", index + 1,
         person.attributes.get(Person.NAME), person.ageInYears(time),
         person.attributes.get(Person.GENDER),
         person.attributes.get(Person.CITY), person.attributes.get(Person.STATE),
@@ -860,19 +961,20 @@ public class Generator {
         person.getCount());
 
     if (this.logLevel.equals("detailed")) {
-      System.out.println("ATTRIBUTES");
+      out.format("ATTRIBUTES%n");
       for (String attribute : person.attributes.keySet()) {
-        System.out.format("  * %s = %s\n", attribute, person.attributes.get(attribute));
+        out.format("  * %s = %s\n", attribute, person.attributes.get(attribute));
       }
-      System.out.format("SYMPTOMS: %d\n", person.symptomTotal());
-      System.out.println(person.record.textSummary());
-      System.out.println("VITAL SIGNS");
+      out.format("SYMPTOMS: %d\n", person.symptomTotal());
+      out.format("%s%n", person.record.textSummary());
+      out.format("VITAL SIGNS%n");
       for (VitalSign vitalSign : person.vitalSigns.keySet()) {
-        System.out.format("  * %25s = %6.2f\n", vitalSign,
+        out.format("  * %25s = %6.2f\n", vitalSign,
             person.getVitalSign(vitalSign, time).doubleValue());
       }
-      System.out.println("-----");
+      out.format("-----%n");
     }
+    console.print(text.toString());
   }
 
   /**
@@ -1013,7 +1115,20 @@ public class Generator {
       internalStore.add(person);
     }
 
-    if (!this.logLevel.equals("none")) {
+    if (historyPruner != null) {
+      HistoryPruner.recordHeapUsage();
+    }
+
+    if (snapshotWriter != null) {
+      try {
+        snapshotWriter.write(person);
+      } catch (IOException ex) {
+        System.out.printf("Unable to save person to population snapshot, error: %s\n",
+            ex.getMessage());
+      }
+    }
+
+    if (console != null) {
       writeToConsole(person, index, finishTime, isAlive);
     }
 
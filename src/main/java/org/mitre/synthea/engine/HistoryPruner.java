@@ -0,0 +1,192 @@
+package org.mitre.synthea.engine;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+import org.mitre.synthea.helpers.Config;
+import org.mitre.synthea.helpers.Utilities;
+import org.mitre.synthea.modules.DeathModule;
+import org.mitre.synthea.world.agents.Person;
+import org.mitre.synthea.world.concepts.Claim;
+import org.mitre.synthea.world.concepts.HealthRecord;
+import org.mitre.synthea.world.concepts.HealthRecord.Encounter;
+
+/**
+ * Low memory mode (generate.low_memory): periodically discards the parts of a person's history
+ * that can no longer affect the simulation or the exported record, while the person is still
+ * being simulated, instead of keeping everything until Exporter.filterForExport runs.
+ *
+ * <p>Each time it runs, the pruner
+ * <ul>
+ * <li>keeps only the latest visit to each state in every module history, which is all that
+ * PriorState conditions need, along with onsets that have not been diagnosed yet;</li>
+ * <li>removes observations, reports and ended care plans that are older than
+ * exporter.years_of_history, which Exporter.filterForExport would remove anyway;</li>
+ * <li>removes symptom values older than exporter.years_of_history, unless a symptom exporter
+ * is enabled.</li>
+ * </ul>
+ * Conditions, procedures, medications, immunizations and encounters are kept, because modules
+ * such as QualityOfLifeModule look at the whole life.</p>
+ *
+ * <p>It also tracks the peak heap usage seen while people are being simulated.</p>
+ */
+public class HistoryPruner {
+  private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+  private static final AtomicLong PEAK_HEAP_USED = new AtomicLong();
+
+  /** Time between two prunings of the same person. */
+  final long interval;
+  /** Length of the history that is exported, or 0 if the whole history is exported. */
+  private final long window;
+  /** Whether symptom values are needed by a symptom exporter. */
+  private final boolean keepSymptoms;
+
+  /**
+   * Create a pruner.
+   *
+   * @param yearsOfHistory the number of years of history that is exported, see
+   *     exporter.years_of_history. 0 means the whole history, in which case only the module
+   *     histories are pruned.
+   */
+  public HistoryPruner(int yearsOfHistory) {
+    interval = Utilities.convertTime("days",
+        Math.max(1, Config.getAsInteger("generate.low_memory.prune_interval_days", 365)));
+    window = yearsOfHistory > 0 ? Utilities.convertTime("years", yearsOfHistory) : 0L;
+    keepSymptoms = Config.getAsBoolean("exporter.symptoms.csv.export", false)
+        || Config.getAsBoolean("exporter.symptoms.text.export", false);
+  }
+
+  /**
+   * Prune the history of a person that has been simulated up to the given time.
+   *
+   * @param person the person
+   * @param time the time the person has been simulated to. The person must not be exported
+   *     with an earlier stop time.
+   */
+  public void prune(Person person, long time) {
+    for (Object value : person.attributes.values()) {
+      if (value instanceof List && !((List<?>) value).isEmpty()
+          && ((List<?>) value).get(0) instanceof State) {
+        @SuppressWarnings("unchecked")
+        List<State> history = (List<State>) value;
+        pruneModuleHistory(history);
+      }
+    }
+
+    if (window > 0) {
+      // anything that started and ended before this will not be exported
+      long cutoff = time - window;
+      if (person.hasMultipleRecords) {
+        for (HealthRecord record : person.records.values()) {
+          pruneRecord(record, cutoff);
+        }
+      } else {
+        pruneRecord(person.defaultRecord, cutoff);
+      }
+      if (person.lossOfCareRecord != null) {
+        pruneRecord(person.lossOfCareRecord, cutoff);
+      }
+      if (!keepSymptoms) {
+        for (ExpressedSymptom symptom : person.getExpressedSymptoms().values()) {
+          symptom.pruneHistory(cutoff);
+        }
+      }
+    }
+
+    recordHeapUsage();
+  }
+
+  /**
+   * Remove the earlier visits to each state from a module history.
+   *
+   * @param history the module history, most recent state first
+   */
+  static void pruneModuleHistory(List<State> history) {
+    Set<String> seen = new HashSet<String>();
+    Iterator<State> iter = history.iterator();
+    while (iter.hasNext()) {
+      State state = iter.next();
+      if (!seen.add(state.name) && !state.isPinnedInHistory()) {
+        iter.remove();
+      }
+    }
+  }
+
+  /**
+   * Remove the observations, reports and care plans that ended before the cutoff from a record.
+   *
+   * @param record the record
+   * @param cutoff the time before which entries are no longer needed
+   */
+  static void pruneRecord(HealthRecord record, long cutoff) {
+    if (record == null) {
+      return;
+    }
+    for (Encounter encounter : record.encounters) {
+      if (encounter.start > cutoff) {
+        // encounters are in chronological order
+        break;
+      }
+      List<Claim.ClaimEntry> claimItems = encounter.claim.items;
+      pruneEntries(encounter.observations, claimItems, cutoff, true,
+          o -> DeathModule.CAUSE_OF_DEATH_CODE.code.equals(o.type));
+      pruneEntries(encounter.reports, claimItems, cutoff, true,
+          r -> DeathModule.DEATH_CERTIFICATE.code.equals(r.type));
+      pruneEntries(encounter.careplans, claimItems, cutoff, false, null);
+    }
+  }
+
+  /**
+   * Remove the entries that started and ended before the cutoff.
+   *
+   * @param entries the entries
+   * @param claimItems the claim items, from which the removed entries are also removed
+   * @param cutoff the time before which entries are no longer needed
+   * @param instant whether entries without a stop time ended as soon as they started, as
+   *     opposed to still being active
+   * @param keep entries for which this returns true are kept anyway, may be null
+   */
+  private static <E extends HealthRecord.Entry> void pruneEntries(List<E> entries,
+      List<Claim.ClaimEntry> claimItems, long cutoff, boolean instant,
+      Predicate<? super E> keep) {
+    Iterator<E> iter = entries.iterator();
+    while (iter.hasNext()) {
+      E entry = iter.next();
+      boolean ended = entry.stop == 0L ? instant : entry.stop <= cutoff;
+      if (entry.start <= cutoff && ended && (keep == null || !keep.test(entry))) {
+        iter.remove();
+        claimItems.removeIf(ci -> ci.entry == entry);
+      }
+    }
+  }
+
+  /**
+   * Note the current heap usage, if it is the highest so far.
+   */
+  public static void recordHeapUsage() {
+    long used = MEMORY.getHeapMemoryUsage().getUsed();
+    PEAK_HEAP_USED.accumulateAndGet(used, Math::max);
+  }
+
+  /**
+   * The highest heap usage noted by {@link #recordHeapUsage()}.
+   *
+   * @return the peak heap usage in bytes
+   */
+  public static long getPeakHeapUsed() {
+    return PEAK_HEAP_USED.get();
+  }
+
+  /**
+   * Forget the peak heap usage, for example at the start of a run.
+   */
+  public static void resetPeakHeapUsed() {
+    PEAK_HEAP_USED.set(0L);
+  }
+}
@@ -1,6 +1,9 @@
 package org.mitre.synthea.engine;
 
 import java.io.Serializable;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.List;
@@ -9,6 +12,7 @@ import java.util.TimeZone;
 import org.mitre.synthea.engine.Components.DateInput;
 import org.mitre.synthea.engine.Components.ExactWithUnit;
 import org.mitre.synthea.helpers.Config;
+import org.mitre.synthea.helpers.SimulationCalendar;
 import org.mitre.synthea.helpers.Utilities;
 import org.mitre.synthea.world.agents.Person;
 import org.mitre.synthea.world.concepts.HealthRecord;
@@ -22,6 +26,8 @@ import org.mitre.synthea.world.concepts.HealthRecord.Entry;
  * across the population.
  */
 public abstract class Logic implements Serializable {
+  private static final long ONE_DAY = 24L * 60L * 60L * 1000L;
+
   /** Remarks or comments associated with the logic. */
   public List<String> remarks;
 
@@ -34,6 +40,36 @@ public abstract class Logic implements Serializable {
    */
   public abstract boolean test(Person person, long time);
 
+  /**
+   * Add the inputs this logic depends on to the given set of inputs. See LogicInputs.
+   * By default logic is assumed to depend on inputs that cannot be tracked.
+   *
+   * @param inputs The inputs to add to.
+   */
+  void collectInputs(LogicInputs inputs) {
+    inputs.addVolatile();
+  }
+
+  /**
+   * For logic registered with LogicInputs.addTimeBound, find the earliest time after the
+   * given time at which the result of this logic could change, assuming none of its other
+   * inputs change. The result may be earlier than the actual change, but never later.
+   *
+   * @param person Person the logic was tested against
+   * @param time Timestamp the logic was tested at
+   * @return the earliest time the result could change, or Long.MAX_VALUE if never
+   */
+  long nextChange(Person person, long time) {
+    return time;
+  }
+
+  /**
+   * Find the start of the UTC day of the given date.
+   */
+  private static long startOfDay(LocalDate date) {
+    return date.toEpochDay() * ONE_DAY;
+  }
+
   /**
    * Find the most recent entry, of a specific type of HealthRecord.Entry
    * within the patient history. May return null.
@@ -80,6 +116,11 @@ public abstract class Logic implements Serializable {
     public boolean test(Person person, long time) {
       return gender.equals(person.attributes.get(Person.GENDER));
     }
+
+    @Override
+    void collectInputs(LogicInputs inputs) {
+      inputs.addAttribute(Person.GENDER);
+    }
   }
 
   /**
@@ -119,6 +160,37 @@ public abstract class Logic implements Serializable {
 
       return Utilities.compare(age, quantity, operator);
     }
+
+    @Override
+    void collectInputs(LogicInputs inputs) {
+      inputs.addAttribute(Person.BIRTHDATE);
+      inputs.addTimeBound(this);
+    }
+
+    @Override
+    long nextChange(Person person, long time) {
+      Object birthdate = person.attributes.get(Person.BIRTHDATE);
+      if (birthdate == null || !(unit.equals("years") || unit.equals("months"))) {
+        return time;
+      }
+      boolean years = unit.equals("years");
+      int age = years ? person.ageInYears(time) : person.ageInMonths(time);
+      // age only increases, one whole unit at a time, so the result can only change
+      // when the age reaches the quantity, and again on the following unit if testing ==
+      long target;
+      if (age < quantity) {
+        target = (long) Math.ceil(quantity);
+      } else if (age == quantity) {
+        target = age + 1L;
+      } else {
+        return Long.MAX_VALUE;
+      }
+      LocalDate birth = Instant.ofEpochMilli((long) birthdate).atZone(ZoneOffset.UTC)
+          .toLocalDate();
+      // plusYears and plusMonths clamp to the end of shorter months, so this is never
+      // later than the date on which Period.between reaches the target
+      return startOfDay(years ? birth.plusYears(target) : birth.plusMonths(target));
+    }
   }
 
   /**
@@ -146,16 +218,43 @@ public abstract class Logic implements Serializable {
         int currentmonth = Utilities.getMonth(time);
         return Utilities.compare(currentmonth, month, operator);
       } else if (date != null) {
-        Calendar testDate = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
-        testDate.set(date.year, date.month - 1, date.day, date.hour, date.minute, date.second);
-        testDate.set(Calendar.MILLISECOND,date.millisecond);
-        long testTime = testDate.getTimeInMillis();
-        return Utilities.compare(time, testTime, operator);
+        return Utilities.compare(time, testTime(), operator);
       } else {
         throw new UnsupportedOperationException("Date type "
             + "not currently supported in Date logic.");
       }
     }
+
+    private long testTime() {
+      Calendar testDate = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+      testDate.set(date.year, date.month - 1, date.day, date.hour, date.minute, date.second);
+      testDate.set(Calendar.MILLISECOND,date.millisecond);
+      return testDate.getTimeInMillis();
+    }
+
+    @Override
+    void collectInputs(LogicInputs inputs) {
+      inputs.addTimeBound(this);
+    }
+
+    @Override
+    long nextChange(Person person, long time) {
+      if (year != null) {
+        return SimulationCalendar.getYearStart(Utilities.getYear(time) + 1);
+      } else if (month != null) {
+        LocalDate today = Instant.ofEpochMilli(time).atZone(ZoneOffset.UTC).toLocalDate();
+        return startOfDay(today.withDayOfMonth(1).plusMonths(1));
+      } else if (date != null) {
+        long testTime = testTime();
+        if (time < testTime) {
+          return testTime;
+        } else if (time == testTime) {
+          return testTime + 1;
+        }
+        return Long.MAX_VALUE;
+      }
+      return time;
+    }
   }
 
   /**
@@ -171,6 +270,11 @@ public abstract class Logic implements Serializable {
     public boolean test(Person person, long time) {
       return category.equals(person.attributes.get(Person.SOCIOECONOMIC_CATEGORY));
     }
+
+    @Override
+    void collectInputs(LogicInputs inputs) {
+      inputs.addAttribute(Person.SOCIOECONOMIC_CATEGORY);
+    }
   }
 
   /**
@@ -191,6 +295,11 @@ public abstract class Logic implements Serializable {
     public boolean test(Person person, long time) {
       return race.equalsIgnoreCase((String) person.attributes.get(Person.RACE));
     }
+
+    @Override
+    void collectInputs(LogicInputs inputs) {
+      inputs.addAttribute(Person.RACE);
+    }
   }
 
   /**
@@ -326,6 +435,11 @@ public abstract class Logic implements Serializable {
         throw new RuntimeException(message, e);
       }
     }
+
+    @Override
+    void collectInputs(LogicInputs inputs) {
+      inputs.addAttribute(attribute);
+    }
   }
 
   /**
@@ -337,6 +451,13 @@ public abstract class Logic implements Serializable {
      * A collection of conditions associated with the logic.
      */
     protected Collection<Logic> conditions;
+
+    @Override
+    void collectInputs(LogicInputs inputs) {
+      for (Logic condition : conditions) {
+        condition.collectInputs(inputs);
+      }
+    }
   }
 
   /**
@@ -376,6 +497,11 @@ public abstract class Logic implements Serializable {
     public boolean test(Person person, long time) {
       return !condition.test(person, time);
     }
+
+    @Override
+    void collectInputs(LogicInputs inputs) {
+      condition.collectInputs(inputs);
+    }
   }
 
   /**
@@ -423,6 +549,11 @@ public abstract class Logic implements Serializable {
     public boolean test(Person person, long time) {
       return true;
     }
+
+    @Override
+    void collectInputs(LogicInputs inputs) {
+      // constant
+    }
   }
 
   /**
@@ -435,6 +566,11 @@ public abstract class Logic implements Serializable {
     public boolean test(Person person, long time) {
       return false;
     }
+
+    @Override
+    void collectInputs(LogicInputs inputs) {
+      // constant
+    }
   }
 
   /**
@@ -467,6 +603,17 @@ public abstract class Logic implements Serializable {
 
       return person.hadPriorState(name, since, sinceTime);
     }
+
+    @Override
+    void collectInputs(LogicInputs inputs) {
+      // the module history does not change while the module is waiting on this logic,
+      // but a time window moves with the current time
+      if (within != null) {
+        inputs.addVolatile();
+      } else {
+        inputs.addHistory();
+      }
+    }
   }
 
   /**
@@ -521,6 +668,14 @@ public abstract class Logic implements Serializable {
       throw new RuntimeException(String.format("%s logic must be specified by code or attribute",
           this.getClass().getSimpleName()));
     }
+
+    @Override
+    void collectInputs(LogicInputs inputs) {
+      inputs.addRecord();
+      if (referencedByAttribute != null) {
+        inputs.addAttribute(referencedByAttribute);
+      }
+    }
   }
 
   /**
@@ -0,0 +1,235 @@
+package org.mitre.synthea.engine;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.mitre.synthea.world.agents.Person;
+import org.mitre.synthea.world.concepts.HealthRecord;
+
+/**
+ * The inputs a Logic tree depends on, found by static analysis of the tree.
+ * Most conditions only look at a handful of attributes, the entries currently present
+ * in the health record, or the current age or date. Given the inputs, a {@link Snapshot}
+ * of their values can be taken when the logic is tested, and as long as the snapshot is
+ * still current the logic would return the same result, so it does not need to be tested
+ * again. This lets the Guard state skip re-testing its condition on every timestep, and
+ * conditional and complex transitions reuse the result of a condition that was tested for
+ * the same person before, e.g. when a module loops through a Delay, see
+ * {@link #test(Person, long)}.
+ *
+ * <p>Inputs that cannot be tracked (symptoms, vital signs, observations, time windows
+ * over the state history, and any unknown Logic) mark the inputs as volatile, and
+ * volatile logic is always re-tested.</p>
+ */
+public class LogicInputs {
+  /** The logic these are the inputs of. */
+  private final Logic logic;
+  /** Attribute keys read by the logic. */
+  private final Set<String> attributes = new LinkedHashSet<>();
+  /** Logic whose result changes at computable points in time, such as Age and Date. */
+  private final List<Logic> timeBound = new ArrayList<>();
+  /** Whether the logic reads the entries present in the health record. */
+  private boolean record;
+  /** Whether the logic reads the history of the current module. */
+  private boolean history;
+  /** Whether the logic reads anything that cannot be tracked. */
+  private boolean volatileInputs;
+
+  private LogicInputs(Logic logic) {
+    this.logic = logic;
+  }
+
+  /**
+   * Find the inputs of the given logic.
+   * @param logic The logic to analyze.
+   * @return The inputs of the logic.
+   */
+  public static LogicInputs of(Logic logic) {
+    LogicInputs inputs = new LogicInputs(logic);
+    logic.collectInputs(inputs);
+    return inputs;
+  }
+
+  void addAttribute(String attribute) {
+    attributes.add(attribute);
+  }
+
+  void addRecord() {
+    record = true;
+  }
+
+  void addTimeBound(Logic logic) {
+    timeBound.add(logic);
+  }
+
+  void addHistory() {
+    history = true;
+  }
+
+  void addVolatile() {
+    volatileInputs = true;
+  }
+
+  /**
+   * The attribute keys the logic reads.
+   * @return The attribute keys.
+   */
+  public Set<String> getAttributes() {
+    return attributes;
+  }
+
+  /**
+   * Whether the logic reads the entries currently present in the health record.
+   * @return true if the logic depends on the health record.
+   */
+  public boolean dependsOnRecord() {
+    return record;
+  }
+
+  /**
+   * Whether the logic reads the history of the current module. The history does not change
+   * while a Guard is waiting, so a Guard can still track these inputs, but it does change
+   * between two visits to the same state.
+   * @return true if the logic depends on the module history.
+   */
+  public boolean dependsOnHistory() {
+    return history;
+  }
+
+  /**
+   * Whether the logic reads any input that cannot be tracked.
+   * @return true if the logic must always be re-tested.
+   */
+  public boolean isVolatile() {
+    return volatileInputs;
+  }
+
+  /**
+   * Take a snapshot of the current values of these inputs.
+   * @param person The person the logic was tested against.
+   * @param time The time the logic was tested at.
+   * @return The snapshot, or null if these inputs cannot be tracked for this person.
+   */
+  public Snapshot snapshot(Person person, long time) {
+    return snapshot(person, time, false);
+  }
+
+  /**
+   * Test the logic, reusing the result of the last test of this logic for the same person
+   * if none of these inputs have changed since. The inputs must not depend on the module
+   * history.
+   * @param person The person to test the logic against.
+   * @param time The time to test the logic at.
+   * @return The result of the logic.
+   */
+  public boolean test(Person person, long time) {
+    Map<Logic, Snapshot> results = person.getConditionResults();
+    Snapshot last = results.get(logic);
+    if (last != null && last.isCurrent(person, time)) {
+      return last.result;
+    }
+    boolean result = logic.test(person, time);
+    Snapshot snapshot = snapshot(person, time, result);
+    if (snapshot == null) {
+      results.remove(logic);
+    } else {
+      results.put(logic, snapshot);
+    }
+    return result;
+  }
+
+  private Snapshot snapshot(Person person, long time, boolean result) {
+    if (volatileInputs || person.hasMultipleRecords || person.lossOfCareEnabled) {
+      // with multiple records, Logic tests look across records and may copy entries
+      return null;
+    }
+    long recordModifications = -1;
+    if (record) {
+      recordModifications = person.record.getPresentModificationCount();
+      if (recordModifications < 0) {
+        return null;
+      }
+    }
+    long nextChange = Long.MAX_VALUE;
+    for (Logic logic : timeBound) {
+      nextChange = Math.min(nextChange, logic.nextChange(person, time));
+    }
+    if (nextChange <= time) {
+      return null;
+    }
+    Object[] values = new Object[attributes.size()];
+    int i = 0;
+    for (String attribute : attributes) {
+      values[i++] = person.attributes.get(attribute);
+    }
+    return new Snapshot(this, person.record, recordModifications, nextChange, values, result);
+  }
+
+  /**
+   * The values of a set of logic inputs at one point in time.
+   */
+  public static class Snapshot {
+    private final LogicInputs inputs;
+    private final HealthRecord record;
+    private final long recordModifications;
+    private final long nextChange;
+    private final Object[] values;
+    /** The result of the logic when the snapshot was taken. */
+    private final boolean result;
+
+    private Snapshot(LogicInputs inputs, HealthRecord record, long recordModifications,
+        long nextChange, Object[] values, boolean result) {
+      this.inputs = inputs;
+      this.record = record;
+      this.recordModifications = recordModifications;
+      this.nextChange = nextChange;
+      this.values = values;
+      this.result = result;
+    }
+
+    /**
+     * Whether none of the inputs have changed since this snapshot was taken.
+     * @param person The person.
+     * @param time The current time.
+     * @return true if testing the logic again would give the same result.
+     */
+    public boolean isCurrent(Person person, long time) {
+      if (time >= nextChange || person.hasMultipleRecords || person.lossOfCareEnabled) {
+        return false;
+      }
+      if (inputs.record && (person.record != record
+          || record.getPresentModificationCount() != recordModifications)) {
+        return false;
+      }
+      int i = 0;
+      for (String attribute : inputs.attributes) {
+        if (!unchanged(values[i++], person.attributes.get(attribute))) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Values are compared by identity, except immutable values, which are compared by
+     * equality since attributes such as booleans and numbers are often re-boxed.
+     * A mutable value modified in place is not detected, but Logic only compares
+     * immutable values or tests whether an attribute is set.
+     */
+    private static boolean unchanged(Object before, Object after) {
+      if (before == after) {
+        return true;
+      }
+      if (before == null || after == null || before.getClass() != after.getClass()) {
+        return false;
+      }
+      return (before instanceof String || before instanceof Boolean
+          || before instanceof Integer || before instanceof Long || before instanceof Double
+          || before instanceof Float || before instanceof Short || before instanceof Byte
+          || before instanceof Character) && before.equals(after);
+    }
+  }
+}
@@ -24,19 +24,25 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Properties;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 
+import org.mitre.synthea.engine.Transition.LookupTableTransition;
 import org.mitre.synthea.helpers.Config;
 import org.mitre.synthea.helpers.TransitionMetrics;
 import org.mitre.synthea.helpers.Utilities;
@@ -219,11 +225,24 @@ public class Module implements Cloneable, Serializable {
     String jsonString = localFiles
             ? new String(Files.readAllBytes(path), StandardCharsets.UTF_8)
             : Utilities.readResource(path.toString());
+    ModuleCache cache = ModuleCache.fromConfig();
+    String cacheKey = null;
+    if (cache != null) {
+      cacheKey = ModuleCache.key(path, submodule, jsonString, overrides);
+      Module cached = cache.load(cacheKey);
+      if (cached != null) {
+        return cached;
+      }
+    }
     if (overrides != null) {
       jsonString = applyOverrides(jsonString, overrides, path.getFileName().toString());
     }
     JsonObject object = JsonParser.parseString(jsonString).getAsJsonObject();
-    return new Module(object, submodule);
+    Module module = new Module(object, submodule);
+    if (cache != null) {
+      cache.store(cacheKey, module);
+    }
+    return module;
   }
 
   private static String applyOverrides(String jsonString, Properties overrides,
@@ -277,6 +296,70 @@ public class Module implements Cloneable, Serializable {
     return list;
   }
 
+  /**
+   * Eagerly load every submodule and every top-level module allowed by the predicate, in
+   * parallel, so that threads simulating people never wait on a lazily loading module.
+   * Once loaded, any CallSubmodule state that refers to an unknown submodule is reported.
+   * Modules that fail to load are reported here, and fail as usual when they are requested.
+   * @param pathPredicate A predicate to filter a module based on path.
+   * @param parallelism The number of threads to load modules with.
+   * @return The load time in milliseconds of each module loaded, by path, slowest first.
+   */
+  public static Map<String, Long> preloadModules(Predicate<String> pathPredicate,
+      int parallelism) {
+    List<ModuleSupplier> suppliers =
+        getModuleSuppliers(s -> !s.core && (s.submodule || pathPredicate.test(s.path)));
+    List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(suppliers.size());
+    for (ModuleSupplier supplier : suppliers) {
+      tasks.add(() -> {
+        supplier.load();
+        return null;
+      });
+    }
+    ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+    try {
+      pool.invokeAll(tasks);
+    } finally {
+      pool.shutdown();
+    }
+
+    List<ModuleSupplier> loaded = new ArrayList<ModuleSupplier>(suppliers);
+    loaded.sort((a, b) -> Long.compare(b.getLoadTime(), a.getLoadTime()));
+    Map<String, Long> loadTimes = new LinkedHashMap<String, Long>();
+    for (ModuleSupplier supplier : loaded) {
+      loadTimes.put(supplier.path, supplier.getLoadTime());
+      if (supplier.fault != null) {
+        System.err.format("Failed to load module %s: %s\n", supplier.path, supplier.fault);
+      } else if (supplier.module != null) {
+        for (String submodule : supplier.module.getCalledSubmodules()) {
+          ModuleSupplier called = modules.get(submodule);
+          if (called == null || !called.submodule) {
+            System.err.format("Module %s calls unknown submodule %s\n", supplier.path,
+                submodule);
+          }
+        }
+      }
+    }
+    return loadTimes;
+  }
+
+  /**
+   * Get the paths of the submodules called by the CallSubmodule states of this Module.
+   *
+   * @return set of submodule paths, or empty set if there are none
+   */
+  Set<String> getCalledSubmodules() {
+    Set<String> submodules = new TreeSet<String>();
+    if (states != null) {
+      for (State state : states.values()) {
+        if (state instanceof State.CallSubmodule) {
+          submodules.add(((State.CallSubmodule) state).getSubmodule());
+        }
+      }
+    }
+    return submodules;
+  }
+
   /**
    * Get the list of ModuleSuppliers.
    * @return a list of ModuleSuppliers. Submodules are included.
@@ -486,6 +569,33 @@ public class Module implements Cloneable, Serializable {
     return (current instanceof State.Terminal);
   }
 
+  /**
+   * Get the next time at which processing this Module could have any effect on the given
+   * Person. This is only known when the Person is waiting in a Delay (or a Procedure with
+   * a duration) whose end has already been determined; until then, processing the Module
+   * does nothing.
+   *
+   * @param person
+   *          : the person being simulated
+   * @return the time the current delay ends, or null if the Module should be processed
+   *         on every timestep.
+   */
+  public Long getWakeUpTime(Person person) {
+    if (getClass() != Module.class) {
+      // Java modules implement their own process() and must run every timestep
+      return null;
+    }
+    String historyKey = this.submodule ? this.submoduleName : this.name;
+    Object history = person.attributes.get(historyKey);
+    if (history instanceof List && !((List<?>) history).isEmpty()) {
+      Object current = ((List<?>) history).get(0);
+      if (current instanceof State.Delayable) {
+        return ((State.Delayable) current).next;
+      }
+    }
+    return null;
+  }
+
   private State initialState() {
     return states.get("Initial").clone(); // all Initial states have name Initial
   }
@@ -512,6 +622,23 @@ public class Module implements Cloneable, Serializable {
     return states.keySet();
   }
 
+  /**
+   * Get the names of the lookup tables used by the transitions of this Module.
+   *
+   * @return set of lookup table names, or empty set if there are none
+   */
+  Set<String> getLookupTableNames() {
+    Set<String> names = new TreeSet<String>();
+    if (states != null) {
+      for (State state : states.values()) {
+        if (state.getTransition() instanceof LookupTableTransition) {
+          names.add(((LookupTableTransition) state.getTransition()).getLookupTableName());
+        }
+      }
+    }
+    return names;
+  }
+
   /**
    * ModuleSupplier allows for lazy loading of Modules.
    */
@@ -530,6 +657,7 @@ public class Module implements Cloneable, Serializable {
     private Callable<Module> loader;
     private Module module;
     private Throwable fault;
+    private long loadTime = -1;
 
     /**
      * Create a ModuleSupplier.
@@ -559,9 +687,12 @@ public class Module implements Cloneable, Serializable {
       loader = null;
     }
 
-    @Override
-    public synchronized Module get() {
+    /**
+     * Load the module, if it has not been loaded yet. Any error is kept as the fault.
+     */
+    private synchronized void load() {
       if (!loaded) {
+        long start = System.nanoTime();
         try {
           module = loader.call();
         } catch (Throwable e) {
@@ -570,8 +701,23 @@ public class Module implements Cloneable, Serializable {
         } finally {
           loaded = true;
           loader = null;
+          loadTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
         }
       }
+    }
+
+    /**
+     * The time it took to load the module.
+     * @return The load time in milliseconds, or -1 if the module was not loaded from a file
+     *     or has not been loaded yet.
+     */
+    public synchronized long getLoadTime() {
+      return loadTime;
+    }
+
+    @Override
+    public synchronized Module get() {
+      load();
       if (fault != null) {
         throw new RuntimeException(fault);
       }
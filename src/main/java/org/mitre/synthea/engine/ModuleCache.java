@@ -0,0 +1,241 @@
+package org.mitre.synthea.engine;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import org.apache.commons.codec.binary.Hex;
+import org.mitre.synthea.engine.Transition.DistributedTransitionOption;
+import org.mitre.synthea.engine.Transition.LookupTableKey;
+import org.mitre.synthea.engine.Transition.LookupTableTransition;
+import org.mitre.synthea.helpers.Config;
+import org.mitre.synthea.helpers.Utilities;
+
+/**
+ * Binary cache of fully parsed generic modules.
+ *
+ * <p>Loading a module from JSON means applying the JsonPath module overrides, inflating every
+ * State with Gson, and parsing the CSV of any lookup table transitions. This cache stores the
+ * resulting Module, along with the lookup tables it uses, as a Java serialized object graph
+ * keyed by a SHA-256 hash of everything that went into building it: the cache format version,
+ * the GMF version, the module path, the module JSON, and the overrides that apply to it.
+ * The hash of each lookup table CSV is stored in the cache file and checked on load, so editing
+ * a module, an override, or a lookup table simply results in a cache miss.</p>
+ *
+ * <p>The cache is a performance optimization only. Any problem reading or writing a cache file
+ * is treated as a miss and the module is loaded from JSON as usual. Cache files are written to
+ * a temporary file and then atomically moved into place, so concurrent runs sharing a cache
+ * directory never see a partially written file.</p>
+ *
+ * <p>The cache can be filled ahead of time with the <code>moduleCache</code> Gradle task,
+ * which runs {@link #main(String[])}.</p>
+ */
+public class ModuleCache {
+  /** Magic number at the start of each cache file, "SYNM". */
+  private static final int MAGIC = 0x53594E4D;
+  /**
+   * Version of the cache file format. This must be incremented whenever a change to the
+   * engine changes the serialized form of Modules, States, Transitions, or Logic.
+   */
+  private static final int VERSION = 1;
+
+  private final Path directory;
+
+  /**
+   * Create a module cache backed by the given directory.
+   * @param directory The directory containing the cache files.
+   */
+  public ModuleCache(Path directory) {
+    this.directory = directory;
+  }
+
+  /**
+   * Get the module cache configured by the generate.module_cache settings.
+   * @return The module cache, or null if the cache is disabled.
+   */
+  public static ModuleCache fromConfig() {
+    if (!Config.getAsBoolean("generate.module_cache", false)) {
+      return null;
+    }
+    return new ModuleCache(
+        Paths.get(Config.get("generate.module_cache.directory", "./cache/modules")));
+  }
+
+  /**
+   * Compute the cache key for a module.
+   * @param path Path to the module file.
+   * @param submodule Whether or not the module is a submodule.
+   * @param json The contents of the module file, before overrides are applied.
+   * @param overrides The module overrides, or null if there are none.
+   * @return The cache key, a hex encoded SHA-256 hash.
+   */
+  public static String key(Path path, boolean submodule, String json, Properties overrides) {
+    MessageDigest md = sha256();
+    update(md, Integer.toString(VERSION));
+    update(md, Module.GMF_VERSION.toString());
+    update(md, path.toString().replace('\\', '/'));
+    update(md, Boolean.toString(submodule));
+    update(md, json);
+    if (overrides != null) {
+      // only the overrides that apply to this module affect it, and they are
+      // applied in no particular order, so sort them to get a stable key
+      String prefix = path.getFileName().toString() + "::";
+      Map<String, String> applicable = new TreeMap<>();
+      overrides.forEach((k, v) -> {
+        if (((String) k).startsWith(prefix)) {
+          applicable.put((String) k, (String) v);
+        }
+      });
+      applicable.forEach((k, v) -> {
+        update(md, k);
+        update(md, v);
+      });
+    }
+    return Hex.encodeHexString(md.digest());
+  }
+
+  /**
+   * Load a module from the cache.
+   * The lookup tables used by the module are registered with LookupTableTransition.
+   * @param key The cache key of the module.
+   * @return The cached module, or null if it is not in the cache or the cache entry is stale.
+   */
+  public Module load(String key) {
+    Path file = directory.resolve(key + ".bin");
+    if (!Files.isRegularFile(file)) {
+      return null;
+    }
+    try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+      DataInputStream data = new DataInputStream(in);
+      if (data.readInt() != MAGIC || data.readInt() != VERSION) {
+        return null;
+      }
+      ObjectInputStream ois = new ObjectInputStream(in);
+      @SuppressWarnings("unchecked")
+      Map<String, String> tableHashes = (Map<String, String>) ois.readObject();
+      for (Map.Entry<String, String> entry : tableHashes.entrySet()) {
+        if (!entry.getValue().equals(hashLookupTable(entry.getKey()))) {
+          return null;
+        }
+      }
+      @SuppressWarnings("unchecked")
+      Map<String, HashMap<LookupTableKey, List<DistributedTransitionOption>>> tables =
+          (Map<String, HashMap<LookupTableKey, List<DistributedTransitionOption>>>)
+          ois.readObject();
+      Module module = (Module) ois.readObject();
+      tables.forEach(LookupTableTransition::registerLookupTable);
+      return module;
+    } catch (Exception e) {
+      System.err.println("Ignoring unreadable module cache file " + file + ": " + e);
+      return null;
+    }
+  }
+
+  /**
+   * Store a module in the cache, along with the lookup tables it uses.
+   * Failures are reported but otherwise ignored.
+   * @param key The cache key of the module.
+   * @param module The module, as loaded from JSON.
+   */
+  public void store(String key, Module module) {
+    Path tempFile = null;
+    try {
+      Map<String, String> tableHashes = new TreeMap<>();
+      Map<String, HashMap<LookupTableKey, List<DistributedTransitionOption>>> tables =
+          new TreeMap<>();
+      for (String name : module.getLookupTableNames()) {
+        tableHashes.put(name, hashLookupTable(name));
+        tables.put(name, LookupTableTransition.getLookupTable(name));
+      }
+
+      Files.createDirectories(directory);
+      tempFile = Files.createTempFile(directory, key, ".tmp");
+      try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tempFile))) {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.flush();
+        ObjectOutputStream oos = new ObjectOutputStream(out);
+        oos.writeObject(tableHashes);
+        oos.writeObject(tables);
+        oos.writeObject(module);
+        oos.flush();
+      }
+      Files.move(tempFile, directory.resolve(key + ".bin"),
+          StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      tempFile = null;
+    } catch (Exception e) {
+      System.err.println("Unable to cache module " + module.name + ": " + e);
+    } finally {
+      if (tempFile != null) {
+        try {
+          Files.deleteIfExists(tempFile);
+        } catch (IOException e) {
+          // nothing else to do
+        }
+      }
+    }
+  }
+
+  /**
+   * Hash the current contents of a lookup table CSV file.
+   */
+  private static String hashLookupTable(String name) throws IOException {
+    String csv = Utilities.readResource(Config.get("generate.lookup_tables") + name, true, true);
+    MessageDigest md = sha256();
+    update(md, csv);
+    return Hex.encodeHexString(md.digest());
+  }
+
+  private static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Add a length-prefixed string to a hash, so that adjacent fields cannot run together.
+   */
+  private static void update(MessageDigest md, String value) {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    md.update(Integer.toString(bytes.length).getBytes(StandardCharsets.UTF_8));
+    md.update((byte) ':');
+    md.update(bytes);
+  }
+
+  /**
+   * Build step that fills the module cache by loading every generic module.
+   * @param args Optional path to the cache directory.
+   */
+  public static void main(String[] args) {
+    Config.set("generate.module_cache", "true");
+    if (args.length > 0 && !args[0].isEmpty()) {
+      Config.set("generate.module_cache.directory", args[0]);
+    }
+    long start = System.currentTimeMillis();
+    int count = Module.preloadModules(path -> true,
+        Runtime.getRuntime().availableProcessors()).size();
+    System.out.format("Cached %d modules in %s in %d ms.\n", count,
+        fromConfig().directory, System.currentTimeMillis() - start);
+  }
+}
@@ -0,0 +1,91 @@
+package org.mitre.synthea.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.mitre.synthea.helpers.ModuleProfiler;
+import org.mitre.synthea.world.agents.Person;
+
+/**
+ * Event-driven scheduler for the modules of a single Person.
+ *
+ * <p>By default the Generator calls process() on every current module on every timestep,
+ * even though most modules spend most of a lifetime waiting in a Delay state that ends
+ * months or years later. This scheduler keeps the modules in a priority queue ordered by
+ * the time they next need to run (see {@link Module#getWakeUpTime(Person)}), and on each
+ * timestep only processes the modules that are due. Modules with no known wake-up time,
+ * such as those waiting on a Guard, and all Java modules, are due on every timestep.</p>
+ *
+ * <p>Due modules are processed in the same relative order as person.currentModules, and
+ * a module is only skipped while processing it would have had no effect, so a fixed seed
+ * produces the same Person as the default, timestep-driven loop.</p>
+ */
+public class ModuleScheduler {
+  /** Wake-up time of a module that must be processed on every timestep. */
+  private static final long EVERY_TIMESTEP = Long.MIN_VALUE;
+
+  private final Person person;
+  /** The person's modules, in their original order. */
+  private final List<Module> modules;
+  /** Next wake-up time of each module, indexed like modules. */
+  private final long[] wakeUpTimes;
+  /** Indexes of the modules still running, ordered by wake-up time then original order. */
+  private final PriorityQueue<Integer> queue;
+  /** Scratch space for the indexes of the modules due on a timestep. */
+  private final int[] due;
+
+  /**
+   * Create a new scheduler for the current modules of the given Person.
+   * @param person The person being simulated.
+   */
+  public ModuleScheduler(Person person) {
+    this.person = person;
+    this.modules = new ArrayList<>(person.currentModules);
+    this.wakeUpTimes = new long[modules.size()];
+    this.due = new int[modules.size()];
+    this.queue = new PriorityQueue<>(Math.max(1, modules.size()), (a, b) -> {
+      int order = Long.compare(wakeUpTimes[a], wakeUpTimes[b]);
+      return (order != 0) ? order : Integer.compare(a, b);
+    });
+    for (int i = 0; i < modules.size(); i++) {
+      Long wakeUpTime = modules.get(i).getWakeUpTime(person);
+      wakeUpTimes[i] = (wakeUpTime == null) ? EVERY_TIMESTEP : wakeUpTime;
+      queue.add(i);
+    }
+  }
+
+  /**
+   * Process every module that is due at the given time. Modules that complete are removed
+   * from person.currentModules.
+   * @param time The current simulation time.
+   */
+  public void process(long time) {
+    int count = 0;
+    while (!queue.isEmpty() && wakeUpTimes[queue.peek()] <= time) {
+      due[count++] = queue.poll();
+    }
+    // restore the original module order, which determines the order of random draws
+    Arrays.sort(due, 0, count);
+    for (int i = 0; i < count; i++) {
+      int index = due[i];
+      Module module = modules.get(index);
+      if (ModuleProfiler.process(module, person, time)) {
+        person.currentModules.remove(module); // this module has completed/terminated.
+      } else {
+        Long wakeUpTime = module.getWakeUpTime(person);
+        wakeUpTimes[index] = (wakeUpTime == null) ? EVERY_TIMESTEP : wakeUpTime;
+        queue.add(index);
+      }
+    }
+  }
+
+  /**
+   * The number of modules that have not yet completed.
+   * @return The number of modules still scheduled.
+   */
+  public int size() {
+    return queue.size();
+  }
+}
@@ -0,0 +1,114 @@
+package org.mitre.synthea.engine;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.stream.Collectors;
+
+import org.mitre.synthea.helpers.RandomCollection;
+import org.mitre.synthea.helpers.RandomNumberGenerator;
+import org.mitre.synthea.world.agents.PayerManager;
+import org.mitre.synthea.world.agents.Provider;
+import org.mitre.synthea.world.geography.Demographics;
+import org.mitre.synthea.world.geography.Location;
+
+/**
+ * The Locations of every state, for generating a nationwide population in a single run.
+ * Each person is placed in a state picked in proportion to the population of the states.
+ * The demographics, providers, and payers of a state are loaded the first time someone is
+ * placed there, so states nobody lives in are never loaded. Providers of every state share
+ * the one spatial index in {@link Provider}.
+ */
+public class NationwideLocations {
+  /** States weighted by population. */
+  private final RandomCollection<String> states;
+  /** The Location of each state that has been loaded, or is being loaded. */
+  private final Map<String, FutureTask<Location>> locations;
+  /** Seed for the clinicians of every state. */
+  private final long clinicianSeed;
+
+  /**
+   * Create the nationwide locations. No state is loaded until it is used.
+   * @param clinicianSeed Seed for the clinicians of every state.
+   */
+  public NationwideLocations(long clinicianSeed) {
+    this.clinicianSeed = clinicianSeed;
+    this.locations = new ConcurrentHashMap<>();
+    this.states = new RandomCollection<>();
+    try {
+      Demographics.loadStatePopulations().forEach((state, population) ->
+          states.add(population, state));
+    } catch (IOException e) {
+      System.err.println("ERROR: unable to load state populations");
+      e.printStackTrace();
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  /**
+   * Pick a state in proportion to the population of the states.
+   * @param random Source of randomness.
+   * @return The name of the state.
+   */
+  public String randomState(RandomNumberGenerator random) {
+    return states.next(random);
+  }
+
+  /**
+   * Get the Location of a state, loading it along with its providers and payers if this
+   * is the first time it is used. The state is loaded by the first thread to use it, outside
+   * of the map of locations, so loading one state does not hold up people living in other
+   * states, while anyone else placed in the same state waits for it to be loaded.
+   * @param state The name of the state.
+   * @return The Location of the state.
+   */
+  public Location getLocation(String state) {
+    FutureTask<Location> task = locations.get(state);
+    if (task == null) {
+      FutureTask<Location> newTask = new FutureTask<>(() -> load(state));
+      task = locations.putIfAbsent(state, newTask);
+      if (task == null) {
+        task = newTask;
+        task.run();
+      }
+    }
+    try {
+      return task.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while loading " + state, e);
+    } catch (ExecutionException e) {
+      // let the next person placed in the state try again
+      locations.remove(state, task);
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IllegalStateException("Unable to load " + state, cause);
+    }
+  }
+
+  /**
+   * The states loaded so far.
+   * @return The names of the loaded states, in alphabetical order.
+   */
+  public Set<String> getLoadedStates() {
+    return locations.entrySet().stream()
+        .filter(entry -> entry.getValue().isDone())
+        .map(Map.Entry::getKey)
+        .collect(Collectors.toCollection(TreeSet::new));
+  }
+
+  private Location load(String state) {
+    Location location = new Location(state, null);
+    Provider.loadProvidersOnDemand(location, clinicianSeed);
+    PayerManager.loadPayersOnDemand(location);
+    return location;
+  }
+}
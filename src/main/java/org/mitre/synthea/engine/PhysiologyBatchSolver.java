@@ -0,0 +1,404 @@
+package org.mitre.synthea.engine;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.math.ode.DerivativeException;
+import org.mitre.synthea.helpers.Config;
+import org.sbml.jsbml.SBMLException;
+import org.sbml.jsbml.validator.ModelOverdeterminedException;
+import org.simulator.math.odes.AbstractDESSolver;
+import org.simulator.math.odes.MultiTable;
+import org.simulator.sbml.SBMLinterpreter;
+
+/**
+ * Solves the physiology simulations of many people together.
+ *
+ * <p>When physiology.batch.enabled is true, a simulation is queued rather than solved on the
+ * thread that needs it, and that thread waits for the result. A single collector thread for
+ * each model, solver, step size and duration takes the queued simulations in batches, waiting
+ * up to physiology.batch.wait milliseconds for a batch to fill. Since every queued simulation
+ * holds up a generator thread, a batch is never larger than the number of generator threads,
+ * nor than physiology.batch.size. People in the same batch with the same inputs share one
+ * solution.</p>
+ *
+ * <p>A batch is integrated in lock step when the solver takes fixed explicit steps (euler and
+ * runge_kutta) and the model has no events, delays or fast reactions: the state of every
+ * person in the batch is held in primitive arrays and advanced one time step at a time, with
+ * one interpreter that is initialized once for the whole batch rather than once per person.
+ * Each step is still computed by the SBSCL solver, so the results are the same as solving each
+ * person separately. Other batches are solved one person at a time by SBSCL.</p>
+ */
+public class PhysiologyBatchSolver {
+  /** Whether physiology simulations are solved in batches. */
+  static boolean enabled = Config.getAsBoolean("physiology.batch.enabled", false);
+  /** The maximum number of simulations in a batch. */
+  static int batchSize = Config.getAsInteger("physiology.batch.size", 16);
+  /** How long to wait for a batch to fill, in milliseconds. */
+  static int waitMillis = Config.getAsInteger("physiology.batch.wait", 5);
+  /** The number of generator threads that may be waiting for a simulation at once. */
+  static int generatorThreads = Runtime.getRuntime().availableProcessors();
+
+  /** Solvers that take fixed explicit steps, so that many people can be stepped together. */
+  private static final Set<String> FIXED_STEP_SOLVERS = Set.of("euler", "runge_kutta");
+  private static final Map<String, PhysiologyBatchSolver> SOLVERS =
+      new ConcurrentHashMap<String, PhysiologyBatchSolver>();
+
+  private final String modelPath;
+  private final String solverName;
+  private final double stepSize;
+  private final double duration;
+  private final BlockingQueue<Request> pending = new LinkedBlockingQueue<Request>();
+  private Thread collector;
+
+  /**
+   * A queued simulation and its eventual result.
+   */
+  private static class Request {
+    final double[] params;
+    final CompletableFuture<MultiTable> result = new CompletableFuture<MultiTable>();
+
+    Request(double[] params) {
+      this.params = params;
+    }
+  }
+
+  private PhysiologyBatchSolver(String modelPath, String solverName, double stepSize,
+      double duration) {
+    this.modelPath = modelPath;
+    this.solverName = solverName;
+    this.stepSize = stepSize;
+    this.duration = duration;
+  }
+
+  /**
+   * Whether physiology simulations are solved in batches.
+   * @return true if batching is enabled
+   */
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Set the number of generator threads, which limits the size of a batch.
+   * @param threads The number of threads simulating people.
+   */
+  public static void setGeneratorThreads(int threads) {
+    generatorThreads = Math.max(1, threads);
+  }
+
+  /**
+   * The largest batch that can be collected.
+   * @return the smaller of the configured batch size and the number of generator threads
+   */
+  static int maxBatchSize() {
+    return Math.max(1, Math.min(batchSize, generatorThreads));
+  }
+
+  /**
+   * Stop the collector threads of every simulation and discard them. Simulations still
+   * waiting fail with an InterruptedException. Call this when no one is being simulated.
+   */
+  public static void shutdown() {
+    for (PhysiologyBatchSolver solver : SOLVERS.values()) {
+      solver.stop();
+    }
+    SOLVERS.clear();
+  }
+
+  /**
+   * Get the batch solver for a simulation, shared by everyone in the population.
+   * @param modelPath Path to the SBML file relative to resources/physiology
+   * @param solverName Name of the solver to use
+   * @param stepSize Time step for the simulation
+   * @param duration Amount of time to simulate
+   * @return the batch solver
+   */
+  static PhysiologyBatchSolver get(String modelPath, String solverName, double stepSize,
+      double duration) {
+    String key = modelPath + "|" + solverName + "|" + stepSize + "|" + duration;
+    return SOLVERS.computeIfAbsent(key,
+        k -> new PhysiologyBatchSolver(modelPath, solverName, stepSize, duration));
+  }
+
+  /**
+   * Solve a simulation in the next batch, waiting for the result.
+   * @param params The model parameters.
+   * @return The results, which may be shared with other people and must not be changed.
+   * @throws DerivativeException if the solver encounters errors
+   */
+  MultiTable solve(double[] params) throws DerivativeException {
+    startCollector();
+    Request request = new Request(params);
+    pending.add(request);
+    try {
+      return request.result.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while waiting for physiology simulation", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof DerivativeException) {
+        throw (DerivativeException) e.getCause();
+      } else if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new RuntimeException(e.getCause());
+    }
+  }
+
+  private synchronized void startCollector() {
+    if (collector == null) {
+      collector = new Thread(this::collect, "physiology-batch-" + modelPath);
+      collector.setDaemon(true);
+      collector.start();
+    }
+  }
+
+  private synchronized void stop() {
+    if (collector != null) {
+      collector.interrupt();
+      collector = null;
+    }
+  }
+
+  /**
+   * Solve batches of queued simulations until interrupted.
+   */
+  private void collect() {
+    Integrator integrator = new Integrator(modelPath, solverName, stepSize, duration);
+    List<Request> batch = new ArrayList<Request>();
+    try {
+      while (true) {
+        batch.add(pending.take());
+        int size = maxBatchSize();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMillis);
+        pending.drainTo(batch, size - batch.size());
+        while (batch.size() < size) {
+          Request next = pending.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+          if (next == null) {
+            break;
+          }
+          batch.add(next);
+          pending.drainTo(batch, size - batch.size());
+        }
+        solveBatch(integrator, batch);
+        batch.clear();
+      }
+    } catch (InterruptedException e) {
+      pending.drainTo(batch);
+      for (Request request : batch) {
+        request.result.completeExceptionally(e);
+      }
+    }
+  }
+
+  /**
+   * Solve a batch of simulations, solving each distinct set of inputs once.
+   * @param integrator The integrator of this collector.
+   * @param batch The simulations to solve.
+   */
+  private void solveBatch(Integrator integrator, List<Request> batch) {
+    Map<PhysiologyResultCache.Key, List<Request>> distinct =
+        new LinkedHashMap<PhysiologyResultCache.Key, List<Request>>();
+    for (Request request : batch) {
+      distinct.computeIfAbsent(new PhysiologyResultCache.Key(
+          modelPath, solverName, stepSize, duration, request.params),
+          k -> new ArrayList<Request>()).add(request);
+    }
+    List<double[]> params = new ArrayList<double[]>(distinct.size());
+    for (List<Request> requests : distinct.values()) {
+      params.add(requests.get(0).params);
+    }
+
+    try {
+      List<MultiTable> results = integrator.solveAll(params);
+      int index = 0;
+      for (List<Request> requests : distinct.values()) {
+        MultiTable result = results.get(index++);
+        for (Request request : requests) {
+          request.result.complete(result);
+        }
+      }
+    } catch (DerivativeException | RuntimeException e) {
+      // solve one at a time, so that only the simulation that failed reports the error
+      for (List<Request> requests : distinct.values()) {
+        try {
+          MultiTable result = integrator.solveOne(requests.get(0).params);
+          for (Request request : requests) {
+            request.result.complete(result);
+          }
+        } catch (DerivativeException | RuntimeException ex) {
+          for (Request request : requests) {
+            request.result.completeExceptionally(ex);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Solves simulations of one model with one solver. Not thread safe: each collector has its
+   * own.
+   */
+  static class Integrator {
+    private final SBMLinterpreter interpreter;
+    private final AbstractDESSolver solver;
+    private final double duration;
+    private final boolean lockStep;
+
+    /**
+     * Create an integrator.
+     * @param modelPath Path to the SBML file relative to resources/physiology
+     * @param solverName Name of the solver to use
+     * @param stepSize Time step for the simulation
+     * @param duration Amount of time to simulate
+     */
+    Integrator(String modelPath, String solverName, double stepSize, double duration) {
+      interpreter = PhysiologySimulator.getInterpreter(PhysiologySimulator.getModel(modelPath));
+      solver = PhysiologySimulator.getSolver(solverName);
+      solver.setStepSize(stepSize);
+      this.duration = duration;
+      lockStep = FIXED_STEP_SOLVERS.contains(solverName)
+          && interpreter.getEventCount() == 0
+          && !interpreter.containsFastProcesses()
+          && !PhysiologySimulator.hasDelays(modelPath);
+    }
+
+    /**
+     * Whether batches are integrated in lock step.
+     * @return true if the solver and model allow it
+     */
+    boolean isLockStep() {
+      return lockStep;
+    }
+
+    /**
+     * Solve a simulation for each set of parameters.
+     * @param params The model parameters of each simulation.
+     * @return The results of each simulation, in the same order.
+     * @throws DerivativeException if the solver encounters errors
+     */
+    List<MultiTable> solveAll(List<double[]> params) throws DerivativeException {
+      if (lockStep) {
+        return solveLockStep(params);
+      }
+      List<MultiTable> results = new ArrayList<MultiTable>(params.size());
+      for (double[] p : params) {
+        results.add(solveOne(p));
+      }
+      return results;
+    }
+
+    /**
+     * Solve a single simulation with SBSCL.
+     * @param params The model parameters.
+     * @return The results.
+     * @throws DerivativeException if the solver encounters errors
+     */
+    MultiTable solveOne(double[] params) throws DerivativeException {
+      init();
+      return solver.solve(interpreter, params, 0, duration);
+    }
+
+    private void init() {
+      try {
+        // Reinitialize the interpreter to prevent old values from affecting the new simulation
+        interpreter.init(true);
+      } catch (ModelOverdeterminedException | SBMLException ex) {
+        // This shouldn't ever happen here since the interpreter has already been instantiated
+        // at least once
+        throw new RuntimeException(ex);
+      }
+    }
+
+    /**
+     * Integrate every simulation together, one time step at a time. This follows
+     * AbstractDESSolver.solve step for step, so the results are identical.
+     */
+    private List<MultiTable> solveLockStep(List<double[]> params) throws DerivativeException {
+      init();
+      int lanes = params.size();
+      int dimension = interpreter.getDimension();
+      double step = solver.getStepSize();
+      int rows = (int) Math.round(duration / step + 1);
+      boolean intermediates = solver.isIncludeIntermediates();
+
+      double[] timePoints = new double[rows];
+      for (int row = 0; row < rows; row++) {
+        timePoints[row] = BigDecimal.valueOf(0.0).add(BigDecimal.valueOf((long) row)
+            .multiply(BigDecimal.valueOf(step))).doubleValue();
+      }
+
+      // the results of each simulation, and the current state of each simulation
+      double[][][] data = new double[lanes][rows][dimension];
+      double[][][] additional = new double[lanes][intermediates ? rows : 0][];
+      double[][] state = new double[lanes][dimension];
+      double[] previous = new double[dimension];
+      double[] change = new double[dimension];
+
+      for (int lane = 0; lane < lanes; lane++) {
+        System.arraycopy(params.get(lane), 0, data[lane][0], 0, dimension);
+        if (intermediates) {
+          additional[lane][0] = interpreter.getAdditionalValues(0.0, data[lane][0]).clone();
+        }
+        solver.processEvents(interpreter, 0.0, 0.0, data[lane][0]);
+        System.arraycopy(data[lane][0], 0, state[lane], 0, dimension);
+      }
+
+      double time = 0.0;
+      for (int row = 1; row < rows; row++) {
+        double previousTime = time;
+        time = BigDecimal.valueOf(step).add(BigDecimal.valueOf(time)).doubleValue();
+        for (int lane = 0; lane < lanes; lane++) {
+          double[] y = state[lane];
+          System.arraycopy(y, 0, previous, 0, dimension);
+          solver.computeChange(interpreter, previous, previousTime, step, change, false);
+          for (int i = 0; i < dimension; i++) {
+            if (Double.isNaN(change[i]) && Double.isInfinite(previous[i])) {
+              change[i] = 0.0;
+            }
+            y[i] = previous[i] + change[i];
+            if (solver.isNonnegative() && y[i] < 0.0) {
+              y[i] = 0.0;
+            }
+          }
+          solver.processEventsAndRules(false, interpreter, time, previousTime, y);
+          System.arraycopy(y, 0, data[lane][row], 0, dimension);
+          if (row == 1) {
+            System.arraycopy(previous, 0, data[lane][0], 0, dimension);
+          }
+          if (intermediates) {
+            additional[lane][row] = interpreter.getAdditionalValues(time, data[lane][row]).clone();
+          }
+        }
+      }
+
+      List<MultiTable> results = new ArrayList<MultiTable>(lanes);
+      for (int lane = 0; lane < lanes; lane++) {
+        MultiTable table =
+            new MultiTable(timePoints.clone(), data[lane], interpreter.getIdentifiers());
+        table.getBlock(0).setName("Values");
+        if (intermediates) {
+          table.addBlock(interpreter.getAdditionalValueIds());
+          MultiTable.Block block = table.getBlock(table.getBlockCount() - 1);
+          block.setName("Additional values");
+          for (int row = 0; row < rows; row++) {
+            block.setRowData(row, additional[lane][row]);
+          }
+        }
+        results.add(table);
+      }
+      return results;
+    }
+  }
+}
@@ -0,0 +1,173 @@
+package org.mitre.synthea.engine;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.mitre.synthea.helpers.Config;
+import org.simulator.math.odes.MultiTable;
+
+/**
+ * Results of physiology simulations, shared by everyone in the population, so that a model is
+ * only solved once for each distinct set of inputs.
+ *
+ * <p>Results are keyed by the model, the solver, its step size and duration, and the full
+ * vector of model parameters. If physiology.result_cache.tolerance is greater than zero, each
+ * input is first rounded to the nearest multiple of the tolerance, and the model is solved
+ * with the rounded inputs, so that people whose inputs differ by less than the tolerance
+ * share one result. Because the result only depends on the rounded inputs, it does not
+ * matter which person's simulation was solved first. With the default tolerance of zero,
+ * results are only shared by people with exactly the same inputs, so the results are the
+ * same as without the cache.</p>
+ *
+ * <p>The cache holds at most physiology.result_cache.size results, discarding the least
+ * recently used. A size of zero, the default, disables the cache. Each result holds every
+ * step of the simulation, and without a tolerance few people have exactly the same inputs,
+ * so the cache is best enabled together with a tolerance.</p>
+ */
+public class PhysiologyResultCache {
+  /** The maximum number of results to cache. */
+  static int maxSize = Config.getAsInteger("physiology.result_cache.size", 0);
+  /** Inputs are rounded to the nearest multiple of this, if it is greater than zero. */
+  static double tolerance = Config.getAsDouble("physiology.result_cache.tolerance", 0.0);
+
+  private static final Map<Key, MultiTable> RESULTS = Collections.synchronizedMap(
+      new LinkedHashMap<Key, MultiTable>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, MultiTable> eldest) {
+          return size() > maxSize;
+        }
+      });
+  private static final LongAdder HITS = new LongAdder();
+  private static final LongAdder MISSES = new LongAdder();
+
+  private PhysiologyResultCache() {
+    // static cache
+  }
+
+  /**
+   * Whether results are cached.
+   * @return true if the cache is enabled.
+   */
+  public static boolean isEnabled() {
+    return maxSize > 0;
+  }
+
+  /**
+   * Round an input to the cache tolerance.
+   * @param value The input value.
+   * @return The value rounded to the nearest multiple of the tolerance, or the value itself
+   *     if the tolerance is zero.
+   */
+  static double quantize(double value) {
+    if (tolerance <= 0.0 || Double.isNaN(value) || Double.isInfinite(value)) {
+      return value;
+    }
+    return Math.round(value / tolerance) * tolerance;
+  }
+
+  /**
+   * Get a cached result.
+   * @param key The simulation and its inputs.
+   * @return The result, or null if it has not been cached.
+   */
+  static MultiTable get(Key key) {
+    MultiTable result = RESULTS.get(key);
+    if (result == null) {
+      MISSES.increment();
+    } else {
+      HITS.increment();
+    }
+    return result;
+  }
+
+  /**
+   * Cache a result. The result must not be changed afterwards.
+   * @param key The simulation and its inputs.
+   * @param result The result.
+   */
+  static void put(Key key, MultiTable result) {
+    RESULTS.put(key, result);
+  }
+
+  /**
+   * The number of lookups that found a cached result.
+   * @return the number of hits.
+   */
+  public static long getHits() {
+    return HITS.sum();
+  }
+
+  /**
+   * The number of lookups that did not find a cached result, and so solved the model.
+   * @return the number of misses.
+   */
+  public static long getMisses() {
+    return MISSES.sum();
+  }
+
+  /**
+   * Discard all cached results and reset the hit and miss counts.
+   */
+  public static void clear() {
+    RESULTS.clear();
+    HITS.reset();
+    MISSES.reset();
+  }
+
+  /**
+   * Describe the hit rate of the cache.
+   * @return a one line summary of the cache hits and misses.
+   */
+  public static String summary() {
+    long hits = getHits();
+    long lookups = hits + getMisses();
+    return String.format("Physiology result cache: %d of %d simulations reused (%.1f%%), "
+        + "%d results cached", hits, lookups, lookups == 0 ? 0.0 : 100.0 * hits / lookups,
+        RESULTS.size());
+  }
+
+  /**
+   * Identifies a simulation: the model, how it is solved, and the model parameters.
+   */
+  static class Key {
+    private final String model;
+    private final String solver;
+    private final double stepSize;
+    private final double duration;
+    private final double[] params;
+    private final int hash;
+
+    Key(String model, String solver, double stepSize, double duration, double[] params) {
+      this.model = model;
+      this.solver = solver;
+      this.stepSize = stepSize;
+      this.duration = duration;
+      this.params = params;
+      this.hash = Objects.hash(model, solver, stepSize, duration) * 31 + Arrays.hashCode(params);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) obj;
+      return hash == other.hash && model.equals(other.model) && solver.equals(other.solver)
+          && Double.compare(stepSize, other.stepSize) == 0
+          && Double.compare(duration, other.duration) == 0
+          && Arrays.equals(params, other.params);
+    }
+  }
+}
@@ -16,6 +16,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.xml.stream.XMLStreamException;
 
 import org.apache.commons.lang3.ArrayUtils;
@@ -51,9 +52,15 @@ import org.yaml.snakeyaml.constructor.Constructor;
 public class PhysiologySimulator {
 
   private static final Map<String, Class<?>> SOLVER_CLASSES;
-  private static Map<String, Model> MODEL_CACHE;
+  private static final Map<String, Model> MODEL_CACHE = new ConcurrentHashMap<String, Model>();
+  /** Models that use the SBML delay function. */
+  private static final Set<String> DELAY_MODELS = ConcurrentHashMap.newKeySet();
+  private static final String DELAY_SYMBOL = "http://www.sbml.org/sbml/symbols/delay";
   private static Path OUTPUT_PATH = Paths.get("output", "physiology");
 
+  private final String modelPath;
+  private final String solverName;
+  private final double stepSize;
   private final Model model;
   private final SBMLinterpreter interpreter;
   private final AbstractDESSolver solver;
@@ -202,9 +209,6 @@ public class PhysiologySimulator {
 
     // Make unmodifiable so it doesn't change after initialization
     SOLVER_CLASSES = Collections.unmodifiableMap(initSolvers);
-
-    // Initialize our model cache
-    MODEL_CACHE = new HashMap<String, Model>();
   }
 
   /**
@@ -225,24 +229,10 @@ public class PhysiologySimulator {
   public PhysiologySimulator(String modelPath, String solverName, double stepSize,
       double simDuration) {
 
-    // Get the model from cache if it has already been loaded
-    if (MODEL_CACHE.containsKey(modelPath)) {
-      model = MODEL_CACHE.get(modelPath);
-    } else {
-      // Load and instantiate the model from the SBML file
-      SBMLReader reader = new SBMLReader();
-      SBMLDocument doc;
-      try {
-        String sbmlContent = Utilities.readResourceOrPath("physiology/models/" + modelPath);
-        doc = reader.readSBMLFromString(sbmlContent);
-      } catch (IOException | XMLStreamException ex) {
-        throw new RuntimeException(ex);
-      }
-      model = doc.getModel();
-
-      // Add the loaded model to the cache so we don't need to load it again
-      MODEL_CACHE.put(modelPath, model);
-    }
+    this.modelPath = modelPath;
+    this.solverName = solverName;
+    this.stepSize = stepSize;
+    model = getModel(modelPath);
     interpreter = getInterpreter(model);
     solver = getSolver(solverName);
     solver.setStepSize(stepSize);
@@ -251,6 +241,46 @@ public class PhysiologySimulator {
     this.simDuration = simDuration;
   }
 
+  /**
+   * Get a model from the cache, loading it only once even if many threads need it at once.
+   * @param modelPath Path to the SBML file to load relative to resources/physiology
+   * @return the model
+   */
+  static Model getModel(String modelPath) {
+    return MODEL_CACHE.computeIfAbsent(modelPath, PhysiologySimulator::loadModel);
+  }
+
+  /**
+   * Whether a model uses the SBML delay function, so that its derivatives depend on
+   * earlier values of the simulation as well as the current ones.
+   * @param modelPath Path to the SBML file relative to resources/physiology
+   * @return true if the model uses delays
+   */
+  static boolean hasDelays(String modelPath) {
+    getModel(modelPath);
+    return DELAY_MODELS.contains(modelPath);
+  }
+
+  /**
+   * Load and instantiate a model from its SBML file.
+   * @param modelPath Path to the SBML file to load relative to resources/physiology
+   * @return the model
+   */
+  private static Model loadModel(String modelPath) {
+    SBMLReader reader = new SBMLReader();
+    SBMLDocument doc;
+    try {
+      String sbmlContent = Utilities.readResourceOrPath("physiology/models/" + modelPath);
+      doc = reader.readSBMLFromString(sbmlContent);
+      if (sbmlContent.contains(DELAY_SYMBOL)) {
+        DELAY_MODELS.add(modelPath);
+      }
+    } catch (IOException | XMLStreamException ex) {
+      throw new RuntimeException(ex);
+    }
+    return doc.getModel();
+  }
+
   /**
    * Returns a list of all model parameters.
    * @return list of model parameters
@@ -267,6 +297,9 @@ public class PhysiologySimulator {
    *
    * <p>Note that this method will throw a DerivativeException if the model encounters an error
    * while attempting to solve the system.
+   *
+   * <p>Results are shared through the {@link PhysiologyResultCache}, so the returned results
+   * must not be changed.
    * @param inputs Map of model parameter inputs. For any parameters which are not provided
    *               the default value from the model will be used. If null, all default
    *               parameter values will be used.
@@ -275,15 +308,27 @@ public class PhysiologySimulator {
    *        solution to differential equations
    */
   public MultiTable run(Map<String, Double> inputs) throws DerivativeException {
-    try {
-      // Reinitialize the interpreter to prevent old values from affecting the new simulation
-      interpreter.init(true);
-    } catch (ModelOverdeterminedException | SBMLException ex) {
-      // This shouldn't ever happen here since the interpreter has already been instantiated
-      // at least once
-      throw new RuntimeException(ex);
+    if (!PhysiologyResultCache.isEnabled()) {
+      return solve(params(inputs, false));
     }
+    double[] params = params(inputs, true);
+    PhysiologyResultCache.Key key = new PhysiologyResultCache.Key(
+        modelPath, solverName, stepSize, simDuration, params);
+    MultiTable results = PhysiologyResultCache.get(key);
+    if (results == null) {
+      results = solve(params);
+      PhysiologyResultCache.put(key, results);
+    }
+    return results;
+  }
 
+  /**
+   * Get the model parameters to solve the model with.
+   * @param inputs Map of model parameter inputs, or null to use the defaults.
+   * @param quantize Whether to round the inputs to the result cache tolerance.
+   * @return the model parameters
+   */
+  private double[] params(Map<String, Double> inputs, boolean quantize) {
     // Create a copy of the default parameters to use
     double[] params = Arrays.copyOf(modelDefaults, modelDefaults.length);
 
@@ -292,10 +337,34 @@ public class PhysiologySimulator {
       for (int i = 0; i < modelFields.length; i++) {
         String field = modelFields[i];
         if (inputs.containsKey(field)) {
-          params[i] = inputs.get(field);
+          params[i] = quantize
+              ? PhysiologyResultCache.quantize(inputs.get(field)) : inputs.get(field);
         }
       }
     }
+    return params;
+  }
+
+  /**
+   * Solve the model with the given parameters, in a batch with other people's simulations if
+   * physiology.batch.enabled is true.
+   * @param params the model parameters
+   * @return the results
+   * @throws DerivativeException if the solver encounters errors
+   */
+  private MultiTable solve(double[] params) throws DerivativeException {
+    if (PhysiologyBatchSolver.isEnabled()) {
+      return PhysiologyBatchSolver.get(modelPath, solverName, stepSize, simDuration)
+          .solve(params);
+    }
+    try {
+      // Reinitialize the interpreter to prevent old values from affecting the new simulation
+      interpreter.init(true);
+    } catch (ModelOverdeterminedException | SBMLException ex) {
+      // This shouldn't ever happen here since the interpreter has already been instantiated
+      // at least once
+      throw new RuntimeException(ex);
+    }
 
     // Solve the ODE for the specified duration and return the results
     MultiTable results = solver.solve(interpreter, params, 0, simDuration);
@@ -326,7 +395,7 @@ public class PhysiologySimulator {
    * @param solverName user-facing name of the solver to instantiate
    * @return solver instance
    */
-  private static AbstractDESSolver getSolver(String solverName) {
+  static AbstractDESSolver getSolver(String solverName) {
 
     // If the provided solver name doesn't exist in our map, it's an invalid
     // value that the programmer needs to correct.
@@ -350,7 +419,7 @@ public class PhysiologySimulator {
    * @param bioModel SBML model to interpret
    * @return interpreter instance
    */
-  private static SBMLinterpreter getInterpreter(Model bioModel) {
+  static SBMLinterpreter getInterpreter(Model bioModel) {
     try {
       SBMLinterpreter interpreter = new SBMLinterpreter(bioModel);
       return interpreter;
@@ -0,0 +1,679 @@
+package org.mitre.synthea.engine;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.mitre.synthea.world.agents.Clinician;
+import org.mitre.synthea.world.agents.Payer;
+import org.mitre.synthea.world.agents.Person;
+import org.mitre.synthea.world.agents.Provider;
+import org.mitre.synthea.world.concepts.healthinsurance.InsurancePlan;
+import org.mitre.synthea.world.geography.Demographics;
+import org.mitre.synthea.world.geography.Location;
+
+/**
+ * Streaming binary population snapshots.
+ *
+ * <p>A snapshot file is laid out as:</p>
+ * <pre>
+ * header:  int MAGIC, int VERSION, int flags
+ * records: (byte type, int length, byte[length])* byte END
+ *          PERSON: a person
+ *          SHARED: int count, then the next count objects of the shared object stream
+ * shared:  int length, byte[length] list of shared objects
+ * footer:  long offset of shared section, int record count, int MAGIC
+ * </pre>
+ *
+ * <p>Each person is its own length-prefixed record, so the population can be written
+ * incrementally as people finish and read back one person at a time, rather than
+ * holding the whole population in memory as a single serialized List. Objects that are
+ * shared by many people (providers, clinicians, payers, plans and locations) are replaced in each
+ * record with a small reference. Each shared object is written once, in a SHARED record
+ * before the first person that refers to it. The SHARED records are consecutive pieces of
+ * a single serialization stream, so shared objects that refer to each other still do
+ * after they are read. When the snapshot is closed, the shared objects are written again
+ * as they are at the end of the run, followed by the footer. The snapshot is written to a
+ * partial file next to the snapshot, which only replaces the snapshot when it is closed, so
+ * a population can be read from and saved to the same snapshot. A partial file that was
+ * never closed, e.g. because the run was interrupted, can still be read up to the last
+ * complete person. Records may optionally be GZIP compressed.</p>
+ *
+ * <p>A snapshot that is only read back during the current run may leave out the shared
+ * objects altogether, in which case it contains only PERSON records and an empty shared
+ * section, and the reader is given the shared objects by the writer.</p>
+ *
+ * <p>The {@link Reader} also accepts the older snapshot format, a single Java serialized
+ * List of people, so existing snapshots can still be loaded.</p>
+ */
+public final class PopulationSnapshot {
+  /** Magic number at the start and end of every snapshot ("SYNS"). */
+  static final int MAGIC = 0x53594E53;
+  /** Current version of the snapshot format. */
+  static final int VERSION = 2;
+  /** Flag set in the header when records are GZIP compressed. */
+  static final int FLAG_COMPRESSED = 1;
+  /**
+   * Flag set in the header when the shared objects are not written to the snapshot, and
+   * must be given to the {@link Reader} instead.
+   */
+  static final int FLAG_SHARED_NOT_WRITTEN = 2;
+  private static final byte END_OF_RECORDS = 0;
+  private static final byte PERSON_RECORD = 1;
+  private static final byte SHARED_RECORD = 2;
+  private static final int HEADER_LENGTH = 12;
+  private static final int FOOTER_LENGTH = 16;
+  /** Suffix of the file a snapshot is written to until it is closed. */
+  static final String PARTIAL_SUFFIX = ".partial";
+  /** The first two bytes of a Java serialization stream (STREAM_MAGIC). */
+  private static final int JAVA_SERIALIZATION_MAGIC = 0xACED;
+
+  /** Types shared between many people, which are written once per snapshot. */
+  private static final Class<?>[] SHARED_TYPES = {
+    Provider.class,
+    Clinician.class,
+    Payer.class,
+    InsurancePlan.class,
+    Location.class,
+    Demographics.class
+  };
+
+  private PopulationSnapshot() {
+    // holder for the Writer and Reader classes
+  }
+
+  private static boolean isShared(Object obj) {
+    for (Class<?> type : SHARED_TYPES) {
+      if (type.isInstance(obj)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Placeholder written into a person record in place of a shared object.
+   */
+  private static class SharedReference implements Serializable {
+    private static final long serialVersionUID = 6172983528946157211L;
+    private final int index;
+
+    SharedReference(int index) {
+      this.index = index;
+    }
+  }
+
+  /**
+   * Writes people to a snapshot file as they finish. This class is thread safe, and
+   * people are encoded on the calling thread so that only the file write is serialized.
+   */
+  public static class Writer implements Closeable {
+    private final File file;
+    private final File partialFile;
+    private final DataOutputStream out;
+    private final boolean compress;
+    private final boolean writeShared;
+    /** Shared objects, in the order they were first referenced. */
+    private final List<Object> shared = new ArrayList<>();
+    private final Map<Object, Integer> sharedIndex = new IdentityHashMap<>();
+    /** The stream of shared objects, which is written in pieces by SHARED records. */
+    private final ByteArrayOutputStream sharedBytes = new ByteArrayOutputStream();
+    private final ObjectOutputStream sharedStream;
+    /** The number of shared objects written to the shared stream. */
+    private int sharedWritten;
+    private long position;
+    private int count;
+    private boolean closed;
+
+    /**
+     * Create a new snapshot file. Any existing file is left untouched until the snapshot
+     * is closed, and is then replaced.
+     * @param file The snapshot file.
+     * @param compress Whether to GZIP compress each record.
+     * @throws IOException if the file cannot be created.
+     */
+    public Writer(File file, boolean compress) throws IOException {
+      this(file, compress, true);
+    }
+
+    /**
+     * Create a new snapshot file. Any existing file is left untouched until the snapshot
+     * is closed, and is then replaced.
+     * @param file The snapshot file.
+     * @param compress Whether to GZIP compress each record.
+     * @param writeShared Whether to write the shared objects to the file. A snapshot without
+     *     them can only be read with the objects from {@link #getSharedObjects()}.
+     * @throws IOException if the file cannot be created.
+     */
+    public Writer(File file, boolean compress, boolean writeShared) throws IOException {
+      this.file = file;
+      this.partialFile = new File(file.getPath() + PARTIAL_SUFFIX);
+      this.out = new DataOutputStream(
+          new BufferedOutputStream(new FileOutputStream(partialFile)));
+      this.compress = compress;
+      this.writeShared = writeShared;
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt((compress ? FLAG_COMPRESSED : 0)
+          | (writeShared ? 0 : FLAG_SHARED_NOT_WRITTEN));
+      position = HEADER_LENGTH;
+      sharedStream = writeShared ? new ObjectOutputStream(sharedBytes) : null;
+    }
+
+    /**
+     * Append a person to the snapshot.
+     * @param person The person.
+     * @return The index of the person in the snapshot, counting from 0.
+     * @throws IOException if the person cannot be written.
+     */
+    public int write(Person person) throws IOException {
+      byte[] record = encode(person, true);
+      synchronized (this) {
+        if (closed) {
+          throw new IOException("Snapshot is closed");
+        }
+        if (writeShared) {
+          writeSharedObjects();
+        }
+        writeRecord(PERSON_RECORD, record);
+        out.flush();
+        return count++;
+      }
+    }
+
+    /**
+     * The objects shared by the people written so far. These are the objects themselves
+     * rather than copies, so a snapshot that is only kept for the rest of the current run
+     * can be read back with {@link Reader#Reader(File, List)} to refer to the same objects.
+     * @return The shared objects.
+     */
+    public List<Object> getSharedObjects() {
+      synchronized (sharedIndex) {
+        return new ArrayList<>(shared);
+      }
+    }
+
+    /**
+     * The file the snapshot is written to until it is closed and moved into place.
+     * @return The partial snapshot file.
+     */
+    public File getPartialFile() {
+      return partialFile;
+    }
+
+    /**
+     * The number of people written so far.
+     * @return The record count.
+     */
+    public synchronized int size() {
+      return count;
+    }
+
+    private void writeRecord(byte type, byte[] record) throws IOException {
+      out.writeByte(type);
+      out.writeInt(record.length);
+      out.write(record);
+      position += 5 + record.length;
+    }
+
+    /**
+     * Write the shared objects that have been referenced since the last time, so they are
+     * in the file before the people that refer to them.
+     */
+    private void writeSharedObjects() throws IOException {
+      List<Object> added;
+      synchronized (sharedIndex) {
+        if (sharedWritten == shared.size()) {
+          return;
+        }
+        added = new ArrayList<>(shared.subList(sharedWritten, shared.size()));
+      }
+      for (Object obj : added) {
+        sharedStream.writeObject(obj);
+      }
+      sharedStream.flush();
+      sharedWritten += added.size();
+      byte[] piece = sharedBytes.toByteArray();
+      sharedBytes.reset();
+
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream record = new DataOutputStream(bytes);
+      record.writeInt(added.size());
+      if (compress) {
+        try (GZIPOutputStream gzip = new GZIPOutputStream(record)) {
+          gzip.write(piece);
+        }
+      } else {
+        record.write(piece);
+      }
+      record.flush();
+      writeRecord(SHARED_RECORD, bytes.toByteArray());
+    }
+
+    private byte[] encode(Object obj, boolean replaceShared) throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      OutputStream stream = compress ? new GZIPOutputStream(bytes) : bytes;
+      try (ObjectOutputStream oos = replaceShared
+          ? new RecordOutputStream(stream) : new ObjectOutputStream(stream)) {
+        oos.writeObject(obj);
+      }
+      return bytes.toByteArray();
+    }
+
+    /**
+     * Write the final state of the shared objects and the footer, close the file and
+     * move it into place, replacing any existing snapshot.
+     * @throws IOException if the snapshot cannot be completed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      try {
+        out.writeByte(END_OF_RECORDS);
+        position += 1;
+        long sharedOffset = position;
+        if (writeShared) {
+          List<Object> sharedObjects;
+          synchronized (sharedIndex) {
+            sharedObjects = new ArrayList<>(shared);
+          }
+          byte[] record = encode(sharedObjects, false);
+          out.writeInt(record.length);
+          out.write(record);
+        } else {
+          out.writeInt(0);
+        }
+        out.writeLong(sharedOffset);
+        out.writeInt(count);
+        out.writeInt(MAGIC);
+      } finally {
+        out.close();
+      }
+      try {
+        Files.move(partialFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(partialFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+    }
+
+    /**
+     * Serializes a single person, replacing shared objects with references.
+     */
+    private class RecordOutputStream extends ObjectOutputStream {
+      RecordOutputStream(OutputStream out) throws IOException {
+        super(out);
+        enableReplaceObject(true);
+      }
+
+      @Override
+      protected Object replaceObject(Object obj) {
+        if (!isShared(obj)) {
+          return obj;
+        }
+        synchronized (sharedIndex) {
+          Integer index = sharedIndex.get(obj);
+          if (index == null) {
+            index = shared.size();
+            shared.add(obj);
+            sharedIndex.put(obj, index);
+          }
+          return new SharedReference(index);
+        }
+      }
+    }
+  }
+
+  /**
+   * Reads people back from a snapshot file one at a time. Only the shared objects and
+   * the person currently being read are held in memory. Snapshots in the older format
+   * (a single serialized List of people) are loaded in full and then iterated.
+   */
+  public static class Reader implements Iterator<Person>, Closeable {
+    private DataInputStream in;
+    private boolean compressed;
+    private boolean complete;
+    private List<?> shared;
+    /** The shared objects read from SHARED records, when they are not known up front. */
+    private List<Object> streamed;
+    private Pieces sharedPieces;
+    private ObjectInputStream sharedStream;
+    private Iterator<?> legacy;
+    private int size;
+    private Person next;
+    private boolean finished;
+
+    /**
+     * Open a snapshot file.
+     * @param file The snapshot file.
+     * @throws IOException if the file cannot be read or is not a snapshot.
+     */
+    public Reader(File file) throws IOException {
+      this(file, null);
+    }
+
+    /**
+     * Open a snapshot file written during the current run, resolving references to shared
+     * objects to the given objects rather than to copies read from the file.
+     * @param file The snapshot file.
+     * @param shared The shared objects, from {@link Writer#getSharedObjects()}, or null to
+     *     read them from the file.
+     * @throws IOException if the file cannot be read or is not a snapshot.
+     */
+    public Reader(File file, List<?> shared) throws IOException {
+      this.shared = shared;
+      int magic;
+      try (DataInputStream header = new DataInputStream(new FileInputStream(file))) {
+        magic = header.readInt();
+      }
+      if ((magic >>> 16) == JAVA_SERIALIZATION_MAGIC) {
+        openLegacy(file);
+      } else if (magic == MAGIC) {
+        open(file);
+      } else {
+        throw new IOException("Not a population snapshot: " + file);
+      }
+    }
+
+    private void openLegacy(File file) throws IOException {
+      try (ObjectInputStream ois = new ObjectInputStream(
+          new BufferedInputStream(new FileInputStream(file)))) {
+        Object snapshot = ois.readObject();
+        if (!(snapshot instanceof List<?>)) {
+          throw new IOException("Not a population snapshot: " + file);
+        }
+        List<?> people = (List<?>) snapshot;
+        size = people.size();
+        legacy = people.iterator();
+        complete = true;
+      } catch (ClassNotFoundException e) {
+        throw new IOException(e);
+      }
+    }
+
+    private void open(File file) throws IOException {
+      try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+        raf.seek(4);
+        int version = raf.readInt();
+        if (version != VERSION) {
+          throw new IOException("Unsupported population snapshot version " + version);
+        }
+        int flags = raf.readInt();
+        compressed = (flags & FLAG_COMPRESSED) != 0;
+        if ((flags & FLAG_SHARED_NOT_WRITTEN) != 0 && shared == null) {
+          throw new IOException("Population snapshot " + file
+              + " can only be read by the run that wrote it");
+        }
+        if (raf.length() >= HEADER_LENGTH + FOOTER_LENGTH) {
+          raf.seek(raf.length() - FOOTER_LENGTH);
+          long sharedOffset = raf.readLong();
+          int count = raf.readInt();
+          complete = raf.readInt() == MAGIC;
+          if (complete) {
+            size = count;
+            if (shared == null) {
+              raf.seek(sharedOffset);
+              byte[] record = new byte[raf.readInt()];
+              raf.readFully(record);
+              shared = (List<?>) decode(record, false);
+            }
+          }
+        }
+        if (!complete) {
+          size = countPeople(raf);
+          System.out.printf("Population snapshot %s is incomplete, reading the %d people "
+              + "written before it was interrupted.\n", file, size);
+        }
+      }
+      if (shared == null) {
+        streamed = new ArrayList<>();
+        shared = streamed;
+      }
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+      in.skipBytes(HEADER_LENGTH);
+    }
+
+    /**
+     * Count the complete person records in a snapshot that has no footer.
+     */
+    private static int countPeople(RandomAccessFile raf) throws IOException {
+      int count = 0;
+      long position = HEADER_LENGTH;
+      long length = raf.length();
+      while (position + 5 <= length) {
+        raf.seek(position);
+        byte type = raf.readByte();
+        if (type == END_OF_RECORDS) {
+          break;
+        }
+        long next = position + 5 + raf.readInt();
+        if (next > length) {
+          break;
+        }
+        if (type == PERSON_RECORD) {
+          count++;
+        }
+        position = next;
+      }
+      return count;
+    }
+
+    /**
+     * Read the shared objects in a SHARED record.
+     */
+    private void readSharedObjects(byte[] record) throws IOException {
+      DataInputStream data = new DataInputStream(new ByteArrayInputStream(record));
+      int count = data.readInt();
+      try (InputStream piece = compressed ? new GZIPInputStream(data) : data) {
+        if (sharedPieces == null) {
+          sharedPieces = new Pieces();
+        }
+        sharedPieces.add(piece.readAllBytes());
+      }
+      try {
+        if (sharedStream == null) {
+          sharedStream = new ObjectInputStream(sharedPieces);
+        }
+        for (int i = 0; i < count; i++) {
+          streamed.add(sharedStream.readObject());
+        }
+      } catch (ClassNotFoundException e) {
+        throw new IOException(e);
+      }
+    }
+
+    private Object decode(byte[] record, boolean resolveShared) throws IOException {
+      InputStream stream = new ByteArrayInputStream(record);
+      if (compressed) {
+        stream = new GZIPInputStream(stream);
+      }
+      try (ObjectInputStream ois = resolveShared
+          ? new RecordInputStream(stream) : new ObjectInputStream(stream)) {
+        return ois.readObject();
+      } catch (ClassNotFoundException e) {
+        throw new IOException(e);
+      }
+    }
+
+    /**
+     * The number of people in the snapshot.
+     * @return The record count.
+     */
+    public int size() {
+      return size;
+    }
+
+    private Person readNext() throws IOException {
+      if (legacy != null) {
+        while (legacy.hasNext()) {
+          Object item = legacy.next();
+          if (item instanceof Person) {
+            return (Person) item;
+          }
+        }
+        return null;
+      }
+      while (true) {
+        byte type;
+        byte[] record;
+        try {
+          type = in.readByte();
+          if (type == END_OF_RECORDS) {
+            return null;
+          }
+          record = new byte[in.readInt()];
+          in.readFully(record);
+        } catch (EOFException e) {
+          if (complete) {
+            throw new IOException("Truncated population snapshot", e);
+          }
+          // an interrupted snapshot ends with the last complete record
+          return null;
+        }
+        if (type == PERSON_RECORD) {
+          return (Person) decode(record, true);
+        } else if (type == SHARED_RECORD && streamed != null) {
+          readSharedObjects(record);
+        }
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (next == null && !finished) {
+        try {
+          next = readNext();
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+        finished = (next == null);
+      }
+      return next != null;
+    }
+
+    @Override
+    public Person next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      Person person = next;
+      next = null;
+      return person;
+    }
+
+    /**
+     * Whether the snapshot was closed by its writer, rather than interrupted.
+     * @return true if the snapshot is complete
+     */
+    public boolean isComplete() {
+      return complete;
+    }
+
+    @Override
+    public void close() throws IOException {
+      finished = true;
+      legacy = null;
+      if (in != null) {
+        in.close();
+      }
+    }
+
+    /**
+     * Deserializes a single person, resolving references to shared objects.
+     */
+    private class RecordInputStream extends ObjectInputStream {
+      RecordInputStream(InputStream in) throws IOException {
+        super(in);
+        enableResolveObject(true);
+      }
+
+      @Override
+      protected Object resolveObject(Object obj) {
+        if (obj instanceof SharedReference) {
+          return shared.get(((SharedReference) obj).index);
+        }
+        return obj;
+      }
+    }
+  }
+
+  /**
+   * An input stream over the pieces of the shared object stream read so far.
+   */
+  private static class Pieces extends InputStream {
+    private final Deque<byte[]> pieces = new ArrayDeque<>();
+    private byte[] current = new byte[0];
+    private int position;
+
+    void add(byte[] piece) {
+      pieces.add(piece);
+    }
+
+    private boolean nextPiece() {
+      while (position == current.length) {
+        if (pieces.isEmpty()) {
+          return false;
+        }
+        current = pieces.poll();
+        position = 0;
+      }
+      return true;
+    }
+
+    @Override
+    public int read() {
+      return nextPiece() ? (current[position++] & 0xFF) : -1;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) {
+      if (length == 0) {
+        return 0;
+      }
+      if (!nextPiece()) {
+        return -1;
+      }
+      int count = Math.min(length, current.length - position);
+      System.arraycopy(current, position, buffer, offset, count);
+      position += count;
+      return count;
+    }
+
+    @Override
+    public int available() {
+      return current.length - position;
+    }
+  }
+}
@@ -38,6 +38,7 @@ import org.mitre.synthea.engine.Transition.TypeOfCareTransitionOptions;
 import org.mitre.synthea.helpers.Config;
 import org.mitre.synthea.helpers.ConstantValueGenerator;
 import org.mitre.synthea.helpers.ExpressionProcessor;
+import org.mitre.synthea.helpers.ModuleProfiler;
 import org.mitre.synthea.helpers.RandomNumberGenerator;
 import org.mitre.synthea.helpers.RandomValueGenerator;
 import org.mitre.synthea.helpers.Telemedicine;
@@ -178,6 +179,16 @@ public abstract class State implements Cloneable, Serializable {
     }
   }
 
+  /**
+   * Whether this visit must stay in the module history even after the person has visited
+   * another state with the same name. See HistoryPruner.
+   *
+   * @return true if a later visit does not make this one redundant
+   */
+  boolean isPinnedInHistory() {
+    return false;
+  }
+
   /**
    * Follows the transition for this state.
    *
@@ -233,7 +244,17 @@ public abstract class State implements Cloneable, Serializable {
     if (this.entered == null) {
       this.entered = time;
     }
-    boolean exit = process(person, time);
+    boolean exit;
+    if (ModuleProfiler.enabled) {
+      ModuleProfiler.enterState();
+      try {
+        exit = process(person, time);
+      } finally {
+        ModuleProfiler.exitState(getClass());
+      }
+    } else {
+      exit = process(person, time);
+    }
 
     if (exit) {
       // Delayable states return a special value for exited,
@@ -294,6 +315,14 @@ public abstract class State implements Cloneable, Serializable {
     /** The time at which the submodule completed */
     private transient long submoduleExited;
 
+    /**
+     * Get the path of the submodule this state calls.
+     * @return The submodule path, e.g. "medications/otc_antihistamine".
+     */
+    String getSubmodule() {
+      return submodule;
+    }
+
     @Override
     public CallSubmodule clone() {
       CallSubmodule clone = (CallSubmodule) super.clone();
@@ -312,7 +341,7 @@ public abstract class State implements Cloneable, Serializable {
       // module, that way the submodule is empowered (and vice versa)
       // to act on encounters created using the same name.
       submod.name = module.name;
-      boolean completed = submod.process(person, time);
+      boolean completed = ModuleProfiler.process(submod, person, time);
 
       if (completed) {
         // keep track of when the submodule exited,
@@ -428,6 +457,20 @@ public abstract class State implements Cloneable, Serializable {
       }
     }
 
+    /**
+     * Java Serialization support method to set up the transient simulator, which is not
+     * serializable, when physiology states are enabled.
+     * @param ois the stream to read from
+     * @throws ClassNotFoundException if a class in the stream cannot be found
+     * @throws IOException if the object fails to be deserialized
+     */
+    private void readObject(ObjectInputStream ois) throws ClassNotFoundException, IOException {
+      ois.defaultReadObject();
+      if (ENABLE_PHYSIOLOGY_STATE) {
+        setup();
+      }
+    }
+
     @Override
     public Physiology clone() {
       Physiology clone = (Physiology) super.clone();
@@ -704,18 +747,52 @@ public abstract class State implements Cloneable, Serializable {
   public static class Guard extends State {
     /** Logic which dictates whether the module will continue to the next state */
     private Logic allow;
+    /** The inputs of the allow logic, or null if they are not tracked. */
+    private transient LogicInputs inputs;
+    /** The inputs when allow last failed. Object state, unset in clone(). */
+    private transient LogicInputs.Snapshot blockedOn;
+
+    @Override
+    protected void initialize(Module module, String name, JsonObject definition) {
+      super.initialize(module, name, definition);
+      if (Config.getAsBoolean("generate.track_guard_inputs", true)) {
+        this.inputs = LogicInputs.of(allow);
+      }
+    }
+
+    /**
+     * Java Serialization support method to recompute the transient inputs of the allow
+     * logic, so that Guards in cached or restored modules still track their inputs.
+     * @param ois the stream to read from
+     * @throws ClassNotFoundException if a class in the stream cannot be found
+     * @throws IOException if the object fails to be deserialized
+     */
+    private void readObject(ObjectInputStream ois) throws ClassNotFoundException, IOException {
+      ois.defaultReadObject();
+      if (allow != null && Config.getAsBoolean("generate.track_guard_inputs", true)) {
+        this.inputs = LogicInputs.of(allow);
+      }
+    }
 
     @Override
     public Guard clone() {
       Guard clone = (Guard) super.clone();
+      clone.blockedOn = null;
       return clone;
     }
 
     @Override
     public boolean process(Person person, long time) {
+      if (blockedOn != null && blockedOn.isCurrent(person, time)) {
+        // none of the inputs to allow have changed, so it would still fail
+        return false;
+      }
       boolean exit = allow.test(person, time);
       if (exit) {
         this.exited = time;
+        blockedOn = null;
+      } else if (inputs != null) {
+        blockedOn = inputs.snapshot(person, time);
       }
       return exit;
     }
@@ -1238,6 +1315,12 @@ public abstract class State implements Cloneable, Serializable {
       return clone;
     }
 
+    @Override
+    boolean isPinnedInHistory() {
+      // a later Encounter still has to find this onset in the history to diagnose it
+      return !diagnosed;
+    }
+
     @Override
     public boolean process(Person person, long time) {
       updateOnsetInfo(person, time);
@@ -1647,6 +1730,44 @@ public abstract class State implements Cloneable, Serializable {
     /** The reason for starting this CarePlan */
     private String reason;
 
+    /**
+     * Java Serialization support method to serialize the JsonObject goals which aren't
+     * natively serializable.
+     * @param oos the stream to write to
+     * @throws IOException if the object fails to be serialized
+     */
+    private void writeObject(ObjectOutputStream oos) throws IOException {
+      oos.defaultWriteObject();
+      if (goals != null) {
+        List<String> goalsJson = new ArrayList<String>(goals.size());
+        for (JsonObject goal : goals) {
+          goalsJson.add(goal.toString());
+        }
+        oos.writeObject(goalsJson);
+      } else {
+        oos.writeObject(null);
+      }
+    }
+
+    /**
+     * Java Serialization support method to deserialize the JsonObject goals which aren't
+     * natively serializable.
+     * @param ois the stream to read from
+     * @throws ClassNotFoundException if a class in the stream cannot be found
+     * @throws IOException if the object fails to be deserialized
+     */
+    private void readObject(ObjectInputStream ois) throws ClassNotFoundException, IOException {
+      ois.defaultReadObject();
+      Object obj = ois.readObject();
+      if (obj instanceof List<?>) {
+        Gson gson = Utilities.getGson();
+        goals = new ArrayList<JsonObject>();
+        for (Object goal : (List<?>) obj) {
+          goals.add(gson.fromJson((String) goal, JsonObject.class));
+        }
+      }
+    }
+
     @Override
     public CarePlanStart clone() {
       CarePlanStart clone = (CarePlanStart) super.clone();
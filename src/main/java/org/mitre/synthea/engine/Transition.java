@@ -3,11 +3,15 @@ package org.mitre.synthea.engine;
 import com.google.gson.JsonObject;
 
 import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.lang3.Range;
 import org.apache.commons.math3.distribution.EnumeratedDistribution;
@@ -39,6 +43,33 @@ public abstract class Transition implements Serializable {
    */
   public abstract String follow(Person person, long time);
 
+  /**
+   * Find the inputs of a transition condition, if the result of testing it can be reused
+   * for the same person while they are unchanged.
+   *
+   * @param condition The condition, or null.
+   * @return The inputs, or null if the condition is always tested.
+   */
+  private static LogicInputs trackedInputs(Logic condition) {
+    if (condition == null
+        || !Config.getAsBoolean("generate.track_transition_inputs", true)) {
+      return null;
+    }
+    LogicInputs inputs = LogicInputs.of(condition);
+    if (inputs.isVolatile() || inputs.dependsOnHistory()) {
+      return null;
+    }
+    return inputs;
+  }
+
+  /**
+   * Test a transition condition, reusing the last result for the person if its inputs are
+   * tracked and have not changed.
+   */
+  private static boolean test(Logic condition, LogicInputs inputs, Person person, long time) {
+    return inputs == null ? condition.test(person, time) : inputs.test(person, time);
+  }
+
   /**
    * Direct transitions are the simplest of transitions. They transition directly
    * to the indicated state. The value of a direct_transition is simply the name
@@ -258,9 +289,9 @@ public abstract class Transition implements Serializable {
    */
   public static class LookupTableTransition extends Transition {
 
-    /** Map of lookupTables */
-    private static HashMap<String, HashMap<LookupTableKey, List<DistributedTransitionOption>>>
-        lookupTables = new HashMap<String, HashMap<LookupTableKey,
+    /** Map of lookupTables. Modules may be loaded in parallel, so this must be thread-safe. */
+    private static Map<String, HashMap<LookupTableKey, List<DistributedTransitionOption>>>
+        lookupTables = new ConcurrentHashMap<String, HashMap<LookupTableKey,
         List<DistributedTransitionOption>>>();
     /** List of options for transitioning to */
     private final List<LookupTableTransitionOption> transitions;
@@ -284,11 +315,43 @@ public abstract class Transition implements Serializable {
         throw new RuntimeException(
           "LOOKUP TABLE JSON ERROR: Table name cannot be null.");
       }
-      if (!lookupTables.containsKey(lookupTableName)) {
-        loadLookupTable();
+      // each table is only parsed once, even when modules are loaded in parallel
+      lookupTables.computeIfAbsent(lookupTableName, name -> loadLookupTable());
+      if (this.attributes == null) {
+        // the table was already loaded by another transition
+        this.attributes = loadLookupTableAttributes();
       }
     }
 
+    /**
+     * Get the name of the lookup table used by this transition.
+     * @return The lookup table name.
+     */
+    public String getLookupTableName() {
+      return lookupTableName;
+    }
+
+    /**
+     * Get a loaded lookup table.
+     * @param name The name of the lookup table.
+     * @return The parsed lookup table, or null if it has not been loaded.
+     */
+    static HashMap<LookupTableKey, List<DistributedTransitionOption>> getLookupTable(
+        String name) {
+      return lookupTables.get(name);
+    }
+
+    /**
+     * Register a lookup table that was parsed elsewhere, such as one read from the
+     * module cache. A table that has already been loaded is not replaced.
+     * @param name The name of the lookup table.
+     * @param table The parsed lookup table.
+     */
+    static void registerLookupTable(String name,
+        HashMap<LookupTableKey, List<DistributedTransitionOption>> table) {
+      lookupTables.putIfAbsent(name, table);
+    }
+
     /**
      * Loads the default transitions for this transition.
      */
@@ -304,10 +367,29 @@ public abstract class Transition implements Serializable {
       return defaultTransitions;
     }
 
+    /**
+     * Reads the list of attributes from the header of the current lookuptable.
+     */
+    private List<String> loadLookupTableAttributes() {
+      String fileName = Config.get("generate.lookup_tables") + lookupTableName;
+      try {
+        String csv = Utilities.readResource(fileName, true, true);
+        Iterator<LinkedHashMap<String, String>> rows = SimpleCSV.parseLineByLine(csv);
+        if (rows.hasNext()) {
+          List<String> columnHeaders = new ArrayList<String>(rows.next().keySet());
+          return new ArrayList<String>(columnHeaders.subList(0,
+              columnHeaders.size() - this.transitions.size()));
+        }
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+      throw new RuntimeException("The lookup table is null or empty.");
+    }
+
     /**
      * Loads the current lookuptable.
      */
-    private void loadLookupTable() {
+    private HashMap<LookupTableKey, List<DistributedTransitionOption>> loadLookupTable() {
 
       System.out.println("Loading Lookup Table: " + lookupTableName);
       // Hashmap for the new lookup table.
@@ -376,8 +458,7 @@ public abstract class Transition implements Serializable {
         newTable.put(attributesLookupKey, transitionProbabilities);
       }
 
-      // Put new table into Hash map of all lookup tables.
-      lookupTables.put(lookupTableName, newTable);
+      return newTable;
     }
 
     /**
@@ -596,6 +677,8 @@ public abstract class Transition implements Serializable {
      * Conditional logic gating transition.
      */
     private Logic condition;
+    /** The inputs of the condition, or null if they are not tracked. */
+    private transient LogicInputs inputs;
   }
 
   /**
@@ -622,12 +705,31 @@ public abstract class Transition implements Serializable {
      */
     public ConditionalTransition(List<ConditionalTransitionOption> transitions) {
       this.transitions = transitions;
+      trackInputs();
+    }
+
+    private void trackInputs() {
+      for (ConditionalTransitionOption option : transitions) {
+        option.inputs = trackedInputs(option.condition);
+      }
+    }
+
+    /**
+     * Java Serialization support method to recompute the transient inputs of the conditions.
+     * @param ois the stream to read from
+     * @throws ClassNotFoundException if a class in the stream cannot be found
+     * @throws IOException if the object fails to be deserialized
+     */
+    private void readObject(ObjectInputStream ois) throws ClassNotFoundException, IOException {
+      ois.defaultReadObject();
+      trackInputs();
     }
 
     @Override
     public String follow(Person person, long time) {
       for (ConditionalTransitionOption option : transitions) {
-        if (option.condition == null || option.condition.test(person, time)) {
+        if (option.condition == null
+            || test(option.condition, option.inputs, person, time)) {
           return option.transition;
         }
       }
@@ -645,6 +747,8 @@ public abstract class Transition implements Serializable {
   public static final class ComplexTransitionOption extends TransitionOption {
     /** Conditional logic gating transition */
     private Logic condition;
+    /** The inputs of the condition, or null if they are not tracked. */
+    private transient LogicInputs inputs;
     /** List of transition options weighted by a percentage chance */
     private List<DistributedTransitionOption> distributions;
   }
@@ -678,12 +782,31 @@ public abstract class Transition implements Serializable {
      */
     public ComplexTransition(List<ComplexTransitionOption> transitions) {
       this.transitions = transitions;
+      trackInputs();
+    }
+
+    private void trackInputs() {
+      for (ComplexTransitionOption option : transitions) {
+        option.inputs = trackedInputs(option.condition);
+      }
+    }
+
+    /**
+     * Java Serialization support method to recompute the transient inputs of the conditions.
+     * @param ois the stream to read from
+     * @throws ClassNotFoundException if a class in the stream cannot be found
+     * @throws IOException if the object fails to be deserialized
+     */
+    private void readObject(ObjectInputStream ois) throws ClassNotFoundException, IOException {
+      ois.defaultReadObject();
+      trackInputs();
     }
 
     @Override
     public String follow(Person person, long time) {
       for (ComplexTransitionOption option : transitions) {
-        if (option.condition == null || option.condition.test(person, time)) {
+        if (option.condition == null
+            || test(option.condition, option.inputs, person, time)) {
           return follow(option, person);
         }
       }
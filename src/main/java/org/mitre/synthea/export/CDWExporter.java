@@ -12,6 +12,7 @@ import java.io.OutputStreamWriter;
 import java.nio.charset.Charset;
 import java.nio.file.Path;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Random;
@@ -19,6 +20,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 import org.mitre.synthea.helpers.Config;
 import org.mitre.synthea.helpers.FactTable;
+import org.mitre.synthea.helpers.RunMetrics;
 import org.mitre.synthea.helpers.Utilities;
 import org.mitre.synthea.modules.DeathModule;
 import org.mitre.synthea.modules.Immunizations;
@@ -215,6 +217,16 @@ public class CDWExporter {
       vitalSign = openOutputStreamWriter(outputDirectory, "vitalsign.csv");
 
       writeCSVHeaders();
+
+      if (Config.getAsBoolean("exporter.cdw.stream_fact_tables", false)) {
+        // the medication rows read these facts back
+        dosageForm.keepFacts();
+        orderStatus.keepFacts();
+        for (Map.Entry<String, FactTable> factTable : factTables().entrySet()) {
+          factTable.getValue().streamTo(
+              openOutputStreamWriter(outputDirectory, factTable.getKey()));
+        }
+      }
     } catch (IOException e) {
       // wrap the exception in a runtime exception.
       // the singleton pattern below doesn't work if the constructor can throw
@@ -226,7 +238,8 @@ public class CDWExporter {
   private OutputStreamWriter openOutputStreamWriter(Path outputDirectory, String filename)
       throws IOException {
     File file = outputDirectory.resolve(filename).toFile();
-    return new OutputStreamWriter(new FileOutputStream(file), charset);
+    return new OutputStreamWriter(
+        RunMetrics.countBytesWritten(new FileOutputStream(file)), charset);
   }
 
   /**
@@ -556,35 +569,52 @@ public class CDWExporter {
   }
 
   /**
-   * Fact Tables should only be written after all patients have completed export.
+   * The fact tables, by the name of the file each is written to.
+   * @return The fact tables, in the order they are written.
+   */
+  private Map<String, FactTable> factTables() {
+    Map<String, FactTable> tables = new LinkedHashMap<String, FactTable>();
+    tables.put("sstaff.csv", sstaff);
+    tables.put("maritalstatus.csv", maritalStatus);
+    tables.put("sta3n.csv", sta3n);
+    tables.put("location.csv", location);
+    tables.put("immunizationname.csv", immunizationName);
+    tables.put("reaction.csv", reaction);
+    tables.put("providernarrative.csv", providerNarrative);
+    tables.put("localdrug.csv", localDrug);
+    tables.put("nationaldrug.csv", nationalDrug);
+    tables.put("dosageform.csv", dosageForm);
+    tables.put("pharmacyorderableitem.csv", pharmacyOrderableItem);
+    tables.put("orderableitem.csv", orderableItem);
+    tables.put("orderstatus.csv", orderStatus);
+    tables.put("vistapackage.csv", vistaPackage);
+    tables.put("collectionsample.csv", collectionsample);
+    tables.put("labchemtest.csv", labchemtest);
+    tables.put("topography.csv", topography);
+    tables.put("institution.csv", institution);
+    tables.put("loinc.csv", loinc);
+    tables.put("cpt.csv", cpt);
+    tables.put("vitaltype.csv", vitalType);
+    return tables;
+  }
+
+  /**
+   * Fact Tables should only be written after all patients have completed export,
+   * unless they are streamed, in which case they only need to be flushed.
    */
   public void writeFactTables() {
     try {
       File output = Exporter.getOutputFolder("cdw", null);
       output.mkdirs();
       Path outputDirectory = output.toPath();
-      sstaff.write(openOutputStreamWriter(outputDirectory, "sstaff.csv"));
-      maritalStatus.write(openOutputStreamWriter(outputDirectory, "maritalstatus.csv"));
-      sta3n.write(openOutputStreamWriter(outputDirectory, "sta3n.csv"));
-      location.write(openOutputStreamWriter(outputDirectory, "location.csv"));
-      immunizationName.write(openOutputStreamWriter(outputDirectory, "immunizationname.csv"));
-      reaction.write(openOutputStreamWriter(outputDirectory, "reaction.csv"));
-      providerNarrative.write(openOutputStreamWriter(outputDirectory, "providernarrative.csv"));
-      localDrug.write(openOutputStreamWriter(outputDirectory, "localdrug.csv"));
-      nationalDrug.write(openOutputStreamWriter(outputDirectory, "nationaldrug.csv"));
-      dosageForm.write(openOutputStreamWriter(outputDirectory, "dosageform.csv"));
-      pharmacyOrderableItem.write(
-          openOutputStreamWriter(outputDirectory, "pharmacyorderableitem.csv"));
-      orderableItem.write(openOutputStreamWriter(outputDirectory, "orderableitem.csv"));
-      orderStatus.write(openOutputStreamWriter(outputDirectory, "orderstatus.csv"));
-      vistaPackage.write(openOutputStreamWriter(outputDirectory, "vistapackage.csv"));
-      collectionsample.write(openOutputStreamWriter(outputDirectory, "collectionsample.csv"));
-      labchemtest.write(openOutputStreamWriter(outputDirectory, "labchemtest.csv"));
-      topography.write(openOutputStreamWriter(outputDirectory, "topography.csv"));
-      institution.write(openOutputStreamWriter(outputDirectory, "institution.csv"));
-      loinc.write(openOutputStreamWriter(outputDirectory, "loinc.csv"));
-      cpt.write(openOutputStreamWriter(outputDirectory, "cpt.csv"));
-      vitalType.write(openOutputStreamWriter(outputDirectory, "vitaltype.csv"));
+      for (Map.Entry<String, FactTable> factTable : factTables().entrySet()) {
+        if (factTable.getValue().isStreaming()) {
+          factTable.getValue().flush();
+        } else {
+          factTable.getValue().write(
+              openOutputStreamWriter(outputDirectory, factTable.getKey()));
+        }
+      }
     } catch (IOException e) {
       // wrap the exception in a runtime exception.
       // the singleton pattern below doesn't work if the constructor can throw
@@ -5,20 +5,22 @@ import static org.mitre.synthea.export.ExportHelper.dateFromTimestamp;
 import com.google.gson.JsonObject;
 
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.math.BigDecimal;
 import java.nio.file.Path;
-import java.util.ArrayList;
 import java.util.Dictionary;
-import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Map;
 import java.util.Random;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.mitre.synthea.helpers.Config;
+import org.mitre.synthea.helpers.DedupRegistry;
 import org.mitre.synthea.helpers.RandomNumberGenerator;
+import org.mitre.synthea.helpers.RunMetrics;
 import org.mitre.synthea.world.agents.Person;
 import org.mitre.synthea.world.concepts.Claim;
 import org.mitre.synthea.world.concepts.HealthRecord.CarePlan;
@@ -52,45 +54,59 @@ public class CPCDSExporter {
   /**
    * Writer for CPCDS_Patients.csv
    */
-  private FileWriter patients;
+  private OutputStreamWriter patients;
 
   /**
    * Writer for CPCDS_Coverages.csv
    */
-  private FileWriter coverages;
+  private OutputStreamWriter coverages;
 
   /**
    * Writer for CPCDS_Claims.csv
    */
-  private FileWriter claims;
+  private OutputStreamWriter claims;
 
   /**
    * Writer for Hospitals.csv
    */
-  private FileWriter hospitals;
+  private OutputStreamWriter hospitals;
 
   /**
    * Writer for Practitioners.csv
    */
-  private FileWriter practitioners;
+  private OutputStreamWriter practitioners;
 
   /**
    * System-dependent string for a line break. (\n on Mac, *nix, \r\n on Windows)
    */
   private static final String NEWLINE = System.lineSeparator();
 
+  /**
+   * Claim and coverage rows of the person each thread is exporting. They are written to the
+   * files once per person rather than once per encounter, so that threads exporting different
+   * people take turns writing to the files less often.
+   */
+  private static final ThreadLocal<StringBuilder> CLAIM_ROWS =
+      ThreadLocal.withInitial(StringBuilder::new);
+  private static final ThreadLocal<StringBuilder> COVERAGE_ROWS =
+      ThreadLocal.withInitial(StringBuilder::new);
+  /**
+   * Buffered rows are written early if they grow beyond this many characters.
+   */
+  private static final int MAX_BUFFERED_CHARS = 1 << 20;
+
   /**
    * Trackers for Practitioner outputs.
    */
-  public ArrayList<String> exportedPractitioners = new ArrayList<String>();
+  public final DedupRegistry exportedPractitioners = new DedupRegistry();
   /**
    * Trackers for hospital outputs.
    */
-  public ArrayList<String> exportedHospitals = new ArrayList<String>();
+  public final DedupRegistry exportedHospitals = new DedupRegistry();
   /**
    * Map of NPI numbers that have been overwritten.
    */
-  public Map<String, String> overwrittenNPIs = new HashMap<String, String>();
+  public Map<String, String> overwrittenNPIs = new ConcurrentHashMap<String, String>();
 
   /**
    * Constructor for the CSVExporter - initialize the 9 specified files and store
@@ -120,11 +136,11 @@ public class CPCDSExporter {
       File hospitalFile = outputDirectory.resolve("Organizations.csv").toFile();
       File practitionerFile = outputDirectory.resolve("PractitionerRoles.csv").toFile();
 
-      coverages = new FileWriter(coverageFile, append);
-      patients = new FileWriter(patientsFile, append);
-      claims = new FileWriter(claimsFile, append);
-      hospitals = new FileWriter(hospitalFile, append);
-      practitioners = new FileWriter(practitionerFile, append);
+      coverages = openWriter(coverageFile, append);
+      patients = openWriter(patientsFile, append);
+      claims = openWriter(claimsFile, append);
+      hospitals = openWriter(hospitalFile, append);
+      practitioners = openWriter(practitionerFile, append);
 
       if (!append) {
         writeCPCDSHeaders();
@@ -137,6 +153,10 @@ public class CPCDSExporter {
     }
   }
 
+  private static OutputStreamWriter openWriter(File file, boolean append) throws IOException {
+    return new OutputStreamWriter(RunMetrics.countBytesWritten(new FileOutputStream(file, append)));
+  }
+
   /**
    * Write the headers to each of the CSV files.
    *
@@ -274,7 +294,9 @@ public class CPCDSExporter {
               coverageID);
       hospital(encounter, encounterAttributes, payerName);
     }
-
+    // rows that are still buffered if an export fails are written with the thread's next person
+    flush(COVERAGE_ROWS.get(), coverages);
+    flush(CLAIM_ROWS.get(), claims);
 
     patients.flush();
     coverages.flush();
@@ -376,7 +398,7 @@ public class CPCDSExporter {
     s.append(payerId).append(',');
     s.append("self");
     s.append(NEWLINE);
-    write(s.toString(), coverages);
+    buffer(COVERAGE_ROWS.get(), s, coverages);
     return coverageID;
   }
 
@@ -908,7 +930,7 @@ public class CPCDSExporter {
 
     }
 
-    write(s.toString(), claims);
+    buffer(CLAIM_ROWS.get(), s, claims);
   }
 
   /**
@@ -924,12 +946,7 @@ public class CPCDSExporter {
     StringBuilder s = new StringBuilder();
     // Practitioner NPI,Organization NPI,Specialty
 
-    Boolean continueFlag = true;
-    if (exportedPractitioners.contains(providerNPI + organizationNPI)) {
-      continueFlag = false;
-    }
-    if (continueFlag == true) {
-      exportedPractitioners.add(providerNPI + organizationNPI);
+    if (exportedPractitioners.register(providerNPI + organizationNPI)) {
       s.append(clean(providerNPI)).append(',');
       s.append(providerName).append(',');
       s.append(clean(organizationNPI)).append(',');
@@ -952,12 +969,8 @@ public class CPCDSExporter {
     StringBuilder s = new StringBuilder();
     // Id,Name,Address,City,State,ZIP,Phone,Type,Ownership
 
-    Boolean continueFlag = true;
-    if (exportedHospitals.contains(attributes.getServiceSiteNPI())) {
-      continueFlag = false;
-    }
-
-    if (continueFlag && encounter.provider != null) {
+    if (encounter.provider != null
+        && exportedHospitals.register(attributes.getServiceSiteNPI())) {
       s.append(clean(attributes.getServiceSiteNPI())).append(',');
       s.append(clean(encounter.provider.name)).append(',');
       s.append(clean(encounter.provider.address)).append(',');
@@ -967,8 +980,6 @@ public class CPCDSExporter {
       s.append(clean(encounter.provider.phone)).append(',');
       s.append(clean(encounter.provider.cmsProviderType)).append(NEWLINE);
 
-      exportedHospitals.add(attributes.getServiceSiteNPI());
-
       write(s.toString(), hospitals);
     }
   }
@@ -993,12 +1004,47 @@ public class CPCDSExporter {
    * @param writer The place to write it
    * @throws IOException if an I/O error occurs
    */
-  private static void write(String line, FileWriter writer) throws IOException {
+  private static void write(String line, OutputStreamWriter writer) throws IOException {
     synchronized (writer) {
       writer.write(line);
     }
   }
 
+  /**
+   * Add rows to a thread's buffer, writing the buffer to the file if it has grown too large.
+   *
+   * @param rows   The thread's buffered rows for the file
+   * @param row    The rows to add
+   * @param writer The file
+   * @throws IOException if an I/O error occurs
+   */
+  private static void buffer(StringBuilder rows, CharSequence row, OutputStreamWriter writer)
+      throws IOException {
+    rows.append(row);
+    if (rows.length() > MAX_BUFFERED_CHARS) {
+      flush(rows, writer);
+    }
+  }
+
+  /**
+   * Write a thread's buffered rows to the file and empty the buffer.
+   *
+   * @param rows   The thread's buffered rows for the file
+   * @param writer The file
+   * @throws IOException if an I/O error occurs
+   */
+  private static void flush(StringBuilder rows, OutputStreamWriter writer) throws IOException {
+    if (rows.length() > 0) {
+      try {
+        synchronized (writer) {
+          writer.append(rows);
+        }
+      } finally {
+        rows.setLength(0);
+      }
+    }
+  }
+
   /**
    * Create a random long between an upper and lower bound. Utilizing longs to
    * cope with 10+ digit integers.
@@ -1018,6 +1064,16 @@ public class CPCDSExporter {
     return fraction + lower;
   }
 
+  /**
+   * Create a random 12 digit ID to replace an NPI.
+   *
+   * @return the new ID
+   */
+  private String newNPI() {
+    return String.valueOf(randomLongWithBounds(100000, 999999))
+        + String.valueOf(randomLongWithBounds(100000, 999999));
+  }
+
   /**
    * A helper class for storing CPCDS derived encounter attributes to eliminate
    * reusing the same code in multiple areas.
@@ -1056,23 +1112,10 @@ public class CPCDSExporter {
               ? String.valueOf(encounter.clinician.npi) : "");
       String hospitalNPI = (encounter.provider != null
               ? String.valueOf(encounter.provider.npi) : "");
-      String newHospitalID = String.valueOf(randomLongWithBounds(100000, 999999))
-              + String.valueOf(randomLongWithBounds(100000, 999999));
-      String newPractitionerID = String.valueOf(randomLongWithBounds(100000, 999999))
-              + String.valueOf(randomLongWithBounds(100000, 999999));
-
-      if (overwrittenNPIs.containsKey(hospitalNPI)) {
-        hospitalNPI = overwrittenNPIs.get(hospitalNPI);
-      } else {
-        overwrittenNPIs.put(hospitalNPI, newHospitalID);
-        hospitalNPI = newHospitalID;
-      }
-      if (overwrittenNPIs.containsKey(doctorNPI)) {
-        doctorNPI = overwrittenNPIs.get(doctorNPI);
-      } else {
-        overwrittenNPIs.put(doctorNPI, newPractitionerID);
-        doctorNPI = newPractitionerID;
-      }
+      // each NPI is replaced with the same new ID everywhere, even when several threads
+      // see it for the first time at once
+      hospitalNPI = overwrittenNPIs.computeIfAbsent(hospitalNPI, npi -> newNPI());
+      doctorNPI = overwrittenNPIs.computeIfAbsent(doctorNPI, npi -> newNPI());
 
 
       if (encounter.medications.size() != 0 && encounter.procedures.size() == 0) {
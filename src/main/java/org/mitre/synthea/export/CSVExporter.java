@@ -4,7 +4,6 @@ import static org.mitre.synthea.export.ExportHelper.dateFromTimestamp;
 import static org.mitre.synthea.export.ExportHelper.getSystemFromURI;
 import static org.mitre.synthea.export.ExportHelper.iso8601Timestamp;
 
-import com.google.common.collect.Table;
 import com.google.gson.JsonObject;
 
 import java.io.File;
@@ -21,7 +20,6 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -123,9 +121,7 @@ public class CSVExporter {
   public void exportOrganizationsAndProviders() throws IOException {
     for (Provider org : Provider.getProviderList()) {
       // Check utilization for hospital before we export
-      Table<Integer, String, AtomicInteger> utilization = org.getUtilization();
-      int totalEncounters =
-          utilization.column(Provider.ENCOUNTERS).values().stream().mapToInt(ai -> ai.get()).sum();
+      int totalEncounters = org.getTotalEncounters();
       if (totalEncounters > 0) {
         exportOrganization(org, totalEncounters);
         Map<String, ArrayList<Clinician>> providers = org.clinicianMap;
@@ -218,9 +214,7 @@ public class CSVExporter {
         /* condition to ignore codes other then retrieved from terminology url */
         if (!StringUtils.isEmpty(Config.get("generate.terminology_service_url"))
             && !RandomCodeGenerator.selectedCodes.isEmpty()) {
-          if (RandomCodeGenerator.selectedCodes.stream()
-              .filter(code -> code.code.equals(condition.codes.get(0).code))
-              .findFirst().isPresent()) {
+          if (RandomCodeGenerator.isSelectedCode(condition.codes.get(0).code)) {
             exportCondition(personID, encounterID, condition);
           }
         } else {
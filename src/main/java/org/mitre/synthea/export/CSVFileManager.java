@@ -18,6 +18,7 @@ import java.util.stream.Collectors;
 import org.apache.commons.io.output.NullOutputStream;
 import org.mitre.synthea.export.CSVConstants;
 import org.mitre.synthea.helpers.Config;
+import org.mitre.synthea.helpers.RunMetrics;
 import org.mitre.synthea.helpers.SimpleCSV;
 
 public class CSVFileManager {
@@ -199,8 +200,8 @@ public class CSVFileManager {
     // file writing may fail if we tell it to append to a file that doesn't already exist
     boolean appendToThisFile = append && file.exists();
 
-    OutputStreamWriter writer =
-        new OutputStreamWriter(new FileOutputStream(file, appendToThisFile), charset);
+    OutputStreamWriter writer = new OutputStreamWriter(
+        RunMetrics.countBytesWritten(new FileOutputStream(file, appendToThisFile)), charset);
     if (!append) {
       writer.write(CSVConstants.HEADER_LINE_MAP.get(resourceKey));
     }
@@ -234,8 +235,8 @@ public class CSVFileManager {
     // file writing may fail if we tell it to append to a file that doesn't already exist
     boolean appendToThisFile = append && file.exists();
 
-    OutputStreamWriter writer =
-        new OutputStreamWriter(new FileOutputStream(file, appendToThisFile), charset);
+    OutputStreamWriter writer = new OutputStreamWriter(
+        RunMetrics.countBytesWritten(new FileOutputStream(file, appendToThisFile)), charset);
     if (!append || resourceCount % maxLinesPerFile == 1) {
       writer.write(CSVConstants.HEADER_LINE_MAP.get(resourceKey));
     }
@@ -0,0 +1,204 @@
+package org.mitre.synthea.export;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+import org.mitre.synthea.engine.PopulationSnapshot;
+import org.mitre.synthea.helpers.Config;
+import org.mitre.synthea.world.agents.Person;
+
+/**
+ * People whose export has been deferred until the whole population has been generated.
+ *
+ * <p>Up to a limit, people are held in memory. Beyond that they are written to a temporary
+ * file, in the {@link PopulationSnapshot} format, and read back one at a time when they are
+ * exported, so that deferring the exports of a large population does not require holding
+ * every person in memory. Providers, clinicians, payers, plans and locations are not written
+ * to the file at all, and people read back from the file refer to the same objects as the
+ * rest of the simulation. All of the deferred people are exported in parallel.</p>
+ */
+public class DeferredExports {
+  /**
+   * Exports a single deferred person.
+   */
+  @FunctionalInterface
+  public interface PersonExporter {
+    void export(Person person, long stopTime);
+  }
+
+  /** The number of people held in memory before any more are written to disk. */
+  private final int memoryLimit;
+  /** Whether to compress the people written to disk. */
+  private final boolean compress;
+  /** The people held in memory, with the time their simulation stopped. */
+  private final List<Pair<Person, Long>> inMemory = new ArrayList<>();
+  /** The file of people written to disk, or null if none have been. */
+  private File spillFile;
+  private PopulationSnapshot.Writer spillWriter;
+  /** The time the simulation stopped for each person written to disk, by record index. */
+  private long[] spillStopTimes = new long[1024];
+
+  /**
+   * Create an empty set of deferred exports, configured by the
+   * exporter.deferred_exports.memory_limit setting.
+   */
+  public DeferredExports() {
+    this(Config.getAsInteger("exporter.deferred_exports.memory_limit", 1000),
+        Config.getAsBoolean("exporter.deferred_exports.compress", true));
+  }
+
+  /**
+   * Create an empty set of deferred exports.
+   * @param memoryLimit The number of people to hold in memory before writing any more to disk.
+   *     A negative limit holds every person in memory.
+   * @param compress Whether to compress the people written to disk.
+   */
+  public DeferredExports(int memoryLimit, boolean compress) {
+    this.memoryLimit = memoryLimit;
+    this.compress = compress;
+  }
+
+  /**
+   * Defer the export of a person. The person must not be changed after this.
+   * @param person The person.
+   * @param stopTime The time the simulation stopped for the person.
+   */
+  public void add(Person person, long stopTime) {
+    PopulationSnapshot.Writer writer;
+    synchronized (this) {
+      if (memoryLimit < 0 || inMemory.size() < memoryLimit) {
+        inMemory.add(new ImmutablePair<Person, Long>(person, stopTime));
+        return;
+      }
+      writer = getSpillWriter();
+    }
+    try {
+      int index = writer.write(person);
+      synchronized (this) {
+        if (index >= spillStopTimes.length) {
+          spillStopTimes = Arrays.copyOf(spillStopTimes,
+              Math.max(index + 1, spillStopTimes.length * 2));
+        }
+        spillStopTimes[index] = stopTime;
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Unable to defer export of person", e);
+    }
+  }
+
+  private PopulationSnapshot.Writer getSpillWriter() {
+    if (spillWriter == null) {
+      try {
+        spillFile = File.createTempFile("synthea-deferred-exports", ".bin");
+        spillFile.deleteOnExit();
+        spillWriter = new PopulationSnapshot.Writer(spillFile, compress, false);
+        spillWriter.getPartialFile().deleteOnExit();
+      } catch (IOException e) {
+        throw new UncheckedIOException("Unable to create deferred export file", e);
+      }
+    }
+    return spillWriter;
+  }
+
+  /**
+   * The number of people whose export has been deferred.
+   * @return The number of people held in memory and on disk.
+   */
+  public synchronized int size() {
+    return inMemory.size() + (spillWriter == null ? 0 : spillWriter.size());
+  }
+
+  /**
+   * The number of people that have been written to disk.
+   * @return The number of people on disk.
+   */
+  public synchronized int spilled() {
+    return spillWriter == null ? 0 : spillWriter.size();
+  }
+
+  /**
+   * Export every deferred person and then forget them. No people should be added while
+   * they are being exported.
+   * @param exporter Exports each person.
+   * @param parallelism The number of people to export at the same time.
+   */
+  public void exportAll(PersonExporter exporter, int parallelism) {
+    List<Pair<Person, Long>> people;
+    PopulationSnapshot.Writer writer;
+    File file;
+    long[] stopTimes;
+    synchronized (this) {
+      people = new ArrayList<>(inMemory);
+      inMemory.clear();
+      writer = spillWriter;
+      file = spillFile;
+      stopTimes = spillStopTimes;
+      spillWriter = null;
+      spillFile = null;
+      spillStopTimes = new long[1024];
+    }
+
+    int threads = Math.max(1, parallelism);
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    // limits the people read from disk but not yet exported
+    Semaphore window = new Semaphore(threads * 2);
+    AtomicReference<RuntimeException> failure = new AtomicReference<>();
+    try {
+      for (Pair<Person, Long> entry : people) {
+        submit(pool, window, failure, exporter, entry.getLeft(), entry.getRight());
+      }
+      people.clear();
+      if (writer != null) {
+        writer.close();
+        try (PopulationSnapshot.Reader reader =
+            new PopulationSnapshot.Reader(file, writer.getSharedObjects())) {
+          int index = 0;
+          while (reader.hasNext()) {
+            submit(pool, window, failure, exporter, reader.next(), stopTimes[index++]);
+          }
+        }
+      }
+      pool.shutdown();
+      pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Unable to read deferred exports", e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while exporting deferred people", e);
+    } finally {
+      pool.shutdownNow();
+      if (file != null) {
+        file.delete();
+      }
+    }
+    if (failure.get() != null) {
+      throw failure.get();
+    }
+  }
+
+  private static void submit(ExecutorService pool, Semaphore window,
+      AtomicReference<RuntimeException> failure, PersonExporter exporter,
+      Person person, long stopTime) throws InterruptedException {
+    window.acquire();
+    pool.execute(() -> {
+      try {
+        exporter.export(person, stopTime);
+      } catch (RuntimeException e) {
+        failure.compareAndSet(null, e);
+      } finally {
+        window.release();
+      }
+    });
+  }
+}
@@ -0,0 +1,109 @@
+package org.mitre.synthea.export;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A set of export steps that are run in parallel, each step starting once the steps it
+ * depends on have finished. Steps that write the same files, or that read the files written
+ * by other steps, are ordered by declaring those dependencies, while unrelated steps run at
+ * the same time. As when the steps were run one after another, a step that throws an
+ * exception is reported and does not prevent the steps that depend on it from running.
+ */
+public class ExportSteps {
+  /**
+   * A single export step.
+   */
+  @FunctionalInterface
+  public interface Step {
+    void run() throws Exception;
+  }
+
+  /** The steps, in the order they were added. */
+  private final Map<String, Step> steps = new LinkedHashMap<>();
+  /** The names of the steps each step depends on. */
+  private final Map<String, List<String>> dependencies = new HashMap<>();
+
+  /**
+   * Add a step, which will run after all of the given steps have finished.
+   * @param name Unique name of the step, used when reporting how long it took.
+   * @param step The step.
+   * @param dependsOn Names of previously added steps that must finish first.
+   */
+  public void add(String name, Step step, String... dependsOn) {
+    if (steps.containsKey(name)) {
+      throw new IllegalArgumentException("Duplicate export step: " + name);
+    }
+    for (String dependency : dependsOn) {
+      if (!steps.containsKey(dependency)) {
+        throw new IllegalArgumentException(
+            "Export step " + name + " depends on unknown step " + dependency);
+      }
+    }
+    steps.put(name, step);
+    dependencies.put(name, Arrays.asList(dependsOn));
+  }
+
+  /**
+   * The names of all steps added so far.
+   * @return The step names, in the order they were added.
+   */
+  public String[] names() {
+    return steps.keySet().toArray(new String[0]);
+  }
+
+  /**
+   * Run all of the steps and wait for them to finish.
+   * @param parallelism The maximum number of steps to run at the same time.
+   * @return How long each step took in milliseconds, in the order the steps were added.
+   */
+  public Map<String, Long> run(int parallelism) {
+    Map<String, Long> times = new ConcurrentHashMap<>();
+    Map<String, CompletableFuture<Void>> futures = new HashMap<>();
+    ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, parallelism));
+    try {
+      for (Map.Entry<String, Step> entry : steps.entrySet()) {
+        String name = entry.getKey();
+        Step step = entry.getValue();
+        List<CompletableFuture<Void>> before = new ArrayList<>();
+        for (String dependency : dependencies.get(name)) {
+          before.add(futures.get(dependency));
+        }
+        futures.put(name, CompletableFuture.allOf(before.toArray(new CompletableFuture[0]))
+            .thenRunAsync(() -> {
+              long start = System.currentTimeMillis();
+              try {
+                step.run();
+              } catch (Exception e) {
+                System.err.println("Export step " + name + " failed");
+                e.printStackTrace();
+              }
+              times.put(name, System.currentTimeMillis() - start);
+            }, pool));
+      }
+      CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[0])).join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof Error) {
+        throw (Error) e.getCause();
+      }
+      throw e;
+    } finally {
+      pool.shutdown();
+    }
+
+    Map<String, Long> orderedTimes = new LinkedHashMap<>();
+    for (String name : steps.keySet()) {
+      orderedTimes.put(name, times.get(name));
+    }
+    return orderedTimes;
+  }
+}
@@ -5,9 +5,12 @@ import com.google.common.base.Strings;
 
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -15,7 +18,6 @@ import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.ServiceLoader;
@@ -26,9 +28,7 @@ import java.util.concurrent.LinkedBlockingQueue;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
-import org.apache.commons.lang3.tuple.ImmutablePair;
-import org.apache.commons.lang3.tuple.Pair;
-
+import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.r4.model.Parameters;
 import org.hl7.fhir.r4.model.StringType;
 import org.mitre.synthea.engine.Generator;
@@ -39,6 +39,8 @@ import org.mitre.synthea.export.flexporter.Mapping;
 import org.mitre.synthea.export.rif.BB2RIFExporter;
 import org.mitre.synthea.export.rif.CodeMapper;
 import org.mitre.synthea.helpers.Config;
+import org.mitre.synthea.helpers.ModuleProfiler;
+import org.mitre.synthea.helpers.RunMetrics;
 import org.mitre.synthea.helpers.TransitionMetrics;
 import org.mitre.synthea.helpers.Utilities;
 import org.mitre.synthea.identity.Entity;
@@ -63,8 +65,7 @@ public abstract class Exporter {
     R4
   }
 
-  private static final List<Pair<Person, Long>> deferredExports =
-          Collections.synchronizedList(new LinkedList<>());
+  private static DeferredExports deferredExports;
 
   private static final ConcurrentHashMap<Path, PrintWriter> fileWriters =
           new ConcurrentHashMap<Path, PrintWriter>();
@@ -243,7 +244,7 @@ public abstract class Exporter {
     boolean wasExported = false;
     if (options.deferExports) {
       wasExported = true;
-      deferredExports.add(new ImmutablePair<Person, Long>(person, stopTime));
+      getDeferredExports().add(person, stopTime);
     } else {
       if (options.yearsOfHistory > 0) {
         person = filterForExport(person, options.yearsOfHistory, stopTime);
@@ -302,10 +303,11 @@ public abstract class Exporter {
     }
 
     if (Config.getAsBoolean("exporter.fhir_stu3.export")) {
+      long start = System.nanoTime();
       File outDirectory = getOutputFolder("fhir_stu3", person);
       if (Config.getAsBoolean("exporter.fhir.bulk_data")) {
         org.hl7.fhir.dstu3.model.Bundle bundle = FhirStu3.convertToFHIR(person, stopTime);
-        IParser parser = FhirStu3.getContext().newJsonParser().setPrettyPrint(false);
+        IParser parser = FhirStu3.getJsonParser(false);
         for (org.hl7.fhir.dstu3.model.Bundle.BundleEntryComponent entry : bundle.getEntry()) {
           String filename = entry.getResource().getResourceType().toString() + ".ndjson";
           Path outFilePath = outDirectory.toPath().resolve(filename);
@@ -313,16 +315,20 @@ public abstract class Exporter {
           appendToFile(outFilePath, entryJson);
         }
       } else {
-        String bundleJson = FhirStu3.convertToFHIRJson(person, stopTime);
+        org.hl7.fhir.dstu3.model.Bundle bundle = FhirStu3.convertToFHIR(person, stopTime);
+        IParser parser = FhirStu3.getJsonParser(
+            Config.getAsBoolean("exporter.pretty_print", true));
         Path outFilePath = outDirectory.toPath().resolve(filename(person, fileTag, "json"));
-        writeNewFile(outFilePath, bundleJson);
+        writeNewFile(outFilePath, parser, bundle);
       }
+      RunMetrics.recordExport("fhir_stu3", start);
     }
     if (Config.getAsBoolean("exporter.fhir_dstu2.export")) {
+      long start = System.nanoTime();
       File outDirectory = getOutputFolder("fhir_dstu2", person);
       if (Config.getAsBoolean("exporter.fhir.bulk_data")) {
         ca.uhn.fhir.model.dstu2.resource.Bundle bundle = FhirDstu2.convertToFHIR(person, stopTime);
-        IParser parser = FhirDstu2.getContext().newJsonParser().setPrettyPrint(false);
+        IParser parser = FhirDstu2.getJsonParser(false);
         for (ca.uhn.fhir.model.dstu2.resource.Bundle.Entry entry : bundle.getEntry()) {
           String filename = entry.getResource().getResourceName() + ".ndjson";
           Path outFilePath = outDirectory.toPath().resolve(filename);
@@ -330,12 +336,16 @@ public abstract class Exporter {
           appendToFile(outFilePath, entryJson);
         }
       } else {
-        String bundleJson = FhirDstu2.convertToFHIRJson(person, stopTime);
+        ca.uhn.fhir.model.dstu2.resource.Bundle bundle = FhirDstu2.convertToFHIR(person, stopTime);
+        IParser parser = FhirDstu2.getJsonParser(
+            Config.getAsBoolean("exporter.pretty_print", true));
         Path outFilePath = outDirectory.toPath().resolve(filename(person, fileTag, "json"));
-        writeNewFile(outFilePath, bundleJson);
+        writeNewFile(outFilePath, parser, bundle);
       }
+      RunMetrics.recordExport("fhir_dstu2", start);
     }
     if (Config.getAsBoolean("exporter.fhir.export")) {
+      long start = System.nanoTime();
       File outDirectory = getOutputFolder("fhir", person);
       org.hl7.fhir.r4.model.Bundle bundle = FhirR4.convertToFHIR(person, stopTime);
 
@@ -354,9 +364,8 @@ public abstract class Exporter {
         }
       }
 
-      IParser parser = FhirR4.getContext().newJsonParser();
       if (Config.getAsBoolean("exporter.fhir.bulk_data")) {
-        parser.setPrettyPrint(false);
+        IParser parser = FhirR4.getJsonParser(false);
         for (org.hl7.fhir.r4.model.Bundle.BundleEntryComponent entry : bundle.getEntry()) {
           String filename = entry.getResource().getResourceType().toString() + ".ndjson";
           Path outFilePath = outDirectory.toPath().resolve(filename);
@@ -364,53 +373,79 @@ public abstract class Exporter {
           appendToFile(outFilePath, entryJson);
         }
       } else {
-        parser.setPrettyPrint(true);
-        String bundleJson = parser.encodeResourceToString(bundle);
+        IParser parser = FhirR4.getJsonParser(true);
         Path outFilePath = outDirectory.toPath().resolve(filename(person, fileTag, "json"));
-        writeNewFile(outFilePath, bundleJson);
+        writeNewFile(outFilePath, parser, bundle);
       }
       FhirGroupExporterR4.addPatient((String) person.attributes.get(Person.ID));
+      RunMetrics.recordExport("fhir", start);
     }
     if (Config.getAsBoolean("exporter.ccda.export")) {
+      long start = System.nanoTime();
       String ccdaXml = CCDAExporter.export(person, stopTime);
       File outDirectory = getOutputFolder("ccda", person);
       Path outFilePath = outDirectory.toPath().resolve(filename(person, fileTag, "xml"));
       writeNewFile(outFilePath, ccdaXml);
+      RunMetrics.recordExport("ccda", start);
     }
     if (Config.getAsBoolean("exporter.json.export")) {
-      String json = JSONExporter.export(person);
-      File outDirectory = getOutputFolder("json", person);
-      Path outFilePath = outDirectory.toPath().resolve(filename(person, fileTag, "json"));
-      writeNewFile(outFilePath, json);
+      long start = System.nanoTime();
+      if (Config.getAsBoolean("exporter.json.ndjson")) {
+        // one line per person, in a single file for the whole population
+        File outDirectory = getOutputFolder("json", null);
+        appendToFile(outDirectory.toPath().resolve("people.ndjson"),
+            JSONExporter.exportLine(person));
+      } else {
+        File outDirectory = getOutputFolder("json", person);
+        Path outFilePath = outDirectory.toPath().resolve(filename(person, fileTag, "json"));
+        try (Writer writer = Files.newBufferedWriter(outFilePath, StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+          JSONExporter.export(person, writer);
+          writer.write(System.lineSeparator());
+          writer.flush();
+          RunMetrics.recordFileWritten(outFilePath);
+        } catch (IOException e) {
+          e.printStackTrace();
+        }
+      }
+      RunMetrics.recordExport("json", start);
     }
     if (Config.getAsBoolean("exporter.csv.export")) {
+      long start = System.nanoTime();
       try {
         CSVExporter.getInstance().export(person, stopTime);
       } catch (IOException e) {
         e.printStackTrace();
       }
+      RunMetrics.recordExport("csv", start);
     }
     if (Config.getAsBoolean("exporter.bfd.export")) {
+      long start = System.nanoTime();
       try {
         BB2RIFExporter exporter = BB2RIFExporter.getInstance();
         wasExported = exporter.export(person, stopTime, options.yearsOfHistory);
       } catch (IOException e) {
         e.printStackTrace();
       }
+      RunMetrics.recordExport("bfd", start);
     }
     if (Config.getAsBoolean("exporter.cpcds.export")) {
+      long start = System.nanoTime();
       try {
         CPCDSExporter.getInstance().export(person, stopTime);
       } catch (IOException e) {
         e.printStackTrace();
       }
+      RunMetrics.recordExport("cpcds", start);
     }
     if (Config.getAsBoolean("exporter.text.export")) {
+      long start = System.nanoTime();
       try {
         TextExporter.exportAll(person, fileTag, stopTime);
       } catch (IOException e) {
         e.printStackTrace();
       }
+      RunMetrics.recordExport("text", start);
     }
     if (Config.getAsBoolean("exporter.text.per_encounter_export")) {
       try {
@@ -420,51 +455,62 @@ public abstract class Exporter {
       }
     }
     if (Config.getAsBoolean("exporter.symptoms.csv.export")) {
+      long start = System.nanoTime();
       try {
         SymptomCSVExporter.getInstance().export(person, stopTime);
       } catch (IOException e) {
         e.printStackTrace();
       }
+      RunMetrics.recordExport("symptoms_csv", start);
     }
     if (Config.getAsBoolean("exporter.symptoms.text.export")) {
+      long start = System.nanoTime();
       try {
         SymptomTextExporter.exportAll(person, fileTag, stopTime);
       } catch (IOException e) {
         e.printStackTrace();
       }
+      RunMetrics.recordExport("symptoms_text", start);
     }
     if (Config.getAsBoolean("exporter.cdw.export")) {
+      long start = System.nanoTime();
       try {
         CDWExporter.getInstance().export(person, stopTime);
       } catch (IOException e) {
         e.printStackTrace();
       }
+      RunMetrics.recordExport("cdw", start);
     }
     if (Config.getAsBoolean("exporter.clinical_note.export")) {
+      long start = System.nanoTime();
       File outDirectory = getOutputFolder("notes", person);
       Path outFilePath = outDirectory.toPath().resolve(filename(person, fileTag, "txt"));
       String consolidatedNotes = ClinicalNoteExporter.export(person);
       writeNewFile(outFilePath, consolidatedNotes);
+      RunMetrics.recordExport("clinical_note", start);
     }
 
     if (Config.getAsBoolean("exporter.custom.export", true)
             && patientExporters != null && !patientExporters.isEmpty()) {
+      long start = System.nanoTime();
       for (PatientExporter patientExporter : patientExporters) {
         patientExporter.export(person, stopTime, options);
       }
+      RunMetrics.recordExport("custom", start);
     }
 
     if (options.isQueueEnabled()) {
+      boolean pretty = Config.getAsBoolean("exporter.record_queue.pretty_print", false);
       try {
         switch (options.queuedFhirVersion()) {
           case DSTU2:
-            options.recordQueue.put(FhirDstu2.convertToFHIRJson(person, stopTime));
+            options.recordQueue.put(FhirDstu2.convertToFHIRJson(person, stopTime, pretty));
             break;
           case STU3:
-            options.recordQueue.put(FhirStu3.convertToFHIRJson(person, stopTime));
+            options.recordQueue.put(FhirStu3.convertToFHIRJson(person, stopTime, pretty));
             break;
           default:
-            options.recordQueue.put(FhirR4.convertToFHIRJson(person, stopTime));
+            options.recordQueue.put(FhirR4.convertToFHIRJson(person, stopTime, pretty));
             break;
         }
       } catch (InterruptedException ie) {
@@ -476,6 +522,18 @@ public abstract class Exporter {
     return wasExported;
   }
 
+  /**
+   * Get the people whose export has been deferred, creating the store on first use so that
+   * it picks up the current configuration.
+   * @return The deferred exports.
+   */
+  private static synchronized DeferredExports getDeferredExports() {
+    if (deferredExports == null) {
+      deferredExports = new DeferredExports();
+    }
+    return deferredExports;
+  }
+
   /**
    * Write a new file with the given contents. Fails if the file already exists.
    * @param file Path to the new file.
@@ -484,6 +542,26 @@ public abstract class Exporter {
   private static void writeNewFile(Path file, String contents) {
     try {
       Files.write(file, Collections.singleton(contents), StandardOpenOption.CREATE_NEW);
+      RunMetrics.recordFileWritten(file);
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Write a new file containing the given resource, encoded directly to the file rather than
+   * to a String first. Fails if the file already exists.
+   * @param file Path to the new file.
+   * @param parser The parser to encode the resource with.
+   * @param resource The resource to write.
+   */
+  static void writeNewFile(Path file, IParser parser, IBaseResource resource) {
+    try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+        StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+      parser.encodeResourceToWriter(resource, writer);
+      writer.write(System.lineSeparator());
+      writer.flush();
+      RunMetrics.recordFileWritten(file);
     } catch (IOException e) {
       e.printStackTrace();
     }
@@ -517,7 +595,8 @@ public abstract class Exporter {
         if (writer == null) {
           try {
             writer = new PrintWriter(
-              new BufferedWriter(new FileWriter(file.toFile(), true), FILE_BUFFER_SIZE)
+              new BufferedWriter(new OutputStreamWriter(RunMetrics.countBytesWritten(
+                  new FileOutputStream(file.toFile(), true))), FILE_BUFFER_SIZE)
             );
           } catch (IOException e) {
             e.printStackTrace();
@@ -564,128 +643,127 @@ public abstract class Exporter {
     if (options.deferExports) {
       ExporterRuntimeOptions nonDeferredOptions = new ExporterRuntimeOptions(options);
       nonDeferredOptions.deferExports = false;
-      for (Pair<Person, Long> entry: deferredExports) {
-        export(entry.getLeft(), entry.getRight(), nonDeferredOptions);
-      }
-      deferredExports.clear();
-    }
-
-    try {
-      FhirGroupExporterR4.exportAndSave(generator.getRandomizer(), generator.stop);
-    } catch (Exception e) {
-      e.printStackTrace();
-    }
-
-    try {
-      HospitalExporterR4.export(generator.getRandomizer(), generator.stop);
-    } catch (Exception e) {
-      e.printStackTrace();
-    }
-
-    try {
-      FhirPractitionerExporterR4.export(generator.getRandomizer(), generator.stop);
-    } catch (Exception e) {
-      e.printStackTrace();
-    }
-
-    try {
-      HospitalExporterStu3.export(generator.stop);
-    } catch (Exception e) {
-      e.printStackTrace();
-    }
-
-    try {
-      FhirPractitionerExporterStu3.export(generator.stop);
-    } catch (Exception e) {
-      e.printStackTrace();
-    }
-
-    try {
-      HospitalExporterDstu2.export(generator.stop);
-    } catch (Exception e) {
-      e.printStackTrace();
-    }
-
-    try {
-      FhirPractitionerExporterDstu2.export(generator.stop);
-    } catch (Exception e) {
-      e.printStackTrace();
-    }
+      DeferredExports deferred = getDeferredExports();
+      long start = System.currentTimeMillis();
+      int count = deferred.size();
+      int spilled = deferred.spilled();
+      deferred.exportAll((person, stopTime) -> export(person, stopTime, nonDeferredOptions),
+          generator.threadPoolSize);
+      System.out.format("Exported %d deferred people (%d of them from disk) in %d ms.\n",
+          count, spilled, System.currentTimeMillis() - start);
+    }
+
+    ExportSteps steps = new ExportSteps();
+    // the group is the only step that uses the generator's randomizer
+    steps.add("FHIR R4 group", () ->
+        FhirGroupExporterR4.exportAndSave(generator.getRandomizer(), generator.stop));
+    // the hospitals and practitioners of each FHIR version are written one after another
+    steps.add("FHIR R4 hospitals", () ->
+        HospitalExporterR4.export(generator.getRandomizer(), generator.stop));
+    steps.add("FHIR R4 practitioners", () ->
+        FhirPractitionerExporterR4.export(generator.getRandomizer(), generator.stop),
+        "FHIR R4 hospitals");
+    steps.add("FHIR STU3 hospitals", () -> HospitalExporterStu3.export(generator.stop));
+    steps.add("FHIR STU3 practitioners", () ->
+        FhirPractitionerExporterStu3.export(generator.stop), "FHIR STU3 hospitals");
+    steps.add("FHIR DSTU2 hospitals", () -> HospitalExporterDstu2.export(generator.stop));
+    steps.add("FHIR DSTU2 practitioners", () ->
+        FhirPractitionerExporterDstu2.export(generator.stop), "FHIR DSTU2 hospitals");
 
     if (Config.getAsBoolean("exporter.bfd.export")) {
-      try {
+      steps.add("BFD", () -> {
         BB2RIFExporter exporter = BB2RIFExporter.getInstance();
         exporter.exportNPIs();
         exporter.exportManifest();
         exporter.exportEndState();
         exporter.exportMissingCodes();
-      } catch (IOException e) {
-        e.printStackTrace();
-      }
+      });
     }
 
     if (Config.getAsBoolean("exporter.cdw.export")) {
-      CDWExporter.getInstance().writeFactTables();
+      steps.add("CDW fact tables", () -> CDWExporter.getInstance().writeFactTables());
     }
 
     if (Config.getAsBoolean("exporter.csv.export")) {
-      try {
+      steps.add("CSV organizations, providers and payers", () -> {
         CSVExporter.getInstance().exportOrganizationsAndProviders();
         CSVExporter.getInstance().exportPayers();
-      } catch (IOException e) {
-        e.printStackTrace();
-      }
+      });
     }
 
     if (Config.getAsBoolean("exporter.metadata.export", false)) {
-      try {
-        MetadataExporter.exportMetadata(generator);
-      } catch (IOException e) {
-        e.printStackTrace();
-      }
+      steps.add("metadata", () -> MetadataExporter.exportMetadata(generator));
     }
 
     if (Config.getAsBoolean("generate.track_detailed_transition_metrics", false)) {
-      TransitionMetrics.exportMetrics();
+      steps.add("transition metrics", () -> TransitionMetrics.exportMetrics());
+    }
+
+    if (ModuleProfiler.enabled) {
+      steps.add("module profile", () -> ModuleProfiler.exportMetrics());
     }
 
     if (Config.getAsBoolean("exporter.fhir.bulk_data")) {
-      IParser parser = FhirR4.getContext().newJsonParser();
-      parser.setPrettyPrint(false);
-      Parameters parameters = new Parameters()
-              .addParameter("inputFormat","application/fhir+ndjson");
-      File outDirectory = getOutputFolder("fhir", null);
-
-      File[] files = outDirectory.listFiles(pathname -> pathname.getName().endsWith("ndjson"));
-
-      String configHostname = Config.get("exporter.fhir.bulk_data.parameter_hostname");
-      String hostname = Strings.isNullOrEmpty(configHostname)
-              ? "http://localhost:8000/" : configHostname;
-
-      for (File file : files) {
-        parameters.addParameter(
-                new Parameters.ParametersParameterComponent().setName("input")
-                        .addPart(new Parameters.ParametersParameterComponent()
-                                .setName("type")
-                                .setValue(new StringType(file.getName().split("\\.")[0])))
-                        .addPart(new Parameters.ParametersParameterComponent()
-                                .setName("url")
-                                .setValue(new StringType(hostname + file.getName()))));
-      }
-      overwriteFile(outDirectory.toPath().resolve("parameters.json"),
-              parser.encodeResourceToString(parameters));
+      // lists the ndjson files, so runs after every step that writes them
+      steps.add("FHIR bulk data parameters", () -> exportBulkDataParameters(),
+          "FHIR R4 group", "FHIR R4 hospitals", "FHIR R4 practitioners");
     }
 
     if (Config.getAsBoolean("exporter.custom.export", true)
             && postCompletionExporters != null && !postCompletionExporters.isEmpty()) {
-      for (PostCompletionExporter postCompletionExporter : postCompletionExporters) {
-        postCompletionExporter.export(generator, options);
+      // custom exporters may use the output of any other step, so they run last, in order
+      String[] previous = steps.names();
+      for (int i = 0; i < postCompletionExporters.size(); i++) {
+        PostCompletionExporter postCompletionExporter = postCompletionExporters.get(i);
+        String name = "custom exporter " + (i + 1) + " ("
+            + postCompletionExporter.getClass().getSimpleName() + ")";
+        steps.add(name, () -> postCompletionExporter.export(generator, options), previous);
+        previous = new String[] { name };
       }
     }
 
+    int parallelism = Config.getAsBoolean("exporter.parallel_post_completion", true)
+        ? generator.threadPoolSize : 1;
+    long start = System.currentTimeMillis();
+    Map<String, Long> times = steps.run(parallelism);
+    System.out.format("Ran %d post-completion exports in %d ms using %d threads.\n",
+        times.size(), System.currentTimeMillis() - start, parallelism);
+    for (Map.Entry<String, Long> time : times.entrySet()) {
+      System.out.format("  %6d ms  %s\n", time.getValue(), time.getKey());
+    }
+
     closeOpenFiles();
   }
 
+  /**
+   * Write the parameters.json file listing the FHIR bulk data ndjson files.
+   */
+  private static void exportBulkDataParameters() {
+    IParser parser = FhirR4.getJsonParser(false);
+    Parameters parameters = new Parameters()
+            .addParameter("inputFormat","application/fhir+ndjson");
+    File outDirectory = getOutputFolder("fhir", null);
+
+    File[] files = outDirectory.listFiles(pathname -> pathname.getName().endsWith("ndjson"));
+
+    String configHostname = Config.get("exporter.fhir.bulk_data.parameter_hostname");
+    String hostname = Strings.isNullOrEmpty(configHostname)
+            ? "http://localhost:8000/" : configHostname;
+
+    for (File file : files) {
+      parameters.addParameter(
+              new Parameters.ParametersParameterComponent().setName("input")
+                      .addPart(new Parameters.ParametersParameterComponent()
+                              .setName("type")
+                              .setValue(new StringType(file.getName().split("\\.")[0])))
+                      .addPart(new Parameters.ParametersParameterComponent()
+                              .setName("url")
+                              .setValue(new StringType(hostname + file.getName()))));
+    }
+    overwriteFile(outDirectory.toPath().resolve("parameters.json"),
+            parser.encodeResourceToString(parameters));
+  }
+
   /**
    * Filter the patient's history to only the last __ years
    * but also include relevant history from before that. Exclude
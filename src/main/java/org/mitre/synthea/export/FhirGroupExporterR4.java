@@ -17,6 +17,7 @@ import org.hl7.fhir.r4.model.Group.GroupType;
 import org.hl7.fhir.r4.model.Reference;
 import org.mitre.synthea.helpers.Config;
 import org.mitre.synthea.helpers.RandomNumberGenerator;
+import org.mitre.synthea.helpers.RunMetrics;
 
 public abstract class FhirGroupExporterR4 {
 
@@ -92,6 +93,7 @@ public abstract class FhirGroupExporterR4 {
 
       try {
         Files.write(outFilePath, Collections.singleton(groupJson), StandardOpenOption.CREATE_NEW);
+        RunMetrics.recordFileWritten(outFilePath);
       } catch (IOException e) {
         e.printStackTrace();
       }
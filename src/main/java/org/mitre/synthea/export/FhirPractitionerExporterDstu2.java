@@ -8,13 +8,10 @@ import ca.uhn.fhir.model.dstu2.valueset.BundleTypeEnum;
 import ca.uhn.fhir.model.primitive.IntegerDt;
 import ca.uhn.fhir.parser.IParser;
 
-import com.google.common.collect.Table;
-
 import java.io.File;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import org.mitre.synthea.helpers.Config;
 import org.mitre.synthea.world.agents.Clinician;
@@ -39,9 +36,7 @@ public abstract class FhirPractitionerExporterDstu2 {
       }
       for (Provider h : Provider.getProviderList()) {
         // filter - exports only those hospitals in use
-        Table<Integer, String, AtomicInteger> utilization = h.getUtilization();
-        int totalEncounters = utilization.column(Provider.ENCOUNTERS).values().stream()
-            .mapToInt(ai -> ai.get()).sum();
+        int totalEncounters = h.getTotalEncounters();
         if (totalEncounters > 0) {
           Map<String, ArrayList<Clinician>> clinicians = h.clinicianMap;
           for (String specialty : clinicians.keySet()) {
@@ -2,13 +2,10 @@ package org.mitre.synthea.export;
 
 import ca.uhn.fhir.parser.IParser;
 
-import com.google.common.collect.Table;
-
 import java.io.File;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.Bundle.BundleEntryComponent;
@@ -43,9 +40,7 @@ public abstract class FhirPractitionerExporterR4 {
       for (Provider h : Provider.getProviderList()) {
         // filter - exports only those hospitals in use
 
-        Table<Integer, String, AtomicInteger> utilization = h.getUtilization();
-        int totalEncounters = utilization.column(Provider.ENCOUNTERS).values().stream()
-            .mapToInt(ai -> ai.get()).sum();
+        int totalEncounters = h.getTotalEncounters();
         if (totalEncounters > 0) {
           Map<String, ArrayList<Clinician>> clinicians = h.clinicianMap;
           for (String specialty : clinicians.keySet()) {
@@ -1,6 +1,7 @@
 package org.mitre.synthea.export;
 
 import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
 
 import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.Table;
@@ -169,6 +170,10 @@ public class FhirR4 {
   // HAPI FHIR warns that the context creation is expensive, and should be performed
   // per-application, not per-record
   private static final FhirContext FHIR_CTX = FhirContext.forR4();
+  // HAPI FHIR parsers are not thread safe, but are costly enough to create that each thread
+  // reuses its own
+  private static final ThreadLocal<IParser> JSON_PARSER =
+      ThreadLocal.withInitial(() -> FHIR_CTX.newJsonParser());
 
   private static final String SNOMED_URI = "http://snomed.info/sct";
   private static final String LOINC_URI = "http://loinc.org";
@@ -396,6 +401,19 @@ public class FhirR4 {
     return FHIR_CTX;
   }
 
+  /**
+   * Get the JSON parser of the current thread. The parser must not be shared with other
+   * threads, and is reset to the given pretty printing setting on each call.
+   *
+   * @param prettyPrint Whether the parser should pretty print its output
+   * @return The JSON parser of the current thread
+   */
+  public static IParser getJsonParser(boolean prettyPrint) {
+    IParser parser = JSON_PARSER.get();
+    parser.setPrettyPrint(prettyPrint);
+    return parser;
+  }
+
   /**
    * Convert the given Person into a FHIR Bundle of the Patient and the
    * associated entries from their health record.
@@ -535,12 +553,23 @@ public class FhirR4 {
    *     record
    */
   public static String convertToFHIRJson(Person person, long stopTime) {
-    Bundle bundle = convertToFHIR(person, stopTime);
     Boolean pretty = Config.getAsBoolean("exporter.pretty_print", true);
-    String bundleJson = FHIR_CTX.newJsonParser().setPrettyPrint(pretty)
-        .encodeResourceToString(bundle);
+    return convertToFHIRJson(person, stopTime, pretty);
+  }
 
-    return bundleJson;
+  /**
+   * Convert the given Person into a JSON String, containing a FHIR Bundle of the Person and the
+   * associated entries from their health record.
+   *
+   * @param person Person to generate the FHIR JSON for
+   * @param stopTime Time the simulation ended
+   * @param prettyPrint Whether to pretty print the JSON
+   * @return String containing a JSON representation of a FHIR Bundle containing the Person's
+   *     health record.
+   */
+  public static String convertToFHIRJson(Person person, long stopTime, boolean prettyPrint) {
+    Bundle bundle = convertToFHIR(person, stopTime);
+    return getJsonParser(prettyPrint).encodeResourceToString(bundle);
   }
 
   /**
@@ -2207,7 +2236,7 @@ public class FhirR4 {
     if (clinician.getEncounterCount() == 0) {
       clinician.incrementEncounters();
     }
-    if (providerOrganization.getUtilization().isEmpty()) {
+    if (!providerOrganization.hasUtilization()) {
       // If this provider has never been used, ensure they have at least one encounter
       // (encounter creating this Provenance record) so that the provider is exported.
       providerOrganization.incrementEncounters(EncounterType.VIRTUAL, Utilities.getYear(stopTime));
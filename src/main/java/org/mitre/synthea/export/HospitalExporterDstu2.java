@@ -8,11 +8,8 @@ import ca.uhn.fhir.model.dstu2.valueset.BundleTypeEnum;
 import ca.uhn.fhir.model.primitive.IntegerDt;
 import ca.uhn.fhir.parser.IParser;
 
-import com.google.common.collect.Table;
-
 import java.io.File;
 import java.nio.file.Path;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import org.mitre.synthea.helpers.Config;
 import org.mitre.synthea.world.agents.Provider;
@@ -35,9 +32,7 @@ public abstract class HospitalExporterDstu2 {
       }
       for (Provider h : Provider.getProviderList()) {
         // filter - exports only those hospitals in use
-        Table<Integer, String, AtomicInteger> utilization = h.getUtilization();
-        int totalEncounters = utilization.column(Provider.ENCOUNTERS).values().stream()
-            .mapToInt(ai -> ai.get()).sum();
+        int totalEncounters = h.getTotalEncounters();
         if (totalEncounters > 0) {
           Entry entry = FhirDstu2.provider(bundle, h);
           addHospitalExtensions(h, (Organization) entry.getResource());
@@ -68,34 +63,29 @@ public abstract class HospitalExporterDstu2 {
    * Add FHIR extensions to capture additional information.
    */
   public static void addHospitalExtensions(Provider h, Organization organizationResource) {
-    Table<Integer, String, AtomicInteger> utilization = h.getUtilization();
     // calculate totals for utilization
-    int totalEncounters = utilization.column(Provider.ENCOUNTERS).values().stream()
-        .mapToInt(ai -> ai.get()).sum();
+    int totalEncounters = h.getTotalEncounters();
     ExtensionDt encountersExtension = new ExtensionDt();
     encountersExtension.setUrl(SYNTHEA_URI + "utilization-encounters-extension");
     IntegerDt encountersValue = new IntegerDt(totalEncounters);
     encountersExtension.setValue(encountersValue);
     organizationResource.addUndeclaredExtension(encountersExtension);
 
-    int totalProcedures = utilization.column(Provider.PROCEDURES).values().stream()
-        .mapToInt(ai -> ai.get()).sum();
+    int totalProcedures = h.getTotalProcedures();
     ExtensionDt proceduresExtension = new ExtensionDt();
     proceduresExtension.setUrl(SYNTHEA_URI + "utilization-procedures-extension");
     IntegerDt proceduresValue = new IntegerDt(totalProcedures);
     proceduresExtension.setValue(proceduresValue);
     organizationResource.addUndeclaredExtension(proceduresExtension);
 
-    int totalLabs = utilization.column(Provider.LABS).values().stream().mapToInt(ai -> ai.get())
-        .sum();
+    int totalLabs = h.getTotalLabs();
     ExtensionDt labsExtension = new ExtensionDt();
     labsExtension.setUrl(SYNTHEA_URI + "utilization-labs-extension");
     IntegerDt labsValue = new IntegerDt(totalLabs);
     labsExtension.setValue(labsValue);
     organizationResource.addUndeclaredExtension(labsExtension);
 
-    int totalPrescriptions = utilization.column(Provider.PRESCRIPTIONS).values().stream()
-        .mapToInt(ai -> ai.get()).sum();
+    int totalPrescriptions = h.getTotalPrescriptions();
     ExtensionDt prescriptionsExtension = new ExtensionDt();
     prescriptionsExtension.setUrl(SYNTHEA_URI + "utilization-prescriptions-extension");
     IntegerDt prescriptionsValue = new IntegerDt(totalPrescriptions);
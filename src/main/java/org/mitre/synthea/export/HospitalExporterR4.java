@@ -2,11 +2,8 @@ package org.mitre.synthea.export;
 
 import ca.uhn.fhir.parser.IParser;
 
-import com.google.common.collect.Table;
-
 import java.io.File;
 import java.nio.file.Path;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.Bundle.BundleEntryComponent;
@@ -37,9 +34,7 @@ public abstract class HospitalExporterR4 {
       }
       for (Provider h : Provider.getProviderList()) {
         // filter - exports only those hospitals in use
-        Table<Integer, String, AtomicInteger> utilization = h.getUtilization();
-        int totalEncounters = utilization.column(Provider.ENCOUNTERS).values().stream()
-            .mapToInt(ai -> ai.get()).sum();
+        int totalEncounters = h.getTotalEncounters();
         if (totalEncounters > 0) {
           BundleEntryComponent entry = FhirR4.provider(bundle, h);
           addHospitalExtensions(h, (Organization) entry.getResource());
@@ -77,31 +72,26 @@ public abstract class HospitalExporterR4 {
    * Add FHIR extensions to capture additional information.
    */
   public static void addHospitalExtensions(Provider h, Organization organizationResource) {
-    Table<Integer, String, AtomicInteger> utilization = h.getUtilization();
     // calculate totals for utilization
-    int totalEncounters = utilization.column(Provider.ENCOUNTERS).values().stream()
-        .mapToInt(ai -> ai.get()).sum();
+    int totalEncounters = h.getTotalEncounters();
     Extension encountersExtension = new Extension(SYNTHEA_URI + "utilization-encounters-extension");
     IntegerType encountersValue = new IntegerType(totalEncounters);
     encountersExtension.setValue(encountersValue);
     organizationResource.addExtension(encountersExtension);
 
-    int totalProcedures = utilization.column(Provider.PROCEDURES).values().stream()
-        .mapToInt(ai -> ai.get()).sum();
+    int totalProcedures = h.getTotalProcedures();
     Extension proceduresExtension = new Extension(SYNTHEA_URI + "utilization-procedures-extension");
     IntegerType proceduresValue = new IntegerType(totalProcedures);
     proceduresExtension.setValue(proceduresValue);
     organizationResource.addExtension(proceduresExtension);
 
-    int totalLabs = utilization.column(Provider.LABS).values().stream().mapToInt(ai -> ai.get())
-        .sum();
+    int totalLabs = h.getTotalLabs();
     Extension labsExtension = new Extension(SYNTHEA_URI + "utilization-labs-extension");
     IntegerType labsValue = new IntegerType(totalLabs);
     labsExtension.setValue(labsValue);
     organizationResource.addExtension(labsExtension);
 
-    int totalPrescriptions = utilization.column(Provider.PRESCRIPTIONS).values().stream()
-        .mapToInt(ai -> ai.get()).sum();
+    int totalPrescriptions = h.getTotalPrescriptions();
     Extension prescriptionsExtension = new Extension(
         SYNTHEA_URI + "utilization-prescriptions-extension");
     IntegerType prescriptionsValue = new IntegerType(totalPrescriptions);
@@ -9,12 +9,21 @@ import com.google.gson.JsonObject;
 import com.google.gson.JsonPrimitive;
 import com.google.gson.JsonSerializationContext;
 import com.google.gson.JsonSerializer;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Type;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.mitre.synthea.engine.State;
 import org.mitre.synthea.helpers.Config;
@@ -27,6 +36,11 @@ import org.mitre.synthea.world.agents.Person;
  * In other words, it's pretty close to an object dump.
  */
 public class JSONExporter {
+  /**
+   * Gson instances are thread safe but expensive to build, so one is built for each
+   * combination of the settings that affect the export, and shared by everyone.
+   */
+  private static final Map<List<Boolean>, Gson> GSON = new ConcurrentHashMap<>();
 
   /**
    * Export the given Person object into a String full of JSON.
@@ -34,20 +48,57 @@ public class JSONExporter {
    * @return a lot of JSON in a String
    */
   public static String export(Person person) {
+    return getGson(Config.getAsBoolean("exporter.pretty_print", true)).toJson(person);
+  }
+
+  /**
+   * Export the given Person object as JSON to a Writer, as it is serialized, rather than
+   * building the whole document in memory first. The Writer is flushed but not closed.
+   * @param person to export
+   * @param writer to write the JSON to
+   * @throws IOException if the JSON cannot be written
+   */
+  public static void export(Person person, Writer writer) throws IOException {
+    Gson gson = getGson(Config.getAsBoolean("exporter.pretty_print", true));
+    JsonWriter jsonWriter = gson.newJsonWriter(writer);
+    gson.toJson(person, Person.class, jsonWriter);
+    jsonWriter.flush();
+  }
+
+  /**
+   * Export the given Person object as a single line of JSON, for a newline delimited JSON
+   * (NDJSON) file of the whole population.
+   * @param person to export
+   * @return the JSON, without any line breaks
+   */
+  public static String exportLine(Person person) {
+    return getGson(false).toJson(person);
+  }
+
+  /**
+   * Get the shared Gson for the current exporter.json.include_module_history setting.
+   * @param prettyPrint whether to pretty print the JSON
+   * @return the Gson
+   */
+  static Gson getGson(boolean prettyPrint) {
+    boolean includeModuleHistory = Config.getAsBoolean("exporter.json.include_module_history");
+    return GSON.computeIfAbsent(List.of(includeModuleHistory, prettyPrint),
+        k -> buildGson(includeModuleHistory, prettyPrint));
+  }
+
+  private static Gson buildGson(boolean includeModuleHistory, boolean prettyPrint) {
     GsonBuilder builder = new GsonBuilder()
         .excludeFieldsWithModifiers(Modifier.STATIC, Modifier.TRANSIENT, Modifier.VOLATILE)
         .addSerializationExclusionStrategy(new SyntheaExclusionStrategy())
         .registerTypeHierarchyAdapter(State.class, new StateSerializer())
-        .registerTypeHierarchyAdapter(Person.class,
-            new PersonSerializer(!Config.getAsBoolean("exporter.json.include_module_history")))
+        .registerTypeAdapterFactory(new PersonAdapterFactory(includeModuleHistory))
         .registerTypeHierarchyAdapter(Payer.class, new ShortPayerSerializer())
         .registerTypeHierarchyAdapter(Random.class, new RandomSerializer())
         .registerTypeHierarchyAdapter(LocalDate.class, new LocalDateSerializer());
-    if (Config.getAsBoolean("exporter.pretty_print", true)) {
+    if (prettyPrint) {
       builder.setPrettyPrinting();
     }
-    Gson gson = builder.create();
-    return gson.toJson(person);
+    return builder.create();
   }
 
   /**
@@ -81,50 +132,109 @@ public class JSONExporter {
     }
   }
 
-  public static class PersonSerializer implements JsonSerializer<Person> {
-    private boolean includeModuleHistory;
+  /**
+   * Creates the PersonAdapter, which needs the Gson it belongs to in order to write the
+   * values within a Person, and the adapter Gson would otherwise use to read them.
+   */
+  public static class PersonAdapterFactory implements TypeAdapterFactory {
+    private final boolean includeModuleHistory;
+
+    public PersonAdapterFactory(boolean includeModuleHistory) {
+      this.includeModuleHistory = includeModuleHistory;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+      if (!Person.class.isAssignableFrom(type.getRawType())) {
+        return null;
+      }
+      TypeAdapter<Person> reader =
+          (TypeAdapter<Person>) gson.getDelegateAdapter(this, type);
+      return (TypeAdapter<T>) new PersonAdapter(gson, includeModuleHistory, reader);
+    }
+  }
+
+  /**
+   * Writes a Person directly to the output as it goes, rather than building a tree of the
+   * whole record in memory first. Only writing is customized: reading is left to the adapter
+   * Gson would use without this one.
+   */
+  public static class PersonAdapter extends TypeAdapter<Person> {
+    private final Gson gson;
+    private final boolean includeModuleHistory;
+    private final TypeAdapter<Person> reader;
 
-    public PersonSerializer(boolean includeModuleHistory) {
+    /**
+     * Create the adapter.
+     * @param gson the Gson this adapter belongs to, which writes the values within a Person
+     * @param includeModuleHistory whether to include the history of each module
+     * @param reader the adapter that reads a Person
+     */
+    public PersonAdapter(Gson gson, boolean includeModuleHistory, TypeAdapter<Person> reader) {
+      this.gson = gson;
       this.includeModuleHistory = includeModuleHistory;
+      this.reader = reader;
     }
 
     @Override
-    public JsonElement serialize(Person src, Type typeOfSrc, JsonSerializationContext context) {
-      JsonObject personOut = new JsonObject();
-      personOut.add("seed", new JsonPrimitive(src.getSeed()));
-      personOut.add("lastUpdated", new JsonPrimitive(src.lastUpdated));
-      personOut.add("coverage", context.serialize(src.coverage));
-      personOut.add("symptoms", context.serialize(src.getExpressedSymptoms()));
-      JsonObject attributes = new JsonObject();
-      src.attributes.forEach((key, value) -> {
+    public void write(JsonWriter out, Person src) throws IOException {
+      if (src == null) {
+        out.nullValue();
+        return;
+      }
+      out.beginObject();
+      out.name("seed").value(src.getSeed());
+      out.name("lastUpdated").value(src.lastUpdated);
+      writeValue(out, "coverage", src.coverage);
+      writeValue(out, "symptoms", src.getExpressedSymptoms());
+      out.name("attributes");
+      out.beginObject();
+      for (Map.Entry<String, Object> entry : src.attributes.entrySet()) {
+        String key = entry.getKey();
         boolean keepEntry = true;
         if (key.startsWith("ehr_") || key.contains("lookup") || key.contains("UUID")) {
           keepEntry = false;
-        } else if (this.includeModuleHistory && isModuleHistory(value)) {
+        } else if (!this.includeModuleHistory && isModuleHistory(entry.getValue())) {
           keepEntry = false;
         }
 
         if (keepEntry) {
-          attributes.add(key, context.serialize(value));
+          writeValue(out, key, entry.getValue());
         }
-      });
-      personOut.add("attributes", attributes);
+      }
+      out.endObject();
       if (src.hasMultipleRecords) {
-        personOut.add("records", context.serialize(src.records));
+        writeValue(out, "records", src.records);
+      } else {
+        writeValue(out, "record", src.record);
+      }
+      out.endObject();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writeValue(JsonWriter out, String name, Object value) throws IOException {
+      out.name(name);
+      if (value == null) {
+        out.nullValue();
       } else {
-        personOut.add("record", context.serialize(src.record));
+        ((TypeAdapter<Object>) gson.getAdapter(value.getClass())).write(out, value);
       }
-      return personOut;
     }
 
     private boolean isModuleHistory(Object obj) {
-      if (List.class.isAssignableFrom(obj.getClass())) {
+      if (obj != null && List.class.isAssignableFrom(obj.getClass())) {
         List things = (List) obj;
         return things.stream().allMatch(t -> State.class.isAssignableFrom(t.getClass()));
       }
 
       return false;
     }
+
+    @Override
+    public Person read(JsonReader in) throws IOException {
+      return reader.read(in);
+    }
   }
 
   public static class StateSerializer implements JsonSerializer<State> {
@@ -17,6 +17,7 @@ import java.util.TimeZone;
 
 import org.mitre.synthea.engine.Generator;
 import org.mitre.synthea.helpers.Config;
+import org.mitre.synthea.helpers.RunMetrics;
 import org.mitre.synthea.helpers.Utilities;
 import org.mitre.synthea.world.agents.PayerManager;
 import org.mitre.synthea.world.agents.Provider;
@@ -143,5 +144,6 @@ public class MetadataExporter {
     Path outputFile = outputDirectory.toPath().resolve(filename + ".json");
 
     Files.write(outputFile, Collections.singleton(json), StandardOpenOption.CREATE_NEW);
+    RunMetrics.recordFileWritten(outputFile);
   }
 }
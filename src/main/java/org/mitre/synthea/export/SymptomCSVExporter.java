@@ -13,6 +13,7 @@ import java.util.Map;
 
 import org.mitre.synthea.engine.ExpressedConditionRecord.ConditionWithSymptoms;
 import org.mitre.synthea.helpers.Config;
+import org.mitre.synthea.helpers.RunMetrics;
 import org.mitre.synthea.helpers.Utilities;
 import org.mitre.synthea.world.agents.Person;
 
@@ -63,7 +64,8 @@ public class SymptomCSVExporter {
       boolean append = Config.getAsBoolean("exporter.symptoms.csv.append_mode");
       append = append && symptomsFile.exists();
 
-      symptoms = new OutputStreamWriter(new FileOutputStream(symptomsFile, append), charset);
+      symptoms = new OutputStreamWriter(
+          RunMetrics.countBytesWritten(new FileOutputStream(symptomsFile, append)), charset);
 
       if (!append) {
         writeCSVHeaders();
@@ -15,6 +15,7 @@ import java.util.Map;
 import org.apache.commons.text.WordUtils;
 import org.mitre.synthea.engine.ExpressedConditionRecord.ConditionWithSymptoms;
 import org.mitre.synthea.helpers.Config;
+import org.mitre.synthea.helpers.RunMetrics;
 import org.mitre.synthea.helpers.Utilities;
 import org.mitre.synthea.world.agents.Person;
 
@@ -136,6 +137,7 @@ public class SymptomTextExporter {
     File outDirectory = Exporter.getOutputFolder("symptoms/text", person);
     Path outFilePath = outDirectory.toPath().resolve(Exporter.filename(person, fileTag, "txt"));
     Files.write(outFilePath, textRecord, StandardOpenOption.CREATE_NEW);
+    RunMetrics.recordFileWritten(outFilePath);
   }
 
   /**
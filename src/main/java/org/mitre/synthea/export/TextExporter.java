@@ -15,6 +15,7 @@ import java.util.LinkedList;
 import java.util.List;
 
 import org.apache.commons.text.WordUtils;
+import org.mitre.synthea.helpers.RunMetrics;
 import org.mitre.synthea.world.agents.Clinician;
 import org.mitre.synthea.world.agents.Person;
 import org.mitre.synthea.world.concepts.HealthRecord.CarePlan;
@@ -275,6 +276,7 @@ public class TextExporter {
     File outDirectory = Exporter.getOutputFolder("text", person);
     Path outFilePath = outDirectory.toPath().resolve(Exporter.filename(person, fileTag, "txt"));
     Files.write(outFilePath, textRecord, StandardOpenOption.CREATE_NEW);
+    RunMetrics.recordFileWritten(outFilePath);
   }
 
   /**
@@ -358,6 +360,7 @@ public class TextExporter {
       Path outFilePath2 = outDirectory2.toPath().resolve(Exporter.filename(person,
           Integer.toString(encounterNumber), "txt"));
       Files.write(outFilePath2, textRecord, StandardOpenOption.CREATE_NEW);
+      RunMetrics.recordFileWritten(outFilePath2);
     }
   }
 
@@ -0,0 +1,102 @@
+package org.mitre.synthea.helpers;
+
+import java.io.Serializable;
+
+/**
+ * Alias table for sampling from a discrete, weighted distribution in constant time,
+ * using Vose's construction of Walker's alias method.
+ *
+ * <p>The n outcomes are arranged into n equally likely columns. Each column holds its own
+ * outcome with some probability and an "alias" outcome otherwise, so one sample takes one
+ * array lookup and one comparison, no matter how many outcomes there are. Unlike a search of
+ * cumulative weights, the outcome picked for a given random value is not monotonic in that
+ * value, so for the same seed an alias table picks different outcomes than a cumulative
+ * search does, though with the same probabilities.</p>
+ */
+public class AliasTable implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  /** Probability that each column picks its own outcome rather than its alias. */
+  private final double[] probability;
+  /** The alternative outcome of each column. */
+  private final int[] alias;
+
+  /**
+   * Build an alias table for the given weights.
+   * @param weights The non-negative weight of each outcome. At least one must be positive.
+   */
+  public AliasTable(double[] weights) {
+    int n = weights.length;
+    double total = 0;
+    for (double weight : weights) {
+      if (weight < 0 || Double.isNaN(weight)) {
+        throw new IllegalArgumentException("Invalid weight: " + weight);
+      }
+      total += weight;
+    }
+    if (n == 0 || total <= 0) {
+      throw new IllegalArgumentException("At least one weight must be positive.");
+    }
+
+    probability = new double[n];
+    alias = new int[n];
+    double[] scaled = new double[n];
+    int[] small = new int[n];
+    int[] large = new int[n];
+    int smallCount = 0;
+    int largeCount = 0;
+    for (int i = 0; i < n; i++) {
+      scaled[i] = weights[i] * n / total;
+      alias[i] = i;
+      if (scaled[i] < 1.0) {
+        small[smallCount++] = i;
+      } else {
+        large[largeCount++] = i;
+      }
+    }
+    while (smallCount > 0 && largeCount > 0) {
+      int less = small[--smallCount];
+      int more = large[--largeCount];
+      probability[less] = scaled[less];
+      alias[less] = more;
+      // the larger outcome gives up the remainder of the column to the smaller one
+      scaled[more] = (scaled[more] + scaled[less]) - 1.0;
+      if (scaled[more] < 1.0) {
+        small[smallCount++] = more;
+      } else {
+        large[largeCount++] = more;
+      }
+    }
+    // anything left over is within rounding error of a full column
+    while (largeCount > 0) {
+      probability[large[--largeCount]] = 1.0;
+    }
+    while (smallCount > 0) {
+      probability[small[--smallCount]] = 1.0;
+    }
+  }
+
+  /**
+   * The number of outcomes in this table.
+   * @return the number of outcomes.
+   */
+  public int size() {
+    return probability.length;
+  }
+
+  /**
+   * Pick an outcome. A single uniform value is used both to pick the column and to pick
+   * between the column's outcome and its alias, so each sample consumes exactly one random
+   * number, the same as a search of cumulative weights.
+   * @param value A uniformly distributed random value in [0, 1).
+   * @return The index of the picked outcome.
+   */
+  public int sample(double value) {
+    double scaled = value * probability.length;
+    int column = (int) scaled;
+    if (column >= probability.length) {
+      column = probability.length - 1;
+    }
+    return (scaled - column < probability[column]) ? column : alias[column];
+  }
+}
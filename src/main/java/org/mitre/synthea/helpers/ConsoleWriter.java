@@ -0,0 +1,162 @@
+package org.mitre.synthea.helpers;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Prints text to the console on a background thread, so that the threads simulating people
+ * never wait for the console or for each other. Each call to print is written in one piece,
+ * so all the lines logged for a person stay together.
+ *
+ * <p>With a limit on the number of entries per second, entries over the limit are skipped,
+ * as are entries that arrive while the queue is full, and the number skipped is printed
+ * instead. Without a limit, nothing is skipped and print waits when the queue is full.</p>
+ */
+public class ConsoleWriter {
+  private static final int QUEUE_CAPACITY = 1024;
+  private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  private final BlockingQueue<String> queue = new ArrayBlockingQueue<String>(QUEUE_CAPACITY);
+  private final int maxPerSecond;
+  /** Entries that were accepted but are not yet printed or skipped. */
+  private final AtomicLong pending = new AtomicLong();
+  /** Entries skipped since the last time the number skipped was printed. */
+  private final AtomicLong skipped = new AtomicLong();
+  private final AtomicLong totalSkipped = new AtomicLong();
+  private final Object idle = new Object();
+  private Thread thread;
+
+  /**
+   * Create a console writer. The background thread is started when there is something to
+   * print, and stops after a second with nothing to print.
+   * @param maxPerSecond The maximum number of entries printed per second, or 0 for no limit.
+   */
+  public ConsoleWriter(int maxPerSecond) {
+    this.maxPerSecond = maxPerSecond;
+  }
+
+  /**
+   * Queue text to be printed. The text should end with a line separator.
+   * @param text The text to print.
+   */
+  public void print(String text) {
+    accept();
+    if (maxPerSecond > 0) {
+      if (!queue.offer(text)) {
+        skip();
+        done();
+      }
+    } else {
+      try {
+        queue.put(text);
+      } catch (InterruptedException e) {
+        done();
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private synchronized void accept() {
+    // counted here so the thread cannot stop between this and the text being queued
+    pending.incrementAndGet();
+    if (thread == null) {
+      thread = new Thread(this::write, "synthea-console");
+      thread.setDaemon(true);
+      thread.start();
+    }
+  }
+
+  private void write() {
+    long windowStart = System.nanoTime();
+    int windowCount = 0;
+    while (true) {
+      String text;
+      try {
+        text = queue.poll(1, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        synchronized (this) {
+          thread = null;
+        }
+        return;
+      }
+      long now = System.nanoTime();
+      if (now - windowStart >= SECOND) {
+        windowStart = now;
+        windowCount = 0;
+        printSkipped();
+      }
+      if (text == null) {
+        synchronized (this) {
+          if (pending.get() == 0) {
+            thread = null;
+            return;
+          }
+        }
+      } else {
+        if (maxPerSecond > 0 && windowCount >= maxPerSecond) {
+          skip();
+        } else {
+          windowCount++;
+          System.out.print(text);
+        }
+        done();
+      }
+    }
+  }
+
+  private void skip() {
+    skipped.incrementAndGet();
+    totalSkipped.incrementAndGet();
+  }
+
+  private void done() {
+    if (pending.decrementAndGet() == 0) {
+      synchronized (idle) {
+        idle.notifyAll();
+      }
+    }
+  }
+
+  private void printSkipped() {
+    long count = skipped.getAndSet(0);
+    if (count > 0) {
+      System.out.format("... %d more not shown\n", count);
+    }
+  }
+
+  /**
+   * Wait until everything queued so far has been printed or skipped, then print the number
+   * skipped.
+   */
+  public void flush() {
+    synchronized (idle) {
+      while (pending.get() > 0) {
+        try {
+          idle.wait(100);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+    }
+    printSkipped();
+  }
+
+  /**
+   * The number of entries waiting to be printed.
+   * @return the queue depth
+   */
+  public int getQueueDepth() {
+    return queue.size();
+  }
+
+  /**
+   * The number of entries skipped because of the rate limit or a full queue.
+   * @return the total number skipped
+   */
+  public long getSkipped() {
+    return totalSkipped.get();
+  }
+}
@@ -0,0 +1,49 @@
+package org.mitre.synthea.helpers;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tracks the keys of things that have already been exported, such as the practitioners and
+ * organizations that are referenced by many records but should only be written once.
+ *
+ * <p>Checking and registering a key takes constant time, however many keys have been
+ * registered, and is safe to do from many threads: if several threads register the same key
+ * at the same time, exactly one of them is told that it is new.</p>
+ */
+public class DedupRegistry {
+  private final Set<String> keys = ConcurrentHashMap.newKeySet();
+
+  /**
+   * Register a key.
+   * @param key The key, for example an NPI.
+   * @return true if the key had not been registered before, so the caller should export it.
+   */
+  public boolean register(String key) {
+    return keys.add(key);
+  }
+
+  /**
+   * Whether a key has been registered.
+   * @param key The key.
+   * @return true if the key has been registered.
+   */
+  public boolean contains(String key) {
+    return keys.contains(key);
+  }
+
+  /**
+   * The number of keys registered.
+   * @return the number of keys.
+   */
+  public int size() {
+    return keys.size();
+  }
+
+  /**
+   * Forget every key.
+   */
+  public void clear() {
+    keys.clear();
+  }
+}
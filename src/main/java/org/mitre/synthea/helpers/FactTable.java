@@ -1,9 +1,13 @@
 package org.mitre.synthea.helpers;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.io.Writer;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -11,6 +15,15 @@ import java.util.concurrent.atomic.AtomicInteger;
  * Fact Tables. If you have a "table" where each row is a fact or
  * lookup table where a value should be referenced by an ID, you
  * can add these keys and facts to this table and get back the ID.
+ *
+ * <p>Each table is safe to use from many threads without locking: looking up an existing key
+ * never blocks, and a new key is assigned the next ID exactly once, however many threads add
+ * it at the same time. Tables do not share any locks with each other.</p>
+ *
+ * <p>A table can optionally stream each fact to its file as soon as it is first added, rather
+ * than keeping every fact in memory until the table is written. Only the IDs of the keys are
+ * then kept in memory, unless the table is told to keep its facts because they are read
+ * back while exporting.</p>
  */
 public class FactTable {
   /**
@@ -20,13 +33,29 @@ public class FactTable {
   /** Table column headers. Comma-separated. */
   private String header;
   /** This is the ID sequence generator. */
-  private AtomicInteger id;
-  /** Lookup the ID for a key. */
-  private Map<String,Integer> keys;
+  private final AtomicInteger id;
+  /** Lookup the fact for a key. */
+  private final Map<String, Fact> keys;
   /** Lookup the fact by ID. */
-  private Map<Integer,String> facts;
-  /** Synchronization lock. */
-  private static final Object LOCK = new Object();
+  private final Map<Integer, Fact> facts;
+  /** The writer new facts are streamed to, or null if facts are kept until written. */
+  private volatile Writer stream;
+  /** Whether facts are kept in memory even when they are streamed. */
+  private volatile boolean keepFacts;
+
+  /**
+   * A fact and its ID. The fact itself is not kept when the table is streamed, unless the
+   * table keeps its facts.
+   */
+  private static class Fact {
+    final int id;
+    final String fact;
+
+    Fact(int id, String fact) {
+      this.id = id;
+      this.fact = fact;
+    }
+  }
 
   /**
    * Create a FactTable with an ID that starts at 1
@@ -34,8 +63,8 @@ public class FactTable {
    */
   public FactTable() {
     id = new AtomicInteger(1);
-    keys = new HashMap<String,Integer>();
-    facts = new HashMap<Integer,String>();
+    keys = new ConcurrentHashMap<String, Fact>();
+    facts = new ConcurrentHashMap<Integer, Fact>();
   }
 
   /**
@@ -43,9 +72,7 @@ public class FactTable {
    * @param id The value of the next ID.
    */
   public void setNextId(int id) {
-    synchronized (LOCK) {
-      this.id = new AtomicInteger(id);
-    }
+    this.id.set(id);
   }
 
   /**
@@ -62,32 +89,29 @@ public class FactTable {
    * @return The ID for the fact. For example, 1 or 2.
    */
   public int getFactId(String key) {
-    synchronized (LOCK) {
-      return keys.get(key);
-    }
+    return keys.get(key).id;
   }
 
   /**
    * Get the fact for a given key.
    * @param key The key for a fact. For example, 'M' or 'F'.
-   * @return The fact. For example, 'Male' or 'Female'.
+   * @return The fact. For example, 'Male' or 'Female'. Null if the key is not in the table,
+   *     or if the table is being streamed without keeping its facts.
    */
   public String getFactByKey(String key) {
-    synchronized (LOCK) {
-      Integer id = keys.get(key);
-      return facts.get(id);
-    }
+    Fact fact = keys.get(key);
+    return fact == null ? null : fact.fact;
   }
 
   /**
    * Get the fact for a given key.
    * @param id The ID for the fact. For example, 1 or 2.
-   * @return The fact. For example, 'Male' or 'Female'.
+   * @return The fact. For example, 'Male' or 'Female'. Null if the ID is not in the table,
+   *     or if the table is being streamed without keeping its facts.
    */
   public String getFactById(Integer id) {
-    synchronized (LOCK) {
-      return facts.get(id);
-    }
+    Fact fact = facts.get(id);
+    return fact == null ? null : fact.fact;
   }
 
   /**
@@ -101,15 +125,81 @@ public class FactTable {
    * @return The ID for the fact. For example, 1 or 2.
    */
   public int addFact(String key, String fact) {
-    synchronized (LOCK) {
-      if (keys.containsKey(key)) {
-        return keys.get(key);
+    Fact existing = keys.get(key);
+    if (existing != null) {
+      return existing.id;
+    }
+    return keys.computeIfAbsent(key, k -> newFact(fact)).id;
+  }
+
+  private Fact newFact(String fact) {
+    Writer writer = stream;
+    boolean keep = writer == null || keepFacts;
+    Fact newFact = new Fact(id.getAndIncrement(), keep ? fact : null);
+    if (keep) {
+      facts.put(newFact.id, newFact);
+    }
+    if (writer != null) {
+      try {
+        synchronized (writer) {
+          writeFact(writer, newFact.id, fact);
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
       }
+    }
+    return newFact;
+  }
+
+  private static void writeFact(Writer writer, int id, String fact) throws IOException {
+    writer.write(Integer.toString(id));
+    writer.write(',');
+    if (fact != null) {
+      writer.write(fact);
+    }
+    writer.write(NEWLINE);
+  }
 
-      int next = id.getAndIncrement();
-      keys.put(key, next);
-      facts.put(next, fact);
-      return next;
+  /**
+   * Stream the contents of the FactTable to a file: the header and any facts already in the
+   * table are written now, and each new fact is written as soon as it is added. Facts are
+   * then no longer kept in memory. This must be called before facts are added by other
+   * threads. Call {@link #flush()} when every fact has been added.
+   * @param writer The open Writer to use to record the FactTable.
+   * @throws IOException On errors.
+   */
+  public void streamTo(Writer writer) throws IOException {
+    write(writer);
+    stream = writer;
+  }
+
+  /**
+   * Keep the facts in memory even when the table is streamed, so that they can still be
+   * looked up with {@link #getFactById(Integer)} and {@link #getFactByKey(String)}.
+   * Call this before {@link #streamTo(Writer)} for tables whose facts are read back.
+   */
+  public void keepFacts() {
+    keepFacts = true;
+  }
+
+  /**
+   * Whether the table is being streamed to a file.
+   * @return true if {@link #streamTo(Writer)} has been called.
+   */
+  public boolean isStreaming() {
+    return stream != null;
+  }
+
+  /**
+   * Flush the facts streamed so far to the file.
+   * @throws IOException On errors.
+   */
+  public void flush() throws IOException {
+    Writer writer = stream;
+    if (writer != null) {
+      synchronized (writer) {
+        writer.flush();
+      }
     }
   }
 
@@ -119,19 +209,13 @@ public class FactTable {
    * @throws IOException On errors.
    */
   public void write(Writer writer) throws IOException {
-    synchronized (LOCK) {
-      writer.write(header);
-      writer.write(NEWLINE);
-      for (Integer key : facts.keySet()) {
-        writer.write(key.toString());
-        writer.write(',');
-        String fact = facts.get(key);
-        if (fact != null) {
-          writer.write(facts.get(key));
-        }
-        writer.write(NEWLINE);
-      }
-      writer.flush();
+    List<Fact> sorted = new ArrayList<>(facts.values());
+    sorted.sort(Comparator.comparingInt(f -> f.id));
+    writer.write(header);
+    writer.write(NEWLINE);
+    for (Fact fact : sorted) {
+      writeFact(writer, fact.id, fact.fact);
     }
+    writer.flush();
   }
 }
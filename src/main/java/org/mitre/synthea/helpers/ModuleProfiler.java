@@ -0,0 +1,272 @@
+package org.mitre.synthea.helpers;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.mitre.synthea.engine.Module;
+import org.mitre.synthea.export.Exporter;
+import org.mitre.synthea.world.agents.Person;
+
+/**
+ * Profiles where simulation time and memory go, per module and per type of state.
+ * Each thread keeps its own counters, so recording a call needs no locking, and the
+ * counters of every thread are merged when the metrics are exported at the end of the run.
+ *
+ * <p>Times are self times: the time of a module excludes the submodules it calls, and the
+ * time of a state type excludes the states run inside it (e.g. by a CallSubmodule state).
+ * Allocated bytes are only recorded when the JVM supports per-thread allocation counting,
+ * otherwise they are reported as -1.</p>
+ */
+public abstract class ModuleProfiler {
+  /** Whether to profile the modules. */
+  public static boolean enabled = Config.getAsBoolean("generate.profile_modules", false);
+
+  private static final com.sun.management.ThreadMXBean ALLOCATIONS = allocationBean();
+  /** The profiles of every thread that has recorded anything since the last reset. */
+  private static final Queue<Profile> PROFILES = new ConcurrentLinkedQueue<Profile>();
+  /** Replaced on reset, so threads that outlive a run register a new profile. */
+  private static volatile ThreadLocal<Profile> threadProfile = newThreadProfile();
+
+  private static ThreadLocal<Profile> newThreadProfile() {
+    return ThreadLocal.withInitial(() -> {
+      Profile profile = new Profile();
+      PROFILES.add(profile);
+      return profile;
+    });
+  }
+
+  private static com.sun.management.ThreadMXBean allocationBean() {
+    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean) {
+      com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+      if (sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled()) {
+        return sunBean;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Whether allocated bytes are being recorded.
+   * @return true if the JVM supports per-thread allocation counting
+   */
+  public static boolean allocationsSupported() {
+    return ALLOCATIONS != null;
+  }
+
+  private static long allocatedBytes() {
+    return ALLOCATIONS == null ? 0L : ALLOCATIONS.getCurrentThreadAllocatedBytes();
+  }
+
+  /**
+   * Process a module for a person, profiling it when profiling is enabled.
+   * @param module The module.
+   * @param person The person being simulated.
+   * @param time The current simulation time.
+   * @return whether the module completed, as returned by Module.process
+   */
+  public static boolean process(Module module, Person person, long time) {
+    if (!enabled) {
+      return module.process(person, time);
+    }
+    Profile profile = threadProfile.get();
+    profile.modules.enter();
+    try {
+      return module.process(person, time);
+    } finally {
+      profile.modules.exit(profile.moduleCounter(module.submodule
+          ? module.submoduleName : module.name));
+    }
+  }
+
+  /**
+   * Track entering a state. Must be followed by exitState on the same thread.
+   */
+  public static void enterState() {
+    threadProfile.get().states.enter();
+  }
+
+  /**
+   * Track exiting a state.
+   * @param type The type of the state.
+   */
+  public static void exitState(Class<?> type) {
+    Profile profile = threadProfile.get();
+    profile.states.exit(profile.stateCounter(type));
+  }
+
+  /**
+   * Merge the counters of every thread.
+   * @param modules Whether to merge the module counters, or the state counters.
+   * @return counters by name, sorted by descending time
+   */
+  static List<Map.Entry<String, Counter>> merge(boolean modules) {
+    Map<String, Counter> merged = new HashMap<String, Counter>();
+    for (Profile profile : PROFILES) {
+      if (modules) {
+        for (Map.Entry<String, Counter> entry : profile.moduleCounters.entrySet()) {
+          merged.computeIfAbsent(entry.getKey(), k -> new Counter()).add(entry.getValue());
+        }
+      } else {
+        for (Map.Entry<Class<?>, Counter> entry : profile.stateCounters.entrySet()) {
+          merged.computeIfAbsent(entry.getKey().getSimpleName(), k -> new Counter())
+              .add(entry.getValue());
+        }
+      }
+    }
+    List<Map.Entry<String, Counter>> sorted =
+        new ArrayList<Map.Entry<String, Counter>>(merged.entrySet());
+    sorted.sort((a, b) -> Long.compare(b.getValue().nanos, a.getValue().nanos));
+    return sorted;
+  }
+
+  /**
+   * The number of threads that have recorded anything since the last reset.
+   * @return the number of threads
+   */
+  static int threads() {
+    return PROFILES.size();
+  }
+
+  /**
+   * Discard the profiles of every thread. Only call this when no simulation is running.
+   */
+  public static void reset() {
+    threadProfile = newThreadProfile();
+    PROFILES.clear();
+  }
+
+  private static JsonArray toJson(List<Map.Entry<String, Counter>> counters) {
+    JsonArray array = new JsonArray();
+    for (Map.Entry<String, Counter> entry : counters) {
+      Counter counter = entry.getValue();
+      JsonObject json = new JsonObject();
+      json.addProperty("name", entry.getKey());
+      json.addProperty("calls", counter.calls);
+      json.addProperty("total_ms", counter.nanos / 1_000_000.0);
+      json.addProperty("mean_ns", counter.calls == 0 ? 0 : counter.nanos / counter.calls);
+      json.addProperty("allocated_bytes", allocationsSupported() ? counter.bytes : -1);
+      array.add(json);
+    }
+    return array;
+  }
+
+  /**
+   * Exports the profile as JSON in the metrics folder of the exporter base directory,
+   * and prints the modules that took the most time.
+   */
+  public static void exportMetrics() {
+    GsonBuilder builder = new GsonBuilder();
+    if (Config.getAsBoolean("exporter.pretty_print", true)) {
+      builder.setPrettyPrinting();
+    }
+    Gson gson = builder.create();
+
+    List<Map.Entry<String, Counter>> modules = merge(true);
+    JsonObject json = new JsonObject();
+    json.addProperty("threads", threads());
+    json.addProperty("allocations_supported", allocationsSupported());
+    json.add("modules", toJson(modules));
+    json.add("states", toJson(merge(false)));
+
+    String baseDir = Config.get("exporter.baseDirectory", "./output/");
+    Path output = Paths.get(baseDir, "metrics");
+    output.toFile().mkdirs();
+    Exporter.overwriteFile(output.resolve("module_profile.json"), gson.toJson(json));
+
+    System.out.println("Modules by self time:");
+    for (Map.Entry<String, Counter> entry : modules.subList(0, Math.min(10, modules.size()))) {
+      Counter counter = entry.getValue();
+      System.out.printf("  %-40s %10.1f ms %12d calls %10d MB%n", entry.getKey(),
+          counter.nanos / 1_000_000.0, counter.calls, counter.bytes / (1024 * 1024));
+    }
+  }
+
+  /**
+   * The totals of one module or state type.
+   */
+  static class Counter {
+    long calls;
+    long nanos;
+    long bytes;
+
+    void add(Counter other) {
+      calls += other.calls;
+      nanos += other.nanos;
+      bytes += other.bytes;
+    }
+  }
+
+  /**
+   * The counters of one thread.
+   */
+  private static class Profile {
+    final Map<String, Counter> moduleCounters = new HashMap<String, Counter>();
+    final Map<Class<?>, Counter> stateCounters = new HashMap<Class<?>, Counter>();
+    final Frames modules = new Frames();
+    final Frames states = new Frames();
+
+    Counter moduleCounter(String name) {
+      return moduleCounters.computeIfAbsent(name, k -> new Counter());
+    }
+
+    Counter stateCounter(Class<?> type) {
+      return stateCounters.computeIfAbsent(type, k -> new Counter());
+    }
+  }
+
+  /**
+   * A stack of the calls in progress on one thread, which subtracts the time and allocations
+   * of nested calls from their caller.
+   */
+  private static class Frames {
+    private long[] startNanos = new long[8];
+    private long[] startBytes = new long[8];
+    private long[] childNanos = new long[8];
+    private long[] childBytes = new long[8];
+    private int depth;
+
+    void enter() {
+      if (depth == startNanos.length) {
+        int length = depth * 2;
+        startNanos = Arrays.copyOf(startNanos, length);
+        startBytes = Arrays.copyOf(startBytes, length);
+        childNanos = Arrays.copyOf(childNanos, length);
+        childBytes = Arrays.copyOf(childBytes, length);
+      }
+      startBytes[depth] = allocatedBytes();
+      childNanos[depth] = 0L;
+      childBytes[depth] = 0L;
+      startNanos[depth] = System.nanoTime();
+      depth++;
+    }
+
+    void exit(Counter counter) {
+      long nanos = System.nanoTime();
+      depth--;
+      long elapsed = nanos - startNanos[depth];
+      long allocated = allocatedBytes() - startBytes[depth];
+      counter.calls++;
+      counter.nanos += elapsed - childNanos[depth];
+      counter.bytes += allocated - childBytes[depth];
+      if (depth > 0) {
+        childNanos[depth - 1] += elapsed;
+        childBytes[depth - 1] += allocated;
+      }
+    }
+  }
+}
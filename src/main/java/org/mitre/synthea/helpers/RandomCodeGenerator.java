@@ -1,13 +1,17 @@
 package org.mitre.synthea.helpers;
 
+import ca.uhn.fhir.parser.DataFormatException;
 import ca.uhn.fhir.parser.IParser;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import javax.annotation.Nonnull;
@@ -35,7 +39,10 @@ import org.mitre.synthea.world.concepts.HealthRecord.Code;
  *
  *
  * <p>The URL for the terminology service is configured using the
- * <code>generate.terminology_service_url</code> property.
+ * <code>generate.terminology_service_url</code> property. Expansions can be kept in a
+ * persistent {@link ValueSetCache}, so that later runs do not need the terminology service.
+ * Each ValueSet is expanded at most once per run, and expanding one ValueSet does not hold
+ * up lookups of others.</p>
  */
 public abstract class RandomCodeGenerator {
 
@@ -48,12 +55,24 @@ public abstract class RandomCodeGenerator {
   /**
    * A cache of ValueSet URIs to their corresponding list of codes.
    */
-  public static Map<String, List<Code>> codeListCache = new HashMap<>();
+  public static Map<String, List<Code>> codeListCache = new ConcurrentHashMap<>();
 
   /**
    * A list of codes that have been selected during the current session.
    */
-  public static List<Code> selectedCodes = new ArrayList<>();
+  public static List<Code> selectedCodes = Collections.synchronizedList(new ArrayList<>());
+
+  /** The codes in selectedCodes, so each code is only listed once. */
+  private static Set<Code> selectedCodeSet = ConcurrentHashMap.newKeySet();
+
+  /** The code values of selectedCodes, for checking whether a code was selected. */
+  private static Set<String> selectedCodeValues = ConcurrentHashMap.newKeySet();
+
+  /** Sets of the codes in each list of codeListCache, for membership checks. */
+  private static Map<String, CodeIndex> codeIndexCache = new ConcurrentHashMap<>();
+
+  /** Locks, one per ValueSet URI, so each ValueSet is only expanded once. */
+  private static Map<String, Object> expansionLocks = new ConcurrentHashMap<>();
 
   private static UrlValidator urlValidator = new UrlValidator(UrlValidator.ALLOW_2_SLASHES);
   private static OkHttpClient client = new OkHttpClient();
@@ -76,7 +95,10 @@ public abstract class RandomCodeGenerator {
         return code;
       }
       validateCode(newCode);
-      selectedCodes.add(newCode);
+      if (selectedCodeSet.add(newCode)) {
+        selectedCodes.add(newCode);
+        selectedCodeValues.add(newCode.code);
+      }
       return newCode;
     }
     return code;
@@ -115,49 +137,124 @@ public abstract class RandomCodeGenerator {
     if (urlValidator.isValid(valueSetUri)) {
       expandValueSet(valueSetUri);
       List<Code> cachedCodeList = codeListCache.get(valueSetUri);
-      return cachedCodeList.contains(code);
+      CodeIndex index = codeIndexCache.get(valueSetUri);
+      if (index == null || index.codeList != cachedCodeList) {
+        index = new CodeIndex(cachedCodeList);
+        codeIndexCache.put(valueSetUri, index);
+      }
+      return index.codes.contains(code);
     }
     // TODO??
     return false;
   }
 
+  /**
+   * Check whether a code with the given value has been selected during the current session.
+   *
+   * @param code the code value, e.g. "38341003"
+   * @return true if a selected code has that value
+   */
+  public static boolean isSelectedCode(String code) {
+    return selectedCodeValues.contains(code);
+  }
+
+  /**
+   * The set of codes in a list of codes from codeListCache.
+   */
+  private static class CodeIndex {
+    /** The list of codes the set was built from. */
+    final List<Code> codeList;
+    final Set<Code> codes;
 
-  private static synchronized void expandValueSet(String valueSetUri) {
-    if (!codeListCache.containsKey(valueSetUri)) {
-      Request request = new Request.Builder()
-              .url(expandBaseUrl + valueSetUri)
-              .header("Accept", "application/json")
-              .build();
-      try {
-        Response response = client.newCall(request).execute();
-        ResponseBody body = response.body();
-        if (body != null) {
-          IParser parser = FhirR4.getContext().newJsonParser();
-          Resource resource = (Resource) parser.parseResource(body.charStream());
-          if (resource instanceof ValueSet) {
-            loadValueSet(valueSetUri, (ValueSet)resource);
-          } else if (resource instanceof OperationOutcome) {
-            OperationOutcome oo = (OperationOutcome)resource;
-            parser.setPrettyPrint(true);
-            System.err.println(parser.encodeResourceToString(oo));
-            String details = oo.getIssueFirstRep().getDetails().getText();
-
-            throw new RuntimeException(
-                "Received OperationOutcome in ValueSet expand response. Detail: "
-                + details + ". See log for full resource");
-          } else {
-            parser.setPrettyPrint(true);
-            System.err.println(parser.encodeResourceToString(resource));
-            throw new RuntimeException(
-                "Unexpected resourceType received in expand ValueSet response: "
-                + resource.getResourceType() + ". See log for full resource");
+    CodeIndex(List<Code> codeList) {
+      this.codeList = codeList;
+      this.codes = new HashSet<>(codeList);
+    }
+  }
+
+  private static void expandValueSet(String valueSetUri) {
+    if (codeListCache.containsKey(valueSetUri)) {
+      return;
+    }
+    Object lock = expansionLocks.computeIfAbsent(valueSetUri, uri -> new Object());
+    synchronized (lock) {
+      if (codeListCache.containsKey(valueSetUri)) {
+        return;
+      }
+      String url = expandBaseUrl + valueSetUri;
+      ValueSetCache cache = ValueSetCache.fromConfig();
+      if (cache != null && expandFromCache(cache, valueSetUri, url)) {
+        return;
+      }
+      if (ValueSetCache.isOffline()) {
+        throw new RuntimeException("ValueSet " + valueSetUri + " is not in the terminology "
+            + "cache, and generate.terminology_service.offline is true");
+      }
+      expandFromServer(cache, valueSetUri, url);
+    }
+  }
+
+  /**
+   * Load a ValueSet expansion from the cache.
+   * @return true if the expansion was found in the cache
+   */
+  private static boolean expandFromCache(ValueSetCache cache, String valueSetUri, String url) {
+    String json = cache.load(url);
+    if (json == null) {
+      return false;
+    }
+    try {
+      IParser parser = FhirR4.getContext().newJsonParser();
+      Resource resource = (Resource) parser.parseResource(json);
+      if (resource instanceof ValueSet) {
+        loadValueSet(valueSetUri, (ValueSet) resource);
+        return true;
+      }
+    } catch (DataFormatException e) {
+      // fall through and replace the bad cache entry
+    }
+    System.err.println("Ignoring unusable cached expansion of " + valueSetUri);
+    cache.remove(url);
+    return false;
+  }
+
+  private static void expandFromServer(ValueSetCache cache, String valueSetUri, String url) {
+    Request request = new Request.Builder()
+            .url(url)
+            .header("Accept", "application/json")
+            .build();
+    try (Response response = client.newCall(request).execute()) {
+      ResponseBody body = response.body();
+      if (body != null) {
+        String json = body.string();
+        IParser parser = FhirR4.getContext().newJsonParser();
+        Resource resource = (Resource) parser.parseResource(json);
+        if (resource instanceof ValueSet) {
+          loadValueSet(valueSetUri, (ValueSet)resource);
+          if (cache != null) {
+            cache.store(url, json);
           }
+        } else if (resource instanceof OperationOutcome) {
+          OperationOutcome oo = (OperationOutcome)resource;
+          parser.setPrettyPrint(true);
+          System.err.println(parser.encodeResourceToString(oo));
+          String details = oo.getIssueFirstRep().getDetails().getText();
+
+          throw new RuntimeException(
+              "Received OperationOutcome in ValueSet expand response. Detail: "
+              + details + ". See log for full resource");
         } else {
-          throw new RuntimeException("Value Set Expansion contained no body");
+          parser.setPrettyPrint(true);
+          System.err.println(parser.encodeResourceToString(resource));
+          throw new RuntimeException(
+              "Unexpected resourceType received in expand ValueSet response: "
+              + resource.getResourceType() + ". See log for full resource");
         }
-      } catch (IOException e) {
-        throw new RuntimeException("Issue when expanding the value set", e);
+      } else {
+        throw new RuntimeException("Value Set Expansion contained no body");
       }
+    } catch (IOException e) {
+      throw new RuntimeException("Issue when expanding the value set", e);
     }
   }
 
@@ -180,7 +277,7 @@ public abstract class RandomCodeGenerator {
         List<Code> containsCodes = contains.stream()
             .map(c -> new Code(c.getSystem(), c.getCode(), c.getDisplay()))
             .collect(Collectors.toList());
-        codeListCache.put(valueSetUri, containsCodes);
+        codeListCache.putIfAbsent(valueSetUri, containsCodes);
 
       } else if (valueSet.hasCompose()) {
         List<Code> codes = new ArrayList<>();
@@ -201,7 +298,7 @@ public abstract class RandomCodeGenerator {
           throw new RuntimeException("ValueSet does not contain any codes defined within compose");
         }
 
-        codeListCache.put(valueSetUri, codes);
+        codeListCache.putIfAbsent(valueSetUri, codes);
       } else {
         throw new RuntimeException("ValueSet does not contain compose or expansion");
       }
@@ -1,21 +1,35 @@
 package org.mitre.synthea.helpers;
 
 import java.io.Serializable;
-import java.util.Map.Entry;
-import java.util.TreeMap;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
 
 /**
  * Random collection of objects, with weightings. Intended to be an equivalent to the ruby Pickup
  * gem. Adapted from https://stackoverflow.com/a/6409791/630384
+ *
+ * <p>By default an item is picked by a binary search of the cumulative weights, which for a
+ * given seed picks the same items as previous versions. If generate.alias_sampling is true,
+ * items are instead picked in constant time from an {@link AliasTable}, which picks items with
+ * the same probabilities but, for a given seed, not the same items.</p>
  */
 public class RandomCollection<E> implements Serializable {
+  /** Whether to pick items from an alias table rather than by the cumulative weights. */
+  public static boolean aliasSampling = Config.getAsBoolean("generate.alias_sampling", false);
+
+  /** The cumulative weight of the collection up to and including each item. */
+  private double[] cumulative = new double[8];
   /**
    * A collection of objects (results) that can be selected at random
-   * based on their associated weights.
+   * based on their associated weights, in the same order as the cumulative weights.
    */
-  private final TreeMap<Double, E> map = new TreeMap<Double, E>();
+  private Object[] results = new Object[8];
+  /** The number of items in the collection. */
+  private int size = 0;
   /** The total weight of all objects in the collection. */
   private double total = 0;
+  /** Alias table built from the weights on first use, and discarded when an item is added. */
+  private transient volatile AliasTable aliasTable;
 
   /**
    * Add an object (result) to the collection with a given weight.
@@ -29,18 +43,32 @@ public class RandomCollection<E> implements Serializable {
       return;
     }
     total += weight;
-    map.put(total, result);
+    if (size > 0 && cumulative[size - 1] == total) {
+      // the weight was lost to rounding, so this result replaces the previous one,
+      // just as it did when the cumulative weights were the keys of a map
+      results[size - 1] = result;
+    } else {
+      if (size == cumulative.length) {
+        cumulative = Arrays.copyOf(cumulative, size * 2);
+        results = Arrays.copyOf(results, size * 2);
+      }
+      cumulative[size] = total;
+      results[size] = result;
+      size++;
+    }
+    aliasTable = null;
   }
 
   /**
    * Add all of the entries from the supplied RandomCollection.
    * @param other the collection from which to copy entries.
    */
+  @SuppressWarnings("unchecked")
   public void addAll(RandomCollection<E> other) {
-    Double weightAdj = 0.0;
-    for (Entry<Double, E> e: other.map.entrySet()) {
-      add(e.getKey() - weightAdj, e.getValue());
-      weightAdj = e.getKey();
+    double weightAdj = 0.0;
+    for (int i = 0; i < other.size; i++) {
+      add(other.cumulative[i] - weightAdj, (E) other.results[i]);
+      weightAdj = other.cumulative[i];
     }
   }
 
@@ -52,15 +80,44 @@ public class RandomCollection<E> implements Serializable {
    * @param random the random number generator.
    * @return a random item from the collection weighted by the item weights.
    */
+  @SuppressWarnings("unchecked")
   public E next(RandomNumberGenerator random) {
+    if (size == 0) {
+      throw new NoSuchElementException("The collection is empty.");
+    }
+    if (aliasSampling) {
+      return (E) results[getAliasTable().sample(random.rand())];
+    }
     return next(random.rand() * total);
   }
 
+  /**
+   * Find the first item whose cumulative weight is greater than the value,
+   * or the last item if there is none.
+   */
+  @SuppressWarnings("unchecked")
   private E next(double value) {
-    Entry<Double, E> entry = map.higherEntry(value);
-    if (entry == null) {
-      entry = map.lastEntry();
+    int index = Arrays.binarySearch(cumulative, 0, size, value);
+    // an exact match is not greater than the value, so use the next item
+    index = (index >= 0) ? index + 1 : -(index + 1);
+    if (index >= size) {
+      index = size - 1;
+    }
+    return (E) results[index];
+  }
+
+  private AliasTable getAliasTable() {
+    AliasTable table = aliasTable;
+    if (table == null) {
+      double[] weights = new double[size];
+      double previous = 0.0;
+      for (int i = 0; i < size; i++) {
+        weights[i] = cumulative[i] - previous;
+        previous = cumulative[i];
+      }
+      table = new AliasTable(weights);
+      aliasTable = table;
     }
-    return entry.getValue();
+    return table;
   }
 }
@@ -0,0 +1,369 @@
+package org.mitre.synthea.helpers;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.mitre.synthea.engine.Generator;
+
+/**
+ * Live metrics of the current run: people generated, throughput, queue depths, export latency
+ * per format, bytes written by the exporter and heap usage. The metrics can be read from JMX,
+ * when generate.metrics.jmx is true, and in the Prometheus text format from
+ * http://localhost:PORT/metrics, when generate.metrics.http_port is set.
+ */
+public abstract class RunMetrics {
+  private static final String OBJECT_NAME = "org.mitre.synthea:type=RunMetrics";
+
+  private static final LongAdder bytesWritten = new LongAdder();
+  private static final Map<String, ExportTimer> exports =
+      new ConcurrentHashMap<String, ExportTimer>();
+
+  private static volatile Generator generator;
+  private static volatile ThreadPoolExecutor threadPool;
+  private static volatile ConsoleWriter console;
+  private static volatile long startTime;
+  private static volatile boolean published;
+  private static ObjectName registeredName;
+  private static HttpServer server;
+
+  /**
+   * The metrics as seen from JMX.
+   */
+  public interface RunMetricsMXBean {
+    long getPeopleGenerated();
+
+    long getPeopleAlive();
+
+    long getPeopleDead();
+
+    double getPeoplePerSecond();
+
+    int getPendingPeople();
+
+    int getConsoleQueueDepth();
+
+    long getConsoleEntriesSkipped();
+
+    long getExporterBytesWritten();
+
+    Map<String, Double> getExportMeanMillis();
+
+    long getHeapUsed();
+  }
+
+  private static class Bean implements RunMetricsMXBean {
+    public long getPeopleGenerated() {
+      return peopleGenerated();
+    }
+
+    public long getPeopleAlive() {
+      return people("alive");
+    }
+
+    public long getPeopleDead() {
+      return people("dead");
+    }
+
+    public double getPeoplePerSecond() {
+      return peoplePerSecond();
+    }
+
+    public int getPendingPeople() {
+      return pendingPeople();
+    }
+
+    public int getConsoleQueueDepth() {
+      ConsoleWriter c = console;
+      return c == null ? 0 : c.getQueueDepth();
+    }
+
+    public long getConsoleEntriesSkipped() {
+      ConsoleWriter c = console;
+      return c == null ? 0 : c.getSkipped();
+    }
+
+    public long getExporterBytesWritten() {
+      return bytesWritten.sum();
+    }
+
+    public Map<String, Double> getExportMeanMillis() {
+      Map<String, Double> means = new TreeMap<String, Double>();
+      for (Map.Entry<String, ExportTimer> entry : exports.entrySet()) {
+        long count = entry.getValue().count.sum();
+        means.put(entry.getKey(),
+            count == 0 ? 0.0 : entry.getValue().nanos.sum() / 1_000_000.0 / count);
+      }
+      return means;
+    }
+
+    public long getHeapUsed() {
+      return heap().getUsed();
+    }
+  }
+
+  /**
+   * The time spent exporting one format.
+   */
+  private static class ExportTimer {
+    final LongAdder count = new LongAdder();
+    final LongAdder nanos = new LongAdder();
+  }
+
+  /**
+   * Start reporting the metrics of a run, discarding those of any earlier run, and start the
+   * JMX bean and HTTP endpoint if they are configured.
+   * @param gen The generator being run.
+   * @param pool The thread pool simulating people.
+   * @param consoleWriter The console writer for the people, or null if people are not logged.
+   */
+  public static synchronized void start(Generator gen, ExecutorService pool,
+      ConsoleWriter consoleWriter) {
+    generator = gen;
+    threadPool = (pool instanceof ThreadPoolExecutor) ? (ThreadPoolExecutor) pool : null;
+    console = consoleWriter;
+    startTime = System.currentTimeMillis();
+    reset();
+
+    boolean jmx = Config.getAsBoolean("generate.metrics.jmx", false);
+    int port = Config.getAsInteger("generate.metrics.http_port", 0);
+    published = jmx || port > 0;
+
+    if (jmx && registeredName == null) {
+      try {
+        MBeanServer mbeans = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        if (!mbeans.isRegistered(name)) {
+          mbeans.registerMBean(new Bean(), name);
+          registeredName = name;
+        }
+      } catch (JMException e) {
+        System.err.println("Unable to register run metrics with JMX: " + e.getMessage());
+      }
+    }
+
+    if (port > 0 && server == null) {
+      try {
+        server = HttpServer.create(
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", exchange -> {
+          byte[] body = prometheusText().getBytes(StandardCharsets.UTF_8);
+          exchange.getResponseHeaders().set("Content-Type",
+              "text/plain; version=0.0.4; charset=utf-8");
+          exchange.sendResponseHeaders(200, body.length);
+          try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+          }
+        });
+        server.start();
+        System.out.println("Serving run metrics at http://localhost:" + port + "/metrics");
+      } catch (IOException e) {
+        System.err.println("Unable to serve run metrics on port " + port + ": "
+            + e.getMessage());
+        server = null;
+      }
+    }
+  }
+
+  /**
+   * Stop the JMX bean and HTTP endpoint. The metrics keep their final values.
+   */
+  public static synchronized void stop() {
+    if (registeredName != null) {
+      try {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+      } catch (JMException e) {
+        // already unregistered
+      }
+      registeredName = null;
+    }
+    if (server != null) {
+      server.stop(0);
+      server = null;
+    }
+    threadPool = null;
+    published = false;
+  }
+
+  /**
+   * Whether the metrics of the current run are published over JMX or HTTP. Metrics that take
+   * extra work to measure, such as the size of each exported file, are only worth measuring
+   * when they are published.
+   * @return true if the metrics are published
+   */
+  public static boolean isPublished() {
+    return published;
+  }
+
+  /**
+   * Record the export of one record in one format.
+   * @param format The format, e.g. "fhir".
+   * @param startNanos The System.nanoTime() when the export started.
+   */
+  public static void recordExport(String format, long startNanos) {
+    ExportTimer timer = exports.computeIfAbsent(format, k -> new ExportTimer());
+    timer.nanos.add(System.nanoTime() - startNanos);
+    timer.count.increment();
+  }
+
+  /**
+   * Record bytes written to an output file.
+   * @param bytes The number of bytes.
+   */
+  public static void recordBytesWritten(long bytes) {
+    bytesWritten.add(bytes);
+  }
+
+  /**
+   * Record the size of an output file that has just been written in full, if the metrics
+   * are published.
+   * @param file The file, with everything written to it flushed.
+   * @throws IOException if the size of the file cannot be read
+   */
+  public static void recordFileWritten(Path file) throws IOException {
+    if (published) {
+      bytesWritten.add(Files.size(file));
+    }
+  }
+
+  /**
+   * Wrap the stream of an output file, so that the bytes written to it are recorded while
+   * the metrics are published. Exporters that keep files open for the whole run write
+   * through this, so that they are counted as they write.
+   * @param out The file output stream.
+   * @return The stream to write to.
+   */
+  public static OutputStream countBytesWritten(OutputStream out) {
+    return new FilterOutputStream(out) {
+      @Override
+      public void write(int b) throws IOException {
+        out.write(b);
+        if (published) {
+          bytesWritten.increment();
+        }
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        if (published) {
+          bytesWritten.add(len);
+        }
+      }
+    };
+  }
+
+  private static long peopleGenerated() {
+    Generator gen = generator;
+    return gen == null ? 0 : gen.totalGeneratedPopulation.get();
+  }
+
+  private static long people(String status) {
+    Generator gen = generator;
+    if (gen == null) {
+      return 0;
+    }
+    AtomicInteger count = gen.stats.get(status);
+    return count == null ? 0 : count.get();
+  }
+
+  private static double peoplePerSecond() {
+    long elapsed = System.currentTimeMillis() - startTime;
+    return elapsed <= 0 ? 0.0 : peopleGenerated() * 1000.0 / elapsed;
+  }
+
+  private static int pendingPeople() {
+    ThreadPoolExecutor pool = threadPool;
+    return pool == null ? 0 : pool.getQueue().size();
+  }
+
+  private static MemoryUsage heap() {
+    return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+  }
+
+  /**
+   * A one line summary of the progress of the run.
+   * @return the progress
+   */
+  public static String progress() {
+    Generator gen = generator;
+    int target = gen == null ? 0 : gen.options.population;
+    return String.format("Progress: generated=%d/%d, alive=%d, dead=%d, %.1f people/s,"
+        + " pending=%d, heap=%d MB", peopleGenerated(), target, people("alive"),
+        people("dead"), peoplePerSecond(), pendingPeople(), heap().getUsed() >> 20);
+  }
+
+  private static void metric(StringBuilder text, String name, String type, String help,
+      Number value) {
+    text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    text.append(name).append(' ').append(value).append('\n');
+  }
+
+  /**
+   * The metrics in the Prometheus text exposition format.
+   * @return the metrics
+   */
+  public static String prometheusText() {
+    Bean bean = new Bean();
+    StringBuilder text = new StringBuilder();
+    metric(text, "synthea_people_generated_total", "counter",
+        "People generated and recorded.", peopleGenerated());
+    text.append("# HELP synthea_people_total People recorded, by vital status.\n");
+    text.append("# TYPE synthea_people_total counter\n");
+    text.append("synthea_people_total{status=\"alive\"} ").append(people("alive")).append('\n');
+    text.append("synthea_people_total{status=\"dead\"} ").append(people("dead")).append('\n');
+    metric(text, "synthea_people_per_second", "gauge",
+        "People generated per second since the start of the run.", peoplePerSecond());
+    metric(text, "synthea_pending_people", "gauge",
+        "People waiting for a simulation thread.", pendingPeople());
+    metric(text, "synthea_console_queue_depth", "gauge",
+        "Console entries waiting to be printed.", bean.getConsoleQueueDepth());
+    metric(text, "synthea_console_skipped_total", "counter",
+        "Console entries skipped by the rate limit.", bean.getConsoleEntriesSkipped());
+    metric(text, "synthea_exporter_bytes_written_total", "counter",
+        "Bytes written to files by the exporter.", bytesWritten.sum());
+    text.append("# HELP synthea_export_seconds Time spent exporting records, by format.\n");
+    text.append("# TYPE synthea_export_seconds summary\n");
+    for (Map.Entry<String, ExportTimer> entry : new TreeMap<String, ExportTimer>(exports)
+        .entrySet()) {
+      String label = "{format=\"" + entry.getKey() + "\"} ";
+      text.append("synthea_export_seconds_sum").append(label)
+          .append(entry.getValue().nanos.sum() / 1e9).append('\n');
+      text.append("synthea_export_seconds_count").append(label)
+          .append(entry.getValue().count.sum()).append('\n');
+    }
+    MemoryUsage heap = heap();
+    metric(text, "synthea_heap_used_bytes", "gauge", "Heap in use.", heap.getUsed());
+    metric(text, "synthea_heap_max_bytes", "gauge", "Maximum heap size.", heap.getMax());
+    return text.toString();
+  }
+
+  /**
+   * Discard the recorded export times and bytes written.
+   */
+  public static void reset() {
+    exports.clear();
+    bytesWritten.reset();
+  }
+}
@@ -0,0 +1,126 @@
+package org.mitre.synthea.helpers;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * Precomputed UTC civil calendar for simulation timestamps.
+ * Year and month lookups happen many times per timestep (payer, cost and claim code
+ * all call Utilities.getYear), so rather than allocating a Calendar and looking up a
+ * TimeZone on every call, this class precomputes the timestamp at which every month
+ * begins over a wide range of years and answers year, month and anniversary queries
+ * with a binary search over a primitive array.
+ * Timestamps outside of the precomputed range fall back to java.util.Calendar.
+ */
+public final class SimulationCalendar {
+  /** First year with precomputed boundaries. Must be after the Gregorian cutover. */
+  static final int FIRST_YEAR = 1600;
+  /** Last year with precomputed boundaries. */
+  static final int LAST_YEAR = 2400;
+  private static final long ONE_DAY = 24L * 60L * 60L * 1000L;
+
+  /**
+   * Timestamp of the start of each month, indexed by (year - FIRST_YEAR) * 12 + month - 1,
+   * with one trailing entry for the start of the year after LAST_YEAR.
+   */
+  private static final long[] MONTH_STARTS = computeMonthStarts();
+
+  private SimulationCalendar() {
+    // static utility class
+  }
+
+  private static long[] computeMonthStarts() {
+    int months = (LAST_YEAR - FIRST_YEAR + 1) * 12;
+    long[] starts = new long[months + 1];
+    LocalDate date = LocalDate.of(FIRST_YEAR, 1, 1);
+    for (int i = 0; i <= months; i++) {
+      starts[i] = date.toEpochDay() * ONE_DAY;
+      date = date.plusMonths(1);
+    }
+    return starts;
+  }
+
+  /**
+   * Find the index of the month containing the given timestamp.
+   * @param time The timestamp.
+   * @return The index into MONTH_STARTS, or -1 if outside of the precomputed range.
+   */
+  private static int monthIndex(long time) {
+    if (time < MONTH_STARTS[0] || time >= MONTH_STARTS[MONTH_STARTS.length - 1]) {
+      return -1;
+    }
+    int index = Arrays.binarySearch(MONTH_STARTS, time);
+    if (index < 0) {
+      index = -index - 2;
+    }
+    return index;
+  }
+
+  private static Calendar calendar(long time) {
+    Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+    calendar.setTimeInMillis(time);
+    return calendar;
+  }
+
+  /**
+   * Get the year of a Unix timestamp.
+   * @param time The simulation timestamp.
+   * @return The year extracted from the timestamp.
+   */
+  public static int getYear(long time) {
+    int index = monthIndex(time);
+    if (index < 0) {
+      return calendar(time).get(Calendar.YEAR);
+    }
+    return FIRST_YEAR + (index / 12);
+  }
+
+  /**
+   * Get the month of a Unix timestamp.
+   * @param time The simulation timestamp.
+   * @return The month (1-12) extracted from the timestamp.
+   */
+  public static int getMonth(long time) {
+    int index = monthIndex(time);
+    if (index < 0) {
+      return calendar(time).get(Calendar.MONTH) + 1;
+    }
+    return (index % 12) + 1;
+  }
+
+  /**
+   * Get the timestamp of the start of January 1 of the given year.
+   * @param year The calendar year.
+   * @return The timestamp at 00:00:00 UTC on January 1 of that year.
+   */
+  public static long getYearStart(int year) {
+    if (year < FIRST_YEAR || year > LAST_YEAR + 1) {
+      Calendar c = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+      c.clear();
+      c.set(year, 0, 1, 0, 0, 0);
+      return c.getTimeInMillis();
+    }
+    return MONTH_STARTS[(year - FIRST_YEAR) * 12];
+  }
+
+  /**
+   * Get the timestamp of the nth anniversary of the supplied timestamp.
+   * Matches the lenient behavior of java.util.Calendar, so the anniversary of
+   * February 29 in a non-leap year is March 1.
+   * @param date The timestamp.
+   * @param anniversary The number of years after.
+   * @return The anniversary timestamp.
+   */
+  public static long getAnniversary(long date, int anniversary) {
+    int index = monthIndex(date);
+    int target = index + (anniversary * 12);
+    if (index < 0 || target < 0 || target >= MONTH_STARTS.length - 1) {
+      Calendar calendar = calendar(date);
+      calendar.set(Calendar.YEAR, calendar.get(Calendar.YEAR) + anniversary);
+      return calendar.getTimeInMillis();
+    }
+    return MONTH_STARTS[target] + (date - MONTH_STARTS[index]);
+  }
+}
@@ -26,13 +26,11 @@ import java.time.LocalDate;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
-import java.util.TimeZone;
 import java.util.concurrent.TimeUnit;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
@@ -118,11 +116,7 @@ public class Utilities {
    * @return The equivalent time in milliseconds.
    */
   public static long convertCalendarYearsToTime(int years) {
-    Calendar c = Calendar.getInstance();
-    c.clear();
-    c.setTimeZone(TimeZone.getTimeZone("GMT"));
-    c.set(years, 0, 1, 0, 0, 0);
-    return c.getTimeInMillis();
+    return SimulationCalendar.getYearStart(years);
   }
 
   /**
@@ -131,9 +125,7 @@ public class Utilities {
    * @return The year extracted from the timestamp.
    */
   public static int getYear(long time) {
-    Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
-    calendar.setTimeInMillis(time);
-    return calendar.get(Calendar.YEAR);
+    return SimulationCalendar.getYear(time);
   }
 
   /**
@@ -142,9 +134,7 @@ public class Utilities {
    * @return The month extracted from the timestamp.
    */
   public static int getMonth(long time) {
-    Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
-    calendar.setTimeInMillis(time);
-    return calendar.get(Calendar.MONTH) + 1;
+    return SimulationCalendar.getMonth(time);
   }
 
   /**
@@ -175,10 +165,7 @@ public class Utilities {
    * @return the anniversary timestamp
    */
   public static long getAnniversary(long date, int anniversary) {
-    Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
-    calendar.setTimeInMillis(date);
-    calendar.set(Calendar.YEAR, calendar.get(Calendar.YEAR) + anniversary);
-    return calendar.getTimeInMillis();
+    return SimulationCalendar.getAnniversary(date, anniversary);
   }
 
   /**
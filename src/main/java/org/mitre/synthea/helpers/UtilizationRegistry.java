@@ -0,0 +1,207 @@
+package org.mitre.synthea.helpers;
+
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.Table;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe utilization counters keyed by (year, metric).
+ * Metric names such as "encounters" or "covered-encounters-wellness" are interned into
+ * small integer ids shared by the whole JVM, so hot paths (e.g. Provider and Payer
+ * utilization tracking) can resolve an id once and then increment without building
+ * Strings or taking a lock. Each counter is a striped LongAdder, so many threads
+ * incrementing the same busy hospital do not contend on a single monitor.
+ *
+ * <p>The exporters still consume utilization as a Guava
+ * Table&lt;Integer, String, AtomicInteger&gt; (row: year, column: metric, value: count),
+ * which is produced on demand by {@link #asTable()}.</p>
+ */
+public class UtilizationRegistry implements Serializable {
+  /** Interned metric name to id. */
+  private static final Map<String, Integer> METRIC_IDS = new ConcurrentHashMap<>();
+  /** Metric names, indexed by id. */
+  private static final List<String> METRIC_NAMES = new CopyOnWriteArrayList<>();
+  /** Per-metric cache of suffix to the id of "metric-suffix", indexed by parent id. */
+  private static final List<Map<String, Integer>> CHILD_IDS = new CopyOnWriteArrayList<>();
+
+  /** Counts keyed by (year &lt;&lt; 32 | metric id). */
+  private transient ConcurrentHashMap<Long, LongAdder> counts;
+
+  /**
+   * Create a new empty set of utilization counters.
+   */
+  public UtilizationRegistry() {
+    counts = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Get the interned id of the given metric name, registering it if necessary.
+   * @param name The metric name, e.g. "encounters".
+   * @return The metric id.
+   */
+  public static int metricId(String name) {
+    Integer id = METRIC_IDS.get(name);
+    if (id == null) {
+      synchronized (METRIC_NAMES) {
+        id = METRIC_IDS.get(name);
+        if (id == null) {
+          id = METRIC_NAMES.size();
+          // publish the name before the id so any visible id can be resolved
+          CHILD_IDS.add(new ConcurrentHashMap<>());
+          METRIC_NAMES.add(name);
+          METRIC_IDS.put(name, id);
+        }
+      }
+    }
+    return id;
+  }
+
+  /**
+   * Get the interned id of the metric named "parent-suffix", registering it if necessary.
+   * Repeated lookups of the same suffix do not allocate.
+   * @param parentId The id of the parent metric, e.g. the id of "covered-encounters".
+   * @param suffix The suffix, e.g. "wellness".
+   * @return The metric id.
+   */
+  public static int metricId(int parentId, String suffix) {
+    Map<String, Integer> children = CHILD_IDS.get(parentId);
+    Integer id = children.get(suffix);
+    if (id == null) {
+      id = metricId(METRIC_NAMES.get(parentId) + "-" + suffix);
+      children.putIfAbsent(suffix, id);
+    }
+    return id;
+  }
+
+  /**
+   * Get the name of an interned metric.
+   * @param metricId The metric id.
+   * @return The metric name.
+   */
+  public static String metricName(int metricId) {
+    return METRIC_NAMES.get(metricId);
+  }
+
+  private static long key(int year, int metricId) {
+    return ((long) year << 32) | (metricId & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Increment the counter for the given year and metric.
+   * @param year The year.
+   * @param metricId The metric id, from {@link #metricId(String)}.
+   */
+  public void increment(int year, int metricId) {
+    Long key = key(year, metricId);
+    LongAdder counter = counts.get(key);
+    if (counter == null) {
+      counter = counts.computeIfAbsent(key, k -> new LongAdder());
+    }
+    counter.increment();
+  }
+
+  /**
+   * Get the count for the given year and metric.
+   * @param year The year.
+   * @param metricId The metric id.
+   * @return The count, or 0 if never incremented.
+   */
+  public int get(int year, int metricId) {
+    LongAdder counter = counts.get(key(year, metricId));
+    return counter == null ? 0 : counter.intValue();
+  }
+
+  /**
+   * Get the total count of the given metric across all years.
+   * @param metricId The metric id.
+   * @return The total count.
+   */
+  public int total(int metricId) {
+    int total = 0;
+    for (Map.Entry<Long, LongAdder> e : counts.entrySet()) {
+      if ((int) e.getKey().longValue() == metricId) {
+        total += e.getValue().intValue();
+      }
+    }
+    return total;
+  }
+
+  /**
+   * Add all of the counts from another set of counters into this one.
+   * @param other The counters to add.
+   */
+  public void merge(UtilizationRegistry other) {
+    for (Map.Entry<Long, LongAdder> e : other.counts.entrySet()) {
+      counts.computeIfAbsent(e.getKey(), k -> new LongAdder()).add(e.getValue().sum());
+    }
+  }
+
+  /**
+   * Whether nothing has been counted yet.
+   * @return true if no counter has been incremented.
+   */
+  public boolean isEmpty() {
+    return counts.isEmpty();
+  }
+
+  /**
+   * Build a snapshot of these counters as a Table.
+   * @return Table with row: year, column: metric name, value: count.
+   */
+  public Table<Integer, String, AtomicInteger> asTable() {
+    Table<Integer, String, AtomicInteger> table = HashBasedTable.create();
+    for (Map.Entry<Long, LongAdder> e : counts.entrySet()) {
+      long key = e.getKey();
+      int year = (int) (key >> 32);
+      String metric = metricName((int) key);
+      table.put(year, metric, new AtomicInteger(e.getValue().intValue()));
+    }
+    return table;
+  }
+
+  /**
+   * Java Serialization support. Metric ids are only meaningful within one JVM,
+   * so counters are written by metric name.
+   * @param oos stream to write to
+   * @throws IOException if an I/O error occurs
+   */
+  private void writeObject(ObjectOutputStream oos) throws IOException {
+    oos.defaultWriteObject();
+    oos.writeInt(counts.size());
+    for (Map.Entry<Long, LongAdder> e : counts.entrySet()) {
+      long key = e.getKey();
+      oos.writeInt((int) (key >> 32));
+      oos.writeUTF(metricName((int) key));
+      oos.writeLong(e.getValue().sum());
+    }
+  }
+
+  /**
+   * Java Serialization support.
+   * @param ois stream to read from
+   * @throws ClassNotFoundException if a class cannot be found
+   * @throws IOException if an I/O error occurs
+   */
+  private void readObject(ObjectInputStream ois) throws ClassNotFoundException, IOException {
+    ois.defaultReadObject();
+    counts = new ConcurrentHashMap<>();
+    int size = ois.readInt();
+    for (int i = 0; i < size; i++) {
+      int year = ois.readInt();
+      int metricId = metricId(ois.readUTF());
+      LongAdder counter = new LongAdder();
+      counter.add(ois.readLong());
+      counts.put(key(year, metricId), counter);
+    }
+  }
+}
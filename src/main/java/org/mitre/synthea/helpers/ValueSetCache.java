@@ -0,0 +1,135 @@
+package org.mitre.synthea.helpers;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.apache.commons.codec.binary.Hex;
+
+/**
+ * Local, persistent cache of ValueSet expansions returned by the terminology service.
+ *
+ * <p>Each expansion is stored as the JSON ValueSet returned by the server, in a file named
+ * by the SHA-256 hash of the full expansion request URL. The URL includes the terminology
+ * service and the ValueSet URI along with any filter, so each distinct request has its own
+ * entry, and repeated runs, or concurrent runs sharing a cache directory, only ever ask the
+ * server for each expansion once. Files are written to a temporary file and then atomically
+ * moved into place, so a partially written file is never read.</p>
+ *
+ * <p>In offline mode the terminology service is never contacted, and expanding a ValueSet
+ * that is not in the cache is an error. This allows runs that use ValueSet URIs without
+ * network access, once the cache has been filled by an online run.</p>
+ */
+public class ValueSetCache {
+  private final Path directory;
+
+  /**
+   * Create a ValueSet cache backed by the given directory.
+   * @param directory The directory containing the cache files.
+   */
+  public ValueSetCache(Path directory) {
+    this.directory = directory;
+  }
+
+  /**
+   * Get the ValueSet cache configured by the generate.terminology_service.cache settings.
+   * The cache is always used in offline mode.
+   * @return The ValueSet cache, or null if the cache is disabled.
+   */
+  public static ValueSetCache fromConfig() {
+    if (!Config.getAsBoolean("generate.terminology_service.cache", false) && !isOffline()) {
+      return null;
+    }
+    return new ValueSetCache(Paths.get(
+        Config.get("generate.terminology_service.cache.directory", "./cache/valuesets")));
+  }
+
+  /**
+   * Whether the terminology service must not be contacted, so that ValueSets can only be
+   * expanded from the cache.
+   * @return true in offline mode.
+   */
+  public static boolean isOffline() {
+    return Config.getAsBoolean("generate.terminology_service.offline", false);
+  }
+
+  /**
+   * Load a ValueSet expansion from the cache.
+   * @param url The full expansion request URL.
+   * @return The JSON ValueSet returned by the server, or null if it is not in the cache.
+   */
+  public String load(String url) {
+    Path file = fileFor(url);
+    if (!Files.isRegularFile(file)) {
+      return null;
+    }
+    try {
+      return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      System.err.println("Ignoring unreadable ValueSet cache file " + file + ": " + e);
+      return null;
+    }
+  }
+
+  /**
+   * Store a ValueSet expansion in the cache. Failures are reported but otherwise ignored.
+   * @param url The full expansion request URL.
+   * @param json The JSON ValueSet returned by the server.
+   */
+  public void store(String url, String json) {
+    Path tempFile = null;
+    try {
+      Files.createDirectories(directory);
+      tempFile = Files.createTempFile(directory, key(url), ".tmp");
+      Files.write(tempFile, json.getBytes(StandardCharsets.UTF_8));
+      Files.move(tempFile, fileFor(url),
+          StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      tempFile = null;
+    } catch (IOException e) {
+      System.err.println("Unable to cache ValueSet expansion " + url + ": " + e);
+    } finally {
+      if (tempFile != null) {
+        try {
+          Files.deleteIfExists(tempFile);
+        } catch (IOException e) {
+          // nothing else to do
+        }
+      }
+    }
+  }
+
+  /**
+   * Remove a ValueSet expansion from the cache, for example because it could not be parsed.
+   * @param url The full expansion request URL.
+   */
+  public void remove(String url) {
+    try {
+      Files.deleteIfExists(fileFor(url));
+    } catch (IOException e) {
+      System.err.println("Unable to remove cached ValueSet expansion " + url + ": " + e);
+    }
+  }
+
+  /**
+   * Compute the cache key of an expansion request.
+   * @param url The full expansion request URL.
+   * @return The cache key, a hex encoded SHA-256 hash.
+   */
+  public static String key(String url) {
+    try {
+      MessageDigest md = MessageDigest.getInstance("SHA-256");
+      return Hex.encodeHexString(md.digest(url.getBytes(StandardCharsets.UTF_8)));
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private Path fileFor(String url) {
+    return directory.resolve(key(url) + ".json");
+  }
+}
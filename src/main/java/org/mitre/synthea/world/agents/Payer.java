@@ -1,12 +1,7 @@
 package org.mitre.synthea.world.agents;
 
-import com.google.common.collect.HashBasedTable;
-import com.google.common.collect.Table;
 import com.google.gson.internal.LinkedTreeMap;
 
-import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.math.BigDecimal;
 import java.util.ArrayList;
@@ -20,6 +15,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 import org.mitre.synthea.export.JSONSkip;
 import org.mitre.synthea.helpers.Utilities;
+import org.mitre.synthea.helpers.UtilizationRegistry;
 import org.mitre.synthea.world.agents.behaviors.payeradjustment.IPayerAdjustment;
 import org.mitre.synthea.world.concepts.Claim;
 import org.mitre.synthea.world.concepts.Claim.ClaimEntry;
@@ -68,58 +64,26 @@ public class Payer implements Serializable {
   /** Unique utilizers of Payer, by Person ID, with number of utilizations per Person. */
   private final Map<String, AtomicInteger> customerUtilization;
   /** row: year, column: type, value: count. */
-  private transient Table<Integer, String, AtomicInteger> entryUtilization;
-
-  /**
-   * Simple bean used to add Java Serialization support to
-   * com.google.common.collect.Table&lt;Integer, String, AtomicInteger&gt; which doesn't natively
-   * support Serialization.
-   */
-  static class UtilizationBean implements Serializable {
-    public Integer year;
-    public String type;
-    public AtomicInteger count;
-
-    public UtilizationBean(Integer year, String type, AtomicInteger count) {
-      this.year = year;
-      this.type = type;
-      this.count = count;
-    }
-  }
-
-  /**
-   * Java Serialization support for the entryUtilization field.
-   * @param oos stream to write to
-   * @throws IOException if an I/O error occurs
-   */
-  private void writeObject(ObjectOutputStream oos) throws IOException {
-    oos.defaultWriteObject();
-    ArrayList<UtilizationBean> entryUtilizationElements = null;
-    if (entryUtilization != null) {
-      entryUtilizationElements = new ArrayList<>(entryUtilization.size());
-      for (Table.Cell<Integer, String, AtomicInteger> cell: entryUtilization.cellSet()) {
-        entryUtilizationElements.add(
-                new UtilizationBean(cell.getRowKey(), cell.getColumnKey(), cell.getValue()));
-      }
-    }
-    oos.writeObject(entryUtilizationElements);
-  }
-
-  /**
-   * Java Serialization support for the entryUtilization field.
-   * @param ois stream to read from
-   * @throws ClassNotFoundException if a class cannot be found
-   * @throws IOException if an I/O error occurs
-   */
-  private void readObject(ObjectInputStream ois) throws ClassNotFoundException, IOException {
-    ois.defaultReadObject();
-    ArrayList<UtilizationBean> entryUtilizationElements =
-            (ArrayList<UtilizationBean>)ois.readObject();
-    if (entryUtilizationElements != null) {
-      this.entryUtilization = HashBasedTable.create();
-      for (UtilizationBean u: entryUtilizationElements) {
-        this.entryUtilization.put(u.year, u.type, u.count);
-      }
+  @JSONSkip
+  private final UtilizationRegistry entryUtilization;
+
+  /** Entry types tracked by entry utilization. */
+  private static final String[] ENTRY_TYPES = { HealthRecord.ENCOUNTERS,
+      HealthRecord.MEDICATIONS, HealthRecord.PROCEDURES, HealthRecord.IMMUNIZATIONS, "no_cost" };
+  private static final int ENCOUNTER_INDEX = 0;
+  private static final int MEDICATION_INDEX = 1;
+  private static final int PROCEDURE_INDEX = 2;
+  private static final int IMMUNIZATION_INDEX = 3;
+  private static final int NO_COST_INDEX = 4;
+  /** Interned "covered-[entry type]" metric ids, indexed as ENTRY_TYPES. */
+  private static final int[] COVERED_IDS = new int[ENTRY_TYPES.length];
+  /** Interned "uncovered-[entry type]" metric ids, indexed as ENTRY_TYPES. */
+  private static final int[] UNCOVERED_IDS = new int[ENTRY_TYPES.length];
+
+  static {
+    for (int i = 0; i < ENTRY_TYPES.length; i++) {
+      COVERED_IDS[i] = UtilizationRegistry.metricId("covered-" + ENTRY_TYPES[i]);
+      UNCOVERED_IDS[i] = UtilizationRegistry.metricId("uncovered-" + ENTRY_TYPES[i]);
     }
   }
 
@@ -144,7 +108,7 @@ public class Payer implements Serializable {
     this.attributes = new LinkedTreeMap<>();
 
     // Initial tracking values.
-    this.entryUtilization = HashBasedTable.create();
+    this.entryUtilization = new UtilizationRegistry();
     this.customerUtilization = new HashMap<String, AtomicInteger>();
     this.costsCovered = Claim.ZERO_CENTS;
     this.costsUncovered = Claim.ZERO_CENTS;
@@ -248,11 +212,7 @@ public class Payer implements Serializable {
    * @param entry the entry covered.
    */
   public void incrementCoveredEntries(Entry entry) {
-
-    String entryType = getEntryType(entry);
-
-    incrementEntries(Utilities.getYear(entry.start), "covered-" + entryType);
-    incrementEntries(Utilities.getYear(entry.start), "covered-" + entryType + "-" + entry.type);
+    incrementEntries(entry, COVERED_IDS[getEntryTypeIndex(entry)]);
   }
 
   /**
@@ -261,12 +221,7 @@ public class Payer implements Serializable {
    * @param entry the entry covered.
    */
   public void incrementUncoveredEntries(Entry entry) {
-
-    String entryType = getEntryType(entry);
-
-    incrementEntries(Utilities.getYear(entry.start), "uncovered-" + entryType);
-    incrementEntries(Utilities.getYear(entry.start), "uncovered-" + entryType
-        + "-" + entry.type);
+    incrementEntries(entry, UNCOVERED_IDS[getEntryTypeIndex(entry)]);
   }
 
   // Perhaps move to HealthRecord.java
@@ -274,37 +229,35 @@ public class Payer implements Serializable {
    * Determines what entry type (Immunization/Encounter/Procedure/Medication) of the given entry.
    *
    * @param entry the entry to parse.
+   * @return the index of the entry type within ENTRY_TYPES.
    */
-  private String getEntryType(Entry entry) {
-
-    String entryType;
-
+  private static int getEntryTypeIndex(Entry entry) {
     if (entry instanceof Encounter) {
-      entryType = HealthRecord.ENCOUNTERS;
+      return ENCOUNTER_INDEX;
     } else if (entry instanceof Medication) {
-      entryType = HealthRecord.MEDICATIONS;
+      return MEDICATION_INDEX;
     } else if (entry instanceof Procedure) {
-      entryType = HealthRecord.PROCEDURES;
+      return PROCEDURE_INDEX;
     } else if (entry instanceof Immunization) {
-      entryType = HealthRecord.IMMUNIZATIONS;
+      return IMMUNIZATION_INDEX;
     } else {
       // Not an entry with a cost.
-      entryType = "no_cost";
+      return NO_COST_INDEX;
     }
-    return entryType;
   }
 
   /**
-   * Increments encounter utilization for a given year and encounter type.
+   * Increments entry utilization for the year of the given entry, both for the
+   * entry type and for the entry type qualified by the entry's own type.
    *
-   * @param year the year of the encounter to add
-   * @param key the key (the encounter type and whether it was covered/uncovered)
+   * @param entry the entry to count.
+   * @param metricId the metric (entry type and whether it was covered/uncovered).
    */
-  private synchronized void incrementEntries(Integer year, String key) {
-    if (!entryUtilization.contains(year, key)) {
-      entryUtilization.put(year, key, new AtomicInteger(0));
-    }
-    entryUtilization.get(year, key).incrementAndGet();
+  private void incrementEntries(Entry entry, int metricId) {
+    int year = Utilities.getYear(entry.start);
+    entryUtilization.increment(year, metricId);
+    entryUtilization.increment(year,
+        UtilizationRegistry.metricId(metricId, String.valueOf(entry.type)));
   }
 
   /**
@@ -378,8 +331,7 @@ public class Payer implements Serializable {
    * @return the number of covered encounters.
    */
   public int getEncountersCoveredCount() {
-    return entryUtilization.column("covered-"
-        + HealthRecord.ENCOUNTERS).values().stream().mapToInt(ai -> ai.get()).sum();
+    return entryUtilization.total(COVERED_IDS[ENCOUNTER_INDEX]);
   }
 
   /**
@@ -387,8 +339,7 @@ public class Payer implements Serializable {
    * @return the number of uncovered patient encounters.
    */
   public int getEncountersUncoveredCount() {
-    return entryUtilization.column("uncovered-"
-        + HealthRecord.ENCOUNTERS).values().stream().mapToInt(ai -> ai.get()).sum();
+    return entryUtilization.total(UNCOVERED_IDS[ENCOUNTER_INDEX]);
   }
 
   /**
@@ -396,8 +347,7 @@ public class Payer implements Serializable {
    * @return the number of covered medications.
    */
   public int getMedicationsCoveredCount() {
-    return entryUtilization.column("covered-"
-        + HealthRecord.MEDICATIONS).values().stream().mapToInt(ai -> ai.get()).sum();
+    return entryUtilization.total(COVERED_IDS[MEDICATION_INDEX]);
   }
 
   /**
@@ -405,8 +355,7 @@ public class Payer implements Serializable {
    * @return the number of uncovered patient medications.
    */
   public int getMedicationsUncoveredCount() {
-    return entryUtilization.column("uncovered-"
-        + HealthRecord.MEDICATIONS).values().stream().mapToInt(ai -> ai.get()).sum();
+    return entryUtilization.total(UNCOVERED_IDS[MEDICATION_INDEX]);
   }
 
   /**
@@ -414,8 +363,7 @@ public class Payer implements Serializable {
    * @return the number of covered procedures.
    */
   public int getProceduresCoveredCount() {
-    return entryUtilization.column("covered-"
-        + HealthRecord.PROCEDURES).values().stream().mapToInt(ai -> ai.get()).sum();
+    return entryUtilization.total(COVERED_IDS[PROCEDURE_INDEX]);
   }
 
   /**
@@ -423,8 +371,7 @@ public class Payer implements Serializable {
    * @return the number of uncovered patient procedures.
    */
   public int getProceduresUncoveredCount() {
-    return entryUtilization.column("uncovered-"
-        + HealthRecord.PROCEDURES).values().stream().mapToInt(ai -> ai.get()).sum();
+    return entryUtilization.total(UNCOVERED_IDS[PROCEDURE_INDEX]);
   }
 
   /**
@@ -432,8 +379,7 @@ public class Payer implements Serializable {
    * @return the number of covered immunizations.
    */
   public int getImmunizationsCoveredCount() {
-    return entryUtilization.column("covered-"
-        + HealthRecord.IMMUNIZATIONS).values().stream().mapToInt(ai -> ai.get()).sum();
+    return entryUtilization.total(COVERED_IDS[IMMUNIZATION_INDEX]);
   }
 
   /**
@@ -441,8 +387,7 @@ public class Payer implements Serializable {
    * @return the number of uncovered patient immunizations.
    */
   public int getImmunizationsUncoveredCount() {
-    return entryUtilization.column("uncovered-"
-        + HealthRecord.IMMUNIZATIONS).values().stream().mapToInt(ai -> ai.get()).sum();
+    return entryUtilization.total(UNCOVERED_IDS[IMMUNIZATION_INDEX]);
   }
 
   /**
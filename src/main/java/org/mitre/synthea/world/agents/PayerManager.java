@@ -10,6 +10,7 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.StringUtils;
@@ -26,6 +27,7 @@ import org.mitre.synthea.world.agents.behaviors.planfinder.PlanFinderBestRates;
 import org.mitre.synthea.world.agents.behaviors.planfinder.PlanFinderPriority;
 import org.mitre.synthea.world.agents.behaviors.planfinder.PlanFinderRandom;
 import org.mitre.synthea.world.concepts.HealthRecord.EncounterType;
+import org.mitre.synthea.world.concepts.healthinsurance.ActivePlanIndex;
 import org.mitre.synthea.world.concepts.healthinsurance.InsurancePlan;
 import org.mitre.synthea.world.geography.Location;
 
@@ -87,6 +89,12 @@ public class PayerManager {
   // Payer Finder.
   private static IPlanFinder planFinder;
 
+  /* Index of active plans across all loaded payers, rebuilt whenever plans are loaded. */
+  private static volatile ActivePlanIndex planIndex;
+
+  /* Index of active plans of the payers covering each state loaded on demand. */
+  private static final Map<String, ActivePlanIndex> planIndexByState = new ConcurrentHashMap<>();
+
   /**
    * Load into cache the list of payers for a state.
    *
@@ -145,10 +153,73 @@ public class PayerManager {
       }
     }
 
-    PayerManager.loadPlans();
+    PayerManager.loadPlans(null);
   }
 
-  private static void loadPlans() {
+  /**
+   * Load into cache the payers for another state while people are being simulated.
+   * Unlike {@link #loadPayers(Location)}, this adds to the payers of any states already
+   * loaded: payers covering more than one state are only loaded once, and the plans a
+   * person can choose from are limited to the payers covering the state they live in.
+   * Plan eligibility is decided by the state each person lives in.
+   *
+   * @param location the state being loaded.
+   */
+  public static synchronized void loadPayersOnDemand(Location location) {
+    if (statesLoaded.contains(location.state)) {
+      return;
+    }
+    String eligibilitiesFile = Config.get("generate.payers.insurance_plans.eligibilities_file");
+    if (planIndexByState.isEmpty()) {
+      PlanEligibilityFinder.buildPlanEligibilitiesByState(location.state, eligibilitiesFile);
+      planFinder = buildPlanFinder();
+      PayerManager.loadNoInsurance();
+    }
+    String fileName = Config.get("generate.payers.insurance_companies.default_file");
+    try {
+      String resource = Utilities.readResource(fileName, true, true);
+      Iterator<? extends Map<String, String>> csv = SimpleCSV.parseLineByLine(resource);
+      String abbreviation = Location.getAbbreviation(location.state).toUpperCase();
+      // payers covering this state, in file order so plan choices do not depend on the
+      // order in which states are loaded
+      List<Integer> statePayerIds = new ArrayList<>();
+      Set<Integer> newPayerIds = new HashSet<>();
+      while (csv.hasNext()) {
+        Map<String, String> row = csv.next();
+        String payerStates = row.get(STATES_COVERED).toUpperCase();
+        if (payerStates.contains(abbreviation) || payerStates.contains("*")) {
+          int payerId = Integer.parseInt(row.get(ID).trim());
+          if (!PayerManager.payers.containsKey(payerId)) {
+            Payer parsedPayer = csvLineToPayer(row);
+            parsedPayer.setPayerAdjustment(buildPayerAdjustment());
+            PayerManager.payers.put(parsedPayer.getPlanLinkId(), parsedPayer);
+            newPayerIds.add(payerId);
+          }
+          statePayerIds.add(payerId);
+        }
+      }
+      PayerManager.loadPlans(newPayerIds);
+
+      List<Payer> statePayers = new ArrayList<>();
+      for (int payerId : statePayerIds) {
+        statePayers.add(PayerManager.payers.get(payerId));
+      }
+      planIndexByState.put(location.state, new ActivePlanIndex(getAllPlans(statePayers)));
+
+      statesLoaded.add(location.state);
+      statesLoaded.add(Location.getAbbreviation(location.state));
+      statesLoaded.add(Location.getStateName(location.state));
+    } catch (IOException e) {
+      System.err.println("ERROR: unable to load payers for state: " + location.state);
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Load the plans of loaded payers.
+   * @param payerIds The ids of the payers to load plans for, or null for all loaded payers.
+   */
+  private static void loadPlans(Set<Integer> payerIds) {
     String fileName = Config.get("generate.payers.insurance_plans.default_file");
     Iterator<? extends Map<String, String>> csv = null;
     try {
@@ -160,8 +231,66 @@ public class PayerManager {
 
     while (csv.hasNext()) {
       Map<String, String> row = csv.next();
+      if (payerIds != null && !payerIds.contains(Integer.parseInt(row.get(PAYER_ID).trim()))) {
+        continue;
+      }
       csvLineToPlan(row);
     }
+
+    if (payerIds == null) {
+      PayerManager.planIndex = new ActivePlanIndex(getAllPlans(getAllPayers()));
+    } else {
+      // people choose from the index of their own state when payers are loaded on demand,
+      // so the index across all payers is only rebuilt if it is used
+      PayerManager.planIndex = null;
+    }
+  }
+
+  /**
+   * Returns all plans of the given payers, in payer order.
+   * @param payers The payers.
+   * @return The plans.
+   */
+  private static List<InsurancePlan> getAllPlans(List<Payer> payers) {
+    List<InsurancePlan> plans = new ArrayList<>();
+    for (Payer payer : payers) {
+      plans.addAll(payer.getPlans());
+    }
+    return plans;
+  }
+
+  /**
+   * Returns the index of active plans, building it if plans were loaded without one.
+   * @return The index of active plans across all loaded payers.
+   */
+  private static ActivePlanIndex getPlanIndex() {
+    ActivePlanIndex index = planIndex;
+    if (index == null) {
+      synchronized (PayerManager.class) {
+        index = planIndex;
+        if (index == null) {
+          index = new ActivePlanIndex(getAllPlans(getAllPayers()));
+          planIndex = index;
+        }
+      }
+    }
+    return index;
+  }
+
+  /**
+   * Returns the index of active plans the given person can choose from.
+   * @param person The person.
+   * @return The index of the plans of the payers covering the person's state, if payers are
+   *     loaded on demand, otherwise the index of active plans across all loaded payers.
+   */
+  private static ActivePlanIndex getPlanIndex(Person person) {
+    if (!planIndexByState.isEmpty()) {
+      ActivePlanIndex index = planIndexByState.get(person.attributes.get(Person.STATE));
+      if (index != null) {
+        return index;
+      }
+    }
+    return getPlanIndex();
   }
 
   /**
@@ -316,7 +445,7 @@ public class PayerManager {
    * Returns the List of all loaded payers.
    * @return A list of all loaded payers.
    */
-  public static List<Payer> getAllPayers() {
+  public static synchronized List<Payer> getAllPayers() {
     return payers.values().stream().collect(Collectors.toList());
   }
 
@@ -327,6 +456,9 @@ public class PayerManager {
   public static void clear() {
     payers.clear();
     statesLoaded.clear();
+    planIndex = null;
+    planIndexByState.clear();
+    PlanEligibilityFinder.clearPlanEligibilitiesByState();
     planFinder = buildPlanFinder();
   }
 
@@ -339,10 +471,8 @@ public class PayerManager {
    * @return a payer who the person can accept and vice versa.
    */
   public static InsurancePlan findPlan(Person person, EncounterType service, long time) {
-    List<InsurancePlan> plans = getActivePlans(getAllPayers(), time);
-    // Remove medicare supplement plans from this check.
-    plans = plans.stream().filter(plan -> !plan.isMedicareSupplementPlan())
-        .collect(Collectors.toList());
+    // Medicare supplement plans are excluded from this check.
+    List<InsurancePlan> plans = getPlanIndex(person).getActiveNonSupplementPlans(time);
     InsurancePlan potentialPlan = planFinder.find(plans, person, service, time);
     if (potentialPlan.isGovernmentPlan()) {
       // Person will always choose a government plan.
@@ -393,10 +523,8 @@ public class PayerManager {
    */
   public static InsurancePlan findMedicareSupplement(Person person,
       EncounterType service, long time) {
-    List<InsurancePlan> plans = getActivePlans(getAllPayers(), time);
-    // Remove non-medicare supplement plans from this check.
-    plans = plans.stream().filter(plan -> plan.isMedicareSupplementPlan())
-        .collect(Collectors.toList());
+    // Only medicare supplement plans are included in this check.
+    List<InsurancePlan> plans = getPlanIndex(person).getActiveSupplementPlans(time);
     InsurancePlan potentialPlan = planFinder.find(plans, person, service, time);
     return potentialPlan;
   }
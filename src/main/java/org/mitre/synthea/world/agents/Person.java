@@ -12,6 +12,7 @@ import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -22,6 +23,8 @@ import java.util.stream.Collectors;
 import org.apache.commons.lang3.tuple.Pair;
 import org.mitre.synthea.engine.ExpressedConditionRecord;
 import org.mitre.synthea.engine.ExpressedSymptom;
+import org.mitre.synthea.engine.Logic;
+import org.mitre.synthea.engine.LogicInputs;
 import org.mitre.synthea.engine.Module;
 import org.mitre.synthea.engine.State;
 import org.mitre.synthea.helpers.Config;
@@ -217,6 +220,11 @@ public class Person implements Serializable, RandomNumberGenerator, QuadTreeElem
   /** Data structure for storing symptoms faced by a person.
    * Adding the Long keyset to keep track of the time a symptom is set. */
   Map<String, ExpressedSymptom> symptoms;
+  /** The sum of the values of all symptoms, see {@link #symptomTotal()}. Kept up to date by
+   * setSymptom and addressLargestSymptom. Only valid if symptomTotalIsCurrent. */
+  private transient int symptomTotal;
+  /** Whether symptomTotal reflects the current symptoms. */
+  private transient boolean symptomTotalIsCurrent;
   /** Data structure for storing onset conditions (init_time, end_time).*/
   public ExpressedConditionRecord onsetConditionRecord;
   /** Map of chronic medications for the person. */
@@ -241,6 +249,25 @@ public class Person implements Serializable, RandomNumberGenerator, QuadTreeElem
   public List<State> history;
   /** Record of insurance coverage. */
   public final CoverageRecord coverage;
+  /** The most recently computed age, see {@link #age(long)}. */
+  private transient AgeCache ageCache;
+  /** The last result of each transition condition, see {@link #getConditionResults()}. */
+  private transient Map<Logic, LogicInputs.Snapshot> conditionResults;
+
+  /**
+   * Immutable cache entry for the age of this person at a single point in time.
+   */
+  private static class AgeCache {
+    final long time;
+    final long birthdate;
+    final Period age;
+
+    AgeCache(long time, long birthdate, Period age) {
+      this.time = time;
+      this.birthdate = birthdate;
+      this.age = age;
+    }
+  }
 
   /**
    * Person constructor.
@@ -248,9 +275,10 @@ public class Person implements Serializable, RandomNumberGenerator, QuadTreeElem
    */
   public Person(long seed) {
     random = new DefaultRandomNumberGenerator(seed);
-    attributes = new ConcurrentHashMap<String, Object>();
+    attributes = new PersonAttributes();
     vitalSigns = new ConcurrentHashMap<VitalSign, ValueGenerator>();
-    symptoms = new ConcurrentHashMap<String, ExpressedSymptom>();
+    symptoms = new HashMap<String, ExpressedSymptom>();
+    symptomTotalIsCurrent = true;
     /* initialized the onsetConditions field */
     onsetConditionRecord = new ExpressedConditionRecord(this);
     /* Chronic Medications which will be renewed at each Wellness Encounter */
@@ -342,24 +370,57 @@ public class Person implements Serializable, RandomNumberGenerator, QuadTreeElem
    * @return The age of the person as a Period.
    */
   public Period age(long time) {
-    Period age = Period.ZERO;
+    long birthdateMillis;
+    if (attributes instanceof PersonAttributes) {
+      PersonAttributes typed = (PersonAttributes) attributes;
+      if (!typed.hasBirthdate()) {
+        return Period.ZERO;
+      }
+      birthdateMillis = typed.getBirthdate();
+    } else {
+      Object birthtime = attributes.get(BIRTHDATE);
+      if (birthtime == null) {
+        return Period.ZERO;
+      }
+      birthdateMillis = (long) birthtime;
+    }
 
-    if (attributes.containsKey(BIRTHDATE)) {
-      LocalDate now = Instant.ofEpochMilli(time).atZone(ZoneOffset.UTC).toLocalDate();
+    // we call age() many times per timestep with the same time, so cache the last result.
+    // the cache is keyed on both the time and the birthdate, so it is invalidated as soon
+    // as the simulation advances or the birthdate changes.
+    AgeCache cached = ageCache;
+    if (cached != null && cached.time == time && cached.birthdate == birthdateMillis) {
+      return cached.age;
+    }
 
-      // we call age() a lot, so caching the birthdate as a LocalDate saves some translation
-      LocalDate birthdate = (LocalDate) attributes.get(BIRTHDATE_AS_LOCALDATE);
-      if (birthdate == null) {
-        birthdate = Instant.ofEpochMilli((long) attributes.get(BIRTHDATE))
-            .atZone(ZoneOffset.UTC).toLocalDate();
-        attributes.put(BIRTHDATE_AS_LOCALDATE, birthdate);
-      }
+    LocalDate now = Instant.ofEpochMilli(time).atZone(ZoneOffset.UTC).toLocalDate();
 
-      age = Period.between(birthdate, now);
+    // caching the birthdate as a LocalDate saves some translation
+    LocalDate birthdate = (LocalDate) attributes.get(BIRTHDATE_AS_LOCALDATE);
+    if (birthdate == null || cached == null || cached.birthdate != birthdateMillis) {
+      birthdate = Instant.ofEpochMilli(birthdateMillis).atZone(ZoneOffset.UTC).toLocalDate();
+      attributes.put(BIRTHDATE_AS_LOCALDATE, birthdate);
     }
+
+    Period age = Period.between(birthdate, now);
+    ageCache = new AgeCache(time, birthdateMillis, age);
     return age;
   }
 
+  /**
+   * The last result of each transition condition tested for this person, with the inputs
+   * it was tested with, so that it can be reused while they are unchanged. See
+   * {@link LogicInputs#test(Person, long)}.
+   *
+   * @return The results, by condition.
+   */
+  public Map<Logic, LogicInputs.Snapshot> getConditionResults() {
+    if (conditionResults == null) {
+      conditionResults = new IdentityHashMap<>();
+    }
+    return conditionResults;
+  }
+
   /**
    * Returns a person's age in decimal years. (ex. 7.5 ~ 7 years 6 months old)
    *
@@ -464,11 +525,14 @@ public class Person implements Serializable, RandomNumberGenerator, QuadTreeElem
    */
   public void setSymptom(String module, String cause, String type,
       long time, int value, Boolean addressed) {
-    if (!symptoms.containsKey(type)) {
-      symptoms.put(type, new ExpressedSymptom(type));
-    }
     ExpressedSymptom expressedSymptom = symptoms.get(type);
+    if (expressedSymptom == null) {
+      expressedSymptom = new ExpressedSymptom(type);
+      symptoms.put(type, expressedSymptom);
+    }
+    int previousValue = expressedSymptom.getSymptom();
     expressedSymptom.onSet(module, cause, time, value, addressed);
+    symptomTotal += expressedSymptom.getSymptom() - previousValue;
   }
 
   /**
@@ -538,7 +602,12 @@ public class Person implements Serializable, RandomNumberGenerator, QuadTreeElem
         }
       }
     }
-    symptoms.get(highestType).addressSource(highestCause);
+    ExpressedSymptom expressedSymptom = symptoms.get(highestType);
+    if (expressedSymptom != null) {
+      int previousValue = expressedSymptom.getSymptom();
+      expressedSymptom.addressSource(highestCause);
+      symptomTotal += expressedSymptom.getSymptom() - previousValue;
+    }
   }
 
   /**
@@ -632,11 +701,16 @@ public class Person implements Serializable, RandomNumberGenerator, QuadTreeElem
    *         care-seeking behaviors.
    */
   public int symptomTotal() {
-    int total = 0;
-    for (String type : symptoms.keySet()) {
-      total += getSymptom(type);
+    if (!symptomTotalIsCurrent) {
+      // only after deserialization, after that it is kept up to date as symptoms change
+      int total = 0;
+      for (ExpressedSymptom expressedSymptom : symptoms.values()) {
+        total += expressedSymptom.getSymptom();
+      }
+      symptomTotal = total;
+      symptomTotalIsCurrent = true;
     }
-    return total;
+    return symptomTotal;
   }
 
   /**
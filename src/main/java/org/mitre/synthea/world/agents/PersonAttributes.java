@@ -0,0 +1,494 @@
+package org.mitre.synthea.world.agents;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+/**
+ * Storage for Person attributes.
+ * A handful of well-known attributes (birthdate, gender, race, etc.) are read millions of
+ * times per lifetime, so they are kept in fixed slots. The birthdate, gender, income and
+ * occupation level are also kept as a primitive or enum field, which typed accessors such as
+ * {@link #getBirthdate()} read without a map lookup or unboxing. Slot keys are located with a small
+ * collision-free table indexed by the (cached) String hash code, so even plain
+ * {@link #get(Object)} calls avoid a full hash map lookup. All other attributes, such as
+ * those set by modules, fall back to a ConcurrentHashMap.
+ *
+ * <p>This class is a ConcurrentMap, like the ConcurrentHashMap it replaces: the slots are
+ * held in an AtomicReferenceArray, so each update of a slot is atomic and visible to other
+ * threads, and putIfAbsent, replace, computeIfAbsent, etc. are atomic for slots as well as
+ * for other attributes. Updates of the slots with a typed field are serialized, and write
+ * the field before the slot, so a typed accessor that finds its slot set also sees the
+ * matching field. Null keys and values are not permitted, and iteration order is
+ * unspecified. Slot values are returned exactly as they were put, so existing code casting
+ * the results of get() and the JSON export are unaffected.</p>
+ */
+public class PersonAttributes extends AbstractMap<String, Object>
+    implements ConcurrentMap<String, Object>, Serializable {
+  private static final long serialVersionUID = -2750413968342191466L;
+
+  /**
+   * The gender attribute, as read by {@link #getGender()}.
+   */
+  public enum Gender {
+    M, F;
+
+    private static Gender of(Object value) {
+      if ("M".equals(value)) {
+        return M;
+      } else if ("F".equals(value)) {
+        return F;
+      }
+      return null;
+    }
+  }
+
+  /** Keys of the well-known attributes, in slot order. */
+  private static final String[] SLOT_KEYS = {
+    Person.BIRTHDATE,
+    Person.GENDER,
+    Person.RACE,
+    Person.ETHNICITY,
+    Person.VETERAN,
+    Person.SOCIOECONOMIC_CATEGORY,
+    Person.INCOME,
+    Person.OCCUPATION_LEVEL
+  };
+  private static final int BIRTHDATE = 0;
+  private static final int GENDER = 1;
+  private static final int INCOME = 6;
+  private static final int OCCUPATION_LEVEL = 7;
+
+  /** Collision-free table of hash code bits to slot index (or -1). */
+  private static final int[] SLOT_TABLE = buildSlotTable();
+  private static final int SLOT_MASK = SLOT_TABLE.length - 1;
+
+  /** Slot values, exactly as they were put. null means absent. */
+  private final AtomicReferenceArray<Object> values =
+      new AtomicReferenceArray<Object>(SLOT_KEYS.length);
+  /** All other attributes. */
+  private final ConcurrentHashMap<String, Object> others = new ConcurrentHashMap<>();
+  /** Typed copies of slot values, only valid while the slot is set. */
+  private volatile long birthdate;
+  private volatile Gender gender;
+  private volatile int income;
+  private volatile double occupationLevel;
+
+  private static int mix(int hash) {
+    return hash ^ (hash >>> 16);
+  }
+
+  private static int[] buildSlotTable() {
+    for (int size = 16; ; size <<= 1) {
+      int[] table = new int[size];
+      Arrays.fill(table, -1);
+      boolean collision = false;
+      for (int i = 0; i < SLOT_KEYS.length && !collision; i++) {
+        int bucket = mix(SLOT_KEYS[i].hashCode()) & (size - 1);
+        if (table[bucket] >= 0) {
+          collision = true;
+        } else {
+          table[bucket] = i;
+        }
+      }
+      if (!collision) {
+        return table;
+      }
+    }
+  }
+
+  /**
+   * Find the slot of the given key.
+   * @param key The attribute key.
+   * @return The slot index, or -1 if the key is not a well-known attribute.
+   */
+  private static int slot(Object key) {
+    if (!(key instanceof String)) {
+      return -1;
+    }
+    int slot = SLOT_TABLE[mix(key.hashCode()) & SLOT_MASK];
+    if (slot >= 0 && (SLOT_KEYS[slot] == key || SLOT_KEYS[slot].equals(key))) {
+      return slot;
+    }
+    return -1;
+  }
+
+  private static boolean isTyped(int slot) {
+    return slot == BIRTHDATE || slot == GENDER || slot == INCOME || slot == OCCUPATION_LEVEL;
+  }
+
+  /**
+   * Update the typed field of a slot. Must be called while holding the lock, before the
+   * value is stored in the slot.
+   */
+  private void setTyped(int slot, Object value) {
+    if (slot == GENDER) {
+      gender = Gender.of(value);
+    } else if (value instanceof Number) {
+      Number number = (Number) value;
+      if (slot == BIRTHDATE) {
+        birthdate = number.longValue();
+      } else if (slot == INCOME) {
+        income = number.intValue();
+      } else if (slot == OCCUPATION_LEVEL) {
+        occupationLevel = number.doubleValue();
+      }
+    }
+  }
+
+  @Override
+  public Object get(Object key) {
+    int slot = slot(key);
+    if (slot >= 0) {
+      return values.get(slot);
+    }
+    return others.get(key);
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    int slot = slot(key);
+    if (slot >= 0) {
+      return values.get(slot) != null;
+    }
+    return others.containsKey(key);
+  }
+
+  @Override
+  public Object put(String key, Object value) {
+    if (key == null || value == null) {
+      throw new NullPointerException();
+    }
+    int slot = slot(key);
+    if (slot < 0) {
+      return others.put(key, value);
+    } else if (isTyped(slot)) {
+      synchronized (this) {
+        setTyped(slot, value);
+        return values.getAndSet(slot, value);
+      }
+    }
+    return values.getAndSet(slot, value);
+  }
+
+  @Override
+  public Object remove(Object key) {
+    int slot = slot(key);
+    if (slot < 0) {
+      return others.remove(key);
+    }
+    return values.getAndSet(slot, null);
+  }
+
+  @Override
+  public Object putIfAbsent(String key, Object value) {
+    if (key == null || value == null) {
+      throw new NullPointerException();
+    }
+    int slot = slot(key);
+    if (slot < 0) {
+      return others.putIfAbsent(key, value);
+    } else if (isTyped(slot)) {
+      synchronized (this) {
+        Object current = values.get(slot);
+        if (current == null) {
+          setTyped(slot, value);
+          values.set(slot, value);
+        }
+        return current;
+      }
+    }
+    while (true) {
+      Object current = values.get(slot);
+      if (current != null || values.compareAndSet(slot, null, value)) {
+        return current;
+      }
+    }
+  }
+
+  @Override
+  public boolean remove(Object key, Object value) {
+    int slot = slot(key);
+    if (slot < 0) {
+      return value != null && others.remove(key, value);
+    }
+    while (true) {
+      Object current = values.get(slot);
+      if (current == null || !current.equals(value)) {
+        return false;
+      } else if (values.compareAndSet(slot, current, null)) {
+        return true;
+      }
+    }
+  }
+
+  @Override
+  public boolean replace(String key, Object oldValue, Object newValue) {
+    if (key == null || oldValue == null || newValue == null) {
+      throw new NullPointerException();
+    }
+    int slot = slot(key);
+    if (slot < 0) {
+      return others.replace(key, oldValue, newValue);
+    } else if (isTyped(slot)) {
+      synchronized (this) {
+        if (!oldValue.equals(values.get(slot))) {
+          return false;
+        }
+        setTyped(slot, newValue);
+        values.set(slot, newValue);
+        return true;
+      }
+    }
+    while (true) {
+      Object current = values.get(slot);
+      if (!oldValue.equals(current)) {
+        return false;
+      } else if (values.compareAndSet(slot, current, newValue)) {
+        return true;
+      }
+    }
+  }
+
+  @Override
+  public Object replace(String key, Object value) {
+    if (key == null || value == null) {
+      throw new NullPointerException();
+    }
+    int slot = slot(key);
+    if (slot < 0) {
+      return others.replace(key, value);
+    } else if (isTyped(slot)) {
+      synchronized (this) {
+        Object current = values.get(slot);
+        if (current != null) {
+          setTyped(slot, value);
+          values.set(slot, value);
+        }
+        return current;
+      }
+    }
+    while (true) {
+      Object current = values.get(slot);
+      if (current == null || values.compareAndSet(slot, current, value)) {
+        return current;
+      }
+    }
+  }
+
+  @Override
+  public Object computeIfAbsent(String key,
+      Function<? super String, ? extends Object> mappingFunction) {
+    if (slot(key) < 0) {
+      // the mapping function is called at most once
+      return others.computeIfAbsent(key, mappingFunction);
+    }
+    return ConcurrentMap.super.computeIfAbsent(key, mappingFunction);
+  }
+
+  @Override
+  public int size() {
+    int size = others.size();
+    for (int i = 0; i < values.length(); i++) {
+      if (values.get(i) != null) {
+        size++;
+      }
+    }
+    return size;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+  @Override
+  public void clear() {
+    for (int i = 0; i < values.length(); i++) {
+      values.set(i, null);
+    }
+    others.clear();
+  }
+
+  /**
+   * Whether the birthdate attribute is set.
+   * @return true if the person has a birthdate.
+   */
+  public boolean hasBirthdate() {
+    return values.get(BIRTHDATE) != null;
+  }
+
+  /**
+   * Returns the birthdate attribute.
+   * @return the birthdate timestamp.
+   * @throws NullPointerException if the birthdate is not set.
+   */
+  public long getBirthdate() {
+    checkNumeric(BIRTHDATE);
+    return birthdate;
+  }
+
+  /**
+   * Returns the income attribute.
+   * @return the income.
+   * @throws NullPointerException if the income is not set.
+   */
+  public int getIncome() {
+    checkNumeric(INCOME);
+    return income;
+  }
+
+  /**
+   * Returns the occupation level attribute.
+   * @return the occupation level.
+   * @throws NullPointerException if the occupation level is not set.
+   */
+  public double getOccupationLevel() {
+    checkNumeric(OCCUPATION_LEVEL);
+    return occupationLevel;
+  }
+
+  /**
+   * Returns the gender attribute.
+   * @return the gender, or null if not set or neither "M" nor "F".
+   */
+  public Gender getGender() {
+    return values.get(GENDER) == null ? null : gender;
+  }
+
+  /**
+   * Check that a slot holds a number, so that its typed field is valid.
+   */
+  private void checkNumeric(int slot) {
+    Object value = values.get(slot);
+    if (value == null) {
+      throw new NullPointerException(SLOT_KEYS[slot] + " is not set");
+    } else if (!(value instanceof Number)) {
+      throw new ClassCastException(SLOT_KEYS[slot] + " is not numeric: " + value.getClass());
+    }
+  }
+
+  @Override
+  public Set<Map.Entry<String, Object>> entrySet() {
+    return new AbstractSet<Map.Entry<String, Object>>() {
+      @Override
+      public Iterator<Map.Entry<String, Object>> iterator() {
+        return new EntryIterator();
+      }
+
+      @Override
+      public int size() {
+        return PersonAttributes.this.size();
+      }
+    };
+  }
+
+  /**
+   * Iterates the occupied slots, then the other attributes.
+   */
+  private class EntryIterator implements Iterator<Map.Entry<String, Object>> {
+    private int nextSlot = 0;
+    private int lastSlot = -1;
+    private Map.Entry<String, Object> nextEntry;
+    private final Iterator<Map.Entry<String, Object>> othersIterator =
+        others.entrySet().iterator();
+    private boolean inOthers = false;
+
+    @Override
+    public boolean hasNext() {
+      // read each slot once, so a slot removed meanwhile is never returned as null
+      while (nextEntry == null && nextSlot < values.length()) {
+        Object value = values.get(nextSlot);
+        if (value != null) {
+          nextEntry = new SlotEntry(nextSlot, value);
+        }
+        nextSlot++;
+      }
+      return nextEntry != null || othersIterator.hasNext();
+    }
+
+    @Override
+    public Map.Entry<String, Object> next() {
+      if (hasNext() && nextEntry != null) {
+        Map.Entry<String, Object> entry = nextEntry;
+        nextEntry = null;
+        lastSlot = nextSlot - 1;
+        inOthers = false;
+        return entry;
+      }
+      inOthers = true;
+      lastSlot = -1;
+      return othersIterator.next();
+    }
+
+    @Override
+    public void remove() {
+      if (inOthers) {
+        othersIterator.remove();
+      } else if (lastSlot >= 0) {
+        values.set(lastSlot, null);
+        lastSlot = -1;
+      } else {
+        throw new IllegalStateException();
+      }
+    }
+  }
+
+  /**
+   * Write-through entry for a slot.
+   */
+  private class SlotEntry implements Map.Entry<String, Object> {
+    private final int slot;
+    private Object value;
+
+    SlotEntry(int slot, Object value) {
+      this.slot = slot;
+      this.value = value;
+    }
+
+    @Override
+    public String getKey() {
+      return SLOT_KEYS[slot];
+    }
+
+    @Override
+    public Object getValue() {
+      return value;
+    }
+
+    @Override
+    public Object setValue(Object newValue) {
+      Object previous = value;
+      put(SLOT_KEYS[slot], newValue);
+      value = newValue;
+      return previous;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Map.Entry)) {
+        return false;
+      }
+      Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+      return getKey().equals(e.getKey()) && value.equals(e.getValue());
+    }
+
+    @Override
+    public int hashCode() {
+      return getKey().hashCode() ^ value.hashCode();
+    }
+
+    @Override
+    public String toString() {
+      return getKey() + "=" + value;
+    }
+  }
+}
@@ -1,13 +1,11 @@
 package org.mitre.synthea.world.agents;
 
-import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.Table;
 import com.google.gson.internal.LinkedTreeMap;
 
 import java.awt.geom.Point2D;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -18,6 +16,8 @@ import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.mitre.synthea.export.JSONSkip;
 import org.mitre.synthea.helpers.Config;
@@ -25,6 +25,7 @@ import org.mitre.synthea.helpers.DefaultRandomNumberGenerator;
 import org.mitre.synthea.helpers.RandomNumberGenerator;
 import org.mitre.synthea.helpers.SimpleCSV;
 import org.mitre.synthea.helpers.Utilities;
+import org.mitre.synthea.helpers.UtilizationRegistry;
 import org.mitre.synthea.world.agents.behaviors.providerfinder.IProviderFinder;
 import org.mitre.synthea.world.agents.behaviors.providerfinder.ProviderFinderNearest;
 import org.mitre.synthea.world.agents.behaviors.providerfinder.ProviderFinderNearestMedicare;
@@ -118,6 +119,18 @@ public class Provider implements QuadTreeElement, Serializable {
   private static Set<String> statesLoaded = new HashSet<String>();
   /** Count of providers loaded. */
   private static int loaded = 0;
+  /**
+   * Whether states are loaded on demand while people are being simulated, in which case
+   * providerByUuid and providerMap are guarded by providerLock, and people only use
+   * providers in the state they live in.
+   */
+  private static volatile boolean loadedOnDemand = false;
+  private static final ReadWriteLock providerLock = new ReentrantReadWriteLock();
+  /**
+   * Each state loaded on demand numbers its clinicians from its own block, so clinician
+   * identifiers do not depend on the order in which states are loaded.
+   */
+  private static final int ON_DEMAND_CLINICIAN_BLOCK = 1_000_000;
 
   private static final double MAX_PROVIDER_SEARCH_DISTANCE =
       Config.getAsDouble("generate.providers.maximum_search_distance", 2);
@@ -183,43 +196,33 @@ public class Provider implements QuadTreeElement, Serializable {
    */
   @JSONSkip
   public Map<String, ArrayList<Clinician>> clinicianMap;
-  // row: year, column: type, value: count
-  private transient Table<Integer, String, AtomicInteger> utilization;
-
-  /**
-   * Java Serialization support for the utilization field.
-   * @param oos stream to write to
-   * @throws IOException if the object can't be written
-   */
-  private void writeObject(ObjectOutputStream oos) throws IOException {
-    oos.defaultWriteObject();
-    ArrayList<Payer.UtilizationBean> entryUtilizationElements = null;
-    if (utilization != null) {
-      entryUtilizationElements = new ArrayList<>(utilization.size());
-      for (Table.Cell<Integer, String, AtomicInteger> cell: utilization.cellSet()) {
-        entryUtilizationElements.add(
-                new Payer.UtilizationBean(cell.getRowKey(), cell.getColumnKey(), cell.getValue()));
-      }
+  /** Utilization counters. row: year, column: type, value: count. */
+  @JSONSkip
+  private UtilizationRegistry utilization;
+
+  /** Interned utilization metric ids. */
+  private static final int ENCOUNTERS_ID = UtilizationRegistry.metricId(ENCOUNTERS);
+  private static final int PROCEDURES_ID = UtilizationRegistry.metricId(PROCEDURES);
+  private static final int LABS_ID = UtilizationRegistry.metricId(LABS);
+  private static final int PRESCRIPTIONS_ID = UtilizationRegistry.metricId(PRESCRIPTIONS);
+  /** Interned "encounters-[type]" metric ids, indexed by EncounterType ordinal. */
+  private static final int[] ENCOUNTER_TYPE_IDS = new int[EncounterType.values().length];
+
+  static {
+    for (EncounterType type : EncounterType.values()) {
+      ENCOUNTER_TYPE_IDS[type.ordinal()] =
+          UtilizationRegistry.metricId(ENCOUNTERS_ID, type.toString());
     }
-    oos.writeObject(entryUtilizationElements);
   }
 
   /**
-   * Java Serialization support for the utilization field.
+   * Java Serialization support.
    * @param ois stream to read from
    * @throws ClassNotFoundException if the class of a serialized object cannot be found
    * @throws IOException if the object can't be read
    */
   private void readObject(ObjectInputStream ois) throws ClassNotFoundException, IOException {
     ois.defaultReadObject();
-    ArrayList<Payer.UtilizationBean> entryUtilizationElements =
-            (ArrayList<Payer.UtilizationBean>)ois.readObject();
-    if (entryUtilizationElements != null) {
-      this.utilization = HashBasedTable.create();
-      for (Payer.UtilizationBean u: entryUtilizationElements) {
-        this.utilization.put(u.year, u.type, u.count);
-      }
-    }
     // add the object being read to the static provider map
     insertIntoProviderMap(this);
   }
@@ -233,7 +236,7 @@ public class Provider implements QuadTreeElement, Serializable {
     locationUuid = UUID.randomUUID().toString();
     attributes = new LinkedTreeMap<>();
     revenue = 0.0;
-    utilization = HashBasedTable.create();
+    utilization = new UtilizationRegistry();
     servicesProvided = new HashSet<EncounterType>();
     clinicianMap = new HashMap<String, ArrayList<Clinician>>();
     coordinates = new Point2D.Double();
@@ -298,8 +301,8 @@ public class Provider implements QuadTreeElement, Serializable {
    * @param year The year of the encounter.
    */
   public void incrementEncounters(EncounterType service, int year) {
-    increment(year, ENCOUNTERS);
-    increment(year, ENCOUNTERS + "-" + service);
+    utilization.increment(year, ENCOUNTERS_ID);
+    utilization.increment(year, ENCOUNTER_TYPE_IDS[service.ordinal()]);
   }
 
   /**
@@ -307,7 +310,7 @@ public class Provider implements QuadTreeElement, Serializable {
    * @param year The year of the procedures.
    */
   public void incrementProcedures(int year) {
-    increment(year, PROCEDURES);
+    utilization.increment(year, PROCEDURES_ID);
   }
 
   /**
@@ -315,7 +318,7 @@ public class Provider implements QuadTreeElement, Serializable {
    * @param year The year of the labs.
    */
   public void incrementLabs(int year) {
-    increment(year, LABS);
+    utilization.increment(year, LABS_ID);
   }
 
   /**
@@ -323,25 +326,55 @@ public class Provider implements QuadTreeElement, Serializable {
    * @param year The year of the prescriptions.
    */
   public void incrementPrescriptions(int year) {
-    increment(year, PRESCRIPTIONS);
+    utilization.increment(year, PRESCRIPTIONS_ID);
   }
 
-  private synchronized void increment(Integer year, String key) {
-    if (utilization != null) { // TODO remove once utilization stats are made serializable
-      if (!utilization.contains(year, key)) {
-        utilization.put(year, key, new AtomicInteger(0));
-      }
+  /**
+   * Returns the utilization statistics for the provider.
+   * @return A snapshot table of utilization statistics.
+   */
+  public Table<Integer, String, AtomicInteger> getUtilization() {
+    return utilization.asTable();
+  }
 
-      utilization.get(year, key).incrementAndGet();
-    }
+  /**
+   * Returns whether this provider has any recorded utilization.
+   * @return true if anything has been counted for this provider.
+   */
+  public boolean hasUtilization() {
+    return !utilization.isEmpty();
   }
 
   /**
-   * Returns the utilization statistics for the provider.
-   * @return A table of utilization statistics.
+   * Returns the total number of encounters at this provider across all years.
+   * @return the number of encounters.
    */
-  public Table<Integer, String, AtomicInteger> getUtilization() {
-    return utilization;
+  public int getTotalEncounters() {
+    return utilization.total(ENCOUNTERS_ID);
+  }
+
+  /**
+   * Returns the total number of procedures at this provider across all years.
+   * @return the number of procedures.
+   */
+  public int getTotalProcedures() {
+    return utilization.total(PROCEDURES_ID);
+  }
+
+  /**
+   * Returns the total number of labs at this provider across all years.
+   * @return the number of labs.
+   */
+  public int getTotalLabs() {
+    return utilization.total(LABS_ID);
+  }
+
+  /**
+   * Returns the total number of prescriptions at this provider across all years.
+   * @return the number of prescriptions.
+   */
+  public int getTotalPrescriptions() {
+    return utilization.total(PRESCRIPTIONS_ID);
   }
 
   /**
@@ -449,7 +482,7 @@ public class Provider implements QuadTreeElement, Serializable {
    * @return List of providers within the given distance.
    */
   private static List<Provider> findProvidersByLocation(Person person, double distance) {
-    List<QuadTreeElement> results = providerMap.query(person, distance);
+    List<QuadTreeElement> results = queryProviderMap(person, distance);
     List<Provider> providers = new ArrayList<Provider>();
     for (QuadTreeElement item : results) {
       providers.add((Provider) item);
@@ -459,7 +492,7 @@ public class Provider implements QuadTreeElement, Serializable {
 
   private static List<Provider> findNewProvidersByLocation(Person person, double distance,
       List<String> takenIds) {
-    List<QuadTreeElement> results = providerMap.query(person, distance);
+    List<QuadTreeElement> results = queryProviderMap(person, distance);
     List<Provider> providers = new ArrayList<Provider>();
     for (QuadTreeElement item : results) {
       if (!takenIds.contains(((Provider) item).uuid)) {
@@ -469,6 +502,31 @@ public class Provider implements QuadTreeElement, Serializable {
     return providers;
   }
 
+  /**
+   * Find the providers around a given point. When states are loaded on demand, only the
+   * providers in the person's state are returned, just as if that state had been loaded
+   * on its own. Otherwise which providers a person near a state line could use would
+   * depend on whether the neighboring state happened to be loaded yet.
+   */
+  private static List<QuadTreeElement> queryProviderMap(Person person, double distance) {
+    if (!loadedOnDemand) {
+      return providerMap.query(person, distance);
+    }
+    List<QuadTreeElement> results;
+    providerLock.readLock().lock();
+    try {
+      results = providerMap.query(person, distance);
+    } finally {
+      providerLock.readLock().unlock();
+    }
+    Object state = person.attributes.get(Person.STATE);
+    results.removeIf(item -> {
+      Location location = ((Provider) item).location;
+      return location != null && !location.state.equals(state);
+    });
+    return results;
+  }
+
   /**
    * Clear the list of loaded and cached providers.
    */
@@ -478,6 +536,7 @@ public class Provider implements QuadTreeElement, Serializable {
     providerMap = generateQuadTree();
     providerFinder = buildProviderFinder();
     loaded = 0;
+    loadedOnDemand = false;
   }
 
   /**
@@ -566,6 +625,33 @@ public class Provider implements QuadTreeElement, Serializable {
     }
   }
 
+  /**
+   * Load into cache the list of providers for another state while people are being simulated.
+   * All states share the same spatial index of providers. Each state generates its clinicians
+   * from its own seed and numbers them from its own block of identifiers, so the providers
+   * of a state are the same no matter when, or after which other states, it is loaded.
+   *
+   * @param location the state being loaded.
+   * @param clinicianSeed Seed for the clinicians of all states.
+   */
+  public static void loadProvidersOnDemand(Location location, long clinicianSeed) {
+    loadedOnDemand = true;
+    int stateIndex = Location.getIndex(location.state);
+    providerLock.writeLock().lock();
+    try {
+      int previouslyLoaded = loaded;
+      int firstId = (stateIndex + 1) * ON_DEMAND_CLINICIAN_BLOCK;
+      loaded = firstId;
+      try {
+        loadProviders(location, new DefaultRandomNumberGenerator(clinicianSeed + stateIndex));
+      } finally {
+        loaded = previouslyLoaded + (loaded - firstId);
+      }
+    } finally {
+      providerLock.writeLock().unlock();
+    }
+  }
+
   /**
    * Read the providers from the given resource file, only importing the ones for the given state.
    * THIS method is for loading providers and generating clinicians with specific specialties
@@ -892,7 +978,15 @@ public class Provider implements QuadTreeElement, Serializable {
    * @return the list of providers.
    */
   public static List<Provider> getProviderList() {
-    return new ArrayList<Provider>(providerByUuid.values());
+    if (!loadedOnDemand) {
+      return new ArrayList<Provider>(providerByUuid.values());
+    }
+    providerLock.readLock().lock();
+    try {
+      return new ArrayList<Provider>(providerByUuid.values());
+    } finally {
+      providerLock.readLock().unlock();
+    }
   }
 
   void merge(Provider other) {
@@ -970,17 +1064,7 @@ public class Provider implements QuadTreeElement, Serializable {
     if (this.utilization == null) {
       this.utilization = other.utilization;
     } else if (other.utilization != null) {
-      for (Table.Cell<Integer, String, AtomicInteger> cell : other.utilization.cellSet()) {
-        Integer year = cell.getRowKey();
-        String key = cell.getColumnKey();
-        AtomicInteger otherValue = cell.getValue();
-
-        if (this.utilization.contains(year, key)) {
-          this.utilization.get(year, key).addAndGet(otherValue.get());
-        } else {
-          this.utilization.put(year, key, new AtomicInteger(otherValue.get()));
-        }
-      }
+      this.utilization.merge(other.utilization);
     }
   }
 
@@ -4,11 +4,13 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.StringUtils;
 import org.mitre.synthea.helpers.SimpleCSV;
 import org.mitre.synthea.helpers.Utilities;
+import org.mitre.synthea.world.agents.Person;
 
 /**
  * Returns the requested Payer eligibility algorithm. This prevents redundant
@@ -18,6 +20,16 @@ public class PlanEligibilityFinder {
 
   private static Map<String, IPlanEligibility> planEligibilities;
 
+  /**
+   * The plan eligibilities of each state, when eligibility is decided by the state the
+   * person lives in. Null when the eligibilities of a single state are in use.
+   */
+  private static Map<String, Map<String, IPlanEligibility>> planEligibilitiesByState;
+  /** The eligibility file used to build the eligibilities of each state. */
+  private static String stateEligibilitiesFile;
+  /** One by-state eligibility per name, so that plans with the same eligibility share it. */
+  private static Map<String, IPlanEligibility> byStateEligibilities;
+
   private static final String ELIGIBILITY_NAME = "Name";
   /**
    * Generic eligibility type.
@@ -34,11 +46,14 @@ public class PlanEligibilityFinder {
    * @param eligibility The name of the eligibility type.
    * @return  The requested payer eligibility algorithm.
    */
-  public static IPlanEligibility getEligibilityAlgorithm(String eligibility) {
+  public static synchronized IPlanEligibility getEligibilityAlgorithm(String eligibility) {
     String cleanedEligibility = eligibility.replaceAll("\\s", "").toUpperCase();
     if (cleanedEligibility.equals(GENERIC)) {
       return DEFAULT;
     } else if (planEligibilities.containsKey(cleanedEligibility)) {
+      if (planEligibilitiesByState != null) {
+        return byStateEligibilities.computeIfAbsent(cleanedEligibility, ByStateEligibility::new);
+      }
       return planEligibilities.get(cleanedEligibility);
     }
     throw new RuntimeException("Plan eligibility " + eligibility + " does not exist.");
@@ -49,7 +64,7 @@ public class PlanEligibilityFinder {
    * @param state The state.
    * @param fileName The name of the file containing eligibility data.
    */
-  public static void buildPlanEligibilities(String state, String fileName) {
+  public static synchronized void buildPlanEligibilities(String state, String fileName) {
     planEligibilities = new HashMap<>();
     // Build the CSV input eligibility algorithms.
     CSVEligibility.buildEligibilityOptions(state);
@@ -73,6 +88,71 @@ public class PlanEligibilityFinder {
     }
   }
 
+  /**
+   * Decide plan eligibility by the state each person lives in, for populations that span
+   * more than one state. The eligibilities of the first state are built immediately, so that
+   * plans can be loaded, and those of any other state are built the first time a person
+   * living there is checked.
+   * @param state The first state.
+   * @param fileName The name of the file containing eligibility data.
+   */
+  public static synchronized void buildPlanEligibilitiesByState(String state, String fileName) {
+    stateEligibilitiesFile = fileName;
+    planEligibilitiesByState = new ConcurrentHashMap<>();
+    byStateEligibilities = new ConcurrentHashMap<>();
+    buildPlanEligibilities(state, fileName);
+    planEligibilitiesByState.put(state, planEligibilities);
+  }
+
+  /**
+   * Stop deciding plan eligibility by state.
+   */
+  public static synchronized void clearPlanEligibilitiesByState() {
+    planEligibilitiesByState = null;
+    byStateEligibilities = null;
+  }
+
+  /**
+   * Returns the plan eligibilities of the given state, building them if necessary.
+   * @param state The state.
+   * @return The plan eligibilities of the state.
+   */
+  private static Map<String, IPlanEligibility> getPlanEligibilities(String state) {
+    Map<String, IPlanEligibility> eligibilities = planEligibilitiesByState.get(state);
+    if (eligibilities == null) {
+      synchronized (PlanEligibilityFinder.class) {
+        eligibilities = planEligibilitiesByState.get(state);
+        if (eligibilities == null) {
+          // building eligibilities replaces the current ones, so put them back afterwards
+          Map<String, IPlanEligibility> current = planEligibilities;
+          buildPlanEligibilities(state, stateEligibilitiesFile);
+          eligibilities = planEligibilities;
+          planEligibilities = current;
+          planEligibilitiesByState.put(state, eligibilities);
+        }
+      }
+    }
+    return eligibilities;
+  }
+
+  /**
+   * A plan eligibility that defers to the eligibility of the same name in the state
+   * the person lives in.
+   */
+  private static class ByStateEligibility implements IPlanEligibility {
+    private final String name;
+
+    ByStateEligibility(String name) {
+      this.name = name;
+    }
+
+    @Override
+    public boolean isPersonEligible(Person person, long time) {
+      String state = (String) person.attributes.get(Person.STATE);
+      return getPlanEligibilities(state).get(name).isPersonEligible(person, time);
+    }
+  }
+
   private static <T> Map<T, String> removeBlankMapStringValues(Map<T, String> map) {
     Map<T, String> mapValuesToKeep = map.entrySet().stream()
         .filter(entry -> !StringUtils.isBlank(entry.getValue())).collect(
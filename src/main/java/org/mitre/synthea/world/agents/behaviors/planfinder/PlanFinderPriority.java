@@ -1,8 +1,7 @@
 package org.mitre.synthea.world.agents.behaviors.planfinder;
 
-import java.util.Comparator;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
 
 import org.mitre.synthea.world.agents.Person;
 import org.mitre.synthea.world.concepts.HealthRecord.EncounterType;
@@ -17,16 +16,21 @@ public class PlanFinderPriority implements IPlanFinder {
   public InsurancePlan find(List<InsurancePlan> plans, Person person,
       EncounterType service, long time) {
 
-    List<InsurancePlan> eligiblePlans = (plans.stream().filter(plan -> (plan.isGovernmentPlan()
-        || (IPlanFinder.meetsAffordabilityRequirements(plan, person, service, time)))
-        && plan.accepts(person, time)).collect(Collectors.toList()));
+    List<InsurancePlan> eligiblePlans = new ArrayList<InsurancePlan>();
+    int highestEligiblePriority = Integer.MAX_VALUE;
+    for (InsurancePlan plan : plans) {
+      if ((plan.isGovernmentPlan()
+          || IPlanFinder.meetsAffordabilityRequirements(plan, person, service, time))
+          && plan.accepts(person, time)) {
+        eligiblePlans.add(plan);
+        highestEligiblePriority = Math.min(highestEligiblePriority, plan.getPriority());
+      }
+    }
 
     if (eligiblePlans.size() > 1) {
       // If there are more than 1 affordable/eligible plans, filter to the highest priority ones.
-      int highestEligibltPriority = eligiblePlans.stream()
-          .min(Comparator.comparing(plan -> plan.getPriority())).get().getPriority();
-      eligiblePlans = eligiblePlans.stream().filter(
-          (plan) -> plan.getPriority() == highestEligibltPriority).collect(Collectors.toList());
+      final int highestPriority = highestEligiblePriority;
+      eligiblePlans.removeIf(plan -> plan.getPriority() != highestPriority);
     }
 
     return chooseRandomPlan(eligiblePlans, person);
@@ -1047,6 +1047,40 @@ public class HealthRecord implements Serializable {
   /** The person's demographics at the time of record creation. */
   public Map<String, Object> demographicsAtRecordCreation;
 
+  /**
+   * Map of the entries currently present in a record, which counts the entries added and
+   * removed so callers can cheaply tell whether anything started or stopped.
+   * (Within a Map subclass "Entry" means Map.Entry, so HealthRecord.Entry is qualified.)
+   */
+  private static class PresentMap extends HashMap<String, HealthRecord.Entry> {
+    private static final long serialVersionUID = 3605841254417317201L;
+    private long modifications;
+
+    @Override
+    public HealthRecord.Entry put(String key, HealthRecord.Entry value) {
+      modifications++;
+      return super.put(key, value);
+    }
+
+    @Override
+    public void putAll(Map<? extends String, ? extends HealthRecord.Entry> m) {
+      modifications++;
+      super.putAll(m);
+    }
+
+    @Override
+    public HealthRecord.Entry remove(Object key) {
+      modifications++;
+      return super.remove(key);
+    }
+
+    @Override
+    public void clear() {
+      modifications++;
+      super.clear();
+    }
+  }
+
   /**
    * Construct a health record for the supplied person.
    * @param person the person.
@@ -1054,12 +1088,23 @@ public class HealthRecord implements Serializable {
   public HealthRecord(Person person) {
     this.person = person;
     encounters = new ArrayList<Encounter>();
-    present = new HashMap<String, Entry>();
+    present = new PresentMap();
     if (person.attributes.get(Person.HOUSEHOLD) != null) {
       this.demographicsAtRecordCreation = new HashMap<String,Object>(person.attributes);
     }
   }
 
+  /**
+   * Returns a count of the changes made to the entries present in this record, i.e.
+   * conditions, allergies, medications, care plans, etc. starting or stopping.
+   * The count only ever increases, so if it has not changed, nothing has been added to
+   * or removed from the present entries.
+   * @return the modification count, or -1 if changes are not tracked for this record.
+   */
+  public long getPresentModificationCount() {
+    return (present instanceof PresentMap) ? ((PresentMap) present).modifications : -1L;
+  }
+
   /**
    * Returns the number of providers associated with this healthrecord.
    * @return the number of unique providers.
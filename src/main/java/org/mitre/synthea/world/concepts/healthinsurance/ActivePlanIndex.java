@@ -0,0 +1,191 @@
+package org.mitre.synthea.world.concepts.healthinsurance;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.mitre.synthea.helpers.Utilities;
+import org.mitre.synthea.world.agents.behaviors.planeligibility.IPlanEligibility;
+
+/**
+ * Time-bucketed index of insurance plans.
+ * Plans become active and inactive only on calendar year boundaries, so the set of
+ * active plans is constant between consecutive plan start/end years. This index
+ * precomputes, for each of those year ranges, the active plans split by supplement vs.
+ * non-supplement, government vs. private, and eligibility type, so plan finders can be
+ * handed a ready-made candidate list instead of filtering every plan of every payer
+ * on every coverage decision.
+ *
+ * <p>All candidate lists are unmodifiable and preserve the order of the plans given
+ * at construction, so plan selection is unchanged for a fixed seed.</p>
+ */
+public class ActivePlanIndex {
+  /** All indexed plans, in their original order. */
+  private final List<InsurancePlan> allPlans;
+  /** Sorted distinct years at which the set of active plans changes. */
+  private final int[] boundaries;
+  /** Active plans for each year range. Bucket i covers [boundaries[i-1], boundaries[i]). */
+  private final Bucket[] buckets;
+
+  /**
+   * Active plans for a single range of years.
+   */
+  private static class Bucket {
+    final List<InsurancePlan> all;
+    final List<InsurancePlan> supplement;
+    final List<InsurancePlan> nonSupplement;
+    final List<InsurancePlan> government;
+    final List<InsurancePlan> nonGovernment;
+    final Map<IPlanEligibility, List<InsurancePlan>> byEligibility;
+
+    Bucket(List<InsurancePlan> plans, int year) {
+      List<InsurancePlan> all = new ArrayList<>();
+      List<InsurancePlan> supplement = new ArrayList<>();
+      List<InsurancePlan> nonSupplement = new ArrayList<>();
+      List<InsurancePlan> government = new ArrayList<>();
+      List<InsurancePlan> nonGovernment = new ArrayList<>();
+      Map<IPlanEligibility, List<InsurancePlan>> byEligibility = new IdentityHashMap<>();
+      for (InsurancePlan plan : plans) {
+        if (plan.getActiveYearStart() <= year && year < plan.getActiveYearEnd()) {
+          all.add(plan);
+          (plan.isMedicareSupplementPlan() ? supplement : nonSupplement).add(plan);
+          (plan.isGovernmentPlan() ? government : nonGovernment).add(plan);
+          byEligibility.computeIfAbsent(plan.getPlanEligibility(),
+              e -> new ArrayList<>()).add(plan);
+        }
+      }
+      this.all = freeze(all);
+      this.supplement = freeze(supplement);
+      this.nonSupplement = freeze(nonSupplement);
+      this.government = freeze(government);
+      this.nonGovernment = freeze(nonGovernment);
+      byEligibility.replaceAll((e, list) -> freeze(list));
+      this.byEligibility = byEligibility;
+    }
+
+    private static List<InsurancePlan> freeze(List<InsurancePlan> plans) {
+      return Collections.unmodifiableList(Arrays.asList(plans.toArray(new InsurancePlan[0])));
+    }
+  }
+
+  /**
+   * Build a new index over the given plans.
+   * @param plans The plans to index, in the order candidates should be offered.
+   */
+  public ActivePlanIndex(List<InsurancePlan> plans) {
+    this.allPlans = new ArrayList<>(plans);
+    TreeSet<Integer> years = new TreeSet<>();
+    for (InsurancePlan plan : plans) {
+      years.add(plan.getActiveYearStart());
+      if (plan.getActiveYearEnd() != Integer.MAX_VALUE) {
+        years.add(plan.getActiveYearEnd());
+      }
+    }
+    this.boundaries = years.stream().mapToInt(Integer::intValue).toArray();
+    this.buckets = new Bucket[boundaries.length + 1];
+    for (int i = 0; i < buckets.length; i++) {
+      // pick any year within the range covered by this bucket
+      int year = (i == 0) ? Integer.MIN_VALUE : boundaries[i - 1];
+      buckets[i] = new Bucket(plans, year);
+    }
+  }
+
+  /**
+   * Find the bucket for the given time, or null if the time falls exactly on a year
+   * boundary. Plan activity ranges include their end instant, so at the first instant
+   * of a year, plans ending that year are still active and the bucket cannot be used.
+   * @param time The time.
+   * @return The bucket, or null.
+   */
+  private Bucket bucket(long time) {
+    int year = Utilities.getYear(time);
+    if (time == Utilities.convertCalendarYearsToTime(year)) {
+      return null;
+    }
+    int index = Arrays.binarySearch(boundaries, year);
+    index = (index >= 0) ? index + 1 : -index - 1;
+    return buckets[index];
+  }
+
+  private List<InsurancePlan> filterActive(long time) {
+    List<InsurancePlan> plans = new ArrayList<>();
+    for (InsurancePlan plan : allPlans) {
+      if (plan.isActive(time)) {
+        plans.add(plan);
+      }
+    }
+    return plans;
+  }
+
+  private List<InsurancePlan> filterActive(long time, boolean supplement) {
+    List<InsurancePlan> plans = filterActive(time);
+    plans.removeIf(plan -> plan.isMedicareSupplementPlan() != supplement);
+    return plans;
+  }
+
+  /**
+   * Returns all plans active at the given time.
+   * @param time The time.
+   * @return The active plans.
+   */
+  public List<InsurancePlan> getActivePlans(long time) {
+    Bucket bucket = bucket(time);
+    return (bucket == null) ? filterActive(time) : bucket.all;
+  }
+
+  /**
+   * Returns the plans active at the given time that are not Medicare Supplement plans.
+   * @param time The time.
+   * @return The active non-supplement plans.
+   */
+  public List<InsurancePlan> getActiveNonSupplementPlans(long time) {
+    Bucket bucket = bucket(time);
+    return (bucket == null) ? filterActive(time, false) : bucket.nonSupplement;
+  }
+
+  /**
+   * Returns the Medicare Supplement plans active at the given time.
+   * @param time The time.
+   * @return The active supplement plans.
+   */
+  public List<InsurancePlan> getActiveSupplementPlans(long time) {
+    Bucket bucket = bucket(time);
+    return (bucket == null) ? filterActive(time, true) : bucket.supplement;
+  }
+
+  /**
+   * Returns the plans active at the given time offered by government or private payers.
+   * @param time The time.
+   * @param government Whether to return government (true) or non-government (false) plans.
+   * @return The active plans.
+   */
+  public List<InsurancePlan> getActivePlans(long time, boolean government) {
+    Bucket bucket = bucket(time);
+    if (bucket == null) {
+      List<InsurancePlan> plans = filterActive(time);
+      plans.removeIf(plan -> plan.isGovernmentPlan() != government);
+      return plans;
+    }
+    return government ? bucket.government : bucket.nonGovernment;
+  }
+
+  /**
+   * Returns the plans active at the given time that use the given eligibility criteria.
+   * @param time The time.
+   * @param eligibility The plan eligibility algorithm.
+   * @return The active plans.
+   */
+  public List<InsurancePlan> getActivePlans(long time, IPlanEligibility eligibility) {
+    Bucket bucket = bucket(time);
+    if (bucket == null) {
+      List<InsurancePlan> plans = filterActive(time);
+      plans.removeIf(plan -> plan.getPlanEligibility() != eligibility);
+      return plans;
+    }
+    return bucket.byEligibility.getOrDefault(eligibility, Collections.emptyList());
+  }
+}
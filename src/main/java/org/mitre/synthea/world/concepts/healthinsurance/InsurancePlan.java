@@ -52,6 +52,10 @@ public class InsurancePlan implements Serializable {
   private final IPlanEligibility planEligibility;
   /** Start/end date of plan availablity. */
   private final Range<Long> activeTimeRange;
+  /** The first year the plan is available. */
+  private final int activeYearStart;
+  /** The last year the plan is available. */
+  private final int activeYearEnd;
 
   /**
    * Constructor for InsurancePlan.
@@ -100,6 +104,8 @@ public class InsurancePlan implements Serializable {
     long activeTimeEnd = activeYearEnd == Integer.MAX_VALUE ? Long.MAX_VALUE
         : Utilities.convertCalendarYearsToTime(activeYearEnd);
     this.activeTimeRange = Range.between(activeTimeStart, activeTimeEnd);
+    this.activeYearStart = activeYearStart;
+    this.activeYearEnd = activeYearEnd;
     // Set the payer's eligibility criteria.
     this.planEligibility = PlanEligibilityFinder.getEligibilityAlgorithm(eligibilityName);
     this.insuranceStatus = this.determineInsuranceStatus();
@@ -114,6 +120,31 @@ public class InsurancePlan implements Serializable {
     return this.activeTimeRange.contains(time);
   }
 
+  /**
+   * Returns the first year this plan is available.
+   * @return the first active year.
+   */
+  public int getActiveYearStart() {
+    return this.activeYearStart;
+  }
+
+  /**
+   * Returns the last year this plan is available, or Integer.MAX_VALUE if it does not end.
+   * The plan is active up to the first instant of this year.
+   * @return the last active year.
+   */
+  public int getActiveYearEnd() {
+    return this.activeYearEnd;
+  }
+
+  /**
+   * Returns the eligibility criteria for this plan.
+   * @return the plan eligibility algorithm.
+   */
+  public IPlanEligibility getPlanEligibility() {
+    return this.planEligibility;
+  }
+
   /**
    * Determines the copay owed for this Payer based on the type of entry.
    * For now, this returns a default copay. But in the future there will be different
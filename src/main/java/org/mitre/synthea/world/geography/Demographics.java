@@ -7,8 +7,10 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.mitre.synthea.helpers.Config;
@@ -453,6 +455,29 @@ public class Demographics implements Comparable<Demographics>, Serializable {
     return table;
   }
 
+  /**
+   * Get the total population of each state in the demographics file. Only the state name and
+   * population columns are read, so this is much cheaper than loading the demographics of
+   * every state.
+   *
+   * @return Map of state name to population, sorted by state name.
+   * @throws IOException
+   *           if any exception occurs in reading the demographics file
+   */
+  public static Map<String, Long> loadStatePopulations() throws IOException {
+    String filename = Config.get("generate.demographics.default_file");
+    String csv = Utilities.readResource(filename, true, true);
+
+    Map<String, Long> populations = new TreeMap<>();
+    Iterator<? extends Map<String,String>> lines = SimpleCSV.parseLineByLine(csv);
+    while (lines.hasNext()) {
+      Map<String,String> line = lines.next();
+      long population = Double.valueOf(line.get("POPESTIMATE2015")).longValue();
+      populations.merge(line.get("STNAME"), population, Long::sum);
+    }
+    return populations;
+  }
+
   /**
    * The index of the entry in this list + 1 == the column header in the CSV for that age group.
    * For example, age range 0-4 is stored in the CSV with column header "1".
@@ -14,7 +14,9 @@ import java.util.Map;
 
 import org.apache.commons.lang3.ArrayUtils;
 import org.mitre.synthea.export.JSONSkip;
+import org.mitre.synthea.helpers.AliasTable;
 import org.mitre.synthea.helpers.Config;
+import org.mitre.synthea.helpers.RandomCollection;
 import org.mitre.synthea.helpers.RandomNumberGenerator;
 import org.mitre.synthea.helpers.SimpleCSV;
 import org.mitre.synthea.helpers.Utilities;
@@ -39,9 +41,17 @@ public class Location implements Serializable {
   @JSONSkip
   private Map<String, Long> populationByCity;
 
-  /** Cache of population by city ID for performance. */
+  /** City IDs, for picking a random city by population. */
   @JSONSkip
-  private Map<String, Long> populationByCityId;
+  private String[] cityIds;
+
+  /** Cumulative population of the cities up to and including each city in cityIds. */
+  @JSONSkip
+  private long[] cumulativeCityPopulation;
+
+  /** Alias table of the population of each city in cityIds, if alias sampling is enabled. */
+  @JSONSkip
+  private AliasTable cityAliasTable;
 
   /** Cache of zip codes by city name. */
   @JSONSkip
@@ -93,13 +103,16 @@ public class Location implements Serializable {
       long runningPopulation = 0;
       // linked to ensure consistent iteration order
       populationByCity = new LinkedHashMap<>();
-      populationByCityId = new LinkedHashMap<>();
       // sort the demographics to ensure tests pass regardless of implementing class
       // for this.demographics, see comment above on non-serializability of Google Table.row
       ArrayList<Demographics> sortedDemographics =
           new ArrayList<Demographics>(this.demographics.values());
       Collections.sort(sortedDemographics);
-      for (Demographics d : sortedDemographics) {
+      cityIds = new String[sortedDemographics.size()];
+      cumulativeCityPopulation = new long[sortedDemographics.size()];
+      double[] cityPopulations = new double[sortedDemographics.size()];
+      for (int i = 0; i < sortedDemographics.size(); i++) {
+        Demographics d = sortedDemographics.get(i);
         long pop = d.population;
         runningPopulation += pop;
         if (populationByCity.containsKey(d.city)) {
@@ -107,7 +120,12 @@ public class Location implements Serializable {
         } else {
           populationByCity.put(d.city, pop);
         }
-        populationByCityId.put(d.id, pop);
+        cityIds[i] = d.id;
+        cumulativeCityPopulation[i] = runningPopulation;
+        cityPopulations[i] = pop;
+      }
+      if (RandomCollection.aliasSampling && runningPopulation > 0) {
+        cityAliasTable = new AliasTable(cityPopulations);
       }
 
       totalPopulation = runningPopulation;
@@ -293,15 +311,25 @@ public class Location implements Serializable {
    * @return a city id
    */
   private String randomCityId(RandomNumberGenerator random) {
+    if (cityAliasTable != null) {
+      return cityIds[cityAliasTable.sample(random.rand())];
+    }
     long targetPop = (long) (random.rand() * totalPopulation);
 
-    for (Map.Entry<String, Long> city : populationByCityId.entrySet()) {
-      targetPop -= city.getValue();
-
-      if (targetPop < 0) {
-        return city.getKey();
+    // find the first city whose cumulative population is greater than the target
+    int low = 0;
+    int high = cumulativeCityPopulation.length;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (cumulativeCityPopulation[middle] <= targetPop) {
+        low = middle + 1;
+      } else {
+        high = middle;
       }
     }
+    if (low < cityIds.length) {
+      return cityIds[low];
+    }
 
     // should never happen
     throw new RuntimeException("Unable to select a random city id.");
@@ -6,8 +6,10 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
+import org.mitre.synthea.TestHelper;
 import org.mitre.synthea.engine.ExpressedSymptom.SymptomInfo;
 import org.mitre.synthea.engine.ExpressedSymptom.SymptomSource;
+import org.mitre.synthea.helpers.Config;
 
 public class ExpressedSymptomTest {
 
@@ -117,4 +119,44 @@ public class ExpressedSymptomTest {
     assertEquals(0, symptom.getSymptom());
     assertNull(symptom.getSourceWithHighValue());
   }
+
+  @Test
+  public void testHistoryLimit() throws Exception {
+    TestHelper.loadTestProperties();
+    Config.set("generate.symptoms.history_limit", "2");
+    try {
+      ExpressedSymptom symptom = new ExpressedSymptom("pain");
+      for (long l = 0L; l < 5L; l++) {
+        symptom.onSet("module", "cause", l, (int) (10 * l), false);
+      }
+      SymptomSource source = symptom.getSources().get("module");
+      assertEquals(2, source.getTimeInfos().size());
+      assertTrue(source.getTimeInfos().containsKey(3L));
+      assertTrue(source.getTimeInfos().containsKey(4L));
+      assertEquals(40, symptom.getSymptom());
+
+      // the symptom exporters need the full history
+      Config.set("exporter.symptoms.text.export", "true");
+      symptom = new ExpressedSymptom("pain");
+      for (long l = 0L; l < 5L; l++) {
+        symptom.onSet("module", "cause", l, (int) (10 * l), false);
+      }
+      assertEquals(5, symptom.getSources().get("module").getTimeInfos().size());
+    } finally {
+      Config.set("generate.symptoms.history_limit", "0");
+      Config.set("exporter.symptoms.text.export", "false");
+    }
+  }
+
+  @Test
+  public void testValueFollowsSourceChanges() {
+    ExpressedSymptom symptom = new ExpressedSymptom("pain");
+    symptom.onSet("module", "cause", 0L, 50, false);
+    assertEquals(50, symptom.getSymptom());
+    SymptomSource source = symptom.getSources().get("module");
+    source.resolve();
+    assertEquals(0, symptom.getSymptom());
+    source.activate();
+    assertEquals(50, symptom.getSymptom());
+  }
 }
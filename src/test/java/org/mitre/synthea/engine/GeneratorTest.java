@@ -1,6 +1,7 @@
 package org.mitre.synthea.engine;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
@@ -355,4 +356,26 @@ public class GeneratorTest {
       assertTrue((Boolean)p.attributes.get("diabetes"));
     }
   }
-}
\ No newline at end of file
+
+  @Test
+  public void testNationwidePopulation() throws Exception {
+    Generator.GeneratorOptions opts = new Generator.GeneratorOptions();
+    opts.population = 4;
+    opts.seed = 1L;
+    opts.clinicianSeed = 1L;
+    opts.nationwide = true;
+    Generator generator = new Generator(opts);
+    assertNull(generator.location);
+    generator.internalStore = new LinkedList<>();
+    generator.run();
+    assertEquals(opts.population, generator.stats.get("alive").longValue());
+
+    for (Person person : generator.internalStore) {
+      String state = (String) person.attributes.get(Person.STATE);
+      Location location = (Location) person.attributes.get(Person.LOCATION);
+      assertEquals(state, location.state);
+    }
+    Provider.clear();
+    PayerManager.clear();
+  }
+}
@@ -0,0 +1,152 @@
+package org.mitre.synthea.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mitre.synthea.TestHelper.years;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+import org.mitre.synthea.TestHelper;
+import org.mitre.synthea.engine.ExpressedSymptom.SymptomSource;
+import org.mitre.synthea.export.Exporter;
+import org.mitre.synthea.helpers.Config;
+import org.mitre.synthea.world.agents.PayerManager;
+import org.mitre.synthea.world.agents.Person;
+import org.mitre.synthea.world.agents.Provider;
+import org.mitre.synthea.world.agents.ProviderTest;
+import org.mitre.synthea.world.concepts.HealthRecord;
+import org.mitre.synthea.world.concepts.HealthRecord.Code;
+import org.mitre.synthea.world.concepts.HealthRecord.Encounter;
+import org.mitre.synthea.world.concepts.HealthRecord.EncounterType;
+import org.mitre.synthea.world.geography.Location;
+
+public class HistoryPrunerTest {
+
+  private static final Code DUMMY_CODE = new Code("", "", "");
+
+  @Test
+  public void testPruneModuleHistory() throws Exception {
+    Module module = TestHelper.getFixture("condition_onset.json");
+    State delay3 = module.getState("6_Month_Delay").clone();
+    State visit2 = module.getState("ED_Visit").clone();
+    State.ConditionOnset diabetes2 = (State.ConditionOnset) module.getState("Diabetes").clone();
+    diabetes2.diagnosed = true;
+    State delay2 = module.getState("6_Month_Delay").clone();
+    State visit1 = module.getState("ED_Visit").clone();
+    State appendicitis = module.getState("Appendicitis").clone();
+    State.ConditionOnset diabetes1 = (State.ConditionOnset) module.getState("Diabetes").clone();
+    diabetes1.diagnosed = true;
+    State.ConditionOnset diabetes0 = (State.ConditionOnset) module.getState("Diabetes").clone();
+    State initial = module.getState("Initial").clone();
+
+    // most recent first
+    List<State> history = new LinkedList<State>(Arrays.asList(delay3, visit2, diabetes2, delay2,
+        visit1, appendicitis, diabetes1, diabetes0, initial));
+    Person person = new Person(0L);
+    person.history = history;
+    List<String> names = Arrays.asList("Initial", "Diabetes", "Appendicitis", "ED_Visit",
+        "6_Month_Delay", "Terminal");
+    List<String> before = priorStates(person, names);
+
+    HistoryPruner.pruneModuleHistory(history);
+
+    // later visits replace earlier ones, but undiagnosed onsets are kept
+    assertEquals(Arrays.asList(delay3, visit2, diabetes2, appendicitis, diabetes0, initial),
+        history);
+    assertEquals(before, priorStates(person, names));
+    assertTrue(person.hadPriorState("Appendicitis"));
+    assertFalse(person.hadPriorState("Terminal"));
+  }
+
+  @Test
+  public void testPruneRecordMatchesExportFilter() throws Exception {
+    long time = System.currentTimeMillis();
+    int yearsToKeep = 5;
+    Person pruned = createPerson(time);
+    Person unpruned = createPerson(time);
+
+    // prune two years before the end, so the cutoff is earlier than the export cutoff
+    HistoryPruner.pruneRecord(pruned.record, time - years(2) - years(yearsToKeep));
+
+    List<Encounter> encounters = pruned.record.encounters;
+    assertEquals(0, encounters.get(0).observations.size());
+    assertEquals(1, encounters.get(0).careplans.size());
+    assertEquals(0, encounters.get(1).careplans.size());
+    assertEquals(1, encounters.get(2).observations.size());
+
+    Exporter.filterForExport(pruned, yearsToKeep, time);
+    Exporter.filterForExport(unpruned, yearsToKeep, time);
+    assertEquals(summarize(unpruned.record), summarize(pruned.record));
+  }
+
+  @Test
+  public void testPruneSymptomHistory() {
+    ExpressedSymptom symptom = new ExpressedSymptom("pain");
+    symptom.onSet("old_module", "cause", 0L, 10, false);
+    symptom.onSet("new_module", "cause", 0L, 20, false);
+    symptom.onSet("new_module", "cause", 10L, 30, false);
+    symptom.onSet("new_module", "cause", 20L, 40, false);
+    int value = symptom.getSymptom();
+
+    symptom.pruneHistory(15L);
+
+    SymptomSource oldSource = symptom.getSources().get("old_module");
+    SymptomSource newSource = symptom.getSources().get("new_module");
+    // the current value is always kept
+    assertEquals(Arrays.asList(0L), Arrays.asList(oldSource.getTimeInfos().keySet().toArray()));
+    assertEquals(Arrays.asList(20L), Arrays.asList(newSource.getTimeInfos().keySet().toArray()));
+    assertEquals(value, symptom.getSymptom());
+  }
+
+  private static List<String> priorStates(Person person, List<String> names) {
+    return names.stream()
+        .map(name -> name + ":" + person.hadPriorState(name)
+            + "," + person.hadPriorState(name, "ED_Visit", null))
+        .collect(Collectors.toList());
+  }
+
+  private static Person createPerson(long time) throws Exception {
+    TestHelper.loadTestProperties();
+    Config.set("exporter.split_records", "false");
+    Person person = new Person(12345L);
+    person.attributes.put(Person.BIRTHDATE, time - years(30));
+    person.attributes.put(Person.INCOME, 100000);
+    Location location = new Location(Config.get("test_state.default", "Massachusetts"), null);
+    location.assignPoint(person, location.randomCityName(person));
+    Provider.loadProviders(location, ProviderTest.providerRandom);
+    PayerManager.clear();
+    PayerManager.loadNoInsurance();
+    person.coverage.setPlanToNoInsurance((long) person.attributes.get(Person.BIRTHDATE));
+    person.coverage.setPlanToNoInsurance(time);
+
+    HealthRecord record = person.record;
+    record.encounterStart(time - years(12), EncounterType.WELLNESS);
+    record.observation(time - years(12), "height", 60);
+    record.careplanStart(time - years(12), "healthy_diet");
+    record.encounterStart(time - years(10), EncounterType.WELLNESS);
+    record.careplanStart(time - years(10), "stop_smoking");
+    record.careplanEnd(time - years(8), "stop_smoking", DUMMY_CODE);
+    record.encounterStart(time - years(6), EncounterType.WELLNESS);
+    record.observation(time - years(6), "weight", 128);
+    record.encounterStart(time - years(1), EncounterType.WELLNESS);
+    record.observation(time - years(1), "weight", 130);
+    record.careplanStart(time - years(1), "exercise");
+    assertSame(person.defaultRecord, record);
+    return person;
+  }
+
+  private static List<String> summarize(HealthRecord record) {
+    return record.encounters.stream()
+        .map(e -> e.start + ":"
+            + e.observations.stream().map(o -> o.type).collect(Collectors.toList())
+            + e.careplans.stream().map(c -> c.type + "-" + c.stop).collect(Collectors.toList())
+            + e.claim.items.size())
+        .collect(Collectors.toList());
+  }
+}
@@ -2,6 +2,7 @@ package org.mitre.synthea.engine;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import com.google.gson.JsonObject;
@@ -559,4 +560,70 @@ public class LogicTest {
     assertFalse(doTest("notTrueTest"));
     assertTrue(doTest("notFalseTest"));
   }
+
+  private LogicInputs inputsOf(String testName) {
+    JsonObject definition = tests.getAsJsonObject(testName).deepCopy();
+    return LogicInputs.of(Utilities.getGson().fromJson(definition, Logic.class));
+  }
+
+  @Test
+  public void test_logic_inputs() {
+    LogicInputs gender = inputsOf("genderIsMaleTest");
+    assertTrue(gender.getAttributes().contains(Person.GENDER));
+    assertFalse(gender.dependsOnRecord());
+    assertFalse(gender.isVolatile());
+
+    assertTrue(inputsOf("ageLt40Test").getAttributes().contains(Person.BIRTHDATE));
+    assertTrue(inputsOf("diabetesConditionTest").dependsOnRecord());
+    assertTrue(inputsOf("alzheimersConditionTest").getAttributes()
+        .contains("Alzheimer's Variant"));
+    assertTrue(inputsOf("symptomPainLevelGt50").isVolatile());
+    assertTrue(inputsOf("SystolicBloodPressureGt120").isVolatile());
+    assertTrue(inputsOf("mmseObservationGt22").isVolatile());
+    assertFalse(inputsOf("priorStateDoctorVisitTest").isVolatile());
+    assertTrue(inputsOf("priorStateDoctorVisitTest").dependsOnHistory());
+    assertFalse(gender.dependsOnHistory());
+    assertTrue(inputsOf("priorStateDoctorVisitWithin3YearsTest").isVolatile());
+  }
+
+  @Test
+  public void test_logic_inputs_attribute_change() {
+    person.attributes.put(Person.GENDER, "F");
+    LogicInputs.Snapshot snapshot = inputsOf("genderIsMaleTest").snapshot(person, time);
+    assertTrue(snapshot.isCurrent(person, time + Utilities.convertTime("years", 50)));
+
+    // re-boxing an equal value is not a change
+    person.attributes.put(Person.GENDER, new String("F"));
+    assertTrue(snapshot.isCurrent(person, time));
+
+    person.attributes.put(Person.GENDER, "M");
+    assertFalse(snapshot.isCurrent(person, time));
+  }
+
+  @Test
+  public void test_logic_inputs_age_boundary() {
+    setPatientAge(35);
+    LogicInputs.Snapshot snapshot = inputsOf("ageGte40Test").snapshot(person, time);
+    assertTrue(snapshot.isCurrent(person, time + Utilities.convertTime("years", 4)));
+    assertFalse(snapshot.isCurrent(person, time + Utilities.convertTime("years", 6)));
+
+    setPatientAge(45);
+    snapshot = inputsOf("ageGte40Test").snapshot(person, time);
+    assertTrue(snapshot.isCurrent(person, time + Utilities.convertTime("years", 50)));
+  }
+
+  @Test
+  public void test_logic_inputs_record_change() {
+    clearRecord(person);
+    LogicInputs.Snapshot snapshot = inputsOf("diabetesConditionTest").snapshot(person, time);
+    assertTrue(snapshot.isCurrent(person, time));
+
+    person.record.conditionStart(time, "73211009");
+    assertFalse(snapshot.isCurrent(person, time));
+  }
+
+  @Test
+  public void test_logic_inputs_volatile() {
+    assertNull(inputsOf("symptomPainLevelGt50").snapshot(person, time));
+  }
 }
@@ -0,0 +1,109 @@
+package org.mitre.synthea.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mitre.synthea.TestHelper;
+import org.mitre.synthea.helpers.Config;
+import org.mitre.synthea.helpers.Utilities;
+import org.powermock.reflect.Whitebox;
+
+public class ModuleCacheTest {
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private File cacheFolder;
+
+  /**
+   * Enable the module cache in a temporary folder.
+   * @throws Exception on configuration error.
+   */
+  @Before
+  public void before() throws Exception {
+    TestHelper.loadTestProperties();
+    cacheFolder = tempFolder.newFolder();
+    Config.set("generate.module_cache", "true");
+    Config.set("generate.module_cache.directory", cacheFolder.toString());
+  }
+
+  @After
+  public void after() {
+    Config.set("generate.module_cache", "false");
+  }
+
+  private int cacheFileCount() {
+    return cacheFolder.listFiles((dir, name) -> name.endsWith(".bin")).length;
+  }
+
+  @Test
+  public void testCachedModuleMatchesParsedModule() throws Exception {
+    Path path = Paths.get("modules", "hypertension.json");
+    Module parsed = Module.loadFile(path, false, null, false);
+    assertEquals(1, cacheFileCount());
+
+    Module cached = Module.loadFile(path, false, null, false);
+    assertEquals(parsed.name, cached.name);
+    assertEquals(parsed.getStateNames(), cached.getStateNames());
+    assertEquals(1, cacheFileCount());
+
+    // goals are JSON objects, and need special handling to be serialized
+    String carePlan = "LifeStyle_Modifications_Hypertension_CarePlan";
+    List<?> parsedGoals = Whitebox.getInternalState(parsed.getState(carePlan), "goals");
+    List<?> cachedGoals = Whitebox.getInternalState(cached.getState(carePlan), "goals");
+    assertNotNull(cachedGoals);
+    assertEquals(parsedGoals, cachedGoals);
+  }
+
+  @Test
+  public void testCachedModuleWithLookupTable() throws Exception {
+    Path path = Paths.get("modules", "vhd_tricuspid.json");
+    Module parsed = Module.loadFile(path, false, null, false);
+    assertTrue(parsed.getLookupTableNames().contains("vhd_tr.csv"));
+
+    Module cached = Module.loadFile(path, false, null, false);
+    assertEquals(parsed.getLookupTableNames(), cached.getLookupTableNames());
+    assertNotNull(Transition.LookupTableTransition.getLookupTable("vhd_tr.csv"));
+  }
+
+  @Test
+  public void testKeyDependsOnContentsAndOverrides() throws Exception {
+    Path path = Paths.get("modules", "hypertension.json");
+    String json = Utilities.readResource(path.toString());
+    String key = ModuleCache.key(path, false, json, null);
+
+    assertEquals(key, ModuleCache.key(path, false, json, null));
+    assertNotEquals(key, ModuleCache.key(path, true, json, null));
+    assertNotEquals(key, ModuleCache.key(path, false, json + " ", null));
+
+    Properties other = new Properties();
+    other.setProperty("asthma.json::$['states']['Initial']['distribution']", "0.5");
+    assertEquals(key, ModuleCache.key(path, false, json, other));
+
+    Properties applicable = new Properties();
+    applicable.setProperty("hypertension.json::$['states']['Initial']['distribution']", "0.5");
+    assertNotEquals(key, ModuleCache.key(path, false, json, applicable));
+  }
+
+  @Test
+  public void testCorruptCacheFileIsAMiss() throws Exception {
+    ModuleCache cache = new ModuleCache(cacheFolder.toPath());
+    Files.write(cacheFolder.toPath().resolve("corrupt.bin"), "not a module".getBytes());
+    assertNull(cache.load("corrupt"));
+    assertNull(cache.load("missing"));
+  }
+}
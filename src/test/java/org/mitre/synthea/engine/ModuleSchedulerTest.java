@@ -0,0 +1,94 @@
+package org.mitre.synthea.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TimeZone;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mitre.synthea.TestHelper;
+import org.mitre.synthea.engine.Generator.GeneratorOptions;
+import org.mitre.synthea.helpers.Config;
+
+public class ModuleSchedulerTest {
+  private static final long[] SEEDS = {42L, 1234L, 987654321L};
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  /**
+   * Configure each test.
+   * @throws Exception on configuration error.
+   */
+  @Before
+  public void before() throws Exception {
+    TestHelper.loadTestProperties();
+    TestHelper.exportOff();
+    Generator.DEFAULT_STATE = Config.get("test_state.default", "Massachusetts");
+    Config.set("exporter.text.export", "true");
+  }
+
+  @After
+  public void after() {
+    Config.set("generate.module_scheduler", "timestep");
+    Config.set("exporter.text.export", "false");
+  }
+
+  /**
+   * Generate a single person with the given seed and scheduler, and return the
+   * contents of their text export.
+   */
+  private List<String> generate(long seed, String scheduler) throws Exception {
+    Config.set("generate.module_scheduler", scheduler);
+    File tempOutputFolder = tempFolder.newFolder();
+    Config.set("exporter.baseDirectory", tempOutputFolder.toString());
+
+    SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd");
+    format.setTimeZone(TimeZone.getTimeZone("UTC"));
+    GeneratorOptions options = new GeneratorOptions();
+    options.clinicianSeed = 9L;
+    options.seed = 9L;
+    options.referenceTime = format.parse("20200704").getTime();
+    options.overflow = false;
+
+    Generator generator = new Generator(options);
+    generator.generatePerson(0, seed);
+
+    File exportFolder = tempOutputFolder.toPath().resolve("text").toFile();
+    assertTrue(exportFolder.isDirectory());
+    File[] files = exportFolder.listFiles((dir, name) -> name.endsWith(".txt"));
+    Arrays.sort(files);
+    List<String> lines = new ArrayList<>();
+    for (File file : files) {
+      lines.add(file.getName());
+      lines.addAll(Files.readAllLines(file.toPath()));
+    }
+    assertFalse(lines.isEmpty());
+    return lines;
+  }
+
+  @Test
+  public void testDefaultSchedulerIsDeterministic() throws Exception {
+    for (long seed : SEEDS) {
+      assertEquals("Seed " + seed, generate(seed, "timestep"), generate(seed, "timestep"));
+    }
+  }
+
+  @Test
+  public void testEventSchedulerMatchesDefault() throws Exception {
+    for (long seed : SEEDS) {
+      assertEquals("Seed " + seed, generate(seed, "timestep"), generate(seed, "event"));
+    }
+  }
+}
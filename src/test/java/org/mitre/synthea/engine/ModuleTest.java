@@ -175,6 +175,25 @@ public class ModuleTest {
     assertEquals("COPD Module", module.name);
   }
 
+  @Test
+  public void preloadModules() {
+    Predicate<String> predicate = path -> path.contains("ti");
+    Map<String, Long> loadTimes = Module.preloadModules(predicate, 4);
+    assertTrue(loadTimes.containsKey("allergic_rhinitis"));
+    assertTrue(loadTimes.containsKey("medications/otc_antihistamine"));
+    assertFalse(loadTimes.containsKey("copd"));
+    long previous = Long.MAX_VALUE;
+    for (long loadTime : loadTimes.values()) {
+      assertTrue(loadTime >= 0);
+      assertTrue(loadTime <= previous);
+      previous = loadTime;
+    }
+
+    Module module = Module.getModuleByPath("allergic_rhinitis");
+    assertTrue(module.getCalledSubmodules().contains("medications/otc_antihistamine"));
+    assertFalse(Module.getModules(predicate).isEmpty());
+  }
+
   @Test
   public void addLocalModules() {
     Module.addModules(new File("src/test/resources/module"));
@@ -0,0 +1,106 @@
+package org.mitre.synthea.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mitre.synthea.TestHelper;
+import org.mitre.synthea.helpers.DefaultRandomNumberGenerator;
+import org.mitre.synthea.world.agents.PayerManager;
+import org.mitre.synthea.world.agents.Provider;
+import org.mitre.synthea.world.geography.Location;
+
+public class NationwideLocationsTest {
+
+  /**
+   * Start each test without any providers or payers loaded.
+   * @throws Exception on configuration error.
+   */
+  @Before
+  public void before() throws Exception {
+    TestHelper.loadTestProperties();
+    Provider.clear();
+    PayerManager.clear();
+  }
+
+  @After
+  public void after() {
+    Provider.clear();
+    PayerManager.clear();
+  }
+
+  @Test
+  public void testStatesArePickedByPopulation() {
+    NationwideLocations nationwide = new NationwideLocations(0L);
+    DefaultRandomNumberGenerator random = new DefaultRandomNumberGenerator(0L);
+    Map<String, Integer> counts = new HashMap<>();
+    for (int i = 0; i < 5000; i++) {
+      counts.merge(nationwide.randomState(random), 1, Integer::sum);
+    }
+    assertTrue(counts.size() > 40);
+    String mostPopulous = Collections.max(counts.entrySet(), Map.Entry.comparingByValue())
+        .getKey();
+    assertEquals("California", mostPopulous);
+    // picking a state does not load it
+    assertTrue(nationwide.getLoadedStates().isEmpty());
+  }
+
+  @Test
+  public void testStatesAreLoadedOnFirstUse() {
+    NationwideLocations nationwide = new NationwideLocations(0L);
+    Location massachusetts = nationwide.getLocation("Massachusetts");
+    assertEquals("Massachusetts", massachusetts.state);
+    assertSame(massachusetts, nationwide.getLocation("Massachusetts"));
+    int providers = Provider.getProviderList().size();
+    assertTrue(providers > 0);
+    int payers = PayerManager.getAllPayers().size();
+    assertTrue(payers > 0);
+
+    Location california = nationwide.getLocation("California");
+    assertEquals("California", california.state);
+    assertEquals(2, nationwide.getLoadedStates().size());
+    // both states share the provider index, and payers covering both are loaded once
+    assertTrue(Provider.getProviderList().size() > providers);
+    assertFalse(PayerManager.getAllPayers().size() < payers);
+    assertEquals(PayerManager.getAllPayers().size(),
+        PayerManager.getAllPayers().stream().map(p -> p.getResourceID()).distinct().count());
+  }
+
+  @Test
+  public void testStateIsLoadedOnceByConcurrentUsers() throws Exception {
+    NationwideLocations nationwide = new NationwideLocations(0L);
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    try {
+      List<Callable<Location>> users = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        users.add(() -> nationwide.getLocation("Massachusetts"));
+      }
+      Location first = null;
+      for (Future<Location> location : pool.invokeAll(users)) {
+        if (first == null) {
+          first = location.get();
+        }
+        assertSame(first, location.get());
+      }
+    } finally {
+      pool.shutdown();
+    }
+    assertEquals(1, nationwide.getLoadedStates().size());
+    assertEquals(PayerManager.getAllPayers().size(),
+        PayerManager.getAllPayers().stream().map(p -> p.getResourceID()).distinct().count());
+  }
+}
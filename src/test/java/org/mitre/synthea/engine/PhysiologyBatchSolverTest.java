@@ -0,0 +1,150 @@
+package org.mitre.synthea.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.math.ode.DerivativeException;
+import org.junit.Test;
+import org.simulator.math.odes.MultiTable;
+
+public class PhysiologyBatchSolverTest {
+  private static final String MODEL = "circulation/Smith2004_CVS_human.xml";
+
+  /**
+   * Model parameters with the defaults, except for the systemic resistance.
+   */
+  private static double[] params(PhysiologySimulator simulator, double resistance) {
+    List<String> names = simulator.getParameters();
+    double[] params = new double[names.size()];
+    for (int i = 0; i < params.length; i++) {
+      params[i] = simulator.getParamDefault(names.get(i));
+    }
+    params[names.indexOf("R_sys")] = resistance;
+    return params;
+  }
+
+  private static void assertSameResults(MultiTable expected, MultiTable actual) {
+    assertEquals(expected.getRowCount(), actual.getRowCount());
+    assertEquals(expected.getColumnCount(), actual.getColumnCount());
+    for (int col = 0; col < expected.getColumnCount(); col++) {
+      assertEquals(expected.getColumnIdentifier(col), actual.getColumnIdentifier(col));
+      for (int row = 0; row < expected.getRowCount(); row++) {
+        assertEquals(expected.getColumnIdentifier(col) + " at row " + row,
+            (double) expected.getValueAt(row, col), (double) actual.getValueAt(row, col), 1e-9);
+      }
+    }
+  }
+
+  private static List<Thread> collectors() {
+    List<Thread> collectors = new ArrayList<Thread>();
+    for (Thread thread : Thread.getAllStackTraces().keySet()) {
+      if (thread.getName().startsWith("physiology-batch-") && thread.isAlive()) {
+        collectors.add(thread);
+      }
+    }
+    return collectors;
+  }
+
+  @Test
+  public void testBatchSizeIsLimitedByGeneratorThreads() {
+    int batchSize = PhysiologyBatchSolver.batchSize;
+    int generatorThreads = PhysiologyBatchSolver.generatorThreads;
+    try {
+      PhysiologyBatchSolver.batchSize = 16;
+      PhysiologyBatchSolver.setGeneratorThreads(4);
+      assertEquals(4, PhysiologyBatchSolver.maxBatchSize());
+      PhysiologyBatchSolver.setGeneratorThreads(64);
+      assertEquals(16, PhysiologyBatchSolver.maxBatchSize());
+    } finally {
+      PhysiologyBatchSolver.batchSize = batchSize;
+      PhysiologyBatchSolver.generatorThreads = generatorThreads;
+    }
+  }
+
+  @Test
+  public void testLockStepMatchesSbscl() throws DerivativeException {
+    for (String solver : new String[] {"euler", "runge_kutta"}) {
+      PhysiologySimulator simulator = new PhysiologySimulator(MODEL, solver, 0.01, 1);
+      PhysiologyBatchSolver.Integrator integrator =
+          new PhysiologyBatchSolver.Integrator(MODEL, solver, 0.01, 1);
+      assertTrue(solver, integrator.isLockStep());
+
+      List<double[]> params = new ArrayList<double[]>();
+      params.add(params(simulator, 1.0));
+      params.add(params(simulator, 1.5));
+      params.add(params(simulator, 2.0));
+      List<MultiTable> batch = integrator.solveAll(params);
+      assertEquals(3, batch.size());
+      for (int i = 0; i < params.size(); i++) {
+        assertSameResults(integrator.solveOne(params.get(i)), batch.get(i));
+      }
+    }
+  }
+
+  @Test
+  public void testAdaptiveSolversAreNotSteppedTogether() {
+    PhysiologyBatchSolver.Integrator integrator =
+        new PhysiologyBatchSolver.Integrator(MODEL, "dormand_prince_54", 0.01, 1);
+    assertFalse(integrator.isLockStep());
+  }
+
+  @Test
+  public void testBatchedRunsMatchUnbatchedRuns() throws Exception {
+    boolean enabled = PhysiologyBatchSolver.enabled;
+    int batchSize = PhysiologyBatchSolver.batchSize;
+    int waitMillis = PhysiologyBatchSolver.waitMillis;
+    int generatorThreads = PhysiologyBatchSolver.generatorThreads;
+    int cacheSize = PhysiologyResultCache.maxSize;
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    try {
+      PhysiologyResultCache.maxSize = 0;
+      PhysiologySimulator simulator = new PhysiologySimulator(MODEL, "runge_kutta", 0.01, 1);
+      List<Map<String, Double>> inputs = new ArrayList<Map<String, Double>>();
+      List<MultiTable> expected = new ArrayList<MultiTable>();
+      for (int i = 0; i < 4; i++) {
+        Map<String, Double> input = new HashMap<String, Double>();
+        // two people share each set of inputs
+        input.put("R_sys", 1.0 + (i / 2) * 0.5);
+        inputs.add(input);
+        expected.add(simulator.run(input));
+      }
+
+      PhysiologyBatchSolver.enabled = true;
+      PhysiologyBatchSolver.batchSize = 4;
+      PhysiologyBatchSolver.waitMillis = 1000;
+      PhysiologyBatchSolver.setGeneratorThreads(4);
+      List<Future<MultiTable>> results = new ArrayList<Future<MultiTable>>();
+      for (Map<String, Double> input : inputs) {
+        results.add(pool.submit(() ->
+            new PhysiologySimulator(MODEL, "runge_kutta", 0.01, 1).run(input)));
+      }
+      for (int i = 0; i < inputs.size(); i++) {
+        assertSameResults(expected.get(i), results.get(i).get());
+      }
+      assertEquals(1, collectors().size());
+
+      PhysiologyBatchSolver.shutdown();
+      for (Thread collector : collectors()) {
+        collector.join(5000);
+        assertFalse(collector.isAlive());
+      }
+    } finally {
+      pool.shutdownNow();
+      PhysiologyBatchSolver.shutdown();
+      PhysiologyBatchSolver.enabled = enabled;
+      PhysiologyBatchSolver.batchSize = batchSize;
+      PhysiologyBatchSolver.waitMillis = waitMillis;
+      PhysiologyBatchSolver.generatorThreads = generatorThreads;
+      PhysiologyResultCache.maxSize = cacheSize;
+    }
+  }
+}
@@ -1,6 +1,8 @@
 package org.mitre.synthea.engine;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import com.google.common.collect.Lists;
@@ -172,4 +174,49 @@ public class PhysiologySimulatorTest {
     String[] args = {"i_dont_exist.yml"};
     PhysiologySimulator.main(args);
   }
-}
\ No newline at end of file
+
+  @Test
+  public void testResultsAreSharedWithinTolerance() throws DerivativeException {
+    int cacheSize = PhysiologyResultCache.maxSize;
+    double tolerance = PhysiologyResultCache.tolerance;
+    try {
+      PhysiologyResultCache.clear();
+      PhysiologyResultCache.maxSize = 10;
+      PhysiologyResultCache.tolerance = 0.1;
+      PhysiologySimulator first = new PhysiologySimulator(
+          "circulation/Smith2004_CVS_human.xml", "runge_kutta", 0.01, 1);
+      PhysiologySimulator second = new PhysiologySimulator(
+          "circulation/Smith2004_CVS_human.xml", "runge_kutta", 0.01, 1);
+
+      Map<String, Double> inputs = new HashMap<String, Double>();
+      inputs.put("period", 0.76);
+      MultiTable results = first.run(inputs);
+      inputs.put("period", 0.77);
+      assertSame(results, second.run(inputs));
+      inputs.put("period", 0.9);
+      assertNotSame(results, second.run(inputs));
+
+      assertEquals(1, PhysiologyResultCache.getHits());
+      assertEquals(2, PhysiologyResultCache.getMisses());
+    } finally {
+      PhysiologyResultCache.maxSize = cacheSize;
+      PhysiologyResultCache.tolerance = tolerance;
+      PhysiologyResultCache.clear();
+    }
+  }
+
+  @Test
+  public void testQuantize() {
+    double tolerance = PhysiologyResultCache.tolerance;
+    try {
+      PhysiologyResultCache.tolerance = 0.0;
+      assertEquals(1.2345, PhysiologyResultCache.quantize(1.2345), 0.0);
+      PhysiologyResultCache.tolerance = 0.5;
+      assertEquals(1.0, PhysiologyResultCache.quantize(1.2), 0.0);
+      assertEquals(1.5, PhysiologyResultCache.quantize(1.3), 0.0);
+      assertEquals(-1.0, PhysiologyResultCache.quantize(-0.9), 0.0);
+    } finally {
+      PhysiologyResultCache.tolerance = tolerance;
+    }
+  }
+}
@@ -0,0 +1,292 @@
+package org.mitre.synthea.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mitre.synthea.TestHelper;
+import org.mitre.synthea.helpers.Config;
+import org.mitre.synthea.world.agents.Person;
+import org.mitre.synthea.world.agents.Provider;
+import org.mitre.synthea.world.geography.Location;
+
+public class PopulationSnapshotTest {
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private Provider provider;
+
+  @Before
+  public void before() {
+    Provider.clear();
+    provider = new Provider();
+  }
+
+  private List<Person> people(int count) {
+    List<Person> people = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      Person person = new Person(i);
+      person.attributes.put(Person.BIRTHDATE, 1000L * i);
+      person.attributes.put(Person.NAME, "Person " + i);
+      person.attributes.put("snapshot_test_provider", provider);
+      person.lastUpdated = 5000L + i;
+      people.add(person);
+    }
+    return people;
+  }
+
+  private List<Person> roundTrip(List<Person> people, boolean compress) throws IOException {
+    File file = tempFolder.newFile();
+    try (PopulationSnapshot.Writer writer = new PopulationSnapshot.Writer(file, compress)) {
+      for (Person person : people) {
+        writer.write(person);
+      }
+      assertEquals(people.size(), writer.size());
+    }
+    List<Person> read = new ArrayList<>();
+    try (PopulationSnapshot.Reader reader = new PopulationSnapshot.Reader(file)) {
+      assertEquals(people.size(), reader.size());
+      reader.forEachRemaining(read::add);
+    }
+    return read;
+  }
+
+  private void verify(List<Person> original, List<Person> read) {
+    assertEquals(original.size(), read.size());
+    for (int i = 0; i < original.size(); i++) {
+      assertEquals(original.get(i).lastUpdated, read.get(i).lastUpdated);
+      assertEquals(original.get(i).attributes.get(Person.NAME),
+          read.get(i).attributes.get(Person.NAME));
+      assertEquals(original.get(i).attributes.get(Person.BIRTHDATE),
+          read.get(i).attributes.get(Person.BIRTHDATE));
+    }
+  }
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    List<Person> people = people(5);
+    verify(people, roundTrip(people, false));
+  }
+
+  @Test
+  public void testCompressedRoundTrip() throws Exception {
+    List<Person> people = people(5);
+    verify(people, roundTrip(people, true));
+  }
+
+  @Test
+  public void testSharedObjectsWrittenOnce() throws Exception {
+    List<Person> read = roundTrip(people(3), true);
+    Object shared = read.get(0).attributes.get("snapshot_test_provider");
+    assertTrue(shared instanceof Provider);
+    assertEquals(provider.uuid, ((Provider) shared).uuid);
+    for (Person person : read) {
+      assertSame(shared, person.attributes.get("snapshot_test_provider"));
+    }
+  }
+
+  private long writtenLength(List<Person> people) throws IOException {
+    File file = tempFolder.newFile();
+    try (PopulationSnapshot.Writer writer = new PopulationSnapshot.Writer(file, false)) {
+      for (Person person : people) {
+        writer.write(person);
+      }
+      // the records written so far, without the shared objects in the footer
+      return writer.getPartialFile().length();
+    }
+  }
+
+  @Test
+  public void testLocationWrittenOnce() throws Exception {
+    TestHelper.loadTestProperties();
+    Location location = new Location(Config.get("test_state.default", "Massachusetts"), null);
+    ByteArrayOutputStream locationBytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream oos = new ObjectOutputStream(locationBytes)) {
+      oos.writeObject(location);
+    }
+    List<Person> people = people(10);
+    long withoutLocation = writtenLength(people);
+    for (Person person : people) {
+      person.attributes.put(Person.LOCATION, location);
+    }
+    long withLocation = writtenLength(people);
+    assertTrue(withLocation - withoutLocation < locationBytes.size() + 1000L * people.size());
+
+    List<Person> read = roundTrip(people, true);
+    Object shared = read.get(0).attributes.get(Person.LOCATION);
+    assertTrue(shared instanceof Location);
+    for (Person person : read) {
+      assertSame(shared, person.attributes.get(Person.LOCATION));
+    }
+  }
+
+  @Test
+  public void testSnapshotWithoutSharedObjects() throws Exception {
+    List<Person> people = people(3);
+    File file = tempFolder.newFile();
+    List<Object> shared;
+    try (PopulationSnapshot.Writer writer = new PopulationSnapshot.Writer(file, true, false)) {
+      for (Person person : people) {
+        writer.write(person);
+      }
+      writer.close();
+      shared = writer.getSharedObjects();
+    }
+    List<Person> read = new ArrayList<>();
+    try (PopulationSnapshot.Reader reader = new PopulationSnapshot.Reader(file, shared)) {
+      assertTrue(reader.isComplete());
+      reader.forEachRemaining(read::add);
+    }
+    verify(people, read);
+    for (Person person : read) {
+      assertSame(provider, person.attributes.get("snapshot_test_provider"));
+    }
+    try {
+      new PopulationSnapshot.Reader(file);
+      fail("Read a snapshot without its shared objects");
+    } catch (IOException e) {
+      // expected, the shared objects are not in the file
+    }
+  }
+
+  @Test
+  public void testEmptySnapshot() throws Exception {
+    List<Person> read = roundTrip(new ArrayList<>(), true);
+    assertTrue(read.isEmpty());
+  }
+
+  @Test
+  public void testLegacySnapshot() throws Exception {
+    List<Person> people = people(3);
+    File file = tempFolder.newFile();
+    try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(file))) {
+      oos.writeObject(people);
+    }
+    List<Person> read = new ArrayList<>();
+    try (PopulationSnapshot.Reader reader = new PopulationSnapshot.Reader(file)) {
+      assertEquals(people.size(), reader.size());
+      reader.forEachRemaining(read::add);
+    }
+    verify(people, read);
+  }
+
+  @Test
+  public void testLazyReading() throws Exception {
+    List<Person> people = people(3);
+    File file = tempFolder.newFile();
+    try (PopulationSnapshot.Writer writer = new PopulationSnapshot.Writer(file, false)) {
+      for (Person person : people) {
+        writer.write(person);
+      }
+    }
+    try (PopulationSnapshot.Reader reader = new PopulationSnapshot.Reader(file)) {
+      assertTrue(reader.hasNext());
+      assertEquals(people.get(0).lastUpdated, reader.next().lastUpdated);
+    }
+  }
+
+  private List<Person> readAll(File file) throws IOException {
+    List<Person> read = new ArrayList<>();
+    try (PopulationSnapshot.Reader reader = new PopulationSnapshot.Reader(file)) {
+      assertFalse(reader.isComplete());
+      reader.forEachRemaining(read::add);
+      assertEquals(reader.size(), read.size());
+    }
+    return read;
+  }
+
+  @Test
+  public void testInterruptedSnapshot() throws Exception {
+    List<Person> people = people(3);
+    File file = tempFolder.newFile();
+    PopulationSnapshot.Writer writer = new PopulationSnapshot.Writer(file, true);
+    try {
+      for (Person person : people) {
+        writer.write(person);
+      }
+      // the writer has not been closed, as if the run was interrupted
+      List<Person> read = readAll(writer.getPartialFile());
+      verify(people, read);
+      Object shared = read.get(0).attributes.get("snapshot_test_provider");
+      assertTrue(shared instanceof Provider);
+      assertEquals(provider.uuid, ((Provider) shared).uuid);
+      for (Person person : read) {
+        assertSame(shared, person.attributes.get("snapshot_test_provider"));
+      }
+    } finally {
+      writer.close();
+    }
+  }
+
+  @Test
+  public void testTruncatedSnapshot() throws Exception {
+    List<Person> people = people(3);
+    File file = tempFolder.newFile();
+    try (PopulationSnapshot.Writer writer = new PopulationSnapshot.Writer(file, false)) {
+      for (Person person : people) {
+        writer.write(person);
+      }
+      // simulate a crash part way through writing the last person
+      byte[] written = Files.readAllBytes(writer.getPartialFile().toPath());
+      File truncated = tempFolder.newFile();
+      Files.write(truncated.toPath(), Arrays.copyOf(written, written.length - 10));
+      verify(people.subList(0, 2), readAll(truncated));
+    }
+  }
+
+  @Test
+  public void testUpdateSnapshotInPlace() throws Exception {
+    List<Person> people = people(3);
+    File file = tempFolder.newFile();
+    try (PopulationSnapshot.Writer writer = new PopulationSnapshot.Writer(file, true)) {
+      for (Person person : people) {
+        writer.write(person);
+      }
+    }
+    // read the snapshot while saving the updated population over it, as with -i and -u
+    List<Person> read = new ArrayList<>();
+    try (PopulationSnapshot.Writer writer = new PopulationSnapshot.Writer(file, true);
+        PopulationSnapshot.Reader reader = new PopulationSnapshot.Reader(file)) {
+      while (reader.hasNext()) {
+        Person person = reader.next();
+        person.lastUpdated += 1;
+        read.add(person);
+        writer.write(person);
+      }
+    }
+    assertEquals(people.size(), read.size());
+    List<Person> updated = new ArrayList<>();
+    try (PopulationSnapshot.Reader reader = new PopulationSnapshot.Reader(file)) {
+      assertTrue(reader.isComplete());
+      reader.forEachRemaining(updated::add);
+    }
+    verify(read, updated);
+    assertEquals(people.get(0).lastUpdated + 1, updated.get(0).lastUpdated);
+    assertFalse(new File(file.getPath() + PopulationSnapshot.PARTIAL_SUFFIX).exists());
+  }
+
+  @Test(expected = IOException.class)
+  public void testNotASnapshot() throws Exception {
+    File file = tempFolder.newFile();
+    try (FileOutputStream out = new FileOutputStream(file)) {
+      out.write("not a snapshot".getBytes());
+    }
+    assertFalse(new PopulationSnapshot.Reader(file).hasNext());
+  }
+}
@@ -150,6 +150,17 @@ public class StateTest {
     assertFalse(guard.process(person, time));
   }
 
+  @Test
+  public void guard_retests_when_input_changes() throws Exception {
+    Module module = TestHelper.getFixture("guard.json");
+    State guard = module.getState("Gender_Guard").clone();
+    person.attributes.put(Person.GENDER, "M");
+    assertFalse(guard.process(person, time));
+    assertFalse(guard.process(person, time + 1));
+    person.attributes.put(Person.GENDER, "F");
+    assertTrue(guard.process(person, time + 2));
+  }
+
   @Test
   public void counter() throws Exception {
     Module module = TestHelper.getFixture("counter.json");
@@ -1,6 +1,7 @@
 package org.mitre.synthea.engine;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 import java.util.HashMap;
 import java.util.List;
@@ -101,6 +102,33 @@ public class TransitionTest {
     assertEquals(100, counts.get("Terminal3").intValue());
   }
 
+  private String finalState(Module module, long time) {
+    module.process(person, time);
+    @SuppressWarnings("unchecked")
+    List<State> history = (List<State>) person.attributes.remove(module.name);
+    return history.get(0).name;
+  }
+
+  @Test
+  public void testConditionalTransitionReusesUnchangedConditions() throws Exception {
+    Module conditionalTransition = TestHelper.getFixture("conditional_transition.json");
+
+    person.attributes.put(Person.GENDER, "M");
+    assertEquals("Terminal1", finalState(conditionalTransition, time));
+    assertEquals(1, person.getConditionResults().size());
+
+    // the gender changed, so the result of the first condition is not reused
+    person.attributes.put(Person.GENDER, "F");
+    assertEquals("Terminal2", finalState(conditionalTransition, time));
+    assertEquals(2, person.getConditionResults().size());
+
+    Map<Logic, LogicInputs.Snapshot> results = new HashMap<>(person.getConditionResults());
+    assertEquals("Terminal2", finalState(conditionalTransition, time + 1));
+    for (Map.Entry<Logic, LogicInputs.Snapshot> entry : results.entrySet()) {
+      assertSame(entry.getValue(), person.getConditionResults().get(entry.getKey()));
+    }
+  }
+
   @Test
   public void testTypeOfCareTransition() throws Exception {
     Module typeOfCareTransition = TestHelper.getFixture("virtual_medicine_transition.json");
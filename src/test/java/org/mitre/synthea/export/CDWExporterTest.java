@@ -1,10 +1,14 @@
 package org.mitre.synthea.export;
 
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.OutputStreamWriter;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.junit.Rule;
 import org.junit.Test;
@@ -13,6 +17,7 @@ import org.mitre.synthea.TestHelper;
 import org.mitre.synthea.engine.Generator;
 import org.mitre.synthea.helpers.Config;
 import org.mitre.synthea.helpers.SimpleCSV;
+import org.mitre.synthea.world.agents.Person;
 import org.powermock.reflect.Whitebox;
 
 public class CDWExporterTest {
@@ -41,6 +46,54 @@ public class CDWExporterTest {
     Config.set("generate.veteran_population_override", "false");
     CDWExporter.getInstance().writeFactTables();
 
+    closeWriters(CDWExporter.getInstance());
+    validate(tempOutputFolder);
+  }
+
+  @Test
+  public void testCDWExportWithStreamedFactTables() throws Exception {
+    TestHelper.exportOff();
+    TestHelper.loadTestProperties();
+    Generator.DEFAULT_STATE = Config.get("test_state.default", "Massachusetts");
+    Config.set("generate.veteran_population_override", "true");
+    int numberOfPeople = 10;
+    Generator generator = new Generator(numberOfPeople);
+    generator.options.overflow = false;
+    List<Person> people = new ArrayList<Person>();
+    for (int i = 0; i < numberOfPeople; i++) {
+      people.add(generator.generatePerson(i));
+    }
+    Config.set("generate.veteran_population_override", "false");
+
+    File tempOutputFolder = tempFolder.newFolder();
+    Config.set("exporter.baseDirectory", tempOutputFolder.toString());
+    Config.set("exporter.cdw.stream_fact_tables", "true");
+    CDWExporter exporter;
+    try {
+      // a new exporter, rather than the shared one, so that its fact tables are streamed
+      exporter = Whitebox.invokeConstructor(CDWExporter.class);
+    } finally {
+      Config.set("exporter.cdw.stream_fact_tables", "false");
+    }
+    long stopTime = System.currentTimeMillis();
+    for (Person person : people) {
+      exporter.export(person, stopTime);
+    }
+    exporter.writeFactTables();
+    closeWriters(exporter);
+    validate(tempOutputFolder);
+
+    Path cdw = tempOutputFolder.toPath().resolve("cdw");
+    // the medication rows read the streamed dosage forms and order statuses back
+    assertTrue(Files.readAllLines(cdw.resolve("dosageform.csv")).size() > 2);
+    List<String> nonvamed = Files.readAllLines(cdw.resolve("nonvamed.csv"));
+    assertTrue(nonvamed.size() > 1);
+    for (String row : nonvamed) {
+      assertFalse(row, row.contains("null"));
+    }
+  }
+
+  private static void closeWriters(CDWExporter exporter) throws Exception {
     // Ensure the files are synchronized with the tempFolder...
     String[] variables = { "lookuppatient", "spatient", "spatientaddress", "spatientphone",
         "patientrace", "patientethnicity", "consult", "visit", "appointment", "inpatient",
@@ -50,10 +103,12 @@ public class CDWExporterTest {
         "surgeryProcedureDiagnosisCode", "surgeryPRE", "vitalSign" };
     for (String variable : variables) {
       OutputStreamWriter ow =
-          Whitebox.<OutputStreamWriter>getInternalState(CDWExporter.getInstance(), variable);
+          Whitebox.<OutputStreamWriter>getInternalState(exporter, variable);
       ow.close();
     }
+  }
 
+  private static void validate(File tempOutputFolder) throws Exception {
     // if we get here we at least had no exceptions
     File expectedExportFolder = tempOutputFolder.toPath().resolve("cdw").toFile();
     assertTrue(expectedExportFolder.exists() && expectedExportFolder.isDirectory());
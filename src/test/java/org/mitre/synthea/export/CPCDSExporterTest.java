@@ -5,6 +5,8 @@ import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.List;
 
 import org.junit.Rule;
 import org.junit.Test;
@@ -60,6 +62,13 @@ public class CPCDSExporterTest {
       SimpleCSV.parse(csvData);
       assertTrue(SimpleCSV.isValid(csvData));
 
+      if (csvFile.getName().equals("PractitionerRoles.csv")
+          || csvFile.getName().equals("Organizations.csv")) {
+        // each practitioner and organization is only written once
+        List<String> lines = Files.readAllLines(csvFile.toPath());
+        assertEquals(csvFile.getName(), lines.size(), new HashSet<String>(lines).size());
+      }
+
       count++;
     }
 
@@ -0,0 +1,76 @@
+package org.mitre.synthea.export;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mitre.synthea.world.agents.Person;
+import org.mitre.synthea.world.agents.Provider;
+
+public class DeferredExportsTest {
+  private Provider provider;
+
+  @Before
+  public void before() {
+    Provider.clear();
+    provider = new Provider();
+  }
+
+  private Person person(int i) {
+    Person person = new Person(i);
+    person.attributes.put(Person.NAME, "Person " + i);
+    person.attributes.put("deferred_export_test_provider", provider);
+    return person;
+  }
+
+  @Test
+  public void testPeopleBeyondLimitAreSpilledAndExported() {
+    DeferredExports deferred = new DeferredExports(2, true);
+    for (int i = 0; i < 5; i++) {
+      deferred.add(person(i), 1000L + i);
+    }
+    assertEquals(5, deferred.size());
+    assertEquals(3, deferred.spilled());
+
+    Map<String, Long> exported = new ConcurrentHashMap<>();
+    deferred.exportAll((person, stopTime) -> {
+      exported.put((String) person.attributes.get(Person.NAME), stopTime);
+      // people read back from disk refer to the same shared objects
+      assertSame(provider, person.attributes.get("deferred_export_test_provider"));
+    }, 3);
+
+    assertEquals(5, exported.size());
+    for (int i = 0; i < 5; i++) {
+      assertEquals(Long.valueOf(1000L + i), exported.get("Person " + i));
+    }
+    assertEquals(0, deferred.size());
+  }
+
+  @Test
+  public void testNegativeLimitKeepsEveryoneInMemory() {
+    DeferredExports deferred = new DeferredExports(-1, false);
+    for (int i = 0; i < 5; i++) {
+      deferred.add(person(i), 1000L);
+    }
+    assertEquals(5, deferred.size());
+    assertEquals(0, deferred.spilled());
+
+    Map<String, Long> exported = new ConcurrentHashMap<>();
+    deferred.exportAll((person, stopTime) ->
+        exported.put((String) person.attributes.get(Person.NAME), stopTime), 1);
+    assertEquals(5, exported.size());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testExportFailureIsRethrown() {
+    DeferredExports deferred = new DeferredExports(0, false);
+    deferred.add(person(0), 1000L);
+    deferred.exportAll((person, stopTime) -> {
+      throw new IllegalStateException("expected by test");
+    }, 1);
+  }
+}
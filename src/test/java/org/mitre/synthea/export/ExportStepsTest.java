@@ -0,0 +1,75 @@
+package org.mitre.synthea.export;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class ExportStepsTest {
+
+  @Test
+  public void testDependenciesFinishFirst() {
+    List<String> finished = Collections.synchronizedList(new ArrayList<>());
+    ExportSteps steps = new ExportSteps();
+    steps.add("a", () -> {
+      Thread.sleep(50);
+      finished.add("a");
+    });
+    steps.add("b", () -> finished.add("b"));
+    steps.add("c", () -> finished.add("c"), "a", "b");
+    steps.add("d", () -> finished.add("d"), "c");
+
+    Map<String, Long> times = steps.run(4);
+    assertEquals(Arrays.asList("a", "b", "c", "d"), new ArrayList<>(times.keySet()));
+    assertEquals(4, finished.size());
+    assertTrue(finished.indexOf("c") > finished.indexOf("a"));
+    assertTrue(finished.indexOf("c") > finished.indexOf("b"));
+    assertEquals("d", finished.get(3));
+    assertTrue(times.get("a") >= 50);
+  }
+
+  @Test
+  public void testIndependentStepsRunTogether() {
+    // each step waits for the other, so this only finishes if they run at the same time
+    CountDownLatch latch = new CountDownLatch(2);
+    ExportSteps steps = new ExportSteps();
+    steps.add("a", () -> {
+      latch.countDown();
+      assertTrue(latch.await(10, TimeUnit.SECONDS));
+    });
+    steps.add("b", () -> {
+      latch.countDown();
+      assertTrue(latch.await(10, TimeUnit.SECONDS));
+    });
+    steps.run(2);
+    assertEquals(0, latch.getCount());
+  }
+
+  @Test
+  public void testFailedStepDoesNotStopDependents() {
+    List<String> finished = Collections.synchronizedList(new ArrayList<>());
+    ExportSteps steps = new ExportSteps();
+    steps.add("fails", () -> {
+      throw new IllegalStateException("expected by test");
+    });
+    steps.add("dependent", () -> finished.add("dependent"), "fails");
+
+    Map<String, Long> times = steps.run(1);
+    assertEquals(Collections.singletonList("dependent"), finished);
+    assertNotNull(times.get("fails"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownDependency() {
+    new ExportSteps().add("a", () -> { }, "b");
+  }
+}
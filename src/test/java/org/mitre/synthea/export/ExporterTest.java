@@ -1,11 +1,21 @@
 package org.mitre.synthea.export;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.mitre.synthea.TestHelper.years;
 
+import ca.uhn.fhir.parser.IParser;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.mitre.synthea.TestHelper;
 import org.mitre.synthea.engine.Generator;
 import org.mitre.synthea.helpers.Config;
@@ -32,6 +42,12 @@ public class ExporterTest {
 
   private static final HealthRecord.Code DUMMY_CODE = new HealthRecord.Code("", "", "");
 
+  /**
+   * Temporary folder for any exported files, guaranteed to be deleted at the end of the test.
+   */
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
   /**
    * Setup test data.
    * @throws Exception on configuration loading error.
@@ -59,6 +75,28 @@ public class ExporterTest {
     patient.coverage.setPlanToNoInsurance(time);
   }
 
+  private void assertWrittenAsEncoded(IParser parser, IBaseResource resource) throws Exception {
+    Path file = tempFolder.newFolder().toPath().resolve("bundle.json");
+    Exporter.writeNewFile(file, parser, resource);
+    byte[] expected = (parser.encodeResourceToString(resource) + System.lineSeparator())
+        .getBytes(StandardCharsets.UTF_8);
+    assertArrayEquals(expected, Files.readAllBytes(file));
+  }
+
+  @Test
+  public void testFhirFilesMatchEncodedStrings() throws Exception {
+    Person person = TestHelper.getGeneratedPeople()[0];
+    long stopTime = System.currentTimeMillis();
+    for (boolean pretty : new boolean[] {true, false}) {
+      assertWrittenAsEncoded(FhirR4.getJsonParser(pretty),
+          FhirR4.convertToFHIR(person, stopTime));
+      assertWrittenAsEncoded(FhirStu3.getJsonParser(pretty),
+          FhirStu3.convertToFHIR(person, stopTime));
+      assertWrittenAsEncoded(FhirDstu2.getJsonParser(pretty),
+          FhirDstu2.convertToFHIR(person, stopTime));
+    }
+  }
+
   @Test
   public void testExportFilterSimpleCutoff() {
     record.encounterStart(time - years(8), EncounterType.WELLNESS);
@@ -2,6 +2,9 @@ package org.mitre.synthea.export;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -585,4 +588,19 @@ public class FHIRR4ExporterTest {
     assertFalse("Procedure resource found but should not have been included", foundProcedures);
     assertTrue("Condition resource missing but should have been included", foundConditions);
   }
+
+  @Test
+  public void testJsonParserIsReusedPerThread() throws Exception {
+    IParser parser = FhirR4.getJsonParser(true);
+    assertTrue(parser.isPrettyPrint());
+    assertSame(parser, FhirR4.getJsonParser(false));
+    assertFalse(parser.isPrettyPrint());
+
+    IParser[] otherThreadParser = new IParser[1];
+    Thread thread = new Thread(() -> otherThreadParser[0] = FhirR4.getJsonParser(false));
+    thread.start();
+    thread.join();
+    assertNotNull(otherThreadParser[0]);
+    assertNotSame(parser, otherThreadParser[0]);
+  }
 }
@@ -1,22 +1,37 @@
 package org.mitre.synthea.export;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSerializationContext;
+import com.google.gson.JsonSerializer;
 
+import java.io.StringWriter;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.mitre.synthea.ParallelTestingService;
 import org.mitre.synthea.TestHelper;
+import org.mitre.synthea.engine.State;
 import org.mitre.synthea.helpers.Config;
+import org.mitre.synthea.world.agents.Payer;
 import org.mitre.synthea.world.agents.Person;
 
 public class JSONExporterTest {
@@ -63,4 +78,108 @@ public class JSONExporterTest {
     assertTrue("Validation of exported JSON bundle failed: "
         + String.join("|", errors), errors.size() == 0);
   }
-}
\ No newline at end of file
+
+  /**
+   * The tree-building serializer the streaming PersonAdapter replaced, kept as a reference for
+   * the expected output.
+   */
+  private static class TreePersonSerializer implements JsonSerializer<Person> {
+    private final boolean excludeModuleHistory;
+
+    TreePersonSerializer(boolean excludeModuleHistory) {
+      this.excludeModuleHistory = excludeModuleHistory;
+    }
+
+    @Override
+    public JsonElement serialize(Person src, Type typeOfSrc, JsonSerializationContext context) {
+      JsonObject personOut = new JsonObject();
+      personOut.add("seed", new JsonPrimitive(src.getSeed()));
+      personOut.add("lastUpdated", new JsonPrimitive(src.lastUpdated));
+      personOut.add("coverage", context.serialize(src.coverage));
+      personOut.add("symptoms", context.serialize(src.getExpressedSymptoms()));
+      JsonObject attributes = new JsonObject();
+      src.attributes.forEach((key, value) -> {
+        boolean keepEntry = true;
+        if (key.startsWith("ehr_") || key.contains("lookup") || key.contains("UUID")) {
+          keepEntry = false;
+        } else if (excludeModuleHistory && isModuleHistory(value)) {
+          keepEntry = false;
+        }
+        if (keepEntry) {
+          attributes.add(key, context.serialize(value));
+        }
+      });
+      personOut.add("attributes", attributes);
+      if (src.hasMultipleRecords) {
+        personOut.add("records", context.serialize(src.records));
+      } else {
+        personOut.add("record", context.serialize(src.record));
+      }
+      return personOut;
+    }
+
+    private boolean isModuleHistory(Object obj) {
+      if (List.class.isAssignableFrom(obj.getClass())) {
+        List<?> things = (List<?>) obj;
+        return things.stream().allMatch(t -> State.class.isAssignableFrom(t.getClass()));
+      }
+      return false;
+    }
+  }
+
+  /**
+   * The JSON of a person as it was exported before the PersonAdapter.
+   */
+  private static String treeExport(Person person, boolean includeModuleHistory) {
+    Gson gson = new GsonBuilder()
+        .excludeFieldsWithModifiers(Modifier.STATIC, Modifier.TRANSIENT, Modifier.VOLATILE)
+        .addSerializationExclusionStrategy(new JSONExporter.SyntheaExclusionStrategy())
+        .registerTypeHierarchyAdapter(State.class, new JSONExporter.StateSerializer())
+        .registerTypeHierarchyAdapter(Person.class,
+            new TreePersonSerializer(!includeModuleHistory))
+        .registerTypeHierarchyAdapter(Payer.class, new JSONExporter.ShortPayerSerializer())
+        .registerTypeHierarchyAdapter(Random.class, new JSONExporter.RandomSerializer())
+        .registerTypeHierarchyAdapter(LocalDate.class, new JSONExporter.LocalDateSerializer())
+        .setPrettyPrinting()
+        .create();
+    return gson.toJson(person);
+  }
+
+  @Test
+  public void testStreamedExportMatchesTreeExport() throws Exception {
+    TestHelper.loadTestProperties();
+    Config.set("exporter.pretty_print", "true");
+    Person person = TestHelper.getGeneratedPeople()[0];
+    try {
+      for (boolean includeModuleHistory : new boolean[] {false, true}) {
+        Config.set("exporter.json.include_module_history",
+            String.valueOf(includeModuleHistory));
+        String expected = treeExport(person, includeModuleHistory);
+        assertEquals(expected, JSONExporter.export(person));
+        StringWriter writer = new StringWriter();
+        JSONExporter.export(person, writer);
+        assertEquals(expected, writer.toString());
+      }
+    } finally {
+      Config.set("exporter.json.include_module_history", "false");
+    }
+  }
+
+  @Test
+  public void testExportLine() throws Exception {
+    TestHelper.loadTestProperties();
+    Person person = TestHelper.getGeneratedPeople()[0];
+    String line = JSONExporter.exportLine(person);
+    assertFalse(line.contains("\n"));
+    JsonObject parsedPerson = JsonParser.parseString(line).getAsJsonObject();
+    assertEquals(person.attributes.get(Person.GENDER),
+        parsedPerson.get("attributes").getAsJsonObject().get("gender").getAsString());
+  }
+
+  @Test
+  public void testGsonIsShared() throws Exception {
+    TestHelper.loadTestProperties();
+    assertSame(JSONExporter.getGson(true), JSONExporter.getGson(true));
+    assertNotSame(JSONExporter.getGson(true), JSONExporter.getGson(false));
+  }
+}
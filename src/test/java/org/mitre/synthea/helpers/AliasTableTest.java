@@ -0,0 +1,54 @@
+package org.mitre.synthea.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class AliasTableTest {
+
+  @Test
+  public void testFrequenciesMatchWeights() {
+    double[] weights = {0.5, 0.0, 3.0, 1.5, 5.0};
+    AliasTable table = new AliasTable(weights);
+    assertEquals(weights.length, table.size());
+
+    int samples = 1_000_000;
+    int[] counts = new int[weights.length];
+    RandomNumberGenerator random = new DefaultRandomNumberGenerator(0);
+    for (int i = 0; i < samples; i++) {
+      counts[table.sample(random.rand())]++;
+    }
+    assertEquals(0, counts[1]);
+    for (int i = 0; i < weights.length; i++) {
+      double expected = weights[i] / 10.0;
+      assertEquals(expected, counts[i] / (double) samples, 0.005);
+    }
+  }
+
+  @Test
+  public void testSingleOutcome() {
+    AliasTable table = new AliasTable(new double[] {42.0});
+    assertEquals(0, table.sample(0.0));
+    assertEquals(0, table.sample(0.999999));
+  }
+
+  @Test
+  public void testExtremeValues() {
+    AliasTable table = new AliasTable(new double[] {1.0, 0.0, 1.0});
+    int first = table.sample(0.0);
+    int last = table.sample(Math.nextDown(1.0));
+    assertTrue(first == 0 || first == 2);
+    assertTrue(last == 0 || last == 2);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNoPositiveWeights() {
+    new AliasTable(new double[] {0.0, 0.0});
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNegativeWeight() {
+    new AliasTable(new double[] {1.0, -1.0});
+  }
+}
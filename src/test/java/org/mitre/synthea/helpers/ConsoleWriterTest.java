@@ -0,0 +1,71 @@
+package org.mitre.synthea.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConsoleWriterTest {
+  private PrintStream original;
+  private ByteArrayOutputStream out;
+
+  @Before
+  public void captureOutput() {
+    original = System.out;
+    out = new ByteArrayOutputStream();
+    System.setOut(new PrintStream(out, true));
+  }
+
+  @After
+  public void restoreOutput() {
+    System.setOut(original);
+  }
+
+  @Test
+  public void testUnlimitedPrintsEverything() throws Exception {
+    ConsoleWriter console = new ConsoleWriter(0);
+    Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; t++) {
+      final int thread = t;
+      threads[t] = new Thread(() -> {
+        for (int i = 0; i < 500; i++) {
+          console.print("person " + thread + "-" + i + "\nsecond line\n");
+        }
+      });
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    console.flush();
+
+    String[] lines = out.toString().split("\n");
+    assertEquals(4000, lines.length);
+    for (int i = 0; i < lines.length; i += 2) {
+      // the lines of each entry stay together
+      assertTrue(lines[i].startsWith("person "));
+      assertEquals("second line", lines[i + 1]);
+    }
+    assertEquals(0, console.getSkipped());
+  }
+
+  @Test
+  public void testRateLimit() {
+    ConsoleWriter console = new ConsoleWriter(5);
+    for (int i = 0; i < 20; i++) {
+      console.print("person " + i + "\n");
+    }
+    console.flush();
+
+    String output = out.toString();
+    assertTrue(output.contains("person 0\n"));
+    assertEquals(15, console.getSkipped());
+    assertTrue(output.contains("... 15 more not shown"));
+    assertEquals(0, console.getQueueDepth());
+  }
+}
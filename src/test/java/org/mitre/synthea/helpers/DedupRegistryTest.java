@@ -0,0 +1,60 @@
+package org.mitre.synthea.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class DedupRegistryTest {
+
+  @Test
+  public void testRegisterOnce() {
+    DedupRegistry registry = new DedupRegistry();
+    assertFalse(registry.contains("1234"));
+    assertTrue(registry.register("1234"));
+    assertFalse(registry.register("1234"));
+    assertTrue(registry.contains("1234"));
+    assertEquals(1, registry.size());
+    registry.clear();
+    assertEquals(0, registry.size());
+    assertTrue(registry.register("1234"));
+  }
+
+  @Test
+  public void testConcurrentRegistration() throws Exception {
+    DedupRegistry registry = new DedupRegistry();
+    int threads = 8;
+    int keys = 10000;
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+      for (int t = 0; t < threads; t++) {
+        results.add(pool.submit(() -> {
+          int registered = 0;
+          for (int i = 0; i < keys; i++) {
+            if (registry.register("key" + i)) {
+              registered++;
+            }
+          }
+          return registered;
+        }));
+      }
+      int total = 0;
+      for (Future<Integer> result : results) {
+        total += result.get();
+      }
+      // every key is new to exactly one thread
+      assertEquals(keys, total);
+      assertEquals(keys, registry.size());
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+}
@@ -2,6 +2,13 @@ package org.mitre.synthea.helpers;
 
 import java.io.IOException;
 import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -48,4 +55,70 @@ public class FactTableTest {
     Assert.assertEquals("Hydrogen,Highly flammable gas", table.getFactByKey("H"));
   }
 
+  @Test
+  public void testConcurrentAddsAssignEachKeyOneId() throws Exception {
+    FactTable table = new FactTable();
+    table.setNextId(100);
+    ExecutorService pool = Executors.newFixedThreadPool(8);
+    List<Future<int[]>> results = new ArrayList<>();
+    for (int t = 0; t < 8; t++) {
+      results.add(pool.submit(() -> {
+        int[] ids = new int[500];
+        for (int i = 0; i < ids.length; i++) {
+          ids[i] = table.addFact("key" + i, "fact" + i);
+        }
+        return ids;
+      }));
+    }
+    pool.shutdown();
+    int[] first = results.get(0).get();
+    for (Future<int[]> result : results) {
+      Assert.assertArrayEquals(first, result.get());
+    }
+    Set<Integer> distinct = new HashSet<>();
+    for (int id : first) {
+      Assert.assertTrue(id >= 100 && id < 600);
+      distinct.add(id);
+    }
+    Assert.assertEquals(500, distinct.size());
+    Assert.assertEquals("fact7", table.getFactById(table.getFactId("key7")));
+  }
+
+  @Test
+  public void testStreamTo() throws IOException {
+    FactTable table = new FactTable();
+    table.setHeader("ID,KEY,NAME");
+    int h = table.addFact("H", "H,Hydrogen");
+
+    StringWriter writer = new StringWriter();
+    table.streamTo(writer);
+    Assert.assertTrue(table.isStreaming());
+    int he = table.addFact("He", "He,Helium");
+    Assert.assertEquals(he, table.addFact("He", "He,Helium"));
+    table.flush();
+
+    String newline = System.lineSeparator();
+    Assert.assertEquals("ID,KEY,NAME" + newline + h + ",H,Hydrogen" + newline
+        + he + ",He,Helium" + newline, writer.toString());
+    // streamed facts are not kept in memory
+    Assert.assertEquals(he, table.getFactId("He"));
+    Assert.assertNull(table.getFactByKey("He"));
+  }
+
+  @Test
+  public void testStreamToKeepingFacts() throws IOException {
+    FactTable table = new FactTable();
+    table.setHeader("ID,KEY,NAME");
+    table.keepFacts();
+    StringWriter writer = new StringWriter();
+    table.streamTo(writer);
+    int li = table.addFact("Li", "Li,Lithium");
+    table.flush();
+
+    String newline = System.lineSeparator();
+    Assert.assertEquals("ID,KEY,NAME" + newline + li + ",Li,Lithium" + newline,
+        writer.toString());
+    Assert.assertEquals("Li,Lithium", table.getFactById(li));
+    Assert.assertEquals("Li,Lithium", table.getFactByKey("Li"));
+  }
 }
@@ -0,0 +1,124 @@
+package org.mitre.synthea.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mitre.synthea.TestHelper;
+import org.mitre.synthea.engine.Module;
+import org.mitre.synthea.engine.State;
+import org.mitre.synthea.helpers.ModuleProfiler.Counter;
+import org.mitre.synthea.modules.LifecycleModule;
+import org.mitre.synthea.world.agents.Person;
+
+public class ModuleProfilerTest {
+
+  @Before
+  public void enable() {
+    ModuleProfiler.enabled = true;
+    ModuleProfiler.reset();
+  }
+
+  @After
+  public void disable() {
+    ModuleProfiler.enabled = false;
+    ModuleProfiler.reset();
+  }
+
+  private static Counter find(boolean modules, String name) {
+    for (Map.Entry<String, Counter> entry : ModuleProfiler.merge(modules)) {
+      if (entry.getKey().equals(name)) {
+        return entry.getValue();
+      }
+    }
+    return null;
+  }
+
+  @Test
+  public void testNestedStatesUseSelfTime() throws Exception {
+    long start = System.nanoTime();
+    ModuleProfiler.enterState();
+    Thread.sleep(20);
+    ModuleProfiler.enterState();
+    Thread.sleep(50);
+    ModuleProfiler.exitState(State.Delay.class);
+    ModuleProfiler.exitState(State.CallSubmodule.class);
+    long elapsed = System.nanoTime() - start;
+
+    Counter outer = find(false, "CallSubmodule");
+    Counter inner = find(false, "Delay");
+    assertNotNull(outer);
+    assertNotNull(inner);
+    assertEquals(1, outer.calls);
+    assertEquals(1, inner.calls);
+    assertTrue(inner.nanos >= 50_000_000L);
+    assertTrue(outer.nanos >= 20_000_000L);
+    // the time of the outer state excludes the time of the inner state
+    assertTrue(outer.nanos + inner.nanos <= elapsed);
+  }
+
+  @Test
+  public void testResetDiscardsThreadProfiles() throws Exception {
+    ModuleProfiler.enterState();
+    ModuleProfiler.exitState(State.Delay.class);
+    assertEquals(1, ModuleProfiler.threads());
+
+    ModuleProfiler.reset();
+    assertEquals(0, ModuleProfiler.threads());
+    assertNull(find(false, "Delay"));
+
+    // a thread that outlives the reset registers again
+    ModuleProfiler.enterState();
+    ModuleProfiler.exitState(State.Delay.class);
+    assertEquals(1, ModuleProfiler.threads());
+    assertEquals(1, find(false, "Delay").calls);
+  }
+
+  @Test
+  public void testProfileModule() throws Exception {
+    Person person = new Person(0L);
+    person.attributes.put(Person.GENDER, "F");
+    long time = System.currentTimeMillis();
+    LifecycleModule.birth(person, time);
+
+    Module example = TestHelper.getFixture("example_module.json");
+    // a female person transitions straight from Initial to Terminal
+    assertTrue(ModuleProfiler.process(example, person, time));
+
+    Counter module = find(true, example.name);
+    assertNotNull(module);
+    assertEquals(1, module.calls);
+    assertEquals(1, find(false, "Initial").calls);
+    assertEquals(1, find(false, "Terminal").calls);
+    if (!ModuleProfiler.allocationsSupported()) {
+      assertEquals(0, module.bytes);
+    }
+
+    List<Map.Entry<String, Counter>> states = ModuleProfiler.merge(false);
+    for (int i = 1; i < states.size(); i++) {
+      assertTrue(states.get(i - 1).getValue().nanos >= states.get(i).getValue().nanos);
+    }
+  }
+
+  @Test
+  public void testDisabled() throws Exception {
+    ModuleProfiler.enabled = false;
+    Person person = new Person(0L);
+    person.attributes.put(Person.GENDER, "F");
+    long time = System.currentTimeMillis();
+    LifecycleModule.birth(person, time);
+
+    Module example = TestHelper.getFixture("example_module.json");
+    assertTrue(ModuleProfiler.process(example, person, time));
+    assertFalse(ModuleProfiler.merge(true).iterator().hasNext());
+    assertFalse(ModuleProfiler.merge(false).iterator().hasNext());
+  }
+}
@@ -1,6 +1,8 @@
 package org.mitre.synthea.helpers;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
 import static org.mitre.synthea.TestHelper.SNOMED_URI;
 
 import ca.uhn.fhir.parser.DataFormatException;
@@ -20,6 +22,7 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mitre.synthea.world.concepts.HealthRecord.Code;
 import org.mockito.junit.MockitoJUnitRunner;
@@ -35,6 +38,9 @@ public class RandomCodeGeneratorTest {
   @Rule
   public ExpectedException thrown = ExpectedException.none();
 
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
   private MockWebServer server;
 
   @Before
@@ -136,9 +142,42 @@ public class RandomCodeGeneratorTest {
     Assert.assertEquals("Hypertension", code.display);
   }
 
+  @Test
+  public void cachedExpansionIsUsedOffline() throws IOException {
+    Config.set("generate.terminology_service.cache", "true");
+    Config.set("generate.terminology_service.cache.directory",
+        tempFolder.getRoot().getAbsolutePath());
+    prepareServer("codes.json", false);
+
+    Code online = RandomCodeGenerator.getCode(VALUE_SET_URI, SEED, this.code);
+    assertEquals(1, server.getRequestCount());
+    assertTrue(RandomCodeGenerator.isSelectedCode(online.code));
+
+    RandomCodeGenerator.codeListCache.clear();
+    Config.set("generate.terminology_service.offline", "true");
+    Code offline = RandomCodeGenerator.getCode(VALUE_SET_URI, SEED, this.code);
+    assertEquals(online, offline);
+    assertEquals(1, server.getRequestCount());
+
+    assertThrows(RuntimeException.class, () ->
+        RandomCodeGenerator.getCode(VALUE_SET_URI + "&filter=missing", SEED, this.code));
+    assertEquals(1, server.getRequestCount());
+  }
+
+  @Test
+  public void codeInValueSet() throws IOException {
+    prepareServer("codes.json", false);
+
+    Code code = RandomCodeGenerator.getCode(VALUE_SET_URI, SEED, this.code);
+    assertTrue(RandomCodeGenerator.codeInValueSet(code, VALUE_SET_URI));
+    Assert.assertFalse(RandomCodeGenerator.codeInValueSet(this.code, VALUE_SET_URI));
+  }
+
   @After
   public void cleanup() throws IOException {
     RandomCodeGenerator.codeListCache.clear();
+    Config.set("generate.terminology_service.cache", "false");
+    Config.set("generate.terminology_service.offline", "false");
     server.close();
   }
 
@@ -120,4 +120,48 @@ public class RandomCollectionTest {
     Assert.assertTrue(3 == asian);
   }
 
+  @Test
+  public void testAddAll() {
+    RandomCollection<String> rc = new RandomCollection<String>();
+    rc.add(0.33, "white");
+    rc.add(0.33, "black");
+    RandomCollection<String> other = new RandomCollection<String>();
+    other.add(0.33, "asian");
+    other.addAll(rc);
+
+    Fixed fixed = new Fixed();
+    Assert.assertEquals("asian", other.next(fixed));
+    Assert.assertEquals("white", other.next(fixed));
+    Assert.assertEquals("black", other.next(fixed));
+  }
+
+  @Test
+  public void testAliasSampling() {
+    RandomCollection.aliasSampling = true;
+    try {
+      RandomCollection<String> rc = new RandomCollection<String>();
+      rc.add(0.0, "white");
+      rc.add(1.0, "black");
+      rc.add(3.0, "asian");
+
+      int black = 0;
+      int samples = 100_000;
+      RandomNumberGenerator random = new DefaultRandomNumberGenerator(0);
+      for (int i = 0; i < samples; i++) {
+        String randomString = rc.next(random);
+        Assert.assertNotEquals("white", randomString);
+        if (randomString.equals("black")) {
+          black++;
+        }
+      }
+      Assert.assertEquals(0.25, black / (double) samples, 0.01);
+
+      // adding an item rebuilds the alias table
+      rc.add(1000000.0, "other");
+      Assert.assertEquals("other", rc.next(random));
+    } finally {
+      RandomCollection.aliasSampling = false;
+    }
+  }
+
 }
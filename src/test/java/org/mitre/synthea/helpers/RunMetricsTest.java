@@ -0,0 +1,63 @@
+package org.mitre.synthea.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+
+import org.junit.After;
+import org.junit.Test;
+import org.powermock.reflect.Whitebox;
+
+public class RunMetricsTest {
+
+  @After
+  public void reset() {
+    RunMetrics.reset();
+    Whitebox.setInternalState(RunMetrics.class, "published", false);
+  }
+
+  @Test
+  public void testPrometheusText() {
+    RunMetrics.reset();
+    RunMetrics.recordExport("fhir", System.nanoTime());
+    RunMetrics.recordExport("fhir", System.nanoTime());
+    RunMetrics.recordExport("csv", System.nanoTime());
+    RunMetrics.recordBytesWritten(1000);
+    RunMetrics.recordBytesWritten(24);
+
+    String text = RunMetrics.prometheusText();
+    assertTrue(text.contains("# TYPE synthea_people_generated_total counter\n"));
+    assertTrue(text.contains("synthea_export_seconds_count{format=\"fhir\"} 2\n"));
+    assertTrue(text.contains("synthea_export_seconds_count{format=\"csv\"} 1\n"));
+    assertTrue(text.contains("synthea_exporter_bytes_written_total 1024\n"));
+    assertTrue(text.contains("synthea_heap_used_bytes "));
+    for (String line : text.split("\n")) {
+      // every sample is a name, optional labels and a number
+      assertTrue(line, line.startsWith("#")
+          || line.matches("synthea_[a-z_]+(\\{[a-z]+=\"[a-z_]+\"\\})? [-0-9.E]+"));
+    }
+  }
+
+  @Test
+  public void testCountBytesWritten() throws Exception {
+    RunMetrics.reset();
+    ByteArrayOutputStream file = new ByteArrayOutputStream();
+    OutputStream out = RunMetrics.countBytesWritten(file);
+    // nothing is counted unless the metrics are published
+    out.write(new byte[10]);
+    Whitebox.setInternalState(RunMetrics.class, "published", true);
+    out.write(new byte[1000], 0, 1000);
+    out.write('\n');
+    out.flush();
+    assertEquals(1011, file.size());
+    assertTrue(RunMetrics.prometheusText()
+        .contains("synthea_exporter_bytes_written_total 1001\n"));
+  }
+
+  @Test
+  public void testProgress() {
+    assertTrue(RunMetrics.progress().startsWith("Progress: generated="));
+  }
+}
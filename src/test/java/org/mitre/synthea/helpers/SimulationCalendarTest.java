@@ -0,0 +1,64 @@
+package org.mitre.synthea.helpers;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Calendar;
+import java.util.Random;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+public class SimulationCalendarTest {
+
+  private static Calendar calendar(long time) {
+    Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+    calendar.setTimeInMillis(time);
+    return calendar;
+  }
+
+  private static long calendarAnniversary(long time, int anniversary) {
+    Calendar calendar = calendar(time);
+    calendar.set(Calendar.YEAR, calendar.get(Calendar.YEAR) + anniversary);
+    return calendar.getTimeInMillis();
+  }
+
+  @Test
+  public void testMatchesCalendar() {
+    Random random = new Random(12345L);
+    long min = SimulationCalendar.getYearStart(1500);
+    long max = SimulationCalendar.getYearStart(2500);
+    for (int i = 0; i < 100000; i++) {
+      long time = min + (long) (random.nextDouble() * (max - min));
+      Calendar calendar = calendar(time);
+      assertEquals(calendar.get(Calendar.YEAR), SimulationCalendar.getYear(time));
+      assertEquals(calendar.get(Calendar.MONTH) + 1, SimulationCalendar.getMonth(time));
+      int anniversary = random.nextInt(200) - 100;
+      assertEquals(calendarAnniversary(time, anniversary),
+          SimulationCalendar.getAnniversary(time, anniversary));
+    }
+  }
+
+  @Test
+  public void testBoundaries() {
+    long newYear = SimulationCalendar.getYearStart(2000);
+    assertEquals(946684800000L, newYear);
+    assertEquals(2000, SimulationCalendar.getYear(newYear));
+    assertEquals(1, SimulationCalendar.getMonth(newYear));
+    assertEquals(1999, SimulationCalendar.getYear(newYear - 1));
+    assertEquals(12, SimulationCalendar.getMonth(newYear - 1));
+    assertEquals(1970, SimulationCalendar.getYear(0L));
+  }
+
+  @Test
+  public void testLeapDayAnniversary() {
+    Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+    calendar.clear();
+    calendar.set(2000, Calendar.FEBRUARY, 29, 13, 30, 0);
+    long leapDay = calendar.getTimeInMillis();
+    long anniversary = SimulationCalendar.getAnniversary(leapDay, 1);
+    assertEquals(calendarAnniversary(leapDay, 1), anniversary);
+    assertEquals(3, SimulationCalendar.getMonth(anniversary));
+    assertEquals(leapDay, SimulationCalendar.getAnniversary(leapDay, 4) - 4 * 365
+        * 24 * 60 * 60 * 1000L - 24 * 60 * 60 * 1000L);
+  }
+}
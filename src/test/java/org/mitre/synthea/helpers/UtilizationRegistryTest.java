@@ -0,0 +1,97 @@
+package org.mitre.synthea.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.Table;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class UtilizationRegistryTest {
+
+  @Test
+  public void testMetricIds() {
+    int parent = UtilizationRegistry.metricId("utilization-test");
+    assertEquals(parent, UtilizationRegistry.metricId("utilization-test"));
+    int child = UtilizationRegistry.metricId(parent, "child");
+    assertEquals(child, UtilizationRegistry.metricId("utilization-test-child"));
+    assertEquals(child, UtilizationRegistry.metricId(parent, "child"));
+    assertEquals("utilization-test-child", UtilizationRegistry.metricName(child));
+  }
+
+  @Test
+  public void testCountsAndTable() {
+    int a = UtilizationRegistry.metricId("utilization-a");
+    int b = UtilizationRegistry.metricId("utilization-b");
+    UtilizationRegistry registry = new UtilizationRegistry();
+    assertTrue(registry.isEmpty());
+    registry.increment(2000, a);
+    registry.increment(2000, a);
+    registry.increment(2001, a);
+    registry.increment(2001, b);
+    assertFalse(registry.isEmpty());
+    assertEquals(2, registry.get(2000, a));
+    assertEquals(0, registry.get(2000, b));
+    assertEquals(3, registry.total(a));
+    assertEquals(1, registry.total(b));
+
+    Table<Integer, String, AtomicInteger> table = registry.asTable();
+    assertEquals(3, table.size());
+    assertEquals(2, table.get(2000, "utilization-a").get());
+    assertEquals(3, table.column("utilization-a").values().stream()
+        .mapToInt(ai -> ai.get()).sum());
+
+    UtilizationRegistry other = new UtilizationRegistry();
+    other.increment(2000, a);
+    other.increment(1999, b);
+    registry.merge(other);
+    assertEquals(3, registry.get(2000, a));
+    assertEquals(1, registry.get(1999, b));
+  }
+
+  @Test
+  public void testConcurrentIncrements() throws Exception {
+    int metric = UtilizationRegistry.metricId("utilization-concurrent");
+    UtilizationRegistry registry = new UtilizationRegistry();
+    ExecutorService threads = Executors.newFixedThreadPool(8);
+    for (int t = 0; t < 8; t++) {
+      threads.submit(() -> {
+        for (int i = 0; i < 10000; i++) {
+          registry.increment(2000 + (i % 10), metric);
+        }
+      });
+    }
+    threads.shutdown();
+    assertTrue(threads.awaitTermination(30, TimeUnit.SECONDS));
+    assertEquals(80000, registry.total(metric));
+    assertEquals(8000, registry.get(2005, metric));
+  }
+
+  @Test
+  public void testSerialization() throws Exception {
+    int metric = UtilizationRegistry.metricId("utilization-serial");
+    UtilizationRegistry registry = new UtilizationRegistry();
+    registry.increment(2010, metric);
+    registry.increment(2010, metric);
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+      oos.writeObject(registry);
+    }
+    try (ObjectInputStream ois =
+        new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      UtilizationRegistry copy = (UtilizationRegistry) ois.readObject();
+      assertEquals(2, copy.get(2010, metric));
+    }
+  }
+}
@@ -0,0 +1,190 @@
+package org.mitre.synthea.world.agents;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class PersonAttributesTest {
+
+  @Test
+  public void testSlotsAndFallback() {
+    PersonAttributes attributes = new PersonAttributes();
+    assertTrue(attributes.isEmpty());
+    assertFalse(attributes.hasBirthdate());
+
+    attributes.put(Person.BIRTHDATE, 123456789L);
+    attributes.put(Person.GENDER, "F");
+    attributes.put(Person.INCOME, 50000);
+    attributes.put(Person.OCCUPATION_LEVEL, 0.25);
+    attributes.put("module_attribute", true);
+
+    assertEquals(5, attributes.size());
+    assertTrue(attributes.hasBirthdate());
+    assertEquals(123456789L, attributes.getBirthdate());
+    assertEquals(123456789L, (long) attributes.get(Person.BIRTHDATE));
+    assertEquals(PersonAttributes.Gender.F, attributes.getGender());
+    assertEquals(50000, attributes.getIncome());
+    assertEquals(50000, attributes.get(Person.INCOME));
+    assertEquals(0.25, attributes.getOccupationLevel(), 0.0);
+    assertEquals(true, attributes.get("module_attribute"));
+    // keys that are equal but not identical to the constants still find their slot
+    assertEquals("F", attributes.get(new String("gender")));
+    assertTrue(attributes.containsKey(new String("birthdate")));
+
+    assertEquals("F", attributes.remove(Person.GENDER));
+    assertNull(attributes.get(Person.GENDER));
+    assertNull(attributes.getGender());
+    assertFalse(attributes.containsKey(Person.GENDER));
+    assertEquals(4, attributes.size());
+    assertNull(attributes.get(Person.VETERAN));
+  }
+
+  @Test
+  public void testMapSemantics() {
+    PersonAttributes attributes = new PersonAttributes();
+    attributes.put(Person.BIRTHDATE, 0L);
+    attributes.put(Person.RACE, "white");
+    attributes.put("a", 1);
+    attributes.put("b", "two");
+
+    Map<String, Object> expected = new HashMap<>();
+    expected.put(Person.BIRTHDATE, 0L);
+    expected.put(Person.RACE, "white");
+    expected.put("a", 1);
+    expected.put("b", "two");
+    assertEquals(expected, attributes);
+    assertEquals(expected, new HashMap<>(attributes));
+    assertEquals(expected.keySet(), attributes.keySet());
+
+    Iterator<Map.Entry<String, Object>> iter = attributes.entrySet().iterator();
+    while (iter.hasNext()) {
+      Map.Entry<String, Object> e = iter.next();
+      if (e.getKey().equals(Person.RACE) || e.getKey().equals("a")) {
+        iter.remove();
+      }
+    }
+    assertEquals(2, attributes.size());
+    assertFalse(attributes.containsKey(Person.RACE));
+    assertFalse(attributes.containsKey("a"));
+  }
+
+  @Test
+  public void testAtomicOperations() {
+    PersonAttributes attributes = new PersonAttributes();
+    for (String key : new String[] {Person.GENDER, "module_attribute"}) {
+      assertNull(attributes.putIfAbsent(key, "F"));
+      assertEquals("F", attributes.putIfAbsent(key, "M"));
+      assertFalse(attributes.replace(key, "M", "X"));
+      assertTrue(attributes.replace(key, "F", "M"));
+      assertEquals("M", attributes.replace(key, "F"));
+      assertFalse(attributes.remove(key, "M"));
+      assertTrue(attributes.remove(key, "F"));
+      assertNull(attributes.replace(key, "F"));
+      assertFalse(attributes.containsKey(key));
+      assertEquals("F", attributes.computeIfAbsent(key, k -> "F"));
+      assertEquals("F", attributes.computeIfAbsent(key, k -> "M"));
+      assertEquals("FM", attributes.merge(key, "M", (a, b) -> (String) a + b));
+    }
+  }
+
+  @Test
+  public void testConcurrentPutIfAbsent() throws Exception {
+    PersonAttributes attributes = new PersonAttributes();
+    int threads = 8;
+    AtomicInteger winners = new AtomicInteger();
+    CountDownLatch start = new CountDownLatch(1);
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    for (int i = 0; i < threads; i++) {
+      long birthdate = i;
+      pool.execute(() -> {
+        try {
+          start.await();
+        } catch (InterruptedException e) {
+          return;
+        }
+        if (attributes.putIfAbsent(Person.BIRTHDATE, birthdate) == null) {
+          winners.incrementAndGet();
+        }
+      });
+    }
+    start.countDown();
+    pool.shutdown();
+    assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+    assertEquals(1, winners.get());
+    assertTrue(attributes.hasBirthdate());
+    assertEquals((long) attributes.get(Person.BIRTHDATE), attributes.getBirthdate());
+  }
+
+  @Test
+  public void testTypedFieldsFollowUpdates() {
+    PersonAttributes attributes = new PersonAttributes();
+    assertNull(attributes.putIfAbsent(Person.BIRTHDATE, 1L));
+    assertEquals(1L, attributes.putIfAbsent(Person.BIRTHDATE, 2L));
+    assertEquals(1L, attributes.getBirthdate());
+    assertTrue(attributes.replace(Person.BIRTHDATE, 1L, 3L));
+    assertFalse(attributes.replace(Person.BIRTHDATE, 1L, 4L));
+    assertEquals(3L, attributes.getBirthdate());
+    attributes.replace(Person.BIRTHDATE, 5L);
+    assertEquals(5L, attributes.getBirthdate());
+    attributes.entrySet().iterator().next().setValue(6L);
+    assertEquals(6L, attributes.getBirthdate());
+
+    // the map view returns the values as they were put
+    attributes.put(Person.INCOME, 1234.5);
+    assertEquals(1234, attributes.getIncome());
+    assertEquals(1234.5, attributes.get(Person.INCOME));
+    attributes.put(Person.GENDER, "M");
+    assertEquals(PersonAttributes.Gender.M, attributes.getGender());
+    attributes.put(Person.GENDER, "unknown");
+    assertNull(attributes.getGender());
+    assertEquals("unknown", attributes.get(Person.GENDER));
+  }
+
+  @Test(expected = ClassCastException.class)
+  public void testTypedFieldOfNonNumber() {
+    PersonAttributes attributes = new PersonAttributes();
+    attributes.put(Person.BIRTHDATE, "yesterday");
+    attributes.getBirthdate();
+  }
+
+  @Test(expected = NullPointerException.class)
+  public void testNullValue() {
+    new PersonAttributes().put(Person.GENDER, null);
+  }
+
+  @Test
+  public void testSerialization() throws Exception {
+    PersonAttributes attributes = new PersonAttributes();
+    attributes.put(Person.BIRTHDATE, 42L);
+    attributes.put(Person.GENDER, "F");
+    attributes.put("other", "value");
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+      oos.writeObject(attributes);
+    }
+    try (ObjectInputStream ois =
+        new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      PersonAttributes copy = (PersonAttributes) ois.readObject();
+      assertEquals(42L, copy.getBirthdate());
+      assertEquals(PersonAttributes.Gender.F, copy.getGender());
+      assertEquals(attributes, copy);
+    }
+  }
+}
@@ -160,6 +160,19 @@ public class PersonTest {
     testAgeMonths(birthdate, now, 11);
   }
 
+  @Test
+  public void testAgeCacheInvalidation() {
+    long now = timestamp(2020, 6, 1, 0, 0, 0);
+    person.attributes.put(Person.BIRTHDATE, timestamp(2000, 1, 1, 0, 0, 0));
+    assertEquals(20, person.ageInYears(now));
+    assertEquals(20, person.ageInYears(now));
+    // advancing time invalidates the cached age
+    assertEquals(21, person.ageInYears(timestamp(2021, 6, 1, 0, 0, 0)));
+    // changing the birthdate invalidates the cached age, even for the same time
+    person.attributes.put(Person.BIRTHDATE, timestamp(2010, 1, 1, 0, 0, 0));
+    assertEquals(10, person.ageInYears(now));
+  }
+
   private void testAgeYears(long birthdate, long now, long expectedAge) {
     person.attributes.put(Person.BIRTHDATE, birthdate);
     person.attributes.remove(Person.BIRTHDATE_AS_LOCALDATE);
@@ -551,6 +564,27 @@ public class PersonTest {
     assertEquals(List.of("headache", "back pain", "confusion"), symptoms);
   }
 
+  @Test
+  public void testSymptomTotal() throws Exception {
+    Person person = new Person(0L);
+    assertEquals(0, person.symptomTotal());
+    person.setSymptom("ModuleA", "a", "headache", 0, 30, false);
+    person.setSymptom("ModuleB", "b", "headache", 0, 50, false);
+    person.setSymptom("ModuleA", "a", "back pain", 0, 20, false);
+    assertEquals(70, person.symptomTotal());
+
+    // a new value from a module replaces its old one
+    person.setSymptom("ModuleB", "b", "headache", 1, 10, false);
+    assertEquals(50, person.symptomTotal());
+
+    // addressing the largest symptom drops it from the total
+    person.addressLargestSymptom();
+    assertEquals(30, person.symptomTotal());
+
+    Person rehydrated = serializeAndDeserialize(person);
+    assertEquals(30, rehydrated.symptomTotal());
+  }
+
   @Test()
   public void testPersonRandomStability() {
     Person personA = new Person(0L);
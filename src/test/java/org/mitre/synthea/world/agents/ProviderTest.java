@@ -48,6 +48,23 @@ public class ProviderTest {
     Provider.clear();
   }
 
+  @Test
+  public void testUtilizationTotals() {
+    Provider provider = new Provider();
+    provider.incrementEncounters(EncounterType.WELLNESS, 2020);
+    provider.incrementEncounters(EncounterType.EMERGENCY, 2021);
+    provider.incrementProcedures(2020);
+    provider.incrementLabs(2021);
+    provider.incrementLabs(2022);
+    provider.incrementPrescriptions(2022);
+    Assert.assertEquals(2, provider.getTotalEncounters());
+    Assert.assertEquals(1, provider.getTotalProcedures());
+    Assert.assertEquals(2, provider.getTotalLabs());
+    Assert.assertEquals(1, provider.getTotalPrescriptions());
+    Assert.assertEquals(1, provider.getUtilization()
+        .get(2021, Provider.ENCOUNTERS + "-" + EncounterType.EMERGENCY).get());
+  }
+
   @Test
   public void testLoadProvidersByAbbreviation() {
     Provider.loadProviders(location, providerRandom);
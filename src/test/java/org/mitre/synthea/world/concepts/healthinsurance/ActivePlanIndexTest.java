@@ -0,0 +1,65 @@
+package org.mitre.synthea.world.concepts.healthinsurance;
+
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+import org.mitre.synthea.helpers.Utilities;
+import org.mitre.synthea.world.agents.Payer;
+import org.mitre.synthea.world.agents.PayerManager;
+import org.mitre.synthea.world.agents.behaviors.planeligibility.PlanEligibilityFinder;
+
+public class ActivePlanIndexTest {
+
+  private static InsurancePlan plan(int id, Payer payer, boolean supplement,
+      int startYear, int endYear) {
+    return new InsurancePlan(id, payer, new HashSet<String>(), BigDecimal.ZERO,
+        BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO, supplement,
+        false, false, startYear, endYear, 0, PlanEligibilityFinder.GENERIC);
+  }
+
+  @Test
+  public void testMatchesLinearScan() {
+    Payer privatePayer = new Payer("Private", 1, new HashSet<String>(Arrays.asList("*")),
+        PayerManager.PRIVATE_OWNERSHIP);
+    Payer govPayer = new Payer("Government", 2, new HashSet<String>(Arrays.asList("*")),
+        PayerManager.GOV_OWNERSHIP);
+    List<InsurancePlan> plans = new ArrayList<>();
+    plans.add(plan(1, privatePayer, false, 2000, 2010));
+    plans.add(plan(2, privatePayer, true, 2005, Integer.MAX_VALUE));
+    plans.add(plan(3, govPayer, false, 0, Integer.MAX_VALUE));
+    plans.add(plan(4, govPayer, false, 1990, 2005));
+    plans.add(plan(5, privatePayer, true, 2010, 2020));
+    ActivePlanIndex index = new ActivePlanIndex(plans);
+
+    List<Long> times = new ArrayList<>();
+    for (int year = 1980; year <= 2030; year++) {
+      long start = Utilities.convertCalendarYearsToTime(year);
+      times.add(start);
+      times.add(start - 1);
+      times.add(start + 1);
+      times.add(start + Utilities.convertTime("days", 180));
+    }
+
+    for (long time : times) {
+      List<InsurancePlan> active = plans.stream().filter(p -> p.isActive(time))
+          .collect(Collectors.toList());
+      assertEquals(active, index.getActivePlans(time));
+      assertEquals(active.stream().filter(p -> !p.isMedicareSupplementPlan())
+          .collect(Collectors.toList()), index.getActiveNonSupplementPlans(time));
+      assertEquals(active.stream().filter(p -> p.isMedicareSupplementPlan())
+          .collect(Collectors.toList()), index.getActiveSupplementPlans(time));
+      assertEquals(active.stream().filter(p -> p.isGovernmentPlan())
+          .collect(Collectors.toList()), index.getActivePlans(time, true));
+      assertEquals(active.stream().filter(p -> !p.isGovernmentPlan())
+          .collect(Collectors.toList()), index.getActivePlans(time, false));
+      assertEquals(active, index.getActivePlans(time, plans.get(0).getPlanEligibility()));
+    }
+  }
+}
@@ -15,6 +15,7 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 import org.mitre.synthea.TestHelper;
 import org.mitre.synthea.helpers.Config;
+import org.mitre.synthea.helpers.RandomCollection;
 import org.mitre.synthea.helpers.SimpleCSV;
 import org.mitre.synthea.helpers.Utilities;
 import org.mitre.synthea.world.agents.Person;
@@ -59,6 +60,31 @@ public class LocationTest {
     Assert.assertTrue(zipcodes.contains(zipcode));
   }
 
+  @Test
+  public void testRandomCity() {
+    Person person = new Person(1);
+    for (int i = 0; i < 100; i++) {
+      Assert.assertTrue(location.getPopulation(location.randomCityName(person)) > 0);
+    }
+  }
+
+  @Test
+  public void testRandomCityWithAliasSampling() {
+    RandomCollection.aliasSampling = true;
+    try {
+      Location aliasLocation = new Location(testState, null);
+      Person a = new Person(1);
+      Person b = new Person(1);
+      for (int i = 0; i < 100; i++) {
+        String city = aliasLocation.randomCityName(a);
+        Assert.assertTrue(aliasLocation.getPopulation(city) > 0);
+        Assert.assertEquals(city, aliasLocation.randomCityName(b));
+      }
+    } finally {
+      RandomCollection.aliasSampling = false;
+    }
+  }
+
   @Test
   public void testLocationWithoutZipCode() {
     Assert.assertFalse(location.getPopulation(locationDoesNotExist) > 0);